@@ -0,0 +1,27 @@
+package com.homesync.backup.benchmarks;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Same as JMH's own main, except that results are
+ * written as JSON to jmh-result.json unless the command line picks another format,
+ * so every run leaves a file that can be diffed against the last one.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>();
+        if (!Arrays.asList(args).contains("-rf")) {
+            options.addAll(List.of("-rf", "json", "-rff", "jmh-result.json"));
+        }
+        options.addAll(Arrays.asList(args));
+        Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,49 @@
+package com.homesync.backup.benchmarks;
+
+import com.homesync.backup.homesync.service.scan.DirectoryManifest;
+import com.homesync.backup.homesync.service.scan.ManifestSink;
+import com.homesync.backup.homesync.service.scan.ScannedFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/** Fixture helpers shared by the benchmarks. */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /** Collects reported manifests by directory and ignores the file changes; {@code into} must be thread-safe. */
+    static ManifestSink manifestSink(Map<String, DirectoryManifest> into) {
+        return new ManifestSink() {
+            @Override
+            public void changed(List<ScannedFile> files) {
+            }
+
+            @Override
+            public void deleted(List<String> paths) {
+            }
+
+            @Override
+            public void manifest(DirectoryManifest manifest) {
+                into.put(manifest.dir(), manifest);
+            }
+        };
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.homesync.backup.benchmarks;
+
+import com.homesync.backup.homesync.service.scan.DirectoryManifest;
+import com.homesync.backup.homesync.service.scan.DirectoryScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full and incremental scans of a generated tree of empty .jpg files, i.e. the cost
+ * of the walk and the stat calls without any file contents. The incremental scan
+ * runs against the manifests of a previous full scan, so nothing has changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DirectoryWalkBenchmark {
+
+    @Param({"20000"})
+    public int files;
+
+    @Param({"100"})
+    public int filesPerDirectory;
+
+    @Param({"0", "1"})
+    public int parallelism;
+
+    private Path root;
+    private DirectoryScanner scanner;
+    private final Map<String, DirectoryManifest> manifests = new ConcurrentHashMap<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("walk-bench");
+        for (int i = 0; i < files; i++) {
+            Path dir = root.resolve("d" + (i / filesPerDirectory / 10)).resolve("e" + (i / filesPerDirectory));
+            Files.createDirectories(dir);
+            Files.createFile(dir.resolve("IMG_" + i + ".jpg"));
+        }
+        scanner = new DirectoryScanner(parallelism, List.of("jpg", "jpeg", "png"), true);
+        scanner.scanIncremental(root, true, Map.of(), Benchmarks.manifestSink(manifests));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        scanner.shutdown();
+        Benchmarks.deleteTree(root);
+    }
+
+    @Benchmark
+    public long fullScan() {
+        AtomicLong found = new AtomicLong();
+        scanner.scan(root, true, chunk -> found.addAndGet(chunk.size()));
+        return found.get();
+    }
+
+    @Benchmark
+    public int unchangedIncrementalScan() {
+        return scanner.scanIncremental(root, true, manifests, Benchmarks.manifestSink(new ConcurrentHashMap<>())).size();
+    }
+}
@@ -0,0 +1,82 @@
+package com.homesync.backup.benchmarks;
+
+import com.homesync.backup.homesync.service.index.EmbeddingIndex;
+import com.homesync.backup.homesync.service.index.EmbeddingMatch;
+import com.homesync.backup.homesync.service.index.ScalarVectorKernel;
+import com.homesync.backup.homesync.service.index.VectorKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exact top-k cosine search over the in-memory embedding index, with the scalar
+ * kernel and with whatever {@link VectorKernel#best()} picks: the Vector API one
+ * when photo-sorter was built with {@code -Pvector-api}, since the fork adds the
+ * incubator module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EmbeddingSearchBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"512"})
+    public int dimension;
+
+    @Param({"scalar", "best"})
+    public String kernel;
+
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private EmbeddingIndex index;
+    private float[] query;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        index = new EmbeddingIndex(kernel.equals("scalar") ? new ScalarVectorKernel() : VectorKernel.best(),
+                parallelism, rows);
+        for (int i = 0; i < rows; i++) {
+            index.add(i, (long) (i % 500), vector(random));
+        }
+        query = vector(random);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.close();
+    }
+
+    @Benchmark
+    public List<EmbeddingMatch> top10() {
+        return index.search(query, 10);
+    }
+
+    private float[] vector(Random random) {
+        float[] v = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            v[d] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+}
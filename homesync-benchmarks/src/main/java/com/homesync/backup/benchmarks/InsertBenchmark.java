@@ -0,0 +1,138 @@
+package com.homesync.backup.benchmarks;
+
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import com.homesync.backup.homesync.service.scan.ScannedFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row-at-a-time inserts against the batched {@link PhotoJdbcRepository#insertIgnore}
+ * the ingest writer uses, each as one transaction per batch, on an in-memory H2 in
+ * MySQL mode. H2 has no network round trip, so the gap here is a lower bound of
+ * what batching saves against a real MySQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InsertBenchmark {
+
+    private static final String DIRECTORY = "/photos/2021/07/";
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private SingleConnectionDataSource dataSource;
+    private NamedParameterJdbcTemplate jdbc;
+    private PhotoJdbcRepository repository;
+    private TransactionTemplate tx;
+    private List<ScannedFile> files;
+    private Map<String, Long> directoryIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:bench;MODE=MySQL;DB_CLOSE_DELAY=-1", true);
+        jdbc = new NamedParameterJdbcTemplate(dataSource);
+        jdbc.getJdbcTemplate().execute("""
+                CREATE TABLE IF NOT EXISTS directories (
+                  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                  dir_hash BINARY(20) NOT NULL UNIQUE,
+                  path VARCHAR(1024) NOT NULL
+                )""");
+        jdbc.getJdbcTemplate().execute("""
+                CREATE TABLE IF NOT EXISTS photos (
+                  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                  directory_id BIGINT NOT NULL,
+                  filename VARCHAR(512) NOT NULL,
+                  filesize BIGINT DEFAULT NULL,
+                  width INT DEFAULT NULL,
+                  height INT DEFAULT NULL,
+                  inserted_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+                  modified_at DATETIME DEFAULT NULL,
+                  captured_at DATETIME DEFAULT NULL,
+                  deleted_at DATETIME DEFAULT NULL,
+                  content_hash BINARY(32) DEFAULT NULL,
+                  canonical_photo_id BIGINT DEFAULT NULL,
+                  status VARCHAR(16) DEFAULT 'READY',
+                  person_ids JSON DEFAULT NULL,
+                  UNIQUE KEY uk_photos_location (directory_id, filename)
+                )""");
+        jdbc.getJdbcTemplate().execute("CREATE INDEX IF NOT EXISTS idx_photos_status ON photos (status, id)");
+        repository = new PhotoJdbcRepository(jdbc);
+        tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        // the writer resolves directory ids from its cache, so they are not part of the measured insert
+        jdbc.getJdbcTemplate().update("INSERT INTO directories (dir_hash, path) VALUES (X'00', ?)", DIRECTORY);
+        directoryIds = Map.of(DIRECTORY, jdbc.getJdbcTemplate().queryForObject(
+                "SELECT id FROM directories WHERE path = ?", Long.class, DIRECTORY));
+
+        files = new ArrayList<>(batchSize);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batchSize; i++) {
+            files.add(new ScannedFile(DIRECTORY + "IMG_" + i + ".jpg", "IMG_" + i + ".jpg",
+                    3_000_000L + i, now, 4032, 3024, 1_626_285_942L));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() {
+        jdbc.getJdbcTemplate().execute("TRUNCATE TABLE photos");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbc.getJdbcTemplate().execute("DROP TABLE photos");
+        jdbc.getJdbcTemplate().execute("DROP TABLE directories");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public void rowByRow() {
+        tx.executeWithoutResult(status -> {
+            Timestamp insertedAt = Timestamp.valueOf(LocalDateTime.now());
+            for (ScannedFile f : files) {
+                jdbc.update("INSERT IGNORE INTO photos (directory_id, filename, filesize, modified_at, width, height, "
+                                + "captured_at, inserted_at, status) VALUES (:directoryId, :filename, :filesize, "
+                                + ":modifiedAt, :width, :height, :capturedAt, :insertedAt, 'READY')",
+                        new MapSqlParameterSource()
+                                .addValue("directoryId", directoryIds.get(DIRECTORY))
+                                .addValue("filename", f.filename())
+                                .addValue("filesize", f.size())
+                                .addValue("modifiedAt", new Timestamp(f.modifiedMillis()))
+                                .addValue("width", f.width())
+                                .addValue("height", f.height())
+                                .addValue("capturedAt", new Timestamp(f.capturedSeconds() * 1000))
+                                .addValue("insertedAt", insertedAt));
+            }
+        });
+    }
+
+    @Benchmark
+    public void batched() {
+        tx.executeWithoutResult(status -> repository.insertIgnore(files, directoryIds));
+    }
+}
@@ -0,0 +1,137 @@
+package com.homesync.backup.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homesync.backup.homesync.dto.PhotoProcessedCallback;
+import com.homesync.backup.homesync.kafka.PhotoEnvelope;
+import com.homesync.backup.homesync.kafka.PhotoEnvelopeDeserializer;
+import com.homesync.backup.homesync.kafka.PhotoEnvelopeSerializer;
+import com.homesync.backup.homesync.service.index.EmbeddingVectors;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The messages every photo goes through: the photos-to-process envelope the outbox
+ * relay sends (against the older one-record-per-path format), the process-photos
+ * request body sent to the ML service, and the callback coming back with base64
+ * face embeddings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MessageSerializationBenchmark {
+
+    @Param({"3"})
+    public int faces;
+
+    @Param({"512"})
+    public int dimension;
+
+    @Param({"100"})
+    public int envelopePhotos;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final StringSerializer stringSerializer = new StringSerializer();
+    private final PhotoEnvelopeSerializer envelopeSerializer = new PhotoEnvelopeSerializer();
+    private final PhotoEnvelopeDeserializer envelopeDeserializer = new PhotoEnvelopeDeserializer();
+    private PhotoEnvelope envelope;
+    private byte[] envelopeBytes;
+    private byte[] callbackJson;
+    private Map<String, Object> requestBody;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(1);
+        List<PhotoProcessedCallback.Detection> detections = new ArrayList<>();
+        for (int i = 0; i < faces; i++) {
+            float[] vector = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            detections.add(new PhotoProcessedCallback.Detection(List.of(0.1, 0.2, 0.3, 0.4),
+                    Base64.getEncoder().encodeToString(EmbeddingVectors.encode(vector)), 0.98, 42L + i, 0.87));
+        }
+        callbackJson = mapper.writeValueAsBytes(new PhotoProcessedCallback(123_456L,
+                "/photos/2021/07/IMG_0001.jpg", "PROCESSED", "cb-123456", detections, List.of(),
+                Map.of("model_version", "face-v3")));
+
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            items.add(Map.of("photoId", 1_000_000L + i, "path", "/photos/2021/07/IMG_" + i + ".jpg"));
+        }
+        requestBody = new HashMap<>();
+        requestBody.put("photos", items);
+        requestBody.put("callbackUrl", "http://localhost:8080/callback/photo-processed");
+        requestBody.put("jobId", "0f9a7c52-52a4-4c1e-9d7e-3f1f2c1c8d11");
+
+        List<PhotoEnvelope.Entry> photos = new ArrayList<>();
+        long modified = 1_626_285_942_000L;
+        for (int i = 0; i < envelopePhotos; i++) {
+            photos.add(new PhotoEnvelope.Entry(2_000_000L + i,
+                    "/mnt/nas/backup/family/phones/pixel-7/DCIM/Camera/2021/07/PXL_20210714_" + (180542 + i) + ".jpg",
+                    3_000_000L + random.nextInt(2_000_000), modified += random.nextInt(60_000)));
+        }
+        envelope = new PhotoEnvelope("0f9a7c52-52a4-4c1e-9d7e-3f1f2c1c8d11", 987, photos);
+        envelopeBytes = envelopeSerializer.serialize("photos-to-process", envelope);
+    }
+
+    @Benchmark
+    public void decodeCallback(Blackhole blackhole) throws Exception {
+        PhotoProcessedCallback callback = mapper.readValue(callbackJson, PhotoProcessedCallback.class);
+        for (PhotoProcessedCallback.Detection detection : callback.getDetections()) {
+            blackhole.consume(EmbeddingVectors.decode(Base64.getDecoder().decode(detection.getEmbedding())));
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeMlRequest() throws Exception {
+        return mapper.writeValueAsBytes(requestBody);
+    }
+
+    @Benchmark
+    public byte[] encodeEnvelope() {
+        return envelopeSerializer.serialize("photos-to-process", envelope);
+    }
+
+    @Benchmark
+    public PhotoEnvelope decodeEnvelope() {
+        return envelopeDeserializer.deserialize("photos-to-process", envelopeBytes);
+    }
+
+    /** The pre-envelope format: one bare path per record, ids in headers. */
+    @Benchmark
+    public void encodeLegacyRecords(Blackhole blackhole) {
+        for (PhotoEnvelope.Entry entry : envelope.photos()) {
+            ProducerRecord<String, String> record = new ProducerRecord<>("photos-to-process",
+                    String.valueOf(entry.photoId()), entry.path());
+            record.headers()
+                    .add(PhotoEnvelope.HEADER_JOB_ID, envelope.jobId().getBytes(StandardCharsets.UTF_8))
+                    .add(PhotoEnvelope.HEADER_BATCH_ID, String.valueOf(envelope.batchId()).getBytes(StandardCharsets.UTF_8))
+                    .add(PhotoEnvelope.HEADER_PHOTO_ID, String.valueOf(entry.photoId()).getBytes(StandardCharsets.UTF_8));
+            blackhole.consume(stringSerializer.serialize(record.topic(), record.value()));
+        }
+    }
+}
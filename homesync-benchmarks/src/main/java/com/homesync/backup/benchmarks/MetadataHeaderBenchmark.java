@@ -0,0 +1,102 @@
+package com.homesync.backup.benchmarks;
+
+import com.homesync.backup.homesync.service.metadata.ImageMetadata;
+import com.homesync.backup.homesync.service.metadata.ImageMetadataReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Header parsing as done during the scan, on files that sit in the page cache:
+ * a JPEG whose Exif block carries a 60 KB preview (so the frame header is found
+ * with a second positional read) and a PNG, which only needs its IHDR chunk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MetadataHeaderBenchmark {
+
+    @Param({"jpeg", "png"})
+    public String format;
+
+    private final ImageMetadataReader reader = new ImageMetadataReader();
+    private Path dir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("header-bench");
+        if (format.equals("png")) {
+            file = Files.write(dir.resolve("photo.png"), encode("png", 4032, 3024));
+        } else {
+            byte[] plain = encode("jpg", 4032, 3024);
+            byte[] tiff = exif();
+            ByteBuffer app1 = ByteBuffer.allocate(2 + 2 + 6 + tiff.length + 60_000);
+            app1.putShort((short) 0xFFE1).putShort((short) (app1.capacity() - 2))
+                    .put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff);
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            jpeg.write(0xFF);
+            jpeg.write(0xD8);
+            jpeg.write(app1.array());
+            jpeg.write(plain, 2, plain.length - 2);
+            file = Files.write(dir.resolve("photo.jpg"), jpeg.toByteArray());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Benchmarks.deleteTree(dir);
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) {
+        ImageMetadata metadata = reader.read(file);
+        blackhole.consume(metadata.width());
+        blackhole.consume(metadata.capturedSeconds());
+    }
+
+    private static byte[] encode(String format, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, out);
+        return out.toByteArray();
+    }
+
+    /** Big-endian TIFF with an orientation tag and an Exif IFD holding DateTimeOriginal. */
+    private static byte[] exif() {
+        ByteBuffer b = ByteBuffer.allocate(76);
+        b.put("MM".getBytes(StandardCharsets.US_ASCII)).putShort((short) 42).putInt(8);
+        b.putShort((short) 2);
+        b.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 1).putShort((short) 0);
+        b.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(38);
+        b.putInt(0);
+        b.putShort((short) 1);
+        b.putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(56);
+        b.putInt(0);
+        b.put("2021:07:14 18:05:42\0".getBytes(StandardCharsets.US_ASCII));
+        return b.array();
+    }
+}
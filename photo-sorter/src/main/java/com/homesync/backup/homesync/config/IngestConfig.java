@@ -0,0 +1,48 @@
+package com.homesync.backup.homesync.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableScheduling
+public class IngestConfig {
+
+    @Value("${ingest.jobs.concurrency:2}")
+    private int jobConcurrency;
+
+    @Value("${ingest.writer.threads:4}")
+    private int writerThreads;
+
+    /** Runs one ingest job end to end (scan, then wait for writers). */
+    @Bean
+    public ThreadPoolTaskExecutor ingestJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobConcurrency);
+        executor.setMaxPoolSize(jobConcurrency);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("ingest-job-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Writes scanned chunks to MySQL. The queue is short and overflow runs on the
+     * submitting scanner thread, which throttles the walk to what the DB can absorb.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor ingestWriterExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(writerThreads);
+        executor.setMaxPoolSize(writerThreads);
+        executor.setQueueCapacity(writerThreads * 2);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("ingest-writer-");
+        executor.initialize();
+        return executor;
+    }
+}
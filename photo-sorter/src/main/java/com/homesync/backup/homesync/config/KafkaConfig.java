@@ -1,9 +1,24 @@
 package com.homesync.backup.homesync.config;
 
+import com.homesync.backup.homesync.kafka.PhotoRecordRecoverer;
+import com.homesync.backup.homesync.kafka.PhotoRetryRouter;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 public class KafkaConfig {
@@ -11,8 +26,80 @@ public class KafkaConfig {
     @Value("${kafka.topics.photos-to-process:photos-to-process}")
     private String photosToProcessTopic;
 
+    @Value("${kafka.topics.photos-to-process-partitions:3}")
+    private int photosToProcessPartitions;
+
+    @Value("${kafka.topics.photos-to-process-interactive:photos-to-process-interactive}")
+    private String photosToProcessInteractiveTopic;
+
+    @Value("${kafka.topics.photos-to-process-interactive-partitions:3}")
+    private int photosToProcessInteractivePartitions;
+
+    @Value("${kafka.retry.partitions:1}")
+    private int retryPartitions;
+
+    @Value("${kafka.retry.dead-letter-retention:30d}")
+    private Duration deadLetterRetention;
+
+    @Value("${kafka.retry.in-place.attempts:5}")
+    private int inPlaceAttempts;
+
+    @Value("${kafka.retry.in-place.initial-backoff:1s}")
+    private Duration inPlaceInitialBackoff;
+
+    @Value("${kafka.retry.in-place.max-backoff:30s}")
+    private Duration inPlaceMaxBackoff;
+
+    /** Bulk lane, and the only topic from before ingest priorities. */
     @Bean
     public NewTopic photosToProcess() {
-        return new NewTopic(photosToProcessTopic, 3, (short) 1);
+        return new NewTopic(photosToProcessTopic, photosToProcessPartitions, (short) 1);
+    }
+
+    @Bean
+    public NewTopic photosToProcessInteractive() {
+        return new NewTopic(photosToProcessInteractiveTopic, photosToProcessInteractivePartitions, (short) 1);
+    }
+
+    /**
+     * Retry tiers of both lanes and the dead-letter topic. Dead letters stay until
+     * replayed through POST /dead-letters/replay, so their retention is long.
+     */
+    @Bean
+    public KafkaAdmin.NewTopics photoRetryTopics(PhotoRetryRouter router) {
+        List<NewTopic> topics = new ArrayList<>();
+        for (int tier = 0; tier < PhotoRetryRouter.TIERS; tier++) {
+            topics.add(new NewTopic(router.retryTopic(tier), retryPartitions, (short) 1));
+        }
+        topics.add(new NewTopic(router.deadLetterTopic(), retryPartitions, (short) 1)
+                .configs(Map.of(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(deadLetterRetention.toMillis()))));
+        return new KafkaAdmin.NewTopics(topics.toArray(new NewTopic[0]));
+    }
+
+    /**
+     * Batch listener for the photos-to-process lanes and retry tiers: one consumer
+     * thread per partition (all but the bulk listener set their own concurrency), a
+     * whole poll per call, and offsets committed only when the listener acknowledges.
+     *
+     * A poll that throws (MySQL or the broker unreachable; ML failures are routed by
+     * the listener itself) is delivered again with exponential backoff, then each of
+     * its records goes to its next retry tier through the {@link PhotoRecordRecoverer}.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> photoBatchListenerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            PhotoRecordRecoverer recoverer) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(photosToProcessPartitions);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(inPlaceAttempts);
+        backOff.setInitialInterval(inPlaceInitialBackoff.toMillis());
+        backOff.setMultiplier(2);
+        backOff.setMaxInterval(inPlaceMaxBackoff.toMillis());
+        factory.setCommonErrorHandler(new DefaultErrorHandler(recoverer, backOff));
+        return factory;
     }
 }
@@ -0,0 +1,105 @@
+package com.homesync.backup.homesync.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homesync.backup.homesync.service.ml.MlBatchDispatcher;
+import com.homesync.backup.homesync.service.ml.MlClientSettings;
+import com.homesync.backup.homesync.service.ml.MlServiceClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.time.Duration;
+
+@Configuration
+public class WorkerConfig {
+
+    @Value("${worker.ml.endpoint:http://localhost:8000/process-photo}")
+    private String endpoint;
+
+    @Value("${worker.ml.batch-endpoint:http://localhost:8000/process-photos}")
+    private String batchEndpoint;
+
+    @Value("${worker.ml.batch.max-size:64}")
+    private int batchMaxSize;
+
+    @Value("${worker.ml.batch.linger-ms:20}")
+    private long batchLingerMs;
+
+    @Value("${worker.ml.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${worker.ml.request-timeout-ms:30000}")
+    private long requestTimeoutMs;
+
+    @Value("${worker.max-in-flight:32}")
+    private int maxInFlight;
+
+    @Value("${worker.ml.limit.min:1}")
+    private int minInFlight;
+
+    @Value("${worker.ml.limit.initial:8}")
+    private int initialInFlight;
+
+    @Value("${worker.ml.limit.backoff-ratio:0.7}")
+    private double limitBackoffRatio;
+
+    @Value("${worker.ml.limit.latency-tolerance:2.0}")
+    private double latencyTolerance;
+
+    @Value("${worker.ml.limit.interactive-weight:4}")
+    private int interactiveWeight;
+
+    @Value("${worker.ml.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${worker.ml.backoff-base-ms:200}")
+    private long backoffBaseMs;
+
+    @Value("${worker.ml.backoff-max-ms:5000}")
+    private long backoffMaxMs;
+
+    @Value("${worker.ml.breaker.window:50}")
+    private int breakerWindow;
+
+    @Value("${worker.ml.breaker.failure-ratio:0.5}")
+    private double breakerFailureRatio;
+
+    @Value("${worker.ml.breaker.slow-call-ms:10000}")
+    private long slowCallMs;
+
+    @Value("${worker.ml.breaker.open-ms:30000}")
+    private long breakerOpenMs;
+
+    @Bean
+    public MlClientSettings mlClientSettings() {
+        return new MlClientSettings(URI.create(endpoint),
+                URI.create(batchEndpoint),
+                Duration.ofMillis(connectTimeoutMs),
+                Duration.ofMillis(requestTimeoutMs),
+                maxInFlight,
+                maxRetries,
+                Duration.ofMillis(backoffBaseMs),
+                Duration.ofMillis(backoffMaxMs),
+                breakerWindow,
+                breakerFailureRatio,
+                Duration.ofMillis(slowCallMs),
+                Duration.ofMillis(breakerOpenMs),
+                minInFlight,
+                initialInFlight,
+                limitBackoffRatio,
+                latencyTolerance,
+                interactiveWeight);
+    }
+
+    @Bean
+    public MlServiceClient mlServiceClient(MlClientSettings mlClientSettings, ObjectMapper objectMapper) {
+        return new MlServiceClient(mlClientSettings, objectMapper);
+    }
+
+    @Bean
+    public MlBatchDispatcher mlBatchDispatcher(MlServiceClient mlServiceClient, MeterRegistry meterRegistry) {
+        return new MlBatchDispatcher(mlServiceClient, batchMaxSize, batchLingerMs, meterRegistry);
+    }
+}
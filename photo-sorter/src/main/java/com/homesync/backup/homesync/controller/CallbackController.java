@@ -1,24 +1,42 @@
 package com.homesync.backup.homesync.controller;
 
+import com.homesync.backup.homesync.dto.PhotoProcessedCallback;
+import com.homesync.backup.homesync.service.CallbackIngestService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.Map;
-
 @RestController
 @RequestMapping("/callback")
 public class CallbackController {
 
-    // For now, accept a generic payload and log it. The real implementation will
-    // deserialize into a DTO and call a service to persist person/photo mappings.
+    private final CallbackIngestService callbackService;
+
+    public CallbackController(CallbackIngestService callbackService) {
+        this.callbackService = callbackService;
+    }
 
+    /**
+     * Accepts the result and returns before it is persisted; writes happen in
+     * batches on the callback writer threads. 503 means the buffer is full.
+     */
     @PostMapping("/photo-processed")
-    public ResponseEntity<String> photoProcessed(@RequestBody Map<String, Object> payload) {
-        // TODO: call CallbackService to persist results (idempotent)
-        System.out.println("Callback received: " + payload);
-        return ResponseEntity.ok("ok");
+    public ResponseEntity<String> photoProcessed(@RequestBody PhotoProcessedCallback payload) {
+        boolean accepted;
+        try {
+            accepted = callbackService.enqueue(payload);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        if (!accepted) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body("callback buffer full");
+        }
+        return ResponseEntity.accepted().body("ok");
     }
 }
@@ -0,0 +1,34 @@
+package com.homesync.backup.homesync.controller;
+
+import com.homesync.backup.homesync.service.cluster.FaceClusteringService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Runs a face clustering pass over a job right away, rather than waiting for the
+ * scheduled one; only faces stored since the job's last pass are read.
+ */
+@RestController
+@RequestMapping("/api/clustering")
+public class ClusteringController {
+
+    private final FaceClusteringService clusteringService;
+
+    public ClusteringController(FaceClusteringService clusteringService) {
+        this.clusteringService = clusteringService;
+    }
+
+    @PostMapping("/jobs/{jobId}")
+    public ResponseEntity<?> cluster(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(clusteringService.cluster(jobId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(404).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(e.getMessage());
+        }
+    }
+}
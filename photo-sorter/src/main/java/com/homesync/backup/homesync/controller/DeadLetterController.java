@@ -0,0 +1,35 @@
+package com.homesync.backup.homesync.controller;
+
+import com.homesync.backup.homesync.kafka.DeadLetterReplayer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Photos whose processing failed on every retry tier. {@code POST /dead-letters/replay}
+ * sends up to {@code limit} dead-letter records back to their lane; call it again
+ * while {@code remaining} is above zero.
+ */
+@RestController
+@RequestMapping("/dead-letters")
+public class DeadLetterController {
+
+    private static final int MAX_LIMIT = 100_000;
+
+    private final DeadLetterReplayer replayer;
+
+    public DeadLetterController(DeadLetterReplayer replayer) {
+        this.replayer = replayer;
+    }
+
+    @PostMapping("/replay")
+    public ResponseEntity<?> replay(@RequestParam(defaultValue = "1000") int limit) {
+        try {
+            return ResponseEntity.ok(replayer.replay(Math.min(Math.max(limit, 1), MAX_LIMIT)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.homesync.backup.homesync.controller;
+
+import com.homesync.backup.homesync.dto.EmbeddingSearchRequest;
+import com.homesync.backup.homesync.service.index.EmbeddingIndexService;
+import com.homesync.backup.homesync.service.index.EmbeddingMatch;
+import com.homesync.backup.homesync.service.index.EmbeddingVectors;
+import com.homesync.backup.homesync.service.index.HnswBenchmark;
+import com.homesync.backup.homesync.service.index.HnswIndexService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/embeddings")
+public class EmbeddingSearchController {
+
+    private static final int DEFAULT_K = 10;
+    private static final int MAX_K = 1000;
+
+    private final EmbeddingIndexService indexService;
+    private final HnswIndexService hnswService;
+
+    public EmbeddingSearchController(EmbeddingIndexService indexService, HnswIndexService hnswService) {
+        this.indexService = indexService;
+        this.hnswService = hnswService;
+    }
+
+    /** Top-k cosine search: exact over every stored embedding, or approximate with mode=hnsw. */
+    @PostMapping("/search")
+    public ResponseEntity<?> search(@RequestBody EmbeddingSearchRequest request) {
+        float[] query = request.getVector();
+        try {
+            if (query == null && request.getEmbedding() != null) {
+                query = EmbeddingVectors.decode(Base64.getDecoder().decode(request.getEmbedding()));
+            }
+            if (query == null) {
+                return ResponseEntity.badRequest().body("vector or embedding is required");
+            }
+            int k = request.getK() != null ? Math.min(Math.max(request.getK(), 1), MAX_K) : DEFAULT_K;
+            List<EmbeddingMatch> matches = "hnsw".equalsIgnoreCase(request.getMode())
+                    ? hnswService.search(query, k, request.getEf())
+                    : indexService.search(query, k);
+            return ResponseEntity.ok(matches);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/index")
+    public Map<String, Object> stats() {
+        return Map.of(
+                "ready", indexService.isReady(),
+                "size", indexService.size(),
+                "dimension", indexService.dimension(),
+                "kernel", indexService.kernel(),
+                "hnsw", Map.of(
+                        "ready", hnswService.isReady(),
+                        "size", hnswService.size(),
+                        "m", hnswService.m(),
+                        "efSearch", hnswService.efSearch()));
+    }
+
+    /** Recall@k and latency of HNSW against exact search, for each comma-separated ef. */
+    @GetMapping("/hnsw/benchmark")
+    public ResponseEntity<?> benchmark(@RequestParam(defaultValue = "200") int queries,
+                                       @RequestParam(defaultValue = "10") int k,
+                                       @RequestParam(defaultValue = "16,32,64,128,256") String ef) {
+        try {
+            int[] efValues = Arrays.stream(ef.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+            HnswBenchmark result = hnswService.benchmark(Math.min(Math.max(queries, 1), 10_000),
+                    Math.min(Math.max(k, 1), MAX_K), efValues);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(e.getMessage());
+        }
+    }
+}
@@ -1,23 +1,48 @@
 package com.homesync.backup.homesync.controller;
 
+import com.homesync.backup.homesync.dto.IngestJobStatus;
 import com.homesync.backup.homesync.dto.IngestRequest;
 import com.homesync.backup.homesync.service.IngestService;
+import com.homesync.backup.homesync.service.progress.IngestProgressService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/ingest")
 public class IngestController {
 
     private final IngestService ingestService;
+    private final IngestProgressService progressService;
 
-    public IngestController(IngestService ingestService) {
+    public IngestController(IngestService ingestService, IngestProgressService progressService) {
         this.ingestService = ingestService;
+        this.progressService = progressService;
     }
 
     @PostMapping("/folder")
     public ResponseEntity<String> ingestFolder(@RequestBody IngestRequest request) {
-        String jobId = ingestService.startIngest(request.getPath(), request.getJobId());
-        return ResponseEntity.ok(jobId);
+        try {
+            String jobId = ingestService.startIngest(request);
+            return ResponseEntity.ok(jobId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<IngestJobStatus> getJob(@PathVariable String jobId) {
+        return ingestService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /** Server-sent "progress" events with counters, rates and ETA until the job finishes. */
+    @GetMapping(value = "/jobs/{jobId}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> progress(@PathVariable String jobId) {
+        return progressService.subscribe(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 }
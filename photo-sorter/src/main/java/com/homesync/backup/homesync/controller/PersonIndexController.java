@@ -0,0 +1,76 @@
+package com.homesync.backup.homesync.controller;
+
+import com.homesync.backup.homesync.service.index.PersonPhotoIndexService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multi-person photo queries over the in-memory person index. Person ids are
+ * comma-separated: {@code all} must all appear on a photo (AND), at least one of
+ * {@code any} must (OR), none of {@code none} may (AND NOT).
+ */
+@RestController
+@RequestMapping("/api/persons")
+public class PersonIndexController {
+
+    private static final int MAX_LIMIT = 10_000;
+
+    private final PersonPhotoIndexService indexService;
+
+    public PersonIndexController(PersonPhotoIndexService indexService) {
+        this.indexService = indexService;
+    }
+
+    @GetMapping("/photos")
+    public ResponseEntity<?> photos(@RequestParam(required = false) List<Long> all,
+                                    @RequestParam(required = false) List<Long> any,
+                                    @RequestParam(required = false) List<Long> none,
+                                    @RequestParam(required = false) Long cursor,
+                                    @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(indexService.matches(all, any, none, cursor, Math.min(Math.max(limit, 1), MAX_LIMIT)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/photos/count")
+    public ResponseEntity<?> count(@RequestParam(required = false) List<Long> all,
+                                   @RequestParam(required = false) List<Long> any,
+                                   @RequestParam(required = false) List<Long> none) {
+        try {
+            return ResponseEntity.ok(Map.of("count", indexService.query(all, any, none).cardinality()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(e.getMessage());
+        }
+    }
+
+    /** Photo count of each given person. */
+    @GetMapping("/photo-counts")
+    public ResponseEntity<?> counts(@RequestParam List<Long> ids) {
+        try {
+            return ResponseEntity.ok(indexService.counts(ids));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/index")
+    public Map<String, Object> stats() {
+        return Map.of(
+                "ready", indexService.isReady(),
+                "persons", indexService.persons(),
+                "links", indexService.links(),
+                "bytes", indexService.sizeInBytes());
+    }
+}
@@ -0,0 +1,158 @@
+package com.homesync.backup.homesync.controller;
+
+import com.homesync.backup.homesync.dto.PhotoPage;
+import com.homesync.backup.homesync.model.enums.PhotoStatus;
+import com.homesync.backup.homesync.repository.PhotoCatalogJdbcRepository.Filter;
+import com.homesync.backup.homesync.service.PhotoCatalogService;
+import com.homesync.backup.homesync.service.thumbnail.ThumbnailService;
+import com.homesync.backup.homesync.service.thumbnail.ThumbnailService.Thumbnail;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDate;
+import java.util.Optional;
+
+/**
+ * Read access to ingested photos. The catalog is paged by id cursor and never
+ * loads more than one page; the export streams the whole selection as NDJSON.
+ * Thumbnails are served straight from the cache
+ * file: through Tomcat's sendfile when the connector offers it, otherwise with
+ * {@link FileChannel#transferTo}, so the bytes never pass through a heap buffer of
+ * ours.
+ */
+@RestController
+@RequestMapping("/api/photos")
+public class PhotoController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final PhotoCatalogService catalogService;
+    private final ThumbnailService thumbnailService;
+
+    public PhotoController(PhotoCatalogService catalogService, ThumbnailService thumbnailService) {
+        this.catalogService = catalogService;
+        this.thumbnailService = thumbnailService;
+    }
+
+    @GetMapping
+    public PhotoPage list(@RequestParam(required = false) Long cursor,
+                          @RequestParam(defaultValue = "100") int limit,
+                          @RequestParam(defaultValue = "asc") String order,
+                          @RequestParam(required = false) PhotoStatus status,
+                          @RequestParam(required = false) Long personId,
+                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return catalogService.page(filter(status, personId, from, to), cursor, "desc".equalsIgnoreCase(order), limit);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) PhotoStatus status,
+                                                        @RequestParam(required = false) Long personId,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        Filter filter = filter(status, personId, from, to);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> catalogService.export(filter, out));
+    }
+
+    @GetMapping("/{id}/thumbnail")
+    public void thumbnail(@PathVariable long id, @RequestParam(defaultValue = "256") int size,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Thumbnail thumbnail = lookup(id, size, response);
+        if (thumbnail == null) {
+            return;
+        }
+        response.setHeader(HttpHeaders.ETAG, thumbnail.etag());
+        // the URL names a photo, not its contents, so clients revalidate after an hour
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=3600");
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), thumbnail.etag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the file with sendfile once this method returns; the lookup made it
+            // the most recently used entry, so eviction would need the whole cache to turn over first
+            response.setContentType(MediaType.IMAGE_JPEG_VALUE);
+            response.setContentLengthLong(thumbnail.length());
+            request.setAttribute(SENDFILE_FILENAME, thumbnail.file().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, thumbnail.length());
+            return;
+        }
+        FileChannel opened;
+        try {
+            opened = FileChannel.open(thumbnail.file());
+        } catch (NoSuchFileException e) {
+            // evicted since the lookup; looking it up again renders it anew
+            thumbnail = lookup(id, size, response);
+            if (thumbnail == null) {
+                return;
+            }
+            opened = FileChannel.open(thumbnail.file());
+        }
+        // an open handle keeps the contents readable even if the file is evicted now
+        try (FileChannel channel = opened) {
+            response.setContentType(MediaType.IMAGE_JPEG_VALUE);
+            response.setContentLengthLong(thumbnail.length());
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < thumbnail.length()) {
+                position += channel.transferTo(position, thumbnail.length() - position, out);
+            }
+        }
+    }
+
+    /** The thumbnail, or null once a 404 or 503 has been sent. */
+    private Thumbnail lookup(long id, int size, HttpServletResponse response) throws IOException {
+        Optional<Thumbnail> found;
+        try {
+            found = thumbnailService.thumbnail(id, size);
+        } catch (IllegalStateException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+            return null;
+        }
+        if (found.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+        return found.get();
+    }
+
+    /** Dates are whole days: {@code to} includes its own day. */
+    private static Filter filter(PhotoStatus status, Long personId, LocalDate from, LocalDate to) {
+        return new Filter(status, personId, from != null ? from.atStartOfDay() : null,
+                to != null ? to.plusDays(1).atStartOfDay() : null);
+    }
+
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -9,7 +9,7 @@ import java.net.URI;
 import java.util.List;
 
 @RestController
-@RequestMapping("/api/photos")
+@RequestMapping("/api/sample-photos")
 public class SamplePhotoController {
 
     private final SamplePhotoService service;
@@ -33,7 +33,7 @@ public class SamplePhotoController {
     @PostMapping
     public ResponseEntity<SamplePhoto> create(@RequestBody SamplePhoto photo) {
         SamplePhoto created = service.create(photo);
-        return ResponseEntity.created(URI.create("/api/photos/" + created.getId())).body(created);
+        return ResponseEntity.created(URI.create("/api/sample-photos/" + created.getId())).body(created);
     }
 
     @PutMapping("/{id}")
@@ -0,0 +1,41 @@
+package com.homesync.backup.homesync.controller;
+
+import com.homesync.backup.homesync.dto.WatchRequest;
+import com.homesync.backup.homesync.model.WatchedRoot;
+import com.homesync.backup.homesync.service.watch.FolderWatchService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/ingest/watch")
+public class WatchController {
+
+    private final FolderWatchService watchService;
+
+    public WatchController(FolderWatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> watch(@RequestBody WatchRequest request) {
+        try {
+            return ResponseEntity.ok(watchService.register(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping
+    public List<WatchedRoot> list() {
+        return watchService.list();
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> unwatch(@PathVariable long id) {
+        return watchService.unregister(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+}
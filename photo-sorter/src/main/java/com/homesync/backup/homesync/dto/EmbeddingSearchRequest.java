@@ -0,0 +1,20 @@
+package com.homesync.backup.homesync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingSearchRequest {
+    // either the raw vector ...
+    private float[] vector;
+    // ... or its base64 float32 little-endian encoding, as stored in embeddings.embedding
+    private String embedding;
+    private Integer k;
+    // "exact" (default) or "hnsw"
+    private String mode;
+    // HNSW search width; defaults to embedding.hnsw.ef-search
+    private Integer ef;
+}
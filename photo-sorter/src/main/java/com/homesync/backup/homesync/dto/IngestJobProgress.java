@@ -0,0 +1,31 @@
+package com.homesync.backup.homesync.dto;
+
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Live counters of an ingest job as pushed on its progress stream. Rates are per
+ * second, smoothed over the last few flush intervals. {@code etaSeconds} estimates
+ * the time until every published photo is processed; it is null while the job is
+ * still scanning, since the total is not known yet, or when nothing is moving.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestJobProgress {
+    private String jobId;
+    private JobStatus status;
+    private long scannedCount;
+    private long insertedCount;
+    private long publishedCount;
+    private long processedCount;
+    private double scanRate;
+    private double publishRate;
+    private double processRate;
+    private long elapsedSeconds;
+    private Long etaSeconds;
+}
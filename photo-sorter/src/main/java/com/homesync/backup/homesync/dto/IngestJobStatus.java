@@ -0,0 +1,70 @@
+package com.homesync.backup.homesync.dto;
+
+import com.homesync.backup.homesync.model.IngestJob;
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An ingest job with its counters and the rates derived from them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestJobStatus {
+    private String jobId;
+    private String jobName;
+    private String path;
+    private JobStatus status;
+    private IngestPriority priority;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+    private long scannedCount;
+    private long insertedCount;
+    private long publishedCount;
+    private long processedCount;
+    private long deletedCount;
+    private long hashedCount;
+    private long hashedBytes;
+    private long duplicateCount;
+    // bytes hashed per second of time spent in the hashing stage
+    private double hashBytesPerSecond;
+    // share of hashed photos that were copies of an already known file
+    private double dedupRatio;
+
+    public static IngestJobStatus of(IngestJob job) {
+        long hashedBytes = orZero(job.getHashedBytes());
+        long hashMillis = orZero(job.getHashMillis());
+        long hashed = orZero(job.getHashedCount());
+        long duplicates = orZero(job.getDuplicateCount());
+        return IngestJobStatus.builder()
+                .jobId(job.getJobId())
+                .jobName(job.getJobName())
+                .path(job.getPath())
+                .status(job.getStatus())
+                .priority(job.getPriority() != null ? job.getPriority() : IngestPriority.BULK)
+                .createdAt(job.getCreatedAt())
+                .finishedAt(job.getFinishedAt())
+                .scannedCount(orZero(job.getScannedCount()))
+                .insertedCount(orZero(job.getInsertedCount()))
+                .publishedCount(orZero(job.getPublishedCount()))
+                .processedCount(orZero(job.getProcessedCount()))
+                .deletedCount(orZero(job.getDeletedCount()))
+                .hashedCount(hashed)
+                .hashedBytes(hashedBytes)
+                .duplicateCount(duplicates)
+                .hashBytesPerSecond(hashMillis > 0 ? hashedBytes * 1000.0 / hashMillis : 0)
+                .dedupRatio(hashed > 0 ? Math.min(1.0, (double) duplicates / hashed) : 0)
+                .build();
+    }
+
+    private static long orZero(Number value) {
+        return value == null ? 0 : value.longValue();
+    }
+}
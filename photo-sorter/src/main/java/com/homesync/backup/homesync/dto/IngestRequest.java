@@ -10,4 +10,14 @@ import lombok.NoArgsConstructor;
 public class IngestRequest {
     private String path;
     private String jobId;
+    private String jobName;
+    private String requestedBy;
+    // defaults to true when omitted
+    private Boolean recursive;
+    // photos per ingest batch; falls back to ingest.batch-size when omitted
+    private Integer batchSize;
+    // only emit files that are new or changed since the last incremental run, using stored directory manifests
+    private Boolean incremental;
+    // INTERACTIVE or BULK; defaults to BULK, the lane for backfills and re-scans
+    private String priority;
 }
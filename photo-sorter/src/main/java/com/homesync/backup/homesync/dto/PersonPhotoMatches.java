@@ -0,0 +1,21 @@
+package com.homesync.backup.homesync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of a person query: the total number of matching photos and one page of
+ * their ids. {@code nextCursor} is the id to pass as {@code cursor} for the next
+ * page, null on the last one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PersonPhotoMatches {
+    private long count;
+    private List<Long> photoIds;
+    private Long nextCursor;
+}
@@ -0,0 +1,19 @@
+package com.homesync.backup.homesync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of the photo catalog. {@code nextCursor} is the id to pass as
+ * {@code cursor} for the following page, null on the last one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhotoPage {
+    private List<PhotoSummary> items;
+    private Long nextCursor;
+}
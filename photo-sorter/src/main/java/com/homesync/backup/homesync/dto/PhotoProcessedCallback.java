@@ -0,0 +1,52 @@
+package com.homesync.backup.homesync.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of POST /callback/photo-processed as sent by the ML service (snake_case on the wire).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class PhotoProcessedCallback {
+    private Long photoId;
+    private String path;
+    // PROCESSED or FAILED
+    private String status;
+    // optional; used to drop redelivered callbacks
+    private String callbackId;
+    private List<Detection> detections;
+    private List<NewPerson> newPersons;
+    private Map<String, Object> meta;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public static class Detection {
+        private List<Double> bbox;
+        // base64 of the raw embedding vector
+        private String embedding;
+        private Double confidence;
+        private Long suggestedPersonId;
+        private Double similarity;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public static class NewPerson {
+        private String tempId;
+        private String embedding;
+        private String suggestedDisplayName;
+    }
+}
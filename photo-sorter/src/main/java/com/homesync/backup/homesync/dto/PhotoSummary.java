@@ -0,0 +1,31 @@
+package com.homesync.backup.homesync.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.homesync.backup.homesync.model.enums.PhotoStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Catalog row of a photo: the columns a gallery or export needs, without the
+ * content hash, dedup links or other ingest bookkeeping of {@code Photo}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhotoSummary {
+    private long id;
+    private String path;
+    private String filename;
+    private Long filesize;
+    private Integer width;
+    private Integer height;
+    private LocalDateTime capturedAt;
+    private LocalDateTime modifiedAt;
+    private PhotoStatus status;
+    // JSON array as stored in photos.person_ids, passed through without parsing
+    @JsonRawValue
+    private String personIds;
+}
@@ -0,0 +1,17 @@
+package com.homesync.backup.homesync.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WatchRequest {
+    private String path;
+    // defaults to true when omitted
+    private Boolean recursive;
+    // AUTO (default), NATIVE or POLL
+    private String mode;
+    private String requestedBy;
+}
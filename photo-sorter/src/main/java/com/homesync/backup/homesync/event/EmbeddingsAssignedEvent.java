@@ -0,0 +1,10 @@
+package com.homesync.backup.homesync.event;
+
+import java.util.Map;
+
+/**
+ * Published after a transaction that gave faces a person has committed. Like the
+ * update itself, each assignment only applies to an embedding that had no person.
+ */
+public record EmbeddingsAssignedEvent(Map<Long, Long> personByEmbedding) {
+}
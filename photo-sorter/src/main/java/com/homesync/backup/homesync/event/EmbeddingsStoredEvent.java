@@ -0,0 +1,14 @@
+package com.homesync.backup.homesync.event;
+
+import java.util.List;
+
+/**
+ * Published after a transaction that inserted embeddings has committed. Listeners
+ * keep in-memory structures (similarity indexes, clustering) in step with the table.
+ */
+public record EmbeddingsStoredEvent(List<StoredEmbedding> embeddings) {
+
+    /** {@code personId} is null for faces not yet assigned to a person. */
+    public record StoredEmbedding(long embeddingId, Long personId, long photoId, byte[] vector) {
+    }
+}
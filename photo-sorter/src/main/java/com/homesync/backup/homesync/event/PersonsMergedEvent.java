@@ -0,0 +1,10 @@
+package com.homesync.backup.homesync.event;
+
+import java.util.Map;
+
+/**
+ * Published after a transaction that folded persons into others has committed.
+ * The dropped persons no longer exist; their photo links now belong to the kept ones.
+ */
+public record PersonsMergedEvent(Map<Long, Long> keptByDropped) {
+}
@@ -0,0 +1,13 @@
+package com.homesync.backup.homesync.event;
+
+import java.util.List;
+
+/**
+ * Published after a transaction that inserted photo_persons rows has committed,
+ * including the rows copied to duplicates. Links may repeat rows that already existed.
+ */
+public record PhotoPersonsLinkedEvent(List<Link> links) {
+
+    public record Link(long photoId, long personId) {
+    }
+}
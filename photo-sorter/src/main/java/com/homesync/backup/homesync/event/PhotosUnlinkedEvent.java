@@ -0,0 +1,11 @@
+package com.homesync.backup.homesync.event;
+
+import java.util.List;
+
+/**
+ * Published after a transaction that took photos out of the person index has
+ * committed: photos flagged deleted, whose photo_persons rows stay in case they
+ * reappear, and changed photos whose rows were dropped until they are processed again.
+ */
+public record PhotosUnlinkedEvent(List<Long> photoIds) {
+}
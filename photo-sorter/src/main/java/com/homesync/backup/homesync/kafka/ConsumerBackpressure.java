@@ -0,0 +1,98 @@
+package com.homesync.backup.homesync.kafka;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.service.ml.MlServiceClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pauses the photos-to-process listeners while the ML service cannot take more
+ * work. The bulk lane pauses as soon as the adaptive in-flight window is full and
+ * resumes once the window has drained to {@code resume-ratio} of the limit with no
+ * interactive caller waiting; the interactive lane only pauses while the circuit
+ * breaker is failing calls fast, and otherwise relies on its larger share of the
+ * window. A paused container keeps polling for heartbeats but fetches nothing, so
+ * records wait in Kafka instead of blocking a listener thread past
+ * max.poll.interval.ms or failing against an open circuit. The gap between the
+ * two thresholds keeps the bulk lane from flapping on every call.
+ *
+ * The retry tier listeners pause with the interactive lane, while the circuit is
+ * open, so an ML outage does not walk failed photos through every tier into the
+ * dead-letter topic; whatever came due meanwhile is retried once it closes.
+ */
+@Component
+public class ConsumerBackpressure {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumerBackpressure.class);
+
+    private final KafkaListenerEndpointRegistry listeners;
+    private final MlServiceClient client;
+    private final double resumeRatio;
+    private final Map<IngestPriority, AtomicBoolean> paused = new EnumMap<>(IngestPriority.class);
+    private final AtomicBoolean retriesPaused = new AtomicBoolean();
+
+    public ConsumerBackpressure(KafkaListenerEndpointRegistry listeners,
+                                MlServiceClient client,
+                                MeterRegistry registry,
+                                @Value("${worker.backpressure.resume-ratio:0.5}") double resumeRatio) {
+        this.listeners = listeners;
+        this.client = client;
+        this.resumeRatio = resumeRatio;
+        for (IngestPriority lane : IngestPriority.values()) {
+            AtomicBoolean flag = new AtomicBoolean();
+            paused.put(lane, flag);
+            Gauge.builder("kafka.consumer.paused", flag, f -> f.get() ? 1 : 0)
+                    .description("1 while the lane's photos-to-process consumption is paused for ML backpressure")
+                    .tag("lane", lane.tag)
+                    .register(registry);
+        }
+        Gauge.builder("kafka.consumer.paused", retriesPaused, f -> f.get() ? 1 : 0)
+                .description("1 while the retry tiers' consumption is paused for ML backpressure")
+                .tag("lane", "retry")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${worker.backpressure.interval-ms:250}")
+    public void adjust() {
+        boolean rejecting = client.circuitRejecting();
+        boolean drained = client.inFlight() <= client.inFlightLimit() * resumeRatio
+                && client.waiting(IngestPriority.INTERACTIVE) == 0;
+        adjust(KafkaConsumer.BULK_LISTENER_ID, paused.get(IngestPriority.BULK), rejecting || client.saturated(),
+                !rejecting && drained);
+        adjust(KafkaConsumer.INTERACTIVE_LISTENER_ID, paused.get(IngestPriority.INTERACTIVE), rejecting, !rejecting);
+        for (int tier = 0; tier < PhotoRetryRouter.TIERS; tier++) {
+            adjust(KafkaConsumer.RETRY_LISTENER_ID + "-" + tier, retriesPaused, rejecting, !rejecting);
+        }
+    }
+
+    private void adjust(String listenerId, AtomicBoolean flag, boolean pause, boolean resume) {
+        MessageListenerContainer container = listeners.getListenerContainer(listenerId);
+        if (container == null || !container.isRunning()) {
+            return;
+        }
+        if (!container.isPauseRequested()) {
+            if (pause) {
+                container.pause();
+                flag.set(true);
+                log.info("Pausing {}: {} ML requests in flight of limit {}{}", listenerId, client.inFlight(),
+                        client.inFlightLimit(), client.circuitRejecting() ? ", circuit open" : "");
+            }
+        } else if (resume) {
+            container.resume();
+            flag.set(false);
+            log.info("Resuming {}: {} ML requests in flight of limit {}", listenerId, client.inFlight(),
+                    client.inFlightLimit());
+        }
+    }
+}
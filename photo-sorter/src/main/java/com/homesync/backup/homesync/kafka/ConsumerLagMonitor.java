@@ -0,0 +1,124 @@
+package com.homesync.backup.homesync.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult.ListOffsetsResultInfo;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes {@code kafka.consumer.lag} per partition of both photos-to-process
+ * lanes: the end offset minus the offset committed by the consumer group. It is read through the
+ * admin API rather than from the consumer itself, so it keeps growing while the
+ * consumers are stuck or gone, which is exactly when it is needed.
+ */
+@Component
+public class ConsumerLagMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumerLagMonitor.class);
+
+    private final KafkaAdmin kafkaAdmin;
+    private final MeterRegistry registry;
+    private final List<String> topics;
+    private final long timeoutMs;
+    private final Map<TopicPartition, AtomicLong> lag = new ConcurrentHashMap<>();
+    private volatile Map<String, Long> topicLag = Map.of();
+    private AdminClient admin;
+    private boolean warned;
+
+    public ConsumerLagMonitor(KafkaAdmin kafkaAdmin,
+                              MeterRegistry registry,
+                              @Value("${kafka.topics.photos-to-process:photos-to-process}") String bulkTopic,
+                              @Value("${kafka.topics.photos-to-process-interactive:photos-to-process-interactive}")
+                              String interactiveTopic,
+                              @Value("${kafka.lag.timeout-ms:5000}") long timeoutMs) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.registry = registry;
+        this.topics = List.of(bulkTopic, interactiveTopic);
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Scheduled(fixedDelayString = "${kafka.lag.interval-ms:10000}")
+    public synchronized void refresh() {
+        try {
+            if (admin == null) {
+                admin = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+            }
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(KafkaConsumer.GROUP_ID)
+                    .partitionsToOffsetAndMetadata().get(timeoutMs, TimeUnit.MILLISECONDS);
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            Map<String, TopicDescription> descriptions = admin.describeTopics(topics).allTopicNames()
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+            for (TopicDescription description : descriptions.values()) {
+                for (TopicPartitionInfo partition : description.partitions()) {
+                    latest.put(new TopicPartition(description.name(), partition.partition()), OffsetSpec.latest());
+                }
+            }
+            Map<TopicPartition, ListOffsetsResultInfo> ends = admin.listOffsets(latest).all()
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+            Map<String, Long> totals = new HashMap<>();
+            for (Map.Entry<TopicPartition, ListOffsetsResultInfo> end : ends.entrySet()) {
+                OffsetAndMetadata offset = committed.get(end.getKey());
+                // nothing committed yet: everything retained on the partition is waiting
+                long consumed = offset != null ? offset.offset() : 0;
+                long partitionLag = Math.max(0, end.getValue().offset() - consumed);
+                gauge(end.getKey()).set(partitionLag);
+                totals.merge(end.getKey().topic(), partitionLag, Long::sum);
+            }
+            topicLag = totals;
+            warned = false;
+        } catch (InterruptedException e) {
+            topicLag = Map.of();
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            topicLag = Map.of();
+            if (!warned) {
+                log.warn("Cannot read consumer lag of {}: {}", topics, e.getMessage());
+                warned = true;
+            }
+        }
+    }
+
+    /** Records of {@code topic} waiting over all its partitions as of the last refresh, or -1 when unknown. */
+    public long lag(String topic) {
+        return topicLag.getOrDefault(topic, -1L);
+    }
+
+    private AtomicLong gauge(TopicPartition partition) {
+        return lag.computeIfAbsent(partition, p -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("kafka.consumer.lag", value, AtomicLong::get)
+                    .description("Messages not yet committed by " + KafkaConsumer.GROUP_ID)
+                    .tag("topic", p.topic())
+                    .tag("partition", String.valueOf(p.partition()))
+                    .baseUnit("messages")
+                    .register(registry);
+            return value;
+        });
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (admin != null) {
+            admin.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.homesync.backup.homesync.kafka;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Re-injects dead-lettered photos into the lane topic they first came from, for
+ * after the cause (a bad model version, a missing mount) has been fixed. The
+ * dead-letter topic is read with its own consumer group, which only commits past
+ * records once their copies are acknowledged by the broker; a failed replay
+ * leaves them to be replayed again.
+ *
+ * Replayed records keep their failure reason and start over at attempt 0, so a
+ * photo that fails again walks the retry tiers once more. They are marked as
+ * already counted, so their job's progress does not count them twice.
+ */
+@Component
+public class DeadLetterReplayer {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterReplayer.class);
+    public static final String REPLAY_GROUP_ID = "photo-sorter-dlt-replay";
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final ConsumerFactory<Object, Object> consumerFactory;
+    private final KafkaProducer producer;
+    private final PhotoRetryRouter retryRouter;
+    private final PhotoJdbcRepository photoJdbc;
+    private final String bulkTopic;
+    private final String interactiveTopic;
+    private final long sendTimeoutMs;
+
+    public DeadLetterReplayer(ConsumerFactory<Object, Object> consumerFactory,
+                              KafkaProducer producer,
+                              PhotoRetryRouter retryRouter,
+                              PhotoJdbcRepository photoJdbc,
+                              @Value("${kafka.topics.photos-to-process:photos-to-process}") String bulkTopic,
+                              @Value("${kafka.topics.photos-to-process-interactive:photos-to-process-interactive}")
+                              String interactiveTopic,
+                              @Value("${ingest.relay.send-timeout-ms:30000}") long sendTimeoutMs) {
+        this.consumerFactory = consumerFactory;
+        this.producer = producer;
+        this.retryRouter = retryRouter;
+        this.photoJdbc = photoJdbc;
+        this.bulkTopic = bulkTopic;
+        this.interactiveTopic = interactiveTopic;
+        this.sendTimeoutMs = sendTimeoutMs;
+    }
+
+    /**
+     * Replays up to {@code limit} dead-letter records, oldest first per partition.
+     * Records that arrive while replaying wait for the next call.
+     */
+    public synchronized Result replay(int limit) {
+        try (Consumer<Object, Object> consumer = consumerFactory.createConsumer(REPLAY_GROUP_ID, "-replay")) {
+            List<TopicPartition> partitions = consumer.partitionsFor(retryRouter.deadLetterTopic()).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            consumer.assign(partitions);
+            Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+            Map<TopicPartition, Long> end = consumer.endOffsets(partitions);
+            Map<TopicPartition, Long> next = new HashMap<>();
+            for (TopicPartition partition : partitions) {
+                OffsetAndMetadata offset = committed.get(partition);
+                if (offset != null) {
+                    consumer.seek(partition, offset.offset());
+                } else {
+                    consumer.seekToBeginning(List.of(partition));
+                }
+                next.put(partition, consumer.position(partition));
+            }
+
+            List<ProducerRecord<String, PhotoEnvelope>> replays = new ArrayList<>();
+            List<Long> photoIds = new ArrayList<>();
+            int records = 0;
+            int skipped = 0;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+            while (records + skipped < limit && behind(next, end) && System.nanoTime() < deadline) {
+                for (ConsumerRecord<Object, Object> record : consumer.poll(POLL_TIMEOUT)) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (records + skipped >= limit || record.offset() >= end.get(partition)) {
+                        continue;
+                    }
+                    next.put(partition, record.offset() + 1);
+                    if (!(record.value() instanceof PhotoEnvelope envelope)) {
+                        log.warn("Skipping undecodable dead letter {}-{}@{}", record.topic(), record.partition(),
+                                record.offset());
+                        skipped++;
+                        continue;
+                    }
+                    replays.add(toReplay(record, envelope));
+                    envelope.photos().forEach(photo -> {
+                        if (photo.photoId() != null) {
+                            photoIds.add(photo.photoId());
+                        }
+                    });
+                    records++;
+                }
+            }
+
+            // back to READY first, so the consumer's markProcessing applies to the replayed copies
+            photoJdbc.markReady(photoIds);
+            List<CompletableFuture<?>> sends = new ArrayList<>(replays.size());
+            replays.forEach(replay -> sends.add(producer.send(replay)));
+            producer.flush();
+            await(sends);
+
+            Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+            long remaining = 0;
+            for (TopicPartition partition : partitions) {
+                commits.put(partition, new OffsetAndMetadata(next.get(partition)));
+                remaining += Math.max(0, end.get(partition) - next.get(partition));
+            }
+            consumer.commitSync(commits);
+            log.info("Replayed {} dead-letter records ({} photos), skipped {}, {} left", records, photoIds.size(),
+                    skipped, remaining);
+            return new Result(records, photoIds.size(), skipped, remaining);
+        }
+    }
+
+    private ProducerRecord<String, PhotoEnvelope> toReplay(ConsumerRecord<Object, Object> record, PhotoEnvelope envelope) {
+        PhotoFailure failure = PhotoFailure.from(record.headers());
+        IngestPriority lane = failure != null ? failure.lane() : IngestPriority.BULK;
+        ProducerRecord<String, PhotoEnvelope> replay = new ProducerRecord<>(
+                lane == IngestPriority.INTERACTIVE ? interactiveTopic : bulkTopic,
+                record.key() != null ? record.key().toString() : null, envelope);
+        new PhotoFailure(0, failure != null ? failure.reason() : null, failure != null ? failure.failedAt() : 0,
+                lane, 0, true).writeTo(replay.headers());
+        return replay;
+    }
+
+    private static boolean behind(Map<TopicPartition, Long> next, Map<TopicPartition, Long> end) {
+        for (Map.Entry<TopicPartition, Long> partition : next.entrySet()) {
+            if (partition.getValue() < end.get(partition.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void await(List<CompletableFuture<?>> sends) {
+        try {
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Dead-letter replay failed: " + e.getCause(), e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Dead-letter replay timed out after " + sendTimeoutMs + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for broker acks", e);
+        }
+    }
+
+    /** Records and photos sent back to their lanes, undecodable records dropped, and records still waiting. */
+    public record Result(int records, int photos, int skipped, long remaining) {
+    }
+}
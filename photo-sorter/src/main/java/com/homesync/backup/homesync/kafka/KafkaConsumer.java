@@ -1,23 +1,270 @@
 package com.homesync.backup.homesync.kafka;
 
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.model.enums.PhotoStatus;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
 import com.homesync.backup.homesync.service.PhotoWorkerService;
+import com.homesync.backup.homesync.service.dedup.DedupService;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics.Stage;
+import com.homesync.backup.homesync.service.ml.MlServiceException;
+import com.homesync.backup.homesync.service.progress.IngestProgressService;
+import com.homesync.backup.homesync.service.thumbnail.ThumbnailService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Component
 public class KafkaConsumer {
 
+    private static final Logger log = LoggerFactory.getLogger(KafkaConsumer.class);
+    public static final String GROUP_ID = "photo-sorter-group";
+    public static final String BULK_LISTENER_ID = "photos-to-process";
+    public static final String INTERACTIVE_LISTENER_ID = "photos-to-process-interactive";
+    /** Prefix of the retry tier listener ids, which end in the tier number. */
+    public static final String RETRY_LISTENER_ID = "photos-to-process-retry";
+
     private final PhotoWorkerService workerService;
+    private final PhotoJdbcRepository photoJdbc;
+    private final DedupService dedupService;
+    private final ThumbnailService thumbnailService;
+    private final IngestProgressService progress;
+    private final PipelineMetrics metrics;
+    private final PhotoRetryRouter retryRouter;
 
-    public KafkaConsumer(PhotoWorkerService workerService) {
+    public KafkaConsumer(PhotoWorkerService workerService, PhotoJdbcRepository photoJdbc, DedupService dedupService,
+                         ThumbnailService thumbnailService, IngestProgressService progress, PipelineMetrics metrics,
+                         PhotoRetryRouter retryRouter) {
         this.workerService = workerService;
+        this.photoJdbc = photoJdbc;
+        this.dedupService = dedupService;
+        this.thumbnailService = thumbnailService;
+        this.progress = progress;
+        this.metrics = metrics;
+        this.retryRouter = retryRouter;
+    }
+
+    @KafkaListener(id = INTERACTIVE_LISTENER_ID, groupId = GROUP_ID, containerFactory = "photoBatchListenerFactory",
+            topics = "${kafka.topics.photos-to-process-interactive:photos-to-process-interactive}",
+            concurrency = "${kafka.topics.photos-to-process-interactive-partitions:3}")
+    public void listenInteractive(List<ConsumerRecord<String, PhotoEnvelope>> records, Acknowledgment ack) {
+        long started = System.nanoTime();
+        process(unpack(records, IngestPriority.INTERACTIVE));
+        ack.acknowledge();
+        metrics.record(Stage.CONSUME, IngestPriority.INTERACTIVE, started);
+    }
+
+    @KafkaListener(id = BULK_LISTENER_ID, groupId = GROUP_ID, containerFactory = "photoBatchListenerFactory",
+            topics = "${kafka.topics.photos-to-process:photos-to-process}")
+    public void listenBulk(List<ConsumerRecord<String, PhotoEnvelope>> records, Acknowledgment ack) {
+        long started = System.nanoTime();
+        process(unpack(records, IngestPriority.BULK));
+        ack.acknowledge();
+        metrics.record(Stage.CONSUME, IngestPriority.BULK, started);
+    }
+
+    @KafkaListener(id = RETRY_LISTENER_ID + "-0", groupId = GROUP_ID, containerFactory = "photoBatchListenerFactory",
+            topics = "#{@photoRetryRouter.retryTopic(0)}", concurrency = "${kafka.retry.partitions:1}")
+    public void listenRetry0(List<ConsumerRecord<String, PhotoEnvelope>> records, Acknowledgment ack) {
+        retry(records, ack);
+    }
+
+    @KafkaListener(id = RETRY_LISTENER_ID + "-1", groupId = GROUP_ID, containerFactory = "photoBatchListenerFactory",
+            topics = "#{@photoRetryRouter.retryTopic(1)}", concurrency = "${kafka.retry.partitions:1}")
+    public void listenRetry1(List<ConsumerRecord<String, PhotoEnvelope>> records, Acknowledgment ack) {
+        retry(records, ack);
+    }
+
+    @KafkaListener(id = RETRY_LISTENER_ID + "-2", groupId = GROUP_ID, containerFactory = "photoBatchListenerFactory",
+            topics = "#{@photoRetryRouter.retryTopic(2)}", concurrency = "${kafka.retry.partitions:1}")
+    public void listenRetry2(List<ConsumerRecord<String, PhotoEnvelope>> records, Acknowledgment ack) {
+        retry(records, ack);
+    }
+
+    /**
+     * Processes the records of a retry tier that are due and leaves the rest in
+     * Kafka: nack commits the processed prefix and has the container pause (while
+     * still polling) until the first record that is not yet due comes due. Records
+     * of a tier partition are in due order, so nothing behind it is due either.
+     */
+    private void retry(List<ConsumerRecord<String, PhotoEnvelope>> records, Acknowledgment ack) {
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        int due = 0;
+        long wait = 0;
+        for (; due < records.size(); due++) {
+            PhotoFailure failure = PhotoFailure.from(records.get(due).headers());
+            wait = failure != null ? failure.dueAt() - now : 0;
+            if (wait > 0) {
+                break;
+            }
+        }
+        if (due > 0) {
+            process(unpack(records.subList(0, due), IngestPriority.BULK));
+            metrics.record(Stage.CONSUME, started);
+        }
+        if (due < records.size()) {
+            ack.nack(due, Duration.ofMillis(wait));
+        } else {
+            ack.acknowledge();
+        }
+    }
+
+    /**
+     * Fans the photos of a poll out to the ML dispatcher (bounded by the adaptive ML
+     * in-flight window) and returns once every photo has been handed off and every
+     * failure has reached its retry tier, so the caller commits the offsets only
+     * then. A crash mid-batch therefore redelivers the batch.
+     * Photos that end here (skipped, duplicate, dead-lettered) count as processed
+     * for their job; the others count once their callback is stored.
+     * ConsumerBackpressure pauses the bulk listener while the ML window is full.
+     */
+    private void process(List<Item> items) {
+        List<Long> photoIds = new ArrayList<>(items.size());
+        for (Item item : items) {
+            if (item.photoId() != null) {
+                photoIds.add(item.photoId());
+            }
+        }
+        // redelivered messages for photos that already finished are dropped
+        Set<Long> processed = photoJdbc.findIdsWithStatus(photoIds, PhotoStatus.PROCESSED);
+        photoJdbc.markProcessing(photoIds);
+
+        // byte-identical copies of known files inherit results instead of going to the ML service
+        List<DedupService.Candidate> candidates = new ArrayList<>(items.size());
+        for (Item item : items) {
+            if (item.photoId() != null && !processed.contains(item.photoId())) {
+                candidates.add(new DedupService.Candidate(item.photoId(), item.jobId(), item.path()));
+            }
+        }
+        Set<Long> duplicates = dedupService.deduplicate(candidates);
+        // after dedup so thumbnails are keyed by content hash; copies share the canonical photo's
+        List<Long> thumbnails = new ArrayList<>(candidates.size());
+        for (DedupService.Candidate candidate : candidates) {
+            if (!duplicates.contains(candidate.photoId())) {
+                thumbnails.add(candidate.photoId());
+            }
+        }
+        thumbnailService.generateLater(thumbnails);
+
+        List<CompletableFuture<Void>> work = new ArrayList<>(items.size());
+        Map<Failure, List<PhotoEnvelope.Entry>> failures = new ConcurrentHashMap<>();
+        for (Item item : items) {
+            Long photoId = item.photoId();
+            if (photoId != null && (processed.contains(photoId) || duplicates.contains(photoId))) {
+                if (item.jobId() != null && !item.source().counted()) {
+                    progress.processed(item.jobId(), 1);
+                }
+                continue;
+            }
+            // no callbackUrl in the message yet, so the worker uses its default
+            work.add(workerService.dispatch(item.jobId(), photoId, item.path(), null, item.source().lane())
+                    .exceptionally(error -> {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        boolean permanent = cause instanceof MlServiceException ml && ml.isPermanent();
+                        failures.computeIfAbsent(new Failure(item.source(), cause.getMessage(), permanent),
+                                f -> Collections.synchronizedList(new ArrayList<>())).add(item.entry());
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(work.toArray(new CompletableFuture<?>[0])).join();
+        reroute(failures);
+        log.debug("Processed {} photos ({} skipped as already processed or duplicates, {} failed)", items.size(),
+                items.size() - work.size(), failures.values().stream().mapToInt(List::size).sum());
+    }
+
+    /**
+     * Sends failed photos on to their retry tier or the dead-letter topic and waits
+     * for the broker, so their offsets are committed only once they are safe there.
+     * Dead-lettered photos are marked failed and settle their job's progress.
+     */
+    private void reroute(Map<Failure, List<PhotoEnvelope.Entry>> failures) {
+        List<CompletableFuture<?>> sends = new ArrayList<>(failures.size());
+        List<Long> dead = new ArrayList<>();
+        failures.forEach((failure, photos) -> {
+            Source source = failure.source();
+            PhotoRetryRouter.Routed routed = retryRouter.route(
+                    new PhotoEnvelope(source.envelope().jobId(), source.envelope().batchId(), photos),
+                    source.failure(), source.lane(), failure.reason(), failure.permanent());
+            log.warn("Processing failed for {} photos of job {} ({}), sent to {}", photos.size(),
+                    source.envelope().jobId(), failure.reason(), routed.topic());
+            sends.add(routed.sent());
+            if (routed.deadLetter()) {
+                photos.forEach(photo -> {
+                    if (photo.photoId() != null) {
+                        dead.add(photo.photoId());
+                    }
+                });
+                if (source.envelope().jobId() != null && !source.counted()) {
+                    progress.processed(source.envelope().jobId(), photos.size());
+                }
+            }
+        });
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).join();
+        photoJdbc.markFailed(dead);
+    }
+
+    /**
+     * Flattens the envelopes of a poll into photos. A value that failed to
+     * deserialize arrives as null (see the ErrorHandlingDeserializer in
+     * application.yml) and is logged and skipped rather than blocking the partition.
+     * Retried and replayed records keep the lane they were first published on.
+     */
+    private static List<Item> unpack(List<ConsumerRecord<String, PhotoEnvelope>> records, IngestPriority lane) {
+        List<Item> items = new ArrayList<>();
+        for (ConsumerRecord<String, PhotoEnvelope> record : records) {
+            PhotoEnvelope envelope = record.value();
+            if (envelope == null) {
+                log.warn("Skipping undecodable record {}-{}@{}", record.topic(), record.partition(), record.offset());
+                continue;
+            }
+            PhotoFailure failure = PhotoFailure.from(record.headers());
+            Source source = new Source(envelope, failure, failure != null ? failure.lane() : lane);
+            for (PhotoEnvelope.Entry entry : envelope.photos()) {
+                items.add(new Item(source, entry));
+            }
+        }
+        return items;
+    }
+
+    /** One record's envelope with the failure it was retried or replayed with, if any. */
+    private record Source(PhotoEnvelope envelope, PhotoFailure failure, IngestPriority lane) {
+
+        boolean counted() {
+            return failure != null && failure.counted();
+        }
+    }
+
+    private record Item(Source source, PhotoEnvelope.Entry entry) {
+
+        String jobId() {
+            return source.envelope().jobId();
+        }
+
+        Long photoId() {
+            return entry.photoId();
+        }
+
+        String path() {
+            return entry.path();
+        }
     }
 
-    @KafkaListener(topics = "photos-to-process", groupId = "photo-sorter-group")
-    public void listen(String message) {
-        // message currently contains the path; in future we may accept JSON with path+meta
-        System.out.println("Received message (path): " + message);
-        // For now call worker with no callbackUrl (worker uses default)
-        workerService.processPath(null, message, null);
+    /** Photos of one record that failed the same way travel on together. */
+    private record Failure(Source source, String reason, boolean permanent) {
     }
 }
@@ -1,18 +1,31 @@
 package com.homesync.backup.homesync.kafka;
 
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class KafkaProducer {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, PhotoEnvelope> kafkaTemplate;
 
-    public KafkaProducer(KafkaTemplate<String, String> kafkaTemplate) {
+    public KafkaProducer(KafkaTemplate<String, PhotoEnvelope> kafkaTemplate) {
         this.kafkaTemplate = kafkaTemplate;
     }
 
-    public void send(String topic, String key, String payload) {
-        kafkaTemplate.send(topic, key, payload);
+    public CompletableFuture<SendResult<String, PhotoEnvelope>> send(String topic, String key, PhotoEnvelope payload) {
+        return kafkaTemplate.send(topic, key, payload);
+    }
+
+    public CompletableFuture<SendResult<String, PhotoEnvelope>> send(ProducerRecord<String, PhotoEnvelope> record) {
+        return kafkaTemplate.send(record);
+    }
+
+    /** Pushes out anything still lingering in the producer's batches. */
+    public void flush() {
+        kafkaTemplate.flush();
     }
 }
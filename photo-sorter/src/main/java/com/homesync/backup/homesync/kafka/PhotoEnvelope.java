@@ -0,0 +1,252 @@
+package com.homesync.backup.homesync.kafka;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Value of a photos-to-process record: up to a few hundred photos of one ingest
+ * batch. Size and mtime are 0 when unknown, as for records in the old format.
+ *
+ * Wire format, version 1 (varints are LEB128, signed deltas zigzag-encoded):
+ * <pre>
+ *   0x00 magic, 0x01 version
+ *   jobId      varint length + UTF-8 (length 0 = none)
+ *   batchId    varint
+ *   count      varint
+ *   per photo:
+ *     photoId   signed delta from the previous photo's id
+ *     path      varint bytes shared with the previous path, varint length + UTF-8 of the rest
+ *     size      varint
+ *     mtime     signed delta in millis from the previous photo's mtime
+ * </pre>
+ * Version 2 is written only when some photo has no id (an old-format record sent
+ * on to a retry tier): its photoId field is 0 for no id, else the zigzag delta
+ * from the previous photo that had one, plus 1. Everything else is as in version 1.
+ *
+ * Photos of a batch come in scan order, so consecutive paths mostly share their
+ * whole directory and only the file name is written. The old format, a bare UTF-8
+ * path with ids in headers, never starts with a NUL byte, which is what tells the
+ * two apart.
+ */
+public record PhotoEnvelope(String jobId, long batchId, List<Entry> photos) {
+
+    static final byte MAGIC = 0;
+    static final byte VERSION = 1;
+    static final byte VERSION_NULLABLE_IDS = 2;
+
+    /** Header names of the old single-path format, still read from records in flight during an upgrade. */
+    public static final String HEADER_JOB_ID = "job-id";
+    public static final String HEADER_BATCH_ID = "batch-id";
+    public static final String HEADER_PHOTO_ID = "photo-id";
+
+    /** photoId is null only for old-format records sent without a photo-id header. */
+    public record Entry(Long photoId, String path, long size, long modifiedMillis) {
+    }
+
+    public byte[] encode() {
+        boolean nullableIds = false;
+        for (Entry entry : photos) {
+            nullableIds |= entry.photoId() == null;
+        }
+        Writer out = new Writer(64 + photos.size() * 24);
+        out.put(MAGIC);
+        out.put(nullableIds ? VERSION_NULLABLE_IDS : VERSION);
+        out.putBytes(jobId != null ? jobId.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+        out.putVarLong(batchId);
+        out.putVarLong(photos.size());
+        long previousId = 0;
+        long previousModified = 0;
+        byte[] previousPath = new byte[0];
+        for (Entry entry : photos) {
+            byte[] path = entry.path().getBytes(StandardCharsets.UTF_8);
+            int shared = Arrays.mismatch(previousPath, path);
+            if (shared < 0) {
+                shared = path.length;
+            }
+            if (!nullableIds) {
+                out.putZigZag(entry.photoId() - previousId);
+            } else if (entry.photoId() == null) {
+                out.putVarLong(0);
+            } else {
+                out.putVarLong(zigZag(entry.photoId() - previousId) + 1);
+            }
+            out.putVarLong(shared);
+            out.putVarLong(path.length - shared);
+            out.put(path, shared, path.length - shared);
+            out.putVarLong(entry.size());
+            out.putZigZag(entry.modifiedMillis() - previousModified);
+            if (entry.photoId() != null) {
+                previousId = entry.photoId();
+            }
+            previousModified = entry.modifiedMillis();
+            previousPath = path;
+        }
+        return out.toByteArray();
+    }
+
+    /** True when {@code data} is in the envelope format rather than a bare path. */
+    public static boolean isEnvelope(byte[] data) {
+        return data.length > 0 && data[0] == MAGIC;
+    }
+
+    public static PhotoEnvelope decode(byte[] data) {
+        Reader in = new Reader(data);
+        if (in.get() != MAGIC) {
+            throw new SerializationException("Not a photo envelope");
+        }
+        byte version = in.get();
+        if (version != VERSION && version != VERSION_NULLABLE_IDS) {
+            throw new SerializationException("Unsupported photo envelope version " + version);
+        }
+        byte[] job = in.getBytes(in.getLength());
+        String jobId = job.length > 0 ? new String(job, StandardCharsets.UTF_8) : null;
+        long batchId = in.getVarLong();
+        int count = in.getLength();
+        List<Entry> photos = new ArrayList<>(count);
+        boolean nullableIds = version == VERSION_NULLABLE_IDS;
+        long photoId = 0;
+        long modified = 0;
+        byte[] path = new byte[0];
+        for (int i = 0; i < count; i++) {
+            boolean hasId = true;
+            if (!nullableIds) {
+                photoId += in.getZigZag();
+            } else {
+                long raw = in.getVarLong();
+                hasId = raw != 0;
+                if (hasId) {
+                    photoId += unZigZag(raw - 1);
+                }
+            }
+            long shared = in.getVarLong();
+            int rest = in.getLength();
+            if (shared < 0 || shared > path.length) {
+                throw new SerializationException("Photo envelope path shares " + shared + " of " + path.length + " bytes");
+            }
+            byte[] next = Arrays.copyOf(path, (int) shared + rest);
+            in.get(next, (int) shared, rest);
+            path = next;
+            long size = in.getVarLong();
+            modified += in.getZigZag();
+            photos.add(new Entry(hasId ? photoId : null, new String(path, StandardCharsets.UTF_8), size, modified));
+        }
+        return new PhotoEnvelope(jobId, batchId, photos);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long raw) {
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void put(byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        void put(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, pos, length);
+            pos += length;
+        }
+
+        void putBytes(byte[] bytes) {
+            putVarLong(bytes.length);
+            put(bytes, 0, bytes.length);
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void putZigZag(long value) {
+            putVarLong(zigZag(value));
+        }
+
+        private void ensure(int bytes) {
+            if (pos + bytes > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + bytes));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte get() {
+            require(1);
+            return buf[pos++];
+        }
+
+        void get(byte[] target, int offset, int length) {
+            require(length);
+            System.arraycopy(buf, pos, target, offset, length);
+            pos += length;
+        }
+
+        byte[] getBytes(int length) {
+            byte[] bytes = new byte[length];
+            get(bytes, 0, length);
+            return bytes;
+        }
+
+        long getVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint in photo envelope");
+        }
+
+        long getZigZag() {
+            return unZigZag(getVarLong());
+        }
+
+        /** A varint byte length or count; either is at most the bytes left. */
+        int getLength() {
+            long value = getVarLong();
+            if (value < 0 || value > buf.length - pos) {
+                throw new SerializationException("Bad length " + value + " in photo envelope");
+            }
+            return (int) value;
+        }
+
+        private void require(int bytes) {
+            if (bytes < 0 || pos + bytes > buf.length) {
+                throw new SerializationException("Truncated photo envelope");
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.homesync.backup.homesync.kafka;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Kafka value deserializer for {@link PhotoEnvelope}. Records in the old format, a
+ * bare path with the ids in headers, come back as an envelope holding that one photo.
+ */
+public class PhotoEnvelopeDeserializer implements Deserializer<PhotoEnvelope> {
+
+    @Override
+    public PhotoEnvelope deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public PhotoEnvelope deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (PhotoEnvelope.isEnvelope(data)) {
+            return PhotoEnvelope.decode(data);
+        }
+        String photoId = header(headers, PhotoEnvelope.HEADER_PHOTO_ID);
+        String batchId = header(headers, PhotoEnvelope.HEADER_BATCH_ID);
+        return new PhotoEnvelope(header(headers, PhotoEnvelope.HEADER_JOB_ID),
+                batchId != null ? Long.parseLong(batchId) : 0,
+                List.of(new PhotoEnvelope.Entry(photoId != null ? Long.valueOf(photoId) : null,
+                        new String(data, StandardCharsets.UTF_8), 0, 0)));
+    }
+
+    private static String header(Headers headers, String name) {
+        Header header = headers != null ? headers.lastHeader(name) : null;
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
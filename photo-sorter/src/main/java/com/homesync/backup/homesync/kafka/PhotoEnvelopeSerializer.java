@@ -0,0 +1,12 @@
+package com.homesync.backup.homesync.kafka;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+/** Kafka value serializer for {@link PhotoEnvelope}. */
+public class PhotoEnvelopeSerializer implements Serializer<PhotoEnvelope> {
+
+    @Override
+    public byte[] serialize(String topic, PhotoEnvelope envelope) {
+        return envelope == null ? null : envelope.encode();
+    }
+}
@@ -0,0 +1,72 @@
+package com.homesync.backup.homesync.kafka;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Failure metadata carried in the headers of retry, dead-letter and replayed
+ * photos-to-process records; the value stays a plain {@link PhotoEnvelope}.
+ *
+ * @param attempts  processing attempts that failed so far
+ * @param reason    message of the last failure
+ * @param failedAt  epoch millis of the last failure
+ * @param lane      priority lane the photos came from, used again when they are retried or replayed
+ * @param dueAt     epoch millis before which a retry tier must not process the record (0 = now)
+ * @param counted   true once the photos were counted as processed for their job, so a replay
+ *                  does not count them a second time
+ */
+public record PhotoFailure(int attempts, String reason, long failedAt, IngestPriority lane, long dueAt,
+                           boolean counted) {
+
+    public static final String HEADER_ATTEMPTS = "failure-attempts";
+    public static final String HEADER_REASON = "failure-reason";
+    public static final String HEADER_FAILED_AT = "failure-at";
+    public static final String HEADER_LANE = "failure-lane";
+    public static final String HEADER_DUE_AT = "retry-due-at";
+    public static final String HEADER_COUNTED = "progress-counted";
+
+    /** Reasons are cut to this length; a whole stack trace has no place in every record's headers. */
+    private static final int MAX_REASON_LENGTH = 512;
+
+    /** The failure recorded on {@code headers}, or null for a first delivery. */
+    public static PhotoFailure from(Headers headers) {
+        String attempts = header(headers, HEADER_ATTEMPTS);
+        if (attempts == null) {
+            return null;
+        }
+        String lane = header(headers, HEADER_LANE);
+        String failedAt = header(headers, HEADER_FAILED_AT);
+        String dueAt = header(headers, HEADER_DUE_AT);
+        return new PhotoFailure(Integer.parseInt(attempts), header(headers, HEADER_REASON),
+                failedAt != null ? Long.parseLong(failedAt) : 0,
+                lane != null ? IngestPriority.valueOf(lane) : IngestPriority.BULK,
+                dueAt != null ? Long.parseLong(dueAt) : 0,
+                Boolean.parseBoolean(header(headers, HEADER_COUNTED)));
+    }
+
+    /** Replaces any failure headers already on {@code headers} with this one's. */
+    public void writeTo(Headers headers) {
+        put(headers, HEADER_ATTEMPTS, String.valueOf(attempts));
+        put(headers, HEADER_REASON, reason != null && reason.length() > MAX_REASON_LENGTH
+                ? reason.substring(0, MAX_REASON_LENGTH) : reason);
+        put(headers, HEADER_FAILED_AT, String.valueOf(failedAt));
+        put(headers, HEADER_LANE, lane.name());
+        put(headers, HEADER_DUE_AT, String.valueOf(dueAt));
+        put(headers, HEADER_COUNTED, String.valueOf(counted));
+    }
+
+    private static void put(Headers headers, String name, String value) {
+        headers.remove(name);
+        if (value != null) {
+            headers.add(name, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String header(Headers headers, String name) {
+        Header header = headers != null ? headers.lastHeader(name) : null;
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+package com.homesync.backup.homesync.kafka;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import com.homesync.backup.homesync.service.progress.IngestProgressService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Last stop for photos-to-process records whose batch kept failing outside the ML
+ * call, e.g. while MySQL or the broker was unreachable, once the listener error
+ * handler's retries in place are spent. Each record goes on to its next retry tier
+ * or the dead-letter topic through the {@link PhotoRetryRouter}, with the same
+ * failure headers as photos whose ML dispatch failed, instead of being skipped with
+ * its photos left PROCESSING.
+ *
+ * Throws when the broker does not take the record, so the error handler delivers
+ * the batch again rather than committing past it.
+ */
+@Component
+public class PhotoRecordRecoverer implements ConsumerRecordRecoverer {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoRecordRecoverer.class);
+
+    private final PhotoRetryRouter router;
+    private final PhotoJdbcRepository photoJdbc;
+    private final IngestProgressService progress;
+    private final String interactiveTopic;
+
+    public PhotoRecordRecoverer(PhotoRetryRouter router,
+                                PhotoJdbcRepository photoJdbc,
+                                IngestProgressService progress,
+                                @Value("${kafka.topics.photos-to-process-interactive:photos-to-process-interactive}") String interactiveTopic) {
+        this.router = router;
+        this.photoJdbc = photoJdbc;
+        this.progress = progress;
+        this.interactiveTopic = interactiveTopic;
+    }
+
+    @Override
+    public void accept(ConsumerRecord<?, ?> record, Exception exception) {
+        if (!(record.value() instanceof PhotoEnvelope envelope) || envelope.photos().isEmpty()) {
+            log.warn("Skipping record {}-{}@{} after repeated failures: nothing to retry", record.topic(),
+                    record.partition(), record.offset());
+            return;
+        }
+        Throwable cause = exception instanceof ListenerExecutionFailedException && exception.getCause() != null
+                ? exception.getCause() : exception;
+        PhotoFailure previous = PhotoFailure.from(record.headers());
+        IngestPriority lane = previous != null ? previous.lane()
+                : interactiveTopic.equals(record.topic()) ? IngestPriority.INTERACTIVE : IngestPriority.BULK;
+        PhotoRetryRouter.Routed routed = router.route(envelope, previous, lane, String.valueOf(cause.getMessage()),
+                false);
+        routed.sent().join();
+        log.warn("Processing failed for {} photos of job {} ({}), sent to {}", envelope.photos().size(),
+                envelope.jobId(), cause.getMessage(), routed.topic());
+        if (!routed.deadLetter()) {
+            return;
+        }
+        List<Long> photoIds = new ArrayList<>(envelope.photos().size());
+        for (PhotoEnvelope.Entry photo : envelope.photos()) {
+            if (photo.photoId() != null) {
+                photoIds.add(photo.photoId());
+            }
+        }
+        try {
+            photoJdbc.markFailed(photoIds);
+        } catch (Exception e) {
+            // a replay from the dead-letter topic resets them to READY either way
+            log.warn("Cannot mark {} dead-lettered photos failed: {}", photoIds.size(), e.getMessage());
+        }
+        if (envelope.jobId() != null && (previous == null || !previous.counted())) {
+            progress.processed(envelope.jobId(), envelope.photos().size());
+        }
+    }
+}
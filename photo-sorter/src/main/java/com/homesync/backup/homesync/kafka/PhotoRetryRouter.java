@@ -0,0 +1,95 @@
+package com.homesync.backup.homesync.kafka;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends photos whose processing failed to the next retry tier, or to the
+ * dead-letter topic once the tiers are used up. Tier {@code n} is the topic
+ * {@code <photos-to-process>-retry-n} and holds its records for the n-th of
+ * {@code kafka.retry.delays} before they are tried again, so a failed photo never
+ * holds up the healthy ones behind it on the lane topic. A permanent failure (the
+ * ML service rejected the photo itself) skips the tiers.
+ *
+ * Every tier has a fixed delay, which keeps records of a tier partition in due
+ * order: the tier listener only ever waits on the head of its partition.
+ */
+@Component
+public class PhotoRetryRouter {
+
+    /** Retry tiers with a listener in KafkaConsumer; {@code kafka.retry.delays} may use fewer. */
+    public static final int TIERS = 3;
+
+    private final KafkaProducer producer;
+    private final String topicPrefix;
+    private final List<Duration> delays;
+    private final Counter retried;
+    private final Counter dead;
+
+    public PhotoRetryRouter(KafkaProducer producer,
+                            MeterRegistry registry,
+                            @Value("${kafka.topics.photos-to-process:photos-to-process}") String topicPrefix,
+                            @Value("${kafka.retry.delays:10s,1m,10m}") List<Duration> delays) {
+        if (delays.size() > TIERS) {
+            throw new IllegalArgumentException("At most " + TIERS + " retry delays are supported, got " + delays);
+        }
+        this.producer = producer;
+        this.topicPrefix = topicPrefix;
+        this.delays = List.copyOf(delays);
+        this.retried = Counter.builder("pipeline.photo.failures")
+                .description("Photos whose processing failed, by what happened to them next")
+                .tag("outcome", "retry")
+                .register(registry);
+        this.dead = Counter.builder("pipeline.photo.failures")
+                .description("Photos whose processing failed, by what happened to them next")
+                .tag("outcome", "dead-letter")
+                .register(registry);
+    }
+
+    public String retryTopic(int tier) {
+        return topicPrefix + "-retry-" + tier;
+    }
+
+    public String deadLetterTopic() {
+        return topicPrefix + "-dlt";
+    }
+
+    public List<Duration> delays() {
+        return delays;
+    }
+
+    /**
+     * Sends {@code photos}, which failed together with {@code reason}, on to their
+     * next tier. {@code previous} is the failure the record arrived with, null on a
+     * first delivery. The returned future completes once the broker has the record;
+     * the caller must not commit the failed record's offset before that.
+     */
+    public Routed route(PhotoEnvelope photos, PhotoFailure previous, IngestPriority lane, String reason,
+                        boolean permanent) {
+        int attempts = (previous != null ? previous.attempts() : 0) + 1;
+        boolean exhausted = permanent || attempts > delays.size();
+        long now = System.currentTimeMillis();
+        // photos that give up here are counted as processed by the caller right away
+        PhotoFailure failure = new PhotoFailure(attempts, reason, now, lane,
+                exhausted ? 0 : now + delays.get(attempts - 1).toMillis(),
+                exhausted || (previous != null && previous.counted()));
+        String topic = exhausted ? deadLetterTopic() : retryTopic(attempts - 1);
+        ProducerRecord<String, PhotoEnvelope> record = new ProducerRecord<>(topic,
+                String.valueOf(photos.photos().get(0).photoId()), photos);
+        failure.writeTo(record.headers());
+        (exhausted ? dead : retried).increment(photos.photos().size());
+        return new Routed(topic, exhausted, producer.send(record));
+    }
+
+    /** Where a failed record went; {@code sent} completes with the broker's ack. */
+    public record Routed(String topic, boolean deadLetter, CompletableFuture<?> sent) {
+    }
+}
@@ -0,0 +1,27 @@
+package com.homesync.backup.homesync.model;
+
+import lombok.*;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One row per applied ML callback. The key is the callback_id when the ML service
+ * sends one, otherwise photo id plus model version; a callback whose key is
+ * already here is a redelivery and is skipped.
+ */
+@Entity
+@Table(name = "callback_receipts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CallbackReceipt {
+    @Id
+    @Column(length = 191)
+    private String callbackKey;
+
+    private Long photoId;
+
+    private LocalDateTime receivedAt;
+}
@@ -0,0 +1,27 @@
+package com.homesync.backup.homesync.model;
+
+import lombok.*;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * The first photo seen with a given SHA-256 of its contents. Photos with the same
+ * hash point to it through photos.canonical_photo_id and are not processed again.
+ */
+@Entity
+@Table(name = "content_hashes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ContentHash {
+    @Id
+    @Column(columnDefinition = "BINARY(32)")
+    private byte[] contentHash;
+
+    @Column(nullable = false)
+    private Long canonicalPhotoId;
+
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,30 @@
+package com.homesync.backup.homesync.model;
+
+import lombok.*;
+
+import jakarta.persistence.*;
+
+/**
+ * A directory holding photos, stored once so photos only keep its id and their
+ * filename. The path keeps its trailing separator, so a photo's path is the
+ * directory path followed by the filename. Looked up by the SHA-1 of the path
+ * because the path itself is too long for an index key.
+ */
+@Entity
+@Table(name = "directories")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Directory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, columnDefinition = "BINARY(20)")
+    private byte[] dirHash;
+
+    @Column(nullable = false, length = 1024)
+    private String path;
+}
@@ -3,6 +3,7 @@ package com.homesync.backup.homesync.model;
 import lombok.*;
 
 import jakarta.persistence.*;
+import com.homesync.backup.homesync.model.enums.IngestPriority;
 import com.homesync.backup.homesync.model.enums.JobStatus;
 import java.time.LocalDateTime;
 
@@ -25,8 +26,24 @@ public class IngestJob {
     @Enumerated(EnumType.STRING)
     private JobStatus status;
 
+    // lane its photos take through Kafka and the ML window; null (older jobs) counts as BULK
+    @Enumerated(EnumType.STRING)
+    private IngestPriority priority;
+
     private Integer scannedCount;
     private Integer insertedCount;
     private Integer publishedCount;
+    // published photos whose ML outcome (or duplicate result) is stored
+    private Integer processedCount;
+    // files an incremental run found missing
+    private Integer deletedCount;
+    // dedup stage: files and bytes hashed, time spent hashing, copies of known files
+    private Integer hashedCount;
+    private Long hashedBytes;
+    private Long hashMillis;
+    private Integer duplicateCount;
     private LocalDateTime finishedAt;
+    // face clustering: highest embedding id already clustered for the job, and when a finished job was last clustered
+    private Long clusteredUpTo;
+    private LocalDateTime clusteredAt;
 }
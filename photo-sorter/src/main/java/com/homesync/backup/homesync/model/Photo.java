@@ -7,7 +7,13 @@ import com.homesync.backup.homesync.model.enums.PhotoStatus;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "photos")
+@Table(name = "photos", indexes = {
+        @Index(name = "idx_photos_canonical", columnList = "canonical_photo_id"),
+        @Index(name = "idx_photos_status", columnList = "status, id"),
+        @Index(name = "idx_photos_taken", columnList = "taken_at, id")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_photos_location", columnNames = {"directory_id", "filename"})
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -18,8 +24,9 @@ public class Photo {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true, length = 1024)
-    private String path;
+    // the path is the directory's path followed by filename, see Directory
+    @Column(nullable = false)
+    private Long directoryId;
 
     @Column(nullable = false, length = 512)
     private String filename;
@@ -33,6 +40,24 @@ public class Photo {
 
     private LocalDateTime modifiedAt;
 
+    // EXIF DateTimeOriginal, camera local time
+    private LocalDateTime capturedAt;
+
+    // capture time, or the file mtime without EXIF; computed by MySQL for the catalog date filter
+    @Column(insertable = false, updatable = false,
+            columnDefinition = "DATETIME GENERATED ALWAYS AS (COALESCE(captured_at, modified_at)) STORED")
+    private LocalDateTime takenAt;
+
+    // set when an incremental scan no longer finds the file, cleared if it comes back
+    private LocalDateTime deletedAt;
+
+    // SHA-256 of the file contents, set by the dedup stage
+    @Column(columnDefinition = "BINARY(32)")
+    private byte[] contentHash;
+
+    // first photo seen with the same contents; this photo inherits its results
+    private Long canonicalPhotoId;
+
     @Enumerated(EnumType.STRING)
     private PhotoStatus status;
 
@@ -5,7 +5,7 @@ import lombok.*;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "photo_persons")
+@Table(name = "photo_persons", indexes = @Index(name = "idx_photo_persons_person", columnList = "person_id, photo_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,35 @@
+package com.homesync.backup.homesync.model;
+
+import lombok.*;
+
+import jakarta.persistence.*;
+
+/**
+ * Per-directory manifest written by incremental scans (see
+ * {@link com.homesync.backup.homesync.service.scan.DirectoryManifest}). Keyed by the
+ * SHA-1 of the directory path because the path itself is too long for an index key.
+ */
+@Entity
+@Table(name = "scan_manifests")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScanManifest {
+    @Id
+    @Column(columnDefinition = "BINARY(20)")
+    private byte[] dirHash;
+
+    @Column(nullable = false, length = 1024)
+    private String dirPath;
+
+    private Long dirMtime;
+    private Integer entryCount;
+
+    // encoded file stamps and subdirectory names
+    @Lob
+    @Column(columnDefinition = "MEDIUMBLOB")
+    private byte[] entries;
+
+    private Long scannedAt;
+}
@@ -0,0 +1,36 @@
+package com.homesync.backup.homesync.model;
+
+import lombok.*;
+
+import jakarta.persistence.*;
+import com.homesync.backup.homesync.model.enums.WatchMode;
+import java.time.LocalDateTime;
+
+/**
+ * A folder kept in sync continuously. New and changed photos below it are ingested
+ * in small batches under the root's long-lived ingest job.
+ */
+@Entity
+@Table(name = "watched_roots")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WatchedRoot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 1024)
+    private String path;
+
+    private Boolean recursive;
+
+    @Enumerated(EnumType.STRING)
+    private WatchMode mode;
+
+    // ingest job the root's batches are written under
+    private String jobId;
+
+    private LocalDateTime createdAt;
+}
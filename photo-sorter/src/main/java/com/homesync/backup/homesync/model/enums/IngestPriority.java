@@ -0,0 +1,12 @@
+package com.homesync.backup.homesync.model.enums;
+
+import java.util.Locale;
+
+public enum IngestPriority {
+    // small jobs someone is waiting on (uploads into a watched folder); served first
+    INTERACTIVE,
+    // backfills and re-scans; use the capacity interactive work leaves over
+    BULK;
+
+    public final String tag = name().toLowerCase(Locale.ROOT);
+}
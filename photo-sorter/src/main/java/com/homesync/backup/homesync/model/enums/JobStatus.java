@@ -1,8 +1,11 @@
 package com.homesync.backup.homesync.model.enums;
 
 public enum JobStatus {
+    SCANNING,
     SCANNED,
     PUBLISHED,
     COMPLETED,
-    FAILED
+    FAILED,
+    // long-lived job of a watched root; its batches never end
+    WATCHING
 }
@@ -0,0 +1,8 @@
+package com.homesync.backup.homesync.model.enums;
+
+public enum WatchMode {
+    // native watch, or polling when the root is on a network filesystem or the watch limit is hit
+    AUTO,
+    NATIVE,
+    POLL
+}
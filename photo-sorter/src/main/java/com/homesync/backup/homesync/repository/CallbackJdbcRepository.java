@@ -0,0 +1,196 @@
+package com.homesync.backup.homesync.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batched writes for ML callbacks: receipts, persons, embeddings, photo_persons and
+ * the per-photo result columns. Every method issues one JDBC batch for all rows.
+ */
+@Repository
+public class CallbackJdbcRepository {
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public CallbackJdbcRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public Set<String> findReceipts(Collection<String> keys) {
+        Set<String> found = new HashSet<>();
+        if (keys.isEmpty()) {
+            return found;
+        }
+        jdbc.query("SELECT callback_key FROM callback_receipts WHERE callback_key IN (:keys)",
+                new MapSqlParameterSource("keys", keys),
+                rs -> {
+                    found.add(rs.getString(1));
+                });
+        return found;
+    }
+
+    public void insertReceipts(Map<String, Long> photoIdByKey) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        MapSqlParameterSource[] rows = photoIdByKey.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("key", e.getKey())
+                        .addValue("photoId", e.getValue())
+                        .addValue("now", now))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("INSERT INTO callback_receipts (callback_key, photo_id, received_at) VALUES (:key, :photoId, :now)", rows);
+    }
+
+    public Set<Long> findExistingPersons(Collection<Long> ids) {
+        Set<Long> found = new HashSet<>();
+        if (ids.isEmpty()) {
+            return found;
+        }
+        jdbc.query("SELECT id FROM persons WHERE id IN (:ids)", new MapSqlParameterSource("ids", ids),
+                rs -> {
+                    found.add(rs.getLong(1));
+                });
+        return found;
+    }
+
+    /** Inserts one person per display name (null allowed) and returns the new ids in order. */
+    public List<Long> insertPersons(List<String> displayNames) {
+        if (displayNames.isEmpty()) {
+            return List.of();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        MapSqlParameterSource[] rows = displayNames.stream()
+                .map(name -> new MapSqlParameterSource()
+                        .addValue("name", name)
+                        .addValue("now", now))
+                .toArray(MapSqlParameterSource[]::new);
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbc.batchUpdate("INSERT INTO persons (created_at, display_name) VALUES (:now, :name)", rows, keys);
+        return generatedIds(keys);
+    }
+
+    /** Inserts the embeddings and returns their new ids in order. */
+    public List<Long> insertEmbeddings(List<EmbeddingRow> embeddings) {
+        if (embeddings.isEmpty()) {
+            return List.of();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        MapSqlParameterSource[] rows = embeddings.stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("personId", e.personId())
+                        .addValue("photoId", e.photoId())
+                        .addValue("embedding", e.vector())
+                        .addValue("now", now))
+                .toArray(MapSqlParameterSource[]::new);
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbc.batchUpdate("INSERT INTO embeddings (person_id, source_photo_id, embedding, created_at) "
+                + "VALUES (:personId, :photoId, :embedding, :now)", rows, keys);
+        return generatedIds(keys);
+    }
+
+    public void setPrimaryEmbeddings(Map<Long, Long> embeddingIdByPerson) {
+        if (embeddingIdByPerson.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = embeddingIdByPerson.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("personId", e.getKey())
+                        .addValue("embeddingId", e.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("UPDATE persons SET primary_embedding_id = :embeddingId WHERE id = :personId", rows);
+    }
+
+    /** Links photos to persons; pairs that already exist are left alone. */
+    public void insertPhotoPersons(List<PhotoPersonRow> links) {
+        if (links.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = links.stream()
+                .map(l -> new MapSqlParameterSource()
+                        .addValue("photoId", l.photoId())
+                        .addValue("personId", l.personId()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("INSERT IGNORE INTO photo_persons (photo_id, person_id) VALUES (:photoId, :personId)", rows);
+    }
+
+    /** Links of the given photos, in (photo_id, person_id) order. */
+    public List<PhotoPersonRow> findPhotoPersons(Collection<Long> photoIds) {
+        if (photoIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbc.query("SELECT photo_id, person_id FROM photo_persons WHERE photo_id IN (:ids) "
+                        + "ORDER BY photo_id, person_id", new MapSqlParameterSource("ids", photoIds),
+                (rs, i) -> new PhotoPersonRow(rs.getLong(1), rs.getLong(2)));
+    }
+
+    public void deletePhotoPersons(Collection<Long> photoIds) {
+        if (photoIds.isEmpty()) {
+            return;
+        }
+        jdbc.update("DELETE FROM photo_persons WHERE photo_id IN (:ids)", new MapSqlParameterSource("ids", photoIds));
+    }
+
+    public void updatePhotoResults(List<PhotoResultRow> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = results.stream()
+                .map(r -> new MapSqlParameterSource()
+                        .addValue("photoId", r.photoId())
+                        .addValue("status", r.status())
+                        .addValue("personIds", r.personIdsJson()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("UPDATE photos SET status = :status, person_ids = COALESCE(:personIds, person_ids) "
+                + "WHERE id = :photoId", rows);
+    }
+
+    /**
+     * Copies the outcome of the given canonical photos to every photo marked as a
+     * byte-identical duplicate of one of them: status and person_ids once the
+     * canonical photo finished, and its photo_persons links. Embeddings stay with
+     * the canonical photo only. Returns the photo_persons links the duplicates now have.
+     */
+    public List<PhotoPersonRow> copyResultsToDuplicates(Collection<Long> canonicalIds) {
+        if (canonicalIds.isEmpty()) {
+            return List.of();
+        }
+        MapSqlParameterSource ids = new MapSqlParameterSource("ids", canonicalIds);
+        jdbc.update("UPDATE photos d JOIN photos c ON d.canonical_photo_id = c.id "
+                + "SET d.status = c.status, d.person_ids = c.person_ids "
+                + "WHERE c.id IN (:ids) AND d.id <> c.id AND c.status IN ('PROCESSED', 'FAILED')", ids);
+        jdbc.update("INSERT IGNORE INTO photo_persons (photo_id, person_id) "
+                + "SELECT d.id, pp.person_id FROM photos d JOIN photo_persons pp ON pp.photo_id = d.canonical_photo_id "
+                + "WHERE d.canonical_photo_id IN (:ids) AND d.id <> d.canonical_photo_id", ids);
+        return jdbc.query("SELECT pp.photo_id, pp.person_id FROM photos d JOIN photo_persons pp ON pp.photo_id = d.id "
+                        + "WHERE d.canonical_photo_id IN (:ids) AND d.id <> d.canonical_photo_id", ids,
+                (rs, i) -> new PhotoPersonRow(rs.getLong(1), rs.getLong(2)));
+    }
+
+    private static List<Long> generatedIds(KeyHolder keys) {
+        List<Long> ids = new ArrayList<>();
+        for (Map<String, Object> row : keys.getKeyList()) {
+            ids.add(((Number) row.values().iterator().next()).longValue());
+        }
+        return ids;
+    }
+
+    public record EmbeddingRow(Long personId, long photoId, byte[] vector) {
+    }
+
+    public record PhotoPersonRow(long photoId, long personId) {
+    }
+
+    public record PhotoResultRow(long photoId, String status, String personIdsJson) {
+    }
+}
@@ -0,0 +1,187 @@
+package com.homesync.backup.homesync.repository;
+
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reads and writes of the face clustering stage: unassigned embeddings of a job,
+ * owners of neighbour embeddings, person merges and the per-job watermark.
+ * Unassigned embeddings are read off the person_id foreign key index, which
+ * InnoDB keeps as (person_id, id), so {@code person_id IS NULL AND id > ?} is one
+ * range scan in id order.
+ */
+@Repository
+public class ClusteringJdbcRepository {
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public ClusteringJdbcRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Watched jobs, which keep gaining faces, and finished jobs not clustered since they finished. */
+    public List<String> findJobsToCluster() {
+        return jdbc.query("SELECT job_id FROM ingest_jobs WHERE status = :watching "
+                        + "OR (status = :completed AND clustered_at IS NULL) ORDER BY created_at",
+                new MapSqlParameterSource()
+                        .addValue("watching", JobStatus.WATCHING.name())
+                        .addValue("completed", JobStatus.COMPLETED.name()),
+                (rs, i) -> rs.getString(1));
+    }
+
+    /** Status and watermark of a job, if it exists. */
+    public Optional<JobWatermark> findWatermark(String jobId) {
+        List<JobWatermark> rows = jdbc.query("SELECT status, COALESCE(clustered_up_to, 0) FROM ingest_jobs "
+                        + "WHERE job_id = :jobId", new MapSqlParameterSource("jobId", jobId),
+                (rs, i) -> new JobWatermark(rs.getString(1) != null ? JobStatus.valueOf(rs.getString(1)) : null,
+                        rs.getLong(2)));
+        return rows.stream().findFirst();
+    }
+
+    public long maxEmbeddingId() {
+        Long max = jdbc.getJdbcTemplate().queryForObject("SELECT COALESCE(MAX(id), 0) FROM embeddings", Long.class);
+        return max != null ? max : 0;
+    }
+
+    /**
+     * Up to {@code limit} unassigned embeddings from photos of the job, with ids in
+     * ({@code after}, {@code upTo}], in id order.
+     */
+    public List<Face> findUnassigned(String jobId, long after, long upTo, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("jobId", jobId)
+                .addValue("after", after)
+                .addValue("upTo", upTo)
+                .addValue("limit", limit);
+        // EXISTS rather than a join: a photo ingested twice by the job must not repeat its faces
+        return jdbc.query("SELECT e.id, e.source_photo_id, e.embedding FROM embeddings e "
+                        + "WHERE e.person_id IS NULL AND e.id > :after AND e.id <= :upTo AND e.embedding IS NOT NULL "
+                        + "AND EXISTS (SELECT 1 FROM photo_ingest_map m WHERE m.photo_id = e.source_photo_id "
+                        + "AND m.job_id = :jobId) ORDER BY e.id LIMIT :limit", params,
+                (rs, i) -> new Face(rs.getLong(1), rs.getLong(2), rs.getBytes(3)));
+    }
+
+    /** Person and photo of each given embedding that still exists. */
+    public Map<Long, EmbeddingOwner> findOwners(Collection<Long> embeddingIds) {
+        Map<Long, EmbeddingOwner> owners = new HashMap<>();
+        if (embeddingIds.isEmpty()) {
+            return owners;
+        }
+        jdbc.query("SELECT id, person_id, source_photo_id FROM embeddings WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", embeddingIds),
+                rs -> {
+                    long personId = rs.getLong(2);
+                    Long person = rs.wasNull() ? null : personId;
+                    owners.put(rs.getLong(1), new EmbeddingOwner(person, rs.getLong(3)));
+                });
+        return owners;
+    }
+
+    /** Display names of the given persons that exist; the value is null for unnamed ones. */
+    public Map<Long, String> findDisplayNames(Collection<Long> personIds) {
+        Map<Long, String> names = new HashMap<>();
+        if (personIds.isEmpty()) {
+            return names;
+        }
+        jdbc.query("SELECT id, display_name FROM persons WHERE id IN (:ids)", new MapSqlParameterSource("ids", personIds),
+                rs -> {
+                    names.put(rs.getLong(1), rs.getString(2));
+                });
+        return names;
+    }
+
+    /** Assigns embeddings that are still unassigned; one batch for all rows. */
+    public void assignEmbeddings(Map<Long, Long> personIdByEmbedding) {
+        if (personIdByEmbedding.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = personIdByEmbedding.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("embeddingId", e.getKey())
+                        .addValue("personId", e.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("UPDATE embeddings SET person_id = :personId WHERE id = :embeddingId AND person_id IS NULL",
+                rows);
+    }
+
+    /**
+     * Folds person {@code drop} into {@code keep}: embeddings and photo links move
+     * over, {@code keep} inherits a display name and primary embedding it lacks, and
+     * {@code drop} is deleted. Returns the photos that were linked to {@code drop}.
+     */
+    public List<Long> mergePersons(long drop, long keep) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("drop", drop)
+                .addValue("keep", keep);
+        List<Long> photos = jdbc.query("SELECT photo_id FROM photo_persons WHERE person_id = :drop", params,
+                (rs, i) -> rs.getLong(1));
+        jdbc.update("UPDATE embeddings SET person_id = :keep WHERE person_id = :drop", params);
+        jdbc.update("INSERT IGNORE INTO photo_persons (photo_id, person_id) "
+                + "SELECT photo_id, :keep FROM photo_persons WHERE person_id = :drop", params);
+        jdbc.update("UPDATE persons k JOIN persons d ON d.id = :drop "
+                + "SET k.display_name = COALESCE(k.display_name, d.display_name), "
+                + "k.primary_embedding_id = COALESCE(k.primary_embedding_id, d.primary_embedding_id) "
+                + "WHERE k.id = :keep", params);
+        // photo_persons rows of drop go with it (ON DELETE CASCADE)
+        jdbc.update("DELETE FROM persons WHERE id = :drop", params);
+        return photos;
+    }
+
+    /** Current person ids of each given photo from photo_persons, sorted; photos without links are absent. */
+    public Map<Long, Set<Long>> findPersonsOfPhotos(Collection<Long> photoIds) {
+        Map<Long, Set<Long>> persons = new HashMap<>();
+        if (photoIds.isEmpty()) {
+            return persons;
+        }
+        jdbc.query("SELECT photo_id, person_id FROM photo_persons WHERE photo_id IN (:ids)",
+                new MapSqlParameterSource("ids", photoIds),
+                rs -> {
+                    persons.computeIfAbsent(rs.getLong(1), p -> new TreeSet<>()).add(rs.getLong(2));
+                });
+        return persons;
+    }
+
+    public void updatePersonIds(Map<Long, String> personIdsJsonByPhoto) {
+        if (personIdsJsonByPhoto.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = personIdsJsonByPhoto.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("photoId", e.getKey())
+                        .addValue("personIds", e.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("UPDATE photos SET person_ids = :personIds WHERE id = :photoId", rows);
+    }
+
+    /** Moves the job's watermark forward; {@code finished} also records that a COMPLETED job is done. */
+    public void markClustered(String jobId, long upTo, boolean finished) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("jobId", jobId)
+                .addValue("upTo", upTo)
+                .addValue("now", Timestamp.valueOf(LocalDateTime.now()));
+        jdbc.update("UPDATE ingest_jobs SET clustered_up_to = GREATEST(COALESCE(clustered_up_to, 0), :upTo)"
+                + (finished ? ", clustered_at = :now" : "") + " WHERE job_id = :jobId", params);
+    }
+
+    public record Face(long embeddingId, long photoId, byte[] vector) {
+    }
+
+    /** {@code personId} is null for an unassigned embedding. */
+    public record EmbeddingOwner(Long personId, long photoId) {
+    }
+
+    public record JobWatermark(JobStatus status, long clusteredUpTo) {
+    }
+}
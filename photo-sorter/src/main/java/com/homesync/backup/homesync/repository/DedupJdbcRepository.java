@@ -0,0 +1,163 @@
+package com.homesync.backup.homesync.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content hashes of photos and the hash -> canonical photo lookup. Hashes are
+ * passed around as lowercase hex strings so they can key Java maps; the tables
+ * store them as BINARY(32).
+ */
+@Repository
+public class DedupJdbcRepository {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public DedupJdbcRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Photo id -> hash for the given photos that were hashed before (e.g. on a redelivery). */
+    public Map<Long, String> findHashes(Collection<Long> photoIds) {
+        Map<Long, String> hashes = new HashMap<>();
+        if (photoIds.isEmpty()) {
+            return hashes;
+        }
+        jdbc.query("SELECT id, content_hash FROM photos WHERE id IN (:ids) AND content_hash IS NOT NULL",
+                new MapSqlParameterSource("ids", photoIds),
+                rs -> {
+                    hashes.put(rs.getLong(1), HEX.formatHex(rs.getBytes(2)));
+                });
+        return hashes;
+    }
+
+    public void setHashes(Map<Long, String> hashByPhoto) {
+        if (hashByPhoto.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = hashByPhoto.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("id", e.getKey())
+                        .addValue("hash", HEX.parseHex(e.getValue())))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("UPDATE photos SET content_hash = :hash WHERE id = :id", rows);
+    }
+
+    /**
+     * Registers each photo as the canonical copy of its hash unless one is already
+     * registered; the primary key makes the first claimant win, also across consumers.
+     */
+    public void claimCanonical(Map<Long, String> hashByPhoto) {
+        if (hashByPhoto.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        MapSqlParameterSource[] rows = hashByPhoto.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("id", e.getKey())
+                        .addValue("hash", HEX.parseHex(e.getValue()))
+                        .addValue("now", now))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("INSERT IGNORE INTO content_hashes (content_hash, canonical_photo_id, created_at) "
+                + "VALUES (:hash, :id, :now)", rows);
+    }
+
+    /** Hash -> canonical photo id. */
+    public Map<String, Long> findCanonical(Collection<String> hashes) {
+        Map<String, Long> canonical = new HashMap<>();
+        if (hashes.isEmpty()) {
+            return canonical;
+        }
+        List<byte[]> keys = hashes.stream().map(HEX::parseHex).toList();
+        jdbc.query("SELECT content_hash, canonical_photo_id FROM content_hashes WHERE content_hash IN (:hashes)",
+                new MapSqlParameterSource("hashes", keys),
+                rs -> {
+                    canonical.put(HEX.formatHex(rs.getBytes(1)), rs.getLong(2));
+                });
+        return canonical;
+    }
+
+    public void setCanonical(Map<Long, Long> canonicalByDuplicate) {
+        if (canonicalByDuplicate.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = canonicalByDuplicate.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("id", e.getKey())
+                        .addValue("canonical", e.getValue()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("UPDATE photos SET canonical_photo_id = :canonical WHERE id = :id", rows);
+    }
+
+    /**
+     * The hashes owned by the given photos, each with the lowest live duplicate that
+     * is not one of them (null when there is none), which can take the hash over.
+     */
+    public List<OwnedHash> findOwnedHashes(Collection<Long> photoIds) {
+        List<OwnedHash> owned = new ArrayList<>();
+        if (photoIds.isEmpty()) {
+            return owned;
+        }
+        jdbc.query("SELECT c.id, c.content_hash, MIN(d.id) FROM photos c "
+                        + "JOIN content_hashes h ON h.content_hash = c.content_hash AND h.canonical_photo_id = c.id "
+                        + "LEFT JOIN photos d ON d.canonical_photo_id = c.id AND d.id NOT IN (:ids) AND d.deleted_at IS NULL "
+                        + "WHERE c.id IN (:ids) GROUP BY c.id, c.content_hash",
+                new MapSqlParameterSource("ids", photoIds),
+                rs -> {
+                    long successor = rs.getLong(3);
+                    owned.add(new OwnedHash(rs.getLong(1), HEX.formatHex(rs.getBytes(2)), rs.wasNull() ? null : successor));
+                });
+        return owned;
+    }
+
+    /** Makes the successor the canonical copy of the hash, and of every duplicate of the previous owner. */
+    public void reassignCanonical(OwnedHash owned) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("hash", HEX.parseHex(owned.hash()))
+                .addValue("owner", owned.photoId())
+                .addValue("successor", owned.successorId());
+        jdbc.update("UPDATE content_hashes SET canonical_photo_id = :successor WHERE content_hash = :hash", params);
+        jdbc.update("UPDATE photos SET canonical_photo_id = IF(id = :successor, NULL, :successor) "
+                + "WHERE canonical_photo_id = :owner", params);
+    }
+
+    /** Forgets the hashes, so the next photo hashed to one of them claims it; unlinks deleted duplicates. */
+    public void dropCanonical(Collection<OwnedHash> owned) {
+        if (owned.isEmpty()) {
+            return;
+        }
+        jdbc.update("DELETE FROM content_hashes WHERE content_hash IN (:hashes)",
+                new MapSqlParameterSource("hashes", owned.stream().map(o -> HEX.parseHex(o.hash())).toList()));
+        jdbc.update("UPDATE photos SET canonical_photo_id = NULL WHERE canonical_photo_id IN (:ids)",
+                new MapSqlParameterSource("ids", owned.stream().map(OwnedHash::photoId).toList()));
+    }
+
+    /**
+     * Share-locks the canonical rows for the rest of the transaction. A callback
+     * for one of them either committed before (and its results are visible here)
+     * or waits, and then sees the duplicates linked by this transaction.
+     */
+    public void lockPhotos(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbc.query("SELECT id FROM photos WHERE id IN (:ids) FOR SHARE", new MapSqlParameterSource("ids", ids),
+                rs -> {
+                });
+    }
+
+    public record OwnedHash(long photoId, String hash, Long successorId) {
+    }
+}
@@ -0,0 +1,58 @@
+package com.homesync.backup.homesync.repository;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the directories table. Photos store (directory_id, filename)
+ * rather than their full path, so a directory prefix is kept once instead of once
+ * per photo, in the table and in its unique key. Directories are keyed by the
+ * SHA-1 of their path, like scan_manifests.
+ */
+@Repository
+public class DirectoryJdbcRepository {
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public DirectoryJdbcRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Inserts the directories that do not exist yet and returns the id of each. Ids
+     * are read with a locking read, which sees directories committed by other
+     * transactions after this one's snapshot, including one whose insert this one's
+     * INSERT IGNORE waited for.
+     */
+    public Map<String, Long> insertMissing(Collection<String> dirs) {
+        Map<String, Long> ids = new HashMap<>();
+        if (dirs.isEmpty()) {
+            return ids;
+        }
+        MapSqlParameterSource[] rows = dirs.stream()
+                .map(dir -> new MapSqlParameterSource()
+                        .addValue("hash", ManifestJdbcRepository.hash(dir))
+                        .addValue("path", dir))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("INSERT IGNORE INTO directories (dir_hash, path) VALUES (:hash, :path)", rows);
+        List<byte[]> hashes = dirs.stream().map(ManifestJdbcRepository::hash).toList();
+        jdbc.query("SELECT id, path FROM directories WHERE dir_hash IN (:hashes) FOR SHARE",
+                new MapSqlParameterSource("hashes", hashes),
+                rs -> {
+                    ids.put(rs.getString(2), rs.getLong(1));
+                });
+        return ids;
+    }
+
+    /** The directory part of {@code path}, up to and including its last separator. */
+    public static String directoryOf(String path) {
+        return path.substring(0, Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar)) + 1);
+    }
+}
@@ -0,0 +1,283 @@
+package com.homesync.backup.homesync.repository;
+
+import com.homesync.backup.homesync.model.enums.BatchStatus;
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import com.homesync.backup.homesync.model.enums.MapStatus;
+import com.homesync.backup.homesync.model.enums.PhotoStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk writes for ingest_batches, photo_ingest_map and the ingest_jobs counters.
+ */
+@Repository
+public class IngestJdbcRepository {
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public IngestJdbcRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public void insertMapRows(long batchId, String jobId, Collection<Long> photoIds) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        MapSqlParameterSource[] rows = photoIds.stream()
+                .map(photoId -> new MapSqlParameterSource()
+                        .addValue("photoId", photoId)
+                        .addValue("batchId", batchId)
+                        .addValue("jobId", jobId)
+                        .addValue("insertedAt", now)
+                        .addValue("status", MapStatus.PENDING.name()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("INSERT INTO photo_ingest_map (photo_id, batch_id, job_id, inserted_at, publish_attempts, status) "
+                + "VALUES (:photoId, :batchId, :jobId, :insertedAt, 0, :status)", rows);
+    }
+
+    /**
+     * Locks up to {@code limit} READY batches for the current transaction. Rows locked
+     * by another relay are skipped rather than waited on, so relays never block each other.
+     */
+    public List<Long> claimReadyBatches(IngestPriority lane, int limit) {
+        // jobs from before priorities existed have none and go to the bulk lane
+        String inLane = lane == IngestPriority.INTERACTIVE ? "j.priority = 'INTERACTIVE'"
+                : "(j.priority IS NULL OR j.priority <> 'INTERACTIVE')";
+        return jdbc.queryForList("SELECT b.batch_id FROM ingest_batches b JOIN ingest_jobs j ON j.job_id = b.job_id "
+                        + "WHERE b.status = '" + BatchStatus.READY.name() + "' AND " + inLane
+                        + " ORDER BY b.batch_id LIMIT :limit FOR UPDATE OF b SKIP LOCKED",
+                new MapSqlParameterSource("limit", limit), Long.class);
+    }
+
+    /** Map rows of the given batches that have not been published yet, joined with their photo path. */
+    public List<OutboxRow> findUnpublished(Collection<Long> batchIds) {
+        return jdbc.query("SELECT m.map_id, m.photo_id, m.batch_id, m.job_id, CONCAT(d.path, p.filename), p.filesize, "
+                        + "p.modified_at FROM photo_ingest_map m JOIN photos p ON p.id = m.photo_id "
+                        + "JOIN directories d ON d.id = p.directory_id "
+                        + "WHERE m.batch_id IN (:batchIds) AND m.status = '" + MapStatus.PENDING.name() + "' "
+                        + "ORDER BY m.map_id",
+                new MapSqlParameterSource("batchIds", batchIds),
+                (rs, i) -> {
+                    Timestamp modified = rs.getTimestamp(7);
+                    return new OutboxRow(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getString(4), rs.getString(5),
+                            rs.getLong(6), modified != null ? modified.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli() : 0);
+                });
+    }
+
+    public void markMapRowsPublished(Collection<Long> mapIds) {
+        if (mapIds.isEmpty()) {
+            return;
+        }
+        jdbc.update("UPDATE photo_ingest_map SET status = '" + MapStatus.PUBLISHED.name()
+                        + "', publish_attempts = publish_attempts + 1, last_publish_error = NULL WHERE map_id IN (:mapIds)",
+                new MapSqlParameterSource("mapIds", mapIds));
+    }
+
+    /**
+     * Records a failed attempt per map id; a row becomes FAILED once it has used up
+     * {@code maxAttempts}. MySQL applies SET clauses left to right, so the CASE sees
+     * the incremented attempt count.
+     */
+    public void markMapRowsFailed(Map<Long, String> errors, int maxAttempts) {
+        if (errors.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = errors.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("mapId", e.getKey())
+                        .addValue("error", e.getValue())
+                        .addValue("maxAttempts", maxAttempts))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("UPDATE photo_ingest_map SET publish_attempts = publish_attempts + 1, last_publish_error = :error, "
+                + "status = CASE WHEN publish_attempts >= :maxAttempts THEN '" + MapStatus.FAILED.name()
+                + "' ELSE status END WHERE map_id = :mapId", rows);
+    }
+
+    /**
+     * Closes batches that have no PENDING rows left: PUBLISHED when every row made it,
+     * FAILED when some row ran out of attempts. Batches with retries outstanding stay READY.
+     */
+    public void settleBatches(Collection<Long> batchIds) {
+        jdbc.update("UPDATE ingest_batches b SET "
+                        + "b.status = CASE WHEN EXISTS (SELECT 1 FROM photo_ingest_map m WHERE m.batch_id = b.batch_id "
+                        + "AND m.status = '" + MapStatus.FAILED.name() + "') THEN '" + BatchStatus.FAILED.name()
+                        + "' ELSE '" + BatchStatus.PUBLISHED.name() + "' END, b.published_at = :now "
+                        + "WHERE b.batch_id IN (:batchIds) AND NOT EXISTS (SELECT 1 FROM photo_ingest_map m "
+                        + "WHERE m.batch_id = b.batch_id AND m.status = '" + MapStatus.PENDING.name() + "')",
+                new MapSqlParameterSource()
+                        .addValue("batchIds", batchIds)
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    /** Moves fully scanned jobs with no READY batches left to PUBLISHED. */
+    public int promotePublishedJobs() {
+        return jdbc.update("UPDATE ingest_jobs j SET j.status = '" + JobStatus.PUBLISHED.name() + "' "
+                        + "WHERE j.status = '" + JobStatus.SCANNED.name() + "' AND NOT EXISTS (SELECT 1 FROM ingest_batches b "
+                        + "WHERE b.job_id = j.job_id AND b.status = '" + BatchStatus.READY.name() + "')",
+                new MapSqlParameterSource());
+    }
+
+    /**
+     * Adds counter deltas collected in memory since the last flush, in one statement
+     * per job (see {@link com.homesync.backup.homesync.service.progress.IngestProgressService}).
+     */
+    public void addJobProgress(String jobId, long scanned, long inserted, long published, long processed) {
+        jdbc.update("UPDATE ingest_jobs SET scanned_count = COALESCE(scanned_count, 0) + :scanned, "
+                        + "inserted_count = COALESCE(inserted_count, 0) + :inserted, "
+                        + "published_count = COALESCE(published_count, 0) + :published, "
+                        + "processed_count = COALESCE(processed_count, 0) + :processed WHERE job_id = :jobId",
+                new MapSqlParameterSource()
+                        .addValue("jobId", jobId)
+                        .addValue("scanned", scanned)
+                        .addValue("inserted", inserted)
+                        .addValue("published", published)
+                        .addValue("processed", processed));
+    }
+
+    /**
+     * Moves those of the given PUBLISHED jobs whose published photos have all been
+     * processed to COMPLETED.
+     */
+    public int completeProcessedJobs(Collection<String> jobIds) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return jdbc.update("UPDATE ingest_jobs SET status = '" + JobStatus.COMPLETED.name() + "', finished_at = :now "
+                        + "WHERE job_id IN (:jobIds) AND status = '" + JobStatus.PUBLISHED.name() + "' "
+                        + "AND COALESCE(processed_count, 0) >= COALESCE(published_count, 0)",
+                new MapSqlParameterSource()
+                        .addValue("jobIds", jobIds)
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    /**
+     * Moves those of the given PUBLISHED jobs that have no published photo still
+     * waiting for its ML outcome to COMPLETED, whatever their counters say, and
+     * raises processed_count to published_count. Catches jobs whose in-memory counts
+     * fell short, e.g. after a restart between a callback and the next flush.
+     */
+    public int completeSettledJobs(Collection<String> jobIds) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return jdbc.update("UPDATE ingest_jobs j SET j.status = '" + JobStatus.COMPLETED.name() + "', j.finished_at = :now, "
+                        + "j.processed_count = GREATEST(COALESCE(j.processed_count, 0), COALESCE(j.published_count, 0)) "
+                        + "WHERE j.job_id IN (:jobIds) AND j.status = '" + JobStatus.PUBLISHED.name() + "' "
+                        + "AND NOT EXISTS (SELECT 1 FROM photo_ingest_map m JOIN photos p ON p.id = m.photo_id "
+                        + "WHERE m.job_id = j.job_id AND m.status = '" + MapStatus.PUBLISHED.name() + "' "
+                        + "AND p.status NOT IN ('" + PhotoStatus.PROCESSED.name() + "', '" + PhotoStatus.FAILED.name() + "'))",
+                new MapSqlParameterSource()
+                        .addValue("jobIds", jobIds)
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    public Map<String, JobStatus> findJobStatuses(Collection<String> jobIds) {
+        Map<String, JobStatus> statuses = new HashMap<>();
+        if (jobIds.isEmpty()) {
+            return statuses;
+        }
+        jdbc.query("SELECT job_id, status FROM ingest_jobs WHERE job_id IN (:jobIds)",
+                new MapSqlParameterSource("jobIds", jobIds),
+                rs -> {
+                    statuses.put(rs.getString(1), JobStatus.valueOf(rs.getString(2)));
+                });
+        return statuses;
+    }
+
+    /** Ids of jobs in one of the given states. */
+    public List<String> findJobIds(Collection<JobStatus> statuses) {
+        return jdbc.queryForList("SELECT job_id FROM ingest_jobs WHERE status IN (:statuses)",
+                new MapSqlParameterSource("statuses", statuses.stream().map(Enum::name).toList()), String.class);
+    }
+
+    /**
+     * Published map rows of the given photos in jobs that are still running; a photo
+     * re-ingested later does not count again for a finished job.
+     */
+    public List<PublishedRow> findPublishedInRunningJobs(Collection<Long> photoIds) {
+        if (photoIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbc.query("SELECT m.photo_id, m.job_id, m.inserted_at, j.priority FROM photo_ingest_map m "
+                        + "JOIN ingest_jobs j ON j.job_id = m.job_id "
+                        + "WHERE m.photo_id IN (:photoIds) AND m.status = '" + MapStatus.PUBLISHED.name() + "' "
+                        + "AND j.status IN ('" + JobStatus.SCANNING.name() + "', '" + JobStatus.SCANNED.name() + "', '"
+                        + JobStatus.PUBLISHED.name() + "', '" + JobStatus.WATCHING.name() + "')",
+                new MapSqlParameterSource("photoIds", photoIds),
+                (rs, i) -> {
+                    Timestamp insertedAt = rs.getTimestamp(3);
+                    String priority = rs.getString(4);
+                    return new PublishedRow(rs.getLong(1), rs.getString(2),
+                            insertedAt != null ? insertedAt.toLocalDateTime() : null,
+                            priority != null ? IngestPriority.valueOf(priority) : IngestPriority.BULK);
+                });
+    }
+
+    /** Adds one hashing round of a job: files and bytes hashed, wall time spent, duplicates found. */
+    public void addHashStats(String jobId, int files, long bytes, long millis, int duplicates) {
+        jdbc.update("UPDATE ingest_jobs SET hashed_count = COALESCE(hashed_count, 0) + :files, "
+                        + "hashed_bytes = COALESCE(hashed_bytes, 0) + :bytes, "
+                        + "hash_millis = COALESCE(hash_millis, 0) + :millis, "
+                        + "duplicate_count = COALESCE(duplicate_count, 0) + :duplicates WHERE job_id = :jobId",
+                new MapSqlParameterSource()
+                        .addValue("jobId", jobId)
+                        .addValue("files", files)
+                        .addValue("bytes", bytes)
+                        .addValue("millis", millis)
+                        .addValue("duplicates", duplicates));
+    }
+
+    /** Adds to the counters of a long-running job such as a watched root, whose writes are not cumulative. */
+    public void incrementJobCounts(String jobId, long scanned, long inserted) {
+        jdbc.update("UPDATE ingest_jobs SET scanned_count = COALESCE(scanned_count, 0) + :scanned, "
+                        + "inserted_count = COALESCE(inserted_count, 0) + :inserted WHERE job_id = :jobId",
+                new MapSqlParameterSource()
+                        .addValue("jobId", jobId)
+                        .addValue("scanned", scanned)
+                        .addValue("inserted", inserted));
+    }
+
+    public int nextBatchIndex(String jobId) {
+        Integer next = jdbc.queryForObject("SELECT COALESCE(MAX(batch_index), -1) + 1 FROM ingest_batches WHERE job_id = :jobId",
+                new MapSqlParameterSource("jobId", jobId), Integer.class);
+        return next != null ? next : 0;
+    }
+
+    public void addDeleted(String jobId, int deleted) {
+        jdbc.update("UPDATE ingest_jobs SET deleted_count = COALESCE(deleted_count, 0) + :deleted WHERE job_id = :jobId",
+                new MapSqlParameterSource()
+                        .addValue("jobId", jobId)
+                        .addValue("deleted", deleted));
+    }
+
+    public void updateJobStatus(String jobId, JobStatus status) {
+        jdbc.update("UPDATE ingest_jobs SET status = :status WHERE job_id = :jobId",
+                new MapSqlParameterSource()
+                        .addValue("jobId", jobId)
+                        .addValue("status", status.name()));
+    }
+
+    public void finishJob(String jobId, JobStatus status) {
+        jdbc.update("UPDATE ingest_jobs SET status = :status, finished_at = :now WHERE job_id = :jobId",
+                new MapSqlParameterSource()
+                        .addValue("jobId", jobId)
+                        .addValue("status", status.name())
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    public record PublishedRow(long photoId, String jobId, LocalDateTime insertedAt, IngestPriority priority) {
+    }
+
+    /** filesize and modifiedMillis are 0 when not stored. */
+    public record OutboxRow(long mapId, long photoId, long batchId, String jobId, String path, long filesize,
+                            long modifiedMillis) {
+    }
+}
@@ -0,0 +1,81 @@
+package com.homesync.backup.homesync.repository;
+
+import com.homesync.backup.homesync.service.scan.DirectoryManifest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes scan_manifests for incremental ingest. A run reads every
+ * manifest under its root once and writes back only directories that changed.
+ */
+@Repository
+public class ManifestJdbcRepository {
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public ManifestJdbcRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Manifests of {@code root} and every directory below it, keyed by directory path. */
+    public Map<String, DirectoryManifest> findUnder(String root) {
+        Map<String, DirectoryManifest> manifests = new HashMap<>();
+        String prefix = (root.endsWith(File.separator) ? root : root + File.separator)
+                .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        jdbc.query("SELECT dir_path, dir_mtime, entry_count, entries, scanned_at FROM scan_manifests "
+                        + "WHERE dir_path = :root OR dir_path LIKE :prefix",
+                new MapSqlParameterSource()
+                        .addValue("root", root)
+                        .addValue("prefix", prefix),
+                rs -> {
+                    String dir = rs.getString(1);
+                    manifests.put(dir, DirectoryManifest.decode(dir, rs.getLong(2), rs.getInt(3), rs.getBytes(4), rs.getLong(5)));
+                });
+        return manifests;
+    }
+
+    public void upsert(List<DirectoryManifest> manifests) {
+        if (manifests.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = manifests.stream()
+                .map(m -> new MapSqlParameterSource()
+                        .addValue("hash", hash(m.dir()))
+                        .addValue("dir", m.dir())
+                        .addValue("mtime", m.mtime())
+                        .addValue("entryCount", m.entryCount())
+                        .addValue("entries", m.encodeEntries())
+                        .addValue("scannedAt", m.scannedAt()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbc.batchUpdate("INSERT INTO scan_manifests (dir_hash, dir_path, dir_mtime, entry_count, entries, scanned_at) "
+                + "VALUES (:hash, :dir, :mtime, :entryCount, :entries, :scannedAt) "
+                + "ON DUPLICATE KEY UPDATE dir_mtime = VALUES(dir_mtime), entry_count = VALUES(entry_count), "
+                + "entries = VALUES(entries), scanned_at = VALUES(scanned_at)", rows);
+    }
+
+    public void delete(Collection<String> dirs) {
+        if (dirs.isEmpty()) {
+            return;
+        }
+        List<byte[]> hashes = dirs.stream().map(ManifestJdbcRepository::hash).toList();
+        jdbc.update("DELETE FROM scan_manifests WHERE dir_hash IN (:hashes)", new MapSqlParameterSource("hashes", hashes));
+    }
+
+    static byte[] hash(String dir) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(dir.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
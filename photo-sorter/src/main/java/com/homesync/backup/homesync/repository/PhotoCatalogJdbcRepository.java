@@ -0,0 +1,140 @@
+package com.homesync.backup.homesync.repository;
+
+import com.homesync.backup.homesync.dto.PhotoSummary;
+import com.homesync.backup.homesync.model.enums.PhotoStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Read side of the photo catalog. Pages are keyset-paginated on the primary key
+ * ({@code id > :after ORDER BY id LIMIT n}), so a page deep into the catalog costs
+ * the same index range scan as the first one. Status filters ride on
+ * idx_photos_status (status, id), person filters on idx_photo_persons_person
+ * (person_id, photo_id).
+ *
+ * With a date filter, photos are ordered by (taken_at, id) instead and range-scan
+ * idx_photos_taken; taken_at is a stored generated column, capture time falling
+ * back to the file mtime. The cursor is still a photo id: its taken_at is looked
+ * up to continue after it.
+ *
+ * Exports go through a second template with MySQL's streaming fetch size, which
+ * reads rows off a forward-only cursor instead of buffering the whole result.
+ */
+@Repository
+public class PhotoCatalogJdbcRepository {
+
+    private static final String COLUMNS = "p.id, CONCAT(d.path, p.filename), p.filename, p.filesize, p.width, p.height, p.captured_at, "
+            + "p.modified_at, p.status, p.person_ids";
+
+    private static final RowMapper<PhotoSummary> SUMMARY = (rs, i) -> {
+        long filesize = rs.getLong(4);
+        boolean noFilesize = rs.wasNull();
+        int width = rs.getInt(5);
+        boolean noWidth = rs.wasNull();
+        int height = rs.getInt(6);
+        boolean noHeight = rs.wasNull();
+        String status = rs.getString(9);
+        return new PhotoSummary(rs.getLong(1), rs.getString(2), rs.getString(3),
+                noFilesize ? null : filesize, noWidth ? null : width, noHeight ? null : height,
+                toLocal(rs.getTimestamp(7)), toLocal(rs.getTimestamp(8)),
+                status != null ? PhotoStatus.valueOf(status) : null, rs.getString(10));
+    };
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate streamingJdbc;
+
+    public PhotoCatalogJdbcRepository(NamedParameterJdbcTemplate jdbc, DataSource dataSource) {
+        this.jdbc = jdbc;
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        this.streamingJdbc = new NamedParameterJdbcTemplate(streaming);
+    }
+
+    /**
+     * Up to {@code limit} photos matching {@code filter} after the {@code after} id,
+     * in id order, or in (taken_at, id) order when the filter has dates.
+     */
+    public List<PhotoSummary> page(Filter filter, Long after, boolean descending, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", limit);
+        if (after != null && filter.byDate()) {
+            List<Timestamp> takenAt = jdbc.queryForList("SELECT taken_at FROM photos WHERE id = :id",
+                    new MapSqlParameterSource("id", after), Timestamp.class);
+            if (takenAt.isEmpty() || takenAt.get(0) == null) {
+                // the cursor row is gone or undated; restarting is better than failing
+                after = null;
+            } else {
+                params.addValue("afterTakenAt", takenAt.get(0));
+            }
+        }
+        String sql = select(filter, after, descending, params) + " LIMIT :limit";
+        return jdbc.query(sql, params, SUMMARY);
+    }
+
+    /** Hands every photo matching {@code filter} to {@code sink} while reading, in page order. */
+    public void stream(Filter filter, Consumer<PhotoSummary> sink) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        streamingJdbc.query(select(filter, null, false, params), params, rs -> {
+            sink.accept(SUMMARY.mapRow(rs, 0));
+        });
+    }
+
+    private static String select(Filter filter, Long after, boolean descending, MapSqlParameterSource params) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM photos p JOIN directories d ON d.id = p.directory_id");
+        if (filter.personId() != null) {
+            sql.append(" JOIN photo_persons pp ON pp.photo_id = p.id AND pp.person_id = :personId");
+            params.addValue("personId", filter.personId());
+        }
+        sql.append(" WHERE p.deleted_at IS NULL");
+        if (filter.status() != null) {
+            sql.append(" AND p.status = :status");
+            params.addValue("status", filter.status().name());
+        }
+        if (filter.from() != null) {
+            sql.append(" AND p.taken_at >= :from");
+            params.addValue("from", Timestamp.valueOf(filter.from()));
+        }
+        if (filter.to() != null) {
+            sql.append(" AND p.taken_at < :to");
+            params.addValue("to", Timestamp.valueOf(filter.to()));
+        }
+        String op = descending ? "<" : ">";
+        String direction = descending ? " DESC" : "";
+        if (filter.byDate()) {
+            if (after != null) {
+                // expanded rather than a row comparison, which MySQL does not turn into a range
+                sql.append(" AND (p.taken_at ").append(op).append(" :afterTakenAt OR (p.taken_at = :afterTakenAt AND p.id ")
+                        .append(op).append(" :after))");
+                params.addValue("after", after);
+            }
+            sql.append(" ORDER BY p.taken_at").append(direction).append(", p.id").append(direction);
+        } else {
+            if (after != null) {
+                sql.append(" AND p.id ").append(op).append(" :after");
+                params.addValue("after", after);
+            }
+            sql.append(" ORDER BY p.id").append(direction);
+        }
+        return sql.toString();
+    }
+
+    private static LocalDateTime toLocal(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    /** Catalog filters; null fields do not filter. {@code to} is exclusive. */
+    public record Filter(PhotoStatus status, Long personId, LocalDateTime from, LocalDateTime to) {
+
+        boolean byDate() {
+            return from != null || to != null;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.homesync.backup.homesync.repository;
+
+import com.homesync.backup.homesync.model.enums.PhotoStatus;
+import com.homesync.backup.homesync.service.metadata.ImageMetadata;
+import com.homesync.backup.homesync.service.scan.ScannedFile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set-based access to the photos table for the ingest path. JPA saves one row per
+ * statement because of IDENTITY keys, so bulk work goes through plain JDBC here.
+ *
+ * Photos are stored as (directory_id, filename); their path is the directory path
+ * followed by the filename (see {@link DirectoryJdbcRepository}). Lookups by path
+ * narrow down by directory hash and filename first, which ride on the directories
+ * unique key and uk_photos_location, and then match the full path.
+ */
+@Repository
+public class PhotoJdbcRepository {
+
+    private static final String PATH = "CONCAT(d.path, p.filename)";
+    private static final String WITH_DIRECTORY = "photos p JOIN directories d ON d.id = p.directory_id";
+    private static final String PATH_IN = "d.dir_hash IN (:dirHashes) AND p.filename IN (:filenames) AND "
+            + PATH + " IN (:paths)";
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public PhotoJdbcRepository(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Returns path -> id for the given paths that already exist. */
+    public Map<String, Long> findIdsByPaths(Collection<String> paths) {
+        Map<String, Long> ids = new HashMap<>();
+        if (paths.isEmpty()) {
+            return ids;
+        }
+        jdbc.query("SELECT p.id, " + PATH + " FROM " + WITH_DIRECTORY + " WHERE " + PATH_IN, byPaths(paths),
+                rs -> {
+                    ids.put(rs.getString(2), rs.getLong(1));
+                });
+        return ids;
+    }
+
+    /** Returns path -> stored size, mtime and deletion flag for the given paths that already exist. */
+    public Map<String, PhotoState> findStatesByPaths(Collection<String> paths) {
+        Map<String, PhotoState> states = new HashMap<>();
+        if (paths.isEmpty()) {
+            return states;
+        }
+        jdbc.query("SELECT p.id, " + PATH + ", p.filesize, p.modified_at, p.deleted_at IS NOT NULL FROM "
+                        + WITH_DIRECTORY + " WHERE " + PATH_IN, byPaths(paths),
+                rs -> {
+                    long size = rs.getLong(3);
+                    Long filesize = rs.wasNull() ? null : size;
+                    Timestamp modified = rs.getTimestamp(4);
+                    Long modifiedMillis = modified != null ? modified.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli() : null;
+                    states.put(rs.getString(2), new PhotoState(rs.getLong(1), filesize, modifiedMillis, rs.getBoolean(5)));
+                });
+        return states;
+    }
+
+    /**
+     * Multi-row INSERT IGNORE; rows whose path already exists are skipped by the
+     * unique key. {@code directoryIds} must hold the id of every file's directory.
+     */
+    public void insertIgnore(List<ScannedFile> files, Map<String, Long> directoryIds) {
+        if (files.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        MapSqlParameterSource[] rows = new MapSqlParameterSource[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            ScannedFile f = files.get(i);
+            String dir = DirectoryJdbcRepository.directoryOf(f.path());
+            Long directoryId = directoryIds.get(dir);
+            if (directoryId == null) {
+                // INSERT IGNORE would store 0 for a NULL directory_id instead of failing
+                throw new IllegalStateException("No directory id for " + dir);
+            }
+            rows[i] = new MapSqlParameterSource()
+                    .addValue("directoryId", directoryId)
+                    .addValue("filename", f.path().substring(dir.length()))
+                    .addValue("filesize", f.size())
+                    .addValue("modifiedAt", toTimestamp(f.modifiedMillis()))
+                    .addValue("insertedAt", now)
+                    .addValue("status", PhotoStatus.READY.name());
+            addHeaderValues(rows[i], f);
+        }
+        jdbc.batchUpdate("INSERT IGNORE INTO photos (directory_id, filename, filesize, modified_at, width, height, "
+                + "captured_at, inserted_at, status) VALUES (:directoryId, :filename, :filesize, :modifiedAt, :width, "
+                + ":height, :capturedAt, :insertedAt, :status)", rows);
+    }
+
+    /**
+     * Stores the new size and mtime of files changed on disk and sends them back to
+     * READY so they are processed again, along with the header values read from the
+     * new contents. Their person_ids, content hash and canonical link are cleared,
+     * so dedup hashes the new contents; hashes they owned must be released first (see
+     * {@link com.homesync.backup.homesync.service.dedup.DedupService#releaseCanonical}).
+     * Keyed by photo id.
+     */
+    public void refreshChanged(Map<Long, ScannedFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] rows = new MapSqlParameterSource[files.size()];
+        int i = 0;
+        for (Map.Entry<Long, ScannedFile> entry : files.entrySet()) {
+            ScannedFile f = entry.getValue();
+            rows[i] = new MapSqlParameterSource()
+                    .addValue("id", entry.getKey())
+                    .addValue("filesize", f.size())
+                    .addValue("modifiedAt", toTimestamp(f.modifiedMillis()))
+                    .addValue("status", PhotoStatus.READY.name());
+            addHeaderValues(rows[i++], f);
+        }
+        jdbc.batchUpdate("UPDATE photos SET filesize = :filesize, modified_at = :modifiedAt, status = :status, "
+                + "width = :width, height = :height, captured_at = :capturedAt, deleted_at = NULL, "
+                + "person_ids = NULL, content_hash = NULL, canonical_photo_id = NULL WHERE id = :id", rows);
+    }
+
+    /** Dimensions and capture time from the file header; unknown values become NULL. */
+    private static void addHeaderValues(MapSqlParameterSource row, ScannedFile f) {
+        LocalDateTime capturedAt = ImageMetadata.toCapturedAt(f.capturedSeconds());
+        row.addValue("width", f.width() > 0 ? f.width() : null)
+                .addValue("height", f.height() > 0 ? f.height() : null)
+                .addValue("capturedAt", capturedAt != null ? Timestamp.valueOf(capturedAt) : null);
+    }
+
+    /**
+     * Flags photos whose files disappeared; returns the ids that were not flagged
+     * before. Their rows stay locked until the surrounding transaction ends.
+     */
+    public List<Long> markDeleted(Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return List.of();
+        }
+        return flagDeleted(jdbc.queryForList("SELECT p.id FROM " + WITH_DIRECTORY + " WHERE " + PATH_IN
+                + " AND p.deleted_at IS NULL FOR UPDATE", byPaths(paths), Long.class));
+    }
+
+    /**
+     * Flags every photo in {@code dir} or below it, for a directory that was removed;
+     * returns the ids that were not flagged before.
+     */
+    public List<Long> markDeletedUnder(String dir) {
+        String prefix = dir.endsWith(File.separator) ? dir : dir + File.separator;
+        String pattern = prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+        return flagDeleted(jdbc.queryForList("SELECT p.id FROM " + WITH_DIRECTORY
+                        + " WHERE d.path LIKE :pattern ESCAPE '!' AND p.deleted_at IS NULL FOR UPDATE",
+                new MapSqlParameterSource("pattern", pattern), Long.class));
+    }
+
+    private List<Long> flagDeleted(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            jdbc.update("UPDATE photos SET deleted_at = :now WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", ids).addValue("now", Timestamp.valueOf(LocalDateTime.now())));
+        }
+        return ids;
+    }
+
+    public void clearDeleted(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbc.update("UPDATE photos SET deleted_at = NULL WHERE id IN (:ids)", new MapSqlParameterSource("ids", ids));
+    }
+
+    /** Ids among {@code ids} whose status is already {@code status}. */
+    public Set<Long> findIdsWithStatus(Collection<Long> ids, PhotoStatus status) {
+        Set<Long> found = new HashSet<>();
+        if (ids.isEmpty()) {
+            return found;
+        }
+        jdbc.query("SELECT id FROM photos WHERE id IN (:ids) AND status = :status",
+                new MapSqlParameterSource()
+                        .addValue("ids", ids)
+                        .addValue("status", status.name()),
+                rs -> {
+                    found.add(rs.getLong(1));
+                });
+        return found;
+    }
+
+    /** Moves READY photos to PROCESSING in one statement; other states are left alone. */
+    public void markProcessing(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbc.update("UPDATE photos SET status = '" + PhotoStatus.PROCESSING.name() + "' WHERE id IN (:ids) AND status = '"
+                + PhotoStatus.READY.name() + "'", new MapSqlParameterSource("ids", ids));
+    }
+
+    /** Puts failed photos back to READY so they can be processed again. */
+    public void markReady(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbc.update("UPDATE photos SET status = '" + PhotoStatus.READY.name() + "' WHERE id IN (:ids) AND status = '"
+                + PhotoStatus.FAILED.name() + "'", new MapSqlParameterSource("ids", ids));
+    }
+
+    public void markFailed(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbc.update("UPDATE photos SET status = '" + PhotoStatus.FAILED.name() + "' WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", ids));
+    }
+
+    /** Path, content hash and stat values of the given photos, keyed by id. */
+    public Map<Long, PhotoSource> findSources(Collection<Long> ids) {
+        Map<Long, PhotoSource> sources = new HashMap<>();
+        if (ids.isEmpty()) {
+            return sources;
+        }
+        jdbc.query("SELECT p.id, " + PATH + ", p.content_hash, p.filesize, p.modified_at FROM " + WITH_DIRECTORY
+                        + " WHERE p.id IN (:ids)",
+                new MapSqlParameterSource("ids", ids),
+                rs -> {
+                    byte[] hash = rs.getBytes(3);
+                    Timestamp modified = rs.getTimestamp(5);
+                    sources.put(rs.getLong(1), new PhotoSource(rs.getLong(1), rs.getString(2),
+                            hash != null ? HexFormat.of().formatHex(hash) : null, rs.getLong(4),
+                            modified != null ? modified.toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli() : 0));
+                });
+        return sources;
+    }
+
+    /** Parameters of {@link #PATH_IN}. */
+    private static MapSqlParameterSource byPaths(Collection<String> paths) {
+        Map<String, byte[]> dirHashes = new HashMap<>();
+        Set<String> filenames = new HashSet<>();
+        for (String path : paths) {
+            String dir = DirectoryJdbcRepository.directoryOf(path);
+            dirHashes.computeIfAbsent(dir, ManifestJdbcRepository::hash);
+            filenames.add(path.substring(dir.length()));
+        }
+        return new MapSqlParameterSource()
+                .addValue("dirHashes", new ArrayList<>(dirHashes.values()))
+                .addValue("filenames", filenames)
+                .addValue("paths", paths);
+    }
+
+    static Timestamp toTimestamp(long epochMillis) {
+        return Timestamp.valueOf(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC));
+    }
+
+    /** Where a photo's bytes are; contentHash is lowercase hex, null until the dedup stage saw the photo. */
+    public record PhotoSource(long id, String path, String contentHash, long filesize, long modifiedMillis) {
+    }
+
+    public record PhotoState(long id, Long filesize, Long modifiedMillis, boolean deleted) {
+
+        /**
+         * Whether {@code file} differs from the stored row. modified_at is a DATETIME,
+         * which MySQL rounds to whole seconds, so mtimes within a second are equal.
+         */
+        public boolean differsFrom(ScannedFile file) {
+            return filesize == null || filesize != file.size()
+                    || modifiedMillis == null || Math.abs(modifiedMillis - file.modifiedMillis()) >= 1000;
+        }
+    }
+}
@@ -2,11 +2,22 @@ package com.homesync.backup.homesync.repository;
 
 import com.homesync.backup.homesync.model.Photo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 
 @Repository
 public interface PhotoRepository extends JpaRepository<Photo, Long> {
-    Optional<Photo> findByPath(String path);
+
+    /** Looks the path up by directory hash and filename, both unique keys. */
+    default Optional<Photo> findByPath(String path) {
+        String dir = DirectoryJdbcRepository.directoryOf(path);
+        return findByLocation(ManifestJdbcRepository.hash(dir), path.substring(dir.length()));
+    }
+
+    @Query(value = "SELECT p.* FROM photos p JOIN directories d ON d.id = p.directory_id "
+            + "WHERE d.dir_hash = :dirHash AND p.filename = :filename", nativeQuery = true)
+    Optional<Photo> findByLocation(@Param("dirHash") byte[] dirHash, @Param("filename") String filename);
 }
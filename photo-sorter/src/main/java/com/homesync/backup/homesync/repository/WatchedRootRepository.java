@@ -0,0 +1,12 @@
+package com.homesync.backup.homesync.repository;
+
+import com.homesync.backup.homesync.model.WatchedRoot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface WatchedRootRepository extends JpaRepository<WatchedRoot, Long> {
+    Optional<WatchedRoot> findByPath(String path);
+}
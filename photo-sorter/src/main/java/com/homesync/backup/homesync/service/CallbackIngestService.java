@@ -0,0 +1,400 @@
+package com.homesync.backup.homesync.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homesync.backup.homesync.dto.PhotoProcessedCallback;
+import com.homesync.backup.homesync.event.EmbeddingsStoredEvent;
+import com.homesync.backup.homesync.event.EmbeddingsStoredEvent.StoredEmbedding;
+import com.homesync.backup.homesync.event.PhotoPersonsLinkedEvent;
+import com.homesync.backup.homesync.model.enums.PhotoStatus;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.EmbeddingRow;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.PhotoPersonRow;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.PhotoResultRow;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics.Stage;
+import com.homesync.backup.homesync.service.progress.IngestProgressService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Buffers ML callbacks and persists them in JDBC batches. The controller only
+ * validates and enqueues; a fixed set of writer threads drains the buffer and
+ * applies up to {@code callback.batch-size} callbacks per transaction.
+ *
+ * Callbacks are routed to a writer by photo id, so two deliveries of the same
+ * callback never race each other in different transactions. Redeliveries are
+ * dropped by their receipt key (see {@link com.homesync.backup.homesync.model.CallbackReceipt}).
+ *
+ * Detections carrying a valid suggested_person_id are linked to that person;
+ * other detections are stored as unassigned embeddings for the clustering stage.
+ * Entries in new_persons create a person with that embedding as its primary one.
+ * Results are copied to photos linked as duplicates of the processed ones (see
+ * {@link com.homesync.backup.homesync.service.dedup.DedupService}).
+ * After each commit the inserted embeddings are announced as an {@link EmbeddingsStoredEvent}
+ * and the new person links, duplicates included, as a {@link PhotoPersonsLinkedEvent};
+ * the photos count as processed for the jobs that published them.
+ *
+ * A callback whose transaction fails is put back on its writer's queue after an
+ * exponential backoff. Once {@code callback.retry.max-attempts} retries have
+ * failed, its photo is marked FAILED, so the job can complete and the photo be
+ * processed again; the callback's receipt was never stored, so a redelivery by
+ * the ML service still applies.
+ */
+@Service
+public class CallbackIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(CallbackIngestService.class);
+
+    private final CallbackJdbcRepository callbackJdbc;
+    private final ApplicationEventPublisher events;
+    private final IngestProgressService progress;
+    private final PipelineMetrics metrics;
+    private final TransactionTemplate tx;
+    private final ObjectMapper mapper;
+    private final int writerThreads;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final List<BlockingQueue<PendingCallback>> queues = new ArrayList<>();
+    private ExecutorService writers;
+    private ScheduledExecutorService retries;
+    private volatile boolean running;
+
+    public CallbackIngestService(CallbackJdbcRepository callbackJdbc,
+                                 ApplicationEventPublisher events,
+                                 IngestProgressService progress,
+                                 PipelineMetrics metrics,
+                                 PlatformTransactionManager transactionManager,
+                                 ObjectMapper mapper,
+                                 @Value("${callback.writer.threads:4}") int writerThreads,
+                                 @Value("${callback.buffer-capacity:20000}") int bufferCapacity,
+                                 @Value("${callback.batch-size:500}") int batchSize,
+                                 @Value("${callback.retry.max-attempts:8}") int maxAttempts,
+                                 @Value("${callback.retry.initial-backoff-ms:1000}") long initialBackoffMs,
+                                 @Value("${callback.retry.max-backoff-ms:60000}") long maxBackoffMs) {
+        this.callbackJdbc = callbackJdbc;
+        this.events = events;
+        this.progress = progress;
+        this.metrics = metrics;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.mapper = mapper;
+        this.writerThreads = writerThreads;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        for (int i = 0; i < writerThreads; i++) {
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, bufferCapacity / writerThreads)));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        AtomicInteger n = new AtomicInteger();
+        writers = Executors.newFixedThreadPool(writerThreads, r -> new Thread(r, "callback-writer-" + n.getAndIncrement()));
+        for (BlockingQueue<PendingCallback> queue : queues) {
+            writers.execute(() -> drain(queue));
+        }
+        retries = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "callback-retry"));
+    }
+
+    /** Writers finish whatever is buffered before the application stops; pending retries are dropped. */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        int dropped = retries.shutdownNow().size();
+        if (dropped > 0) {
+            log.warn("Dropping {} callbacks waiting for a retry; their photos stay PROCESSING", dropped);
+        }
+        running = false;
+        writers.shutdown();
+        writers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Validates the callback and buffers it. Returns false when the buffer of its
+     * writer is full, in which case the caller should ask the ML service to retry.
+     *
+     * @throws IllegalArgumentException when the payload is unusable
+     */
+    public boolean enqueue(PhotoProcessedCallback callback) {
+        PendingCallback pending = toPending(callback);
+        return queueOf(pending).offer(pending);
+    }
+
+    private BlockingQueue<PendingCallback> queueOf(PendingCallback pending) {
+        return queues.get((int) Math.floorMod(pending.photoId, (long) queues.size()));
+    }
+
+    public int buffered() {
+        int total = 0;
+        for (BlockingQueue<PendingCallback> queue : queues) {
+            total += queue.size();
+        }
+        return total;
+    }
+
+    private void drain(BlockingQueue<PendingCallback> queue) {
+        List<PendingCallback> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            PendingCallback first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<PendingCallback> batch) {
+        Applied applied;
+        long started = System.nanoTime();
+        try {
+            applied = tx.execute(status -> apply(batch));
+            metrics.record(Stage.CALLBACK_PERSIST, started);
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                retryLater(batch.get(0), e);
+                return;
+            }
+            // isolate the bad callback instead of losing the whole batch
+            log.warn("Callback batch of {} failed, retrying one by one: {}", batch.size(), e.getMessage());
+            for (PendingCallback pending : batch) {
+                write(List.of(pending));
+            }
+            return;
+        }
+        if (applied == null) {
+            return;
+        }
+        if (!applied.photoIds().isEmpty()) {
+            progress.processedPhotos(applied.photoIds());
+        }
+        if (!applied.embeddings().isEmpty()) {
+            events.publishEvent(new EmbeddingsStoredEvent(applied.embeddings()));
+        }
+        if (!applied.links().isEmpty()) {
+            events.publishEvent(new PhotoPersonsLinkedEvent(applied.links()));
+        }
+    }
+
+    private void retryLater(PendingCallback pending, Exception cause) {
+        if (pending.attempts >= maxAttempts) {
+            markFailed(pending, cause);
+            return;
+        }
+        long delayMs = Math.min(maxBackoffMs, initialBackoffMs << Math.min(pending.attempts, 20));
+        log.warn("Callback for photo {} failed (retry {} of {}), retrying in {} ms: {}",
+                pending.photoId, pending.attempts + 1, maxAttempts, delayMs, cause.getMessage());
+        schedule(pending.retried(), delayMs);
+    }
+
+    private void markFailed(PendingCallback pending, Exception cause) {
+        try {
+            tx.executeWithoutResult(status -> callbackJdbc.updatePhotoResults(
+                    List.of(new PhotoResultRow(pending.photoId, PhotoStatus.FAILED.name(), null))));
+        } catch (Exception e) {
+            // the database is still unreachable; keep the callback rather than leave the photo PROCESSING
+            log.warn("Could not mark photo {} FAILED, retrying in {} ms: {}", pending.photoId, maxBackoffMs, e.getMessage());
+            schedule(pending, maxBackoffMs);
+            return;
+        }
+        log.error("Callback for photo {} failed {} times; photo marked FAILED", pending.photoId, pending.attempts + 1, cause);
+        progress.processedPhotos(List.of(pending.photoId));
+    }
+
+    private void schedule(PendingCallback pending, long delayMs) {
+        if (retries.isShutdown()) {
+            return;
+        }
+        retries.schedule(() -> {
+            if (!queueOf(pending).offer(pending)) {
+                schedule(pending, delayMs);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Applies the batch and returns the embeddings and person links it inserted, and the photos it settled. */
+    Applied apply(List<PendingCallback> batch) {
+        Map<String, PendingCallback> byKey = new LinkedHashMap<>();
+        for (PendingCallback pending : batch) {
+            byKey.putIfAbsent(pending.key, pending);
+        }
+        byKey.keySet().removeAll(callbackJdbc.findReceipts(byKey.keySet()));
+        if (byKey.isEmpty()) {
+            return new Applied(List.of(), List.of(), List.of());
+        }
+        List<PendingCallback> fresh = new ArrayList<>(byKey.values());
+        Map<String, Long> receipts = new HashMap<>();
+        Set<Long> suggested = new HashSet<>();
+        List<String> newPersonNames = new ArrayList<>();
+        for (PendingCallback pending : fresh) {
+            receipts.put(pending.key, pending.photoId);
+            for (Face face : pending.faces) {
+                if (face.suggestedPersonId != null) {
+                    suggested.add(face.suggestedPersonId);
+                }
+            }
+            for (NewFace person : pending.newPersons) {
+                newPersonNames.add(person.displayName);
+            }
+        }
+        callbackJdbc.insertReceipts(receipts);
+        Set<Long> validPersons = callbackJdbc.findExistingPersons(suggested);
+        List<Long> newPersonIds = callbackJdbc.insertPersons(newPersonNames);
+
+        List<EmbeddingRow> embeddings = new ArrayList<>();
+        List<Long> embeddingOwners = new ArrayList<>();
+        List<PhotoPersonRow> links = new ArrayList<>();
+        List<PhotoResultRow> results = new ArrayList<>(fresh.size());
+        int nextNewPerson = 0;
+        for (PendingCallback pending : fresh) {
+            Set<Long> personIds = new TreeSet<>();
+            for (Face face : pending.faces) {
+                Long personId = face.suggestedPersonId != null && validPersons.contains(face.suggestedPersonId)
+                        ? face.suggestedPersonId : null;
+                embeddings.add(new EmbeddingRow(personId, pending.photoId, face.embedding));
+                embeddingOwners.add(null);
+                if (personId != null) {
+                    personIds.add(personId);
+                }
+            }
+            for (NewFace person : pending.newPersons) {
+                long personId = newPersonIds.get(nextNewPerson++);
+                if (person.embedding != null) {
+                    embeddings.add(new EmbeddingRow(personId, pending.photoId, person.embedding));
+                    embeddingOwners.add(personId);
+                }
+                personIds.add(personId);
+            }
+            for (Long personId : personIds) {
+                links.add(new PhotoPersonRow(pending.photoId, personId));
+            }
+            results.add(new PhotoResultRow(pending.photoId, pending.status.name(),
+                    pending.status == PhotoStatus.PROCESSED ? toJson(personIds) : null));
+        }
+
+        List<Long> embeddingIds = callbackJdbc.insertEmbeddings(embeddings);
+        Map<Long, Long> primaryEmbeddings = new HashMap<>();
+        for (int i = 0; i < embeddingOwners.size(); i++) {
+            if (embeddingOwners.get(i) != null) {
+                primaryEmbeddings.put(embeddingOwners.get(i), embeddingIds.get(i));
+            }
+        }
+        callbackJdbc.setPrimaryEmbeddings(primaryEmbeddings);
+        callbackJdbc.insertPhotoPersons(links);
+        callbackJdbc.updatePhotoResults(results);
+        List<PhotoPersonRow> copied = callbackJdbc.copyResultsToDuplicates(receipts.values());
+
+        List<StoredEmbedding> stored = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            EmbeddingRow row = embeddings.get(i);
+            stored.add(new StoredEmbedding(embeddingIds.get(i), row.personId(), row.photoId(), row.vector()));
+        }
+        List<PhotoPersonsLinkedEvent.Link> linked = new ArrayList<>(links.size() + copied.size());
+        for (PhotoPersonRow link : links) {
+            linked.add(new PhotoPersonsLinkedEvent.Link(link.photoId(), link.personId()));
+        }
+        for (PhotoPersonRow link : copied) {
+            linked.add(new PhotoPersonsLinkedEvent.Link(link.photoId(), link.personId()));
+        }
+        return new Applied(stored, linked, new ArrayList<>(receipts.values()));
+    }
+
+    PendingCallback toPending(PhotoProcessedCallback callback) {
+        if (callback.getPhotoId() == null) {
+            throw new IllegalArgumentException("photo_id is required");
+        }
+        PhotoStatus status = callback.getStatus() == null
+                ? PhotoStatus.PROCESSED : PhotoStatus.valueOf(callback.getStatus().toUpperCase(Locale.ROOT));
+        if (status != PhotoStatus.PROCESSED && status != PhotoStatus.FAILED) {
+            throw new IllegalArgumentException("status must be PROCESSED or FAILED");
+        }
+        List<Face> faces = new ArrayList<>();
+        if (callback.getDetections() != null) {
+            for (PhotoProcessedCallback.Detection detection : callback.getDetections()) {
+                faces.add(new Face(decode(detection.getEmbedding()), detection.getSuggestedPersonId()));
+            }
+        }
+        List<NewFace> newPersons = new ArrayList<>();
+        if (callback.getNewPersons() != null) {
+            for (PhotoProcessedCallback.NewPerson person : callback.getNewPersons()) {
+                newPersons.add(new NewFace(decode(person.getEmbedding()), person.getSuggestedDisplayName()));
+            }
+        }
+        return new PendingCallback(receiptKey(callback), callback.getPhotoId(), status, faces, newPersons, 0);
+    }
+
+    /** callback_id when present, otherwise photo id plus model version. */
+    static String receiptKey(PhotoProcessedCallback callback) {
+        if (callback.getCallbackId() != null && !callback.getCallbackId().isBlank()) {
+            return "cb:" + callback.getCallbackId();
+        }
+        Object model = callback.getMeta() != null ? callback.getMeta().get("model_version") : null;
+        return "photo:" + callback.getPhotoId() + ":" + (model != null ? model : "");
+    }
+
+    private static byte[] decode(String base64) {
+        return base64 == null || base64.isEmpty() ? null : Base64.getDecoder().decode(base64);
+    }
+
+    private String toJson(Set<Long> personIds) {
+        try {
+            return mapper.writeValueAsString(personIds);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    record Applied(List<StoredEmbedding> embeddings, List<PhotoPersonsLinkedEvent.Link> links, List<Long> photoIds) {
+    }
+
+    record PendingCallback(String key, long photoId, PhotoStatus status, List<Face> faces, List<NewFace> newPersons,
+                           int attempts) {
+
+        PendingCallback retried() {
+            return new PendingCallback(key, photoId, status, faces, newPersons, attempts + 1);
+        }
+    }
+
+    record Face(byte[] embedding, Long suggestedPersonId) {
+    }
+
+    record NewFace(byte[] embedding, String displayName) {
+    }
+}
@@ -0,0 +1,219 @@
+package com.homesync.backup.homesync.service;
+
+import com.homesync.backup.homesync.event.PhotoPersonsLinkedEvent;
+import com.homesync.backup.homesync.event.PhotosUnlinkedEvent;
+import com.homesync.backup.homesync.model.IngestBatch;
+import com.homesync.backup.homesync.model.enums.BatchStatus;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.PhotoPersonRow;
+import com.homesync.backup.homesync.repository.DirectoryJdbcRepository;
+import com.homesync.backup.homesync.repository.IngestBatchRepository;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository.PhotoState;
+import com.homesync.backup.homesync.service.dedup.DedupService;
+import com.homesync.backup.homesync.service.index.PhotoPathIndexService;
+import com.homesync.backup.homesync.service.metadata.ImageMetadataReader;
+import com.homesync.backup.homesync.service.scan.DirectoryIdCache;
+import com.homesync.backup.homesync.service.scan.ScannedFile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists one chunk of scanned files: new photos, their ingest batch and the
+ * photo_ingest_map rows, all in a single transaction. Known paths are told apart
+ * through the {@link PhotoPathIndexService}, so a rescan of a known library
+ * mostly answers from memory. With {@code ingest.scan.read-headers}, dimensions and
+ * capture time are read from the headers of new and changed files only.
+ *
+ * Photos that leave or rejoin the person index (deleted, changed, reappeared) are
+ * announced once the transaction commits.
+ */
+@Service
+public class IngestBatchWriter {
+
+    private final PhotoJdbcRepository photoJdbc;
+    private final IngestJdbcRepository ingestJdbc;
+    private final IngestBatchRepository batchRepository;
+    private final PhotoPathIndexService pathIndex;
+    private final DirectoryIdCache directories;
+    private final DedupService dedup;
+    private final CallbackJdbcRepository callbackJdbc;
+    private final ApplicationEventPublisher events;
+    // null when header reading is off
+    private final ImageMetadataReader headers;
+
+    public IngestBatchWriter(PhotoJdbcRepository photoJdbc,
+                             IngestJdbcRepository ingestJdbc,
+                             IngestBatchRepository batchRepository,
+                             PhotoPathIndexService pathIndex,
+                             DirectoryIdCache directories,
+                             DedupService dedup,
+                             CallbackJdbcRepository callbackJdbc,
+                             ApplicationEventPublisher events,
+                             @Value("${ingest.scan.read-headers:true}") boolean readHeaders) {
+        this.photoJdbc = photoJdbc;
+        this.ingestJdbc = ingestJdbc;
+        this.batchRepository = batchRepository;
+        this.pathIndex = pathIndex;
+        this.directories = directories;
+        this.dedup = dedup;
+        this.callbackJdbc = callbackJdbc;
+        this.events = events;
+        this.headers = readHeaders ? new ImageMetadataReader() : null;
+    }
+
+    /**
+     * Writes the chunk and returns the batch it created, or {@code null} when every
+     * file was already known and there is nothing to publish.
+     */
+    @Transactional
+    public WrittenBatch writeChunk(String jobId, int batchIndex, List<ScannedFile> files) {
+        return writeChunk(jobId, batchIndex, files, false);
+    }
+
+    /**
+     * As {@link #writeChunk(String, int, List)}; with {@code refreshChanged} known
+     * photos whose size or mtime differ from the scanned file are reset to READY,
+     * lose their person links and are published again, and known photos flagged
+     * deleted are unflagged.
+     */
+    @Transactional
+    public WrittenBatch writeChunk(String jobId, int batchIndex, List<ScannedFile> files, boolean refreshChanged) {
+        List<String> paths = new ArrayList<>(files.size());
+        for (ScannedFile f : files) {
+            paths.add(f.path());
+        }
+        List<ScannedFile> fresh = new ArrayList<>(files.size());
+        List<String> freshPaths = new ArrayList<>(files.size());
+        // changed photos first, then new ones, each in scan order so a batch follows the directory walk
+        Map<String, Long> ids = new LinkedHashMap<>();
+
+        if (refreshChanged) {
+            // states change with every rescan, so only paths that may exist are read; the rest are new
+            Map<String, PhotoState> states = photoJdbc.findStatesByPaths(pathIndex.mayExist(paths));
+            Map<Long, ScannedFile> modified = new LinkedHashMap<>();
+            List<Long> reappeared = new ArrayList<>();
+            for (ScannedFile f : files) {
+                PhotoState state = states.get(f.path());
+                if (state == null) {
+                    fresh.add(f);
+                    freshPaths.add(f.path());
+                } else if (state.differsFrom(f)) {
+                    modified.put(state.id(), withHeader(f));
+                    ids.put(f.path(), state.id());
+                } else if (state.deleted()) {
+                    reappeared.add(state.id());
+                }
+            }
+            dedup.releaseCanonical(modified.keySet());
+            photoJdbc.refreshChanged(modified);
+            // the worker links the new contents again
+            callbackJdbc.deletePhotoPersons(modified.keySet());
+            photoJdbc.clearDeleted(reappeared);
+            if (!modified.isEmpty()) {
+                publishAfterCommit(new PhotosUnlinkedEvent(List.copyOf(modified.keySet())));
+            }
+            List<PhotoPersonRow> restored = callbackJdbc.findPhotoPersons(reappeared);
+            if (!restored.isEmpty()) {
+                List<PhotoPersonsLinkedEvent.Link> links = new ArrayList<>(restored.size());
+                for (PhotoPersonRow row : restored) {
+                    links.add(new PhotoPersonsLinkedEvent.Link(row.photoId(), row.personId()));
+                }
+                publishAfterCommit(new PhotoPersonsLinkedEvent(links));
+            }
+        } else {
+            Map<String, Long> existing = pathIndex.findIds(paths);
+            for (ScannedFile f : files) {
+                if (!existing.containsKey(f.path())) {
+                    fresh.add(f);
+                    freshPaths.add(f.path());
+                }
+            }
+        }
+
+        if (!fresh.isEmpty()) {
+            fresh.replaceAll(this::withHeader);
+            List<String> dirs = new ArrayList<>(freshPaths.size());
+            for (String path : freshPaths) {
+                dirs.add(DirectoryJdbcRepository.directoryOf(path));
+            }
+            photoJdbc.insertIgnore(fresh, directories.resolve(dirs));
+            Map<String, Long> inserted = photoJdbc.findIdsByPaths(freshPaths);
+            pathIndex.added(inserted);
+            for (String path : freshPaths) {
+                Long id = inserted.get(path);
+                if (id != null) {
+                    ids.put(path, id);
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return null;
+        }
+
+        IngestBatch batch = batchRepository.save(IngestBatch.builder()
+                .jobId(jobId)
+                .batchIndex(batchIndex)
+                .photoCount(ids.size())
+                .status(BatchStatus.READY)
+                .insertedAt(LocalDateTime.now())
+                .build());
+
+        Map<Long, String> photos = new LinkedHashMap<>();
+        ids.forEach((path, id) -> photos.put(id, path));
+        ingestJdbc.insertMapRows(batch.getBatchId(), jobId, photos.keySet());
+        return new WrittenBatch(batch.getBatchId(), photos);
+    }
+
+    /** Flags photos whose files disappeared; returns how many were not flagged before. */
+    @Transactional
+    public int markDeleted(Collection<String> paths) {
+        return unlinked(photoJdbc.markDeleted(paths));
+    }
+
+    /** Flags every photo in {@code dir} or below it; returns how many were not flagged before. */
+    @Transactional
+    public int markDeletedUnder(String dir) {
+        return unlinked(photoJdbc.markDeletedUnder(dir));
+    }
+
+    private int unlinked(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            publishAfterCommit(new PhotosUnlinkedEvent(ids));
+        }
+        return ids.size();
+    }
+
+    private void publishAfterCommit(Object event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    events.publishEvent(event);
+                }
+            });
+        } else {
+            events.publishEvent(event);
+        }
+    }
+
+    private ScannedFile withHeader(ScannedFile file) {
+        return headers != null ? file.withHeader(headers.read(Path.of(file.path()))) : file;
+    }
+
+    public record WrittenBatch(long batchId, Map<Long, String> photos) {
+    }
+}
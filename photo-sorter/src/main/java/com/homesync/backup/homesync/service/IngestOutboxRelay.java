@@ -0,0 +1,212 @@
+package com.homesync.backup.homesync.service;
+
+import com.homesync.backup.homesync.kafka.ConsumerLagMonitor;
+import com.homesync.backup.homesync.kafka.KafkaProducer;
+import com.homesync.backup.homesync.kafka.PhotoEnvelope;
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository.OutboxRow;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics.Stage;
+import com.homesync.backup.homesync.service.progress.IngestProgressService;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Transactional outbox relay for ingest batches. The scan stage only writes READY
+ * batches and PENDING photo_ingest_map rows; this relay claims READY batches with
+ * FOR UPDATE SKIP LOCKED, sends every pending photo of the claim as one pipelined
+ * burst, waits for the broker acks and records the outcome in the same transaction.
+ * Photos travel as {@link PhotoEnvelope}s of up to envelopePhotos photos of one batch,
+ * and a whole envelope is published or failed together. Each job priority has its
+ * own topic; interactive batches are claimed first.
+ *
+ * A row is only marked PUBLISHED after its ack, so a crash never loses a publish.
+ * A crash between the ack and the commit resends that claim; messages carry the
+ * photo ids so consumers can drop the duplicates.
+ */
+@Component
+public class IngestOutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestOutboxRelay.class);
+
+    private final IngestJdbcRepository ingestJdbc;
+    private final KafkaProducer producer;
+    private final IngestProgressService progress;
+    private final PipelineMetrics metrics;
+    private final ConsumerLagMonitor lagMonitor;
+    private final TransactionTemplate tx;
+    private final int claimBatches;
+    private final int maxAttempts;
+    private final long sendTimeoutMs;
+    private final int envelopePhotos;
+    private final long maxConsumerLag;
+    private final String bulkTopic;
+    private final String interactiveTopic;
+    private boolean throttled;
+
+    public IngestOutboxRelay(IngestJdbcRepository ingestJdbc,
+                             KafkaProducer producer,
+                             IngestProgressService progress,
+                             PipelineMetrics metrics,
+                             ConsumerLagMonitor lagMonitor,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${ingest.relay.claim-batches:20}") int claimBatches,
+                             @Value("${ingest.relay.max-attempts:5}") int maxAttempts,
+                             @Value("${ingest.relay.send-timeout-ms:30000}") long sendTimeoutMs,
+                             @Value("${ingest.relay.envelope-photos:100}") int envelopePhotos,
+                             @Value("${ingest.relay.max-consumer-lag:500}") long maxConsumerLag,
+                             @Value("${kafka.topics.photos-to-process:photos-to-process}") String bulkTopic,
+                             @Value("${kafka.topics.photos-to-process-interactive:photos-to-process-interactive}")
+                             String interactiveTopic) {
+        this.ingestJdbc = ingestJdbc;
+        this.producer = producer;
+        this.progress = progress;
+        this.metrics = metrics;
+        this.lagMonitor = lagMonitor;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.claimBatches = claimBatches;
+        this.maxAttempts = maxAttempts;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.envelopePhotos = envelopePhotos;
+        this.maxConsumerLag = maxConsumerLag;
+        this.bulkTopic = bulkTopic;
+        this.interactiveTopic = interactiveTopic;
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.relay.interval-ms:200}")
+    public void relay() {
+        try {
+            // keep draining while claims come back full, taking turns so a long bulk
+            // drain never keeps an interactive batch waiting for more than one claim
+            boolean full;
+            do {
+                Integer interactive = tx.execute(status -> relayOnce(IngestPriority.INTERACTIVE));
+                Integer bulk = holdBack() ? null : tx.execute(status -> relayOnce(IngestPriority.BULK));
+                full = interactive != null && interactive >= claimBatches || bulk != null && bulk >= claimBatches;
+            } while (full);
+            ingestJdbc.promotePublishedJobs();
+        } catch (Exception e) {
+            log.error("Outbox relay pass failed", e);
+        }
+    }
+
+    /**
+     * True while the bulk lane's consumers are further behind than max-consumer-lag
+     * records. Bulk batches simply stay READY in the outbox meanwhile, so publishing
+     * slows to the pace the consumers (and through their backpressure, the ML
+     * service) keep. Interactive batches are never held back. An unknown lag does
+     * not hold anything back either.
+     */
+    private boolean holdBack() {
+        long lag = lagMonitor.lag(bulkTopic);
+        boolean hold = maxConsumerLag > 0 && lag > maxConsumerLag;
+        if (hold != throttled) {
+            throttled = hold;
+            log.info(hold ? "Outbox relay holding back bulk batches: consumer lag {} > {}"
+                            : "Outbox relay resuming bulk batches: consumer lag {} <= {}",
+                    lag, maxConsumerLag);
+        }
+        return hold;
+    }
+
+    /** Claims, publishes and settles one set of batches of {@code lane}. Returns the number of batches claimed. */
+    int relayOnce(IngestPriority lane) {
+        long started = System.nanoTime();
+        List<Long> batchIds = ingestJdbc.claimReadyBatches(lane, claimBatches);
+        if (batchIds.isEmpty()) {
+            return 0;
+        }
+        List<OutboxRow> rows = ingestJdbc.findUnpublished(batchIds);
+        List<List<OutboxRow>> chunks = chunk(rows);
+
+        List<CompletableFuture<?>> sends = new ArrayList<>(chunks.size());
+        for (List<OutboxRow> chunk : chunks) {
+            sends.add(producer.send(toRecord(lane == IngestPriority.INTERACTIVE ? interactiveTopic : bulkTopic, chunk)));
+        }
+        producer.flush();
+
+        List<Long> published = new ArrayList<>(rows.size());
+        Map<Long, String> failed = new HashMap<>();
+        Map<String, Long> publishedPerJob = new HashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        for (int i = 0; i < chunks.size(); i++) {
+            List<OutboxRow> chunk = chunks.get(i);
+            String error;
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                sends.get(i).get(remaining, TimeUnit.NANOSECONDS);
+                chunk.forEach(row -> published.add(row.mapId()));
+                publishedPerJob.merge(chunk.get(0).jobId(), (long) chunk.size(), Long::sum);
+                continue;
+            } catch (ExecutionException e) {
+                error = String.valueOf(e.getCause());
+            } catch (TimeoutException e) {
+                error = "send timed out after " + sendTimeoutMs + " ms";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for broker acks", e);
+            }
+            for (OutboxRow row : chunk) {
+                failed.put(row.mapId(), error);
+            }
+        }
+
+        ingestJdbc.markMapRowsPublished(published);
+        ingestJdbc.markMapRowsFailed(failed, maxAttempts);
+        ingestJdbc.settleBatches(batchIds);
+        publishedPerJob.forEach(progress::published);
+        metrics.record(Stage.PUBLISH, started);
+
+        if (!failed.isEmpty()) {
+            Set<Long> failedBatches = new LinkedHashSet<>();
+            rows.stream().filter(r -> failed.containsKey(r.mapId())).forEach(r -> failedBatches.add(r.batchId()));
+            log.warn("Outbox relay: {} of {} sends failed (batches {})", failed.size(), rows.size(), failedBatches);
+        }
+        return batchIds.size();
+    }
+
+    /** Splits rows into runs of the same batch, at most envelopePhotos each, keeping scan order. */
+    private List<List<OutboxRow>> chunk(List<OutboxRow> rows) {
+        Map<Long, List<OutboxRow>> byBatch = new LinkedHashMap<>();
+        for (OutboxRow row : rows) {
+            byBatch.computeIfAbsent(row.batchId(), id -> new ArrayList<>()).add(row);
+        }
+        List<List<OutboxRow>> chunks = new ArrayList<>();
+        for (List<OutboxRow> batch : byBatch.values()) {
+            for (int from = 0; from < batch.size(); from += envelopePhotos) {
+                chunks.add(batch.subList(from, Math.min(batch.size(), from + envelopePhotos)));
+            }
+        }
+        return chunks;
+    }
+
+    private static ProducerRecord<String, PhotoEnvelope> toRecord(String topic, List<OutboxRow> chunk) {
+        List<PhotoEnvelope.Entry> photos = new ArrayList<>(chunk.size());
+        for (OutboxRow row : chunk) {
+            photos.add(new PhotoEnvelope.Entry(row.photoId(), row.path(), row.filesize(), row.modifiedMillis()));
+        }
+        OutboxRow first = chunk.get(0);
+        // keyed by the first photo id so a single job still spreads over every partition
+        return new ProducerRecord<>(topic, String.valueOf(first.photoId()),
+                new PhotoEnvelope(first.jobId(), first.batchId(), photos));
+    }
+}
@@ -1,5 +1,12 @@
 package com.homesync.backup.homesync.service;
 
+import com.homesync.backup.homesync.dto.IngestJobStatus;
+import com.homesync.backup.homesync.dto.IngestRequest;
+
+import java.util.Optional;
+
 public interface IngestService {
-    String startIngest(String path, String jobId);
+    String startIngest(IngestRequest request);
+
+    Optional<IngestJobStatus> getJob(String jobId);
 }
@@ -1,25 +1,268 @@
 package com.homesync.backup.homesync.service;
 
-import com.homesync.backup.homesync.kafka.KafkaProducer;
+import com.homesync.backup.homesync.dto.IngestJobStatus;
+import com.homesync.backup.homesync.dto.IngestRequest;
+import com.homesync.backup.homesync.model.IngestJob;
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository;
+import com.homesync.backup.homesync.repository.IngestJobRepository;
+import com.homesync.backup.homesync.repository.ManifestJdbcRepository;
+import com.homesync.backup.homesync.service.IngestBatchWriter.WrittenBatch;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics.Stage;
+import com.homesync.backup.homesync.service.progress.IngestProgressService;
+import com.homesync.backup.homesync.service.progress.IngestProgressService.JobCounters;
+import com.homesync.backup.homesync.service.scan.DirectoryManifest;
+import com.homesync.backup.homesync.service.scan.DirectoryScanner;
+import com.homesync.backup.homesync.service.scan.ManifestSink;
+import com.homesync.backup.homesync.service.scan.ScannedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class IngestServiceImpl implements IngestService {
 
-    private final KafkaProducer producer;
-    private static final String TOPIC = "photos-to-process";
+    private static final Logger log = LoggerFactory.getLogger(IngestServiceImpl.class);
 
-    public IngestServiceImpl(KafkaProducer producer) {
-        this.producer = producer;
+    private final DirectoryScanner scanner;
+    private final IngestBatchWriter batchWriter;
+    private final IngestJobRepository jobRepository;
+    private final IngestJdbcRepository ingestJdbc;
+    private final ManifestJdbcRepository manifests;
+    private final IngestProgressService progress;
+    private final PipelineMetrics metrics;
+    private final ThreadPoolTaskExecutor jobExecutor;
+    private final ThreadPoolTaskExecutor writerExecutor;
+    private final int defaultBatchSize;
+
+    public IngestServiceImpl(DirectoryScanner scanner,
+                             IngestBatchWriter batchWriter,
+                             IngestJobRepository jobRepository,
+                             IngestJdbcRepository ingestJdbc,
+                             ManifestJdbcRepository manifests,
+                             IngestProgressService progress,
+                             PipelineMetrics metrics,
+                             @Qualifier("ingestJobExecutor") ThreadPoolTaskExecutor jobExecutor,
+                             @Qualifier("ingestWriterExecutor") ThreadPoolTaskExecutor writerExecutor,
+                             @Value("${ingest.batch-size:500}") int defaultBatchSize) {
+        this.scanner = scanner;
+        this.batchWriter = batchWriter;
+        this.jobRepository = jobRepository;
+        this.ingestJdbc = ingestJdbc;
+        this.manifests = manifests;
+        this.progress = progress;
+        this.metrics = metrics;
+        this.jobExecutor = jobExecutor;
+        this.writerExecutor = writerExecutor;
+        this.defaultBatchSize = defaultBatchSize;
+    }
+
+    @Override
+    public String startIngest(IngestRequest request) {
+        if (request.getPath() == null || request.getPath().isBlank()) {
+            throw new IllegalArgumentException("path is required");
+        }
+        Path root = Paths.get(request.getPath()).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("Not a directory: " + root);
+        }
+        String jobId = request.getJobId() != null && !request.getJobId().isEmpty()
+                ? request.getJobId() : UUID.randomUUID().toString();
+        boolean recursive = request.getRecursive() == null || request.getRecursive();
+        int batchSize = request.getBatchSize() != null && request.getBatchSize() > 0
+                ? request.getBatchSize() : defaultBatchSize;
+        boolean incremental = Boolean.TRUE.equals(request.getIncremental());
+        IngestPriority priority;
+        try {
+            priority = request.getPriority() != null
+                    ? IngestPriority.valueOf(request.getPriority().toUpperCase(Locale.ROOT)) : IngestPriority.BULK;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown priority: " + request.getPriority());
+        }
+
+        jobRepository.save(IngestJob.builder()
+                .jobId(jobId)
+                .jobName(request.getJobName())
+                .path(root.toString())
+                .recursive(recursive)
+                .requestedBy(request.getRequestedBy())
+                .createdAt(LocalDateTime.now())
+                .status(JobStatus.SCANNING)
+                .priority(priority)
+                .scannedCount(0)
+                .insertedCount(0)
+                .publishedCount(0)
+                .deletedCount(0)
+                .build());
+
+        IngestRun run = new IngestRun(jobId, batchSize, incremental, progress.register(jobId));
+        // the caller only needs the jobId; scanning a large share can take minutes
+        jobExecutor.execute(() -> runIngest(run, root, recursive));
+        return jobId;
     }
 
     @Override
-    public String startIngest(String path, String jobId) {
-        String finalJobId = jobId != null && !jobId.isEmpty() ? jobId : UUID.randomUUID().toString();
-        // For now just publish the path as message value; key is jobId
-        producer.send(TOPIC, finalJobId, path);
-        return finalJobId;
+    public Optional<IngestJobStatus> getJob(String jobId) {
+        return jobRepository.findById(jobId).map(IngestJobStatus::of);
+    }
+
+    private void runIngest(IngestRun run, Path root, boolean recursive) {
+        long started = System.nanoTime();
+        try {
+            if (run.incremental) {
+                scanIncremental(run, root, recursive);
+            } else {
+                scanner.scan(root, recursive, run::accept);
+                metrics.record(Stage.SCAN, started);
+                run.flushRemainder();
+                run.awaitWrites();
+            }
+            progress.flush(run.jobId);
+            // IngestOutboxRelay moves the job on to PUBLISHED once its batches are out
+            ingestJdbc.updateJobStatus(run.jobId, JobStatus.SCANNED);
+            log.info("Ingest {} scanned: scanned={} inserted={} in {} ms", run.jobId,
+                    run.counters.scanned(), run.counters.inserted(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (Exception e) {
+            log.error("Ingest {} failed", run.jobId, e);
+            // chunks already handed to the writers commit first, so no batch lands on a FAILED job
+            try {
+                run.awaitWrites();
+            } catch (Exception writeError) {
+                log.debug("Ingest {}: a chunk write failed as well", run.jobId, writeError);
+            }
+            progress.flush(run.jobId);
+            ingestJdbc.finishJob(run.jobId, JobStatus.FAILED);
+        }
+    }
+
+    /**
+     * Scans against the stored manifests, so only new or changed files reach the
+     * writers. Deletions and the new manifests are written once every batch is
+     * committed: a run that fails part-way leaves the old manifests, and the next
+     * run sees the same changes again.
+     */
+    private void scanIncremental(IngestRun run, Path root, boolean recursive) {
+        long started = System.nanoTime();
+        Map<String, DirectoryManifest> previous = manifests.findUnder(root.toString());
+        List<String> deleted = Collections.synchronizedList(new ArrayList<>());
+        List<DirectoryManifest> updated = Collections.synchronizedList(new ArrayList<>());
+        List<DirectoryManifest> removed = scanner.scanIncremental(root, recursive, previous, new ManifestSink() {
+            @Override
+            public void changed(List<ScannedFile> files) {
+                run.accept(files);
+            }
+
+            @Override
+            public void deleted(List<String> paths) {
+                deleted.addAll(paths);
+            }
+
+            @Override
+            public void manifest(DirectoryManifest manifest) {
+                updated.add(manifest);
+            }
+        });
+        metrics.record(Stage.SCAN, started);
+        run.flushRemainder();
+        run.awaitWrites();
+
+        int flagged = 0;
+        for (int i = 0; i < deleted.size(); i += run.batchSize) {
+            flagged += batchWriter.markDeleted(deleted.subList(i, Math.min(deleted.size(), i + run.batchSize)));
+        }
+        ingestJdbc.addDeleted(run.jobId, flagged);
+        for (int i = 0; i < updated.size(); i += run.batchSize) {
+            manifests.upsert(updated.subList(i, Math.min(updated.size(), i + run.batchSize)));
+        }
+        manifests.delete(removed.stream().map(DirectoryManifest::dir).toList());
+        log.info("Ingest {} incremental: {} of {} known directories changed, {} removed, {} files flagged deleted",
+                run.jobId, updated.size(), previous.size(), removed.size(), flagged);
+    }
+
+    /**
+     * Per-job state shared by the scanner threads and the writer pool. Scanned files
+     * are cut into batchSize chunks; each full chunk is handed to the writer pool,
+     * which leaves a READY batch behind for {@link IngestOutboxRelay}. Counts go to
+     * the job's {@link JobCounters}, which are written to ingest_jobs periodically.
+     */
+    private final class IngestRun {
+
+        private final String jobId;
+        private final int batchSize;
+        private final boolean incremental;
+        private final JobCounters counters;
+        private final AtomicInteger batchIndex = new AtomicInteger();
+        private final List<ScannedFile> pending = new ArrayList<>();
+        private final List<CompletableFuture<Void>> writes = Collections.synchronizedList(new ArrayList<>());
+
+        IngestRun(String jobId, int batchSize, boolean incremental, JobCounters counters) {
+            this.jobId = jobId;
+            this.batchSize = batchSize;
+            this.incremental = incremental;
+            this.counters = counters;
+        }
+
+        void accept(List<ScannedFile> files) {
+            counters.addScanned(files.size());
+            List<List<ScannedFile>> full = new ArrayList<>();
+            synchronized (pending) {
+                pending.addAll(files);
+                while (pending.size() >= batchSize) {
+                    List<ScannedFile> head = pending.subList(0, batchSize);
+                    full.add(new ArrayList<>(head));
+                    head.clear();
+                }
+            }
+            full.forEach(this::submit);
+        }
+
+        void flushRemainder() {
+            List<ScannedFile> rest;
+            synchronized (pending) {
+                rest = new ArrayList<>(pending);
+                pending.clear();
+            }
+            if (!rest.isEmpty()) {
+                submit(rest);
+            }
+        }
+
+        void awaitWrites() {
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        }
+
+        private void submit(List<ScannedFile> chunk) {
+            int index = batchIndex.getAndIncrement();
+            writes.add(CompletableFuture.runAsync(() -> write(index, chunk), writerExecutor));
+        }
+
+        private void write(int index, List<ScannedFile> chunk) {
+            long started = System.nanoTime();
+            WrittenBatch batch = batchWriter.writeChunk(jobId, index, chunk, incremental);
+            metrics.record(Stage.INSERT, started);
+            if (batch != null) {
+                counters.addInserted(batch.photos().size());
+            }
+        }
     }
 }
@@ -0,0 +1,69 @@
+package com.homesync.backup.homesync.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.homesync.backup.homesync.dto.PhotoPage;
+import com.homesync.backup.homesync.dto.PhotoSummary;
+import com.homesync.backup.homesync.repository.PhotoCatalogJdbcRepository;
+import com.homesync.backup.homesync.repository.PhotoCatalogJdbcRepository.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+@Service
+public class PhotoCatalogService {
+
+    private final PhotoCatalogJdbcRepository catalog;
+    private final ObjectMapper objectMapper;
+    private final int maxPageSize;
+
+    public PhotoCatalogService(PhotoCatalogJdbcRepository catalog,
+                               ObjectMapper objectMapper,
+                               @Value("${catalog.max-page-size:1000}") int maxPageSize) {
+        this.catalog = catalog;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
+    }
+
+    /** One page after {@code cursor}; the page size is clamped to 1..catalog.max-page-size. */
+    public PhotoPage page(Filter filter, Long cursor, boolean descending, int limit) {
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        // one extra row tells whether another page follows
+        List<PhotoSummary> rows = catalog.page(filter, cursor, descending, size + 1);
+        if (rows.size() <= size) {
+            return new PhotoPage(rows, null);
+        }
+        List<PhotoSummary> items = rows.subList(0, size);
+        return new PhotoPage(items, items.get(size - 1).getId());
+    }
+
+    /** Writes every matching photo as one JSON object per line while the rows are read. */
+    public void export(Filter filter, OutputStream out) throws IOException {
+        // no flush per row: the response buffer decides when a chunk goes out
+        ObjectWriter writer = objectMapper.writerFor(PhotoSummary.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+        long[] written = {0};
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            catalog.stream(filter, row -> {
+                try {
+                    writer.writeValue(generator, row);
+                    written[0]++;
+                } catch (IOException e) {
+                    // the client went away; failing here abandons the cursor
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (written[0] > 0) {
+                generator.writeRaw('\n');
+            }
+        }
+    }
+}
@@ -1,29 +1,36 @@
 package com.homesync.backup.homesync.service;
 
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.service.ml.MlBatchDispatcher;
+import com.homesync.backup.homesync.service.ml.PhotoRef;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class PhotoWorkerService {
 
-    private final RestTemplate rest = new RestTemplate();
-    // In a real setup, make this configurable
-    private final String mlServiceUrl = "http://localhost:8000/process-photo";
+    private final MlBatchDispatcher dispatcher;
+    private final String defaultCallbackUrl;
 
-    public void processPath(String jobId, String path, String callbackUrl) {
-        Map<String, Object> body = new HashMap<>();
-        body.put("path", path);
-        body.put("callbackUrl", callbackUrl);
-        body.put("jobId", jobId);
+    public PhotoWorkerService(MlBatchDispatcher dispatcher,
+                              @Value("${worker.callback-url:http://localhost:8080/callback/photo-processed}") String defaultCallbackUrl) {
+        this.dispatcher = dispatcher;
+        this.defaultCallbackUrl = defaultCallbackUrl;
+    }
 
-        try {
-            rest.postForEntity(mlServiceUrl, body, String.class);
-        } catch (Exception e) {
-            // log and handle retries/alerts in future
-            System.err.println("Failed to call ML service: " + e.getMessage());
-        }
+    /**
+     * Hands the photo to the ML service, coalesced with other photos of the same job
+     * into one process-photos request. May block the caller while the ML client's
+     * adaptive in-flight window (at most {@code worker.max-in-flight}) is full, which
+     * is what keeps a fast consumer from piling unbounded work on the ML service. The
+     * future fails with an MlServiceException once retries are exhausted. Photos of
+     * the INTERACTIVE lane get the larger share of the window.
+     */
+    public CompletableFuture<Void> dispatch(String jobId, Long photoId, String path, String callbackUrl,
+                                            IngestPriority lane) {
+        return dispatcher.submit(jobId, new PhotoRef(photoId, path), callbackUrl != null ? callbackUrl : defaultCallbackUrl,
+                lane);
     }
 }
@@ -0,0 +1,14 @@
+package com.homesync.backup.homesync.service.cluster;
+
+/**
+ * Outcome of one clustering pass over a job.
+ *
+ * @param faces         unassigned faces read
+ * @param newPersons    persons created from clusters
+ * @param assignedFaces faces linked to a person, new or existing
+ * @param mergedPersons persons folded into another one
+ * @param unassigned    faces left without a person
+ */
+public record ClusteringResult(String jobId, int faces, int newPersons, int assignedFaces, int mergedPersons,
+                               int unassigned, long millis) {
+}
@@ -0,0 +1,303 @@
+package com.homesync.backup.homesync.service.cluster;
+
+import com.homesync.backup.homesync.service.index.EmbeddingMatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DBSCAN-style clustering of new, unassigned faces over their nearest neighbours.
+ * Neighbours at or above {@code minSimilarity} are edges. A new face with at
+ * least {@code minPoints - 1} edges is a core face. Core faces joined by an edge
+ * are unioned. A face that is not core (a new one, or an older unassigned face
+ * found as a neighbour) joins the first core face that reaches it. Older
+ * unassigned faces are therefore absorbed when new evidence arrives, but never
+ * grow a cluster themselves.
+ *
+ * Edges to faces already assigned to a person are votes. A cluster, or a lone
+ * face, with votes joins the person with the most votes. A cluster that also has
+ * {@code mergeMinLinks} votes for another person, while the winner has as many,
+ * proposes merging the two persons. A cluster without votes becomes a new person
+ * if it has a core face; anything else stays unassigned.
+ *
+ * Faces must be added in ascending embedding id order. Neighbour lists are kept as
+ * primitive arrays, so a million faces with 16 neighbours each stay within a few
+ * hundred MB.
+ */
+public final class FaceClusterer {
+
+    private final float minSimilarity;
+    private final int minPoints;
+    private final int mergeMinLinks;
+
+    private long[] ids = new long[1024];
+    private long[] photoIds = new long[1024];
+    private long[][] neighbourIds = new long[1024][];
+    private float[][] neighbourScores = new float[1024][];
+    private int size;
+    private final Map<Long, Owner> owners = new HashMap<>();
+
+    public FaceClusterer(double minSimilarity, int minPoints, int mergeMinLinks) {
+        this.minSimilarity = (float) minSimilarity;
+        this.minPoints = minPoints;
+        this.mergeMinLinks = mergeMinLinks;
+    }
+
+    /** Records a new face and the neighbours found for it; the face itself among them is ignored. */
+    public void add(long embeddingId, long photoId, List<EmbeddingMatch> matches) {
+        if (size > 0 && embeddingId <= ids[size - 1]) {
+            throw new IllegalArgumentException("Faces must be added in ascending id order: " + embeddingId);
+        }
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            photoIds = Arrays.copyOf(photoIds, capacity);
+            neighbourIds = Arrays.copyOf(neighbourIds, capacity);
+            neighbourScores = Arrays.copyOf(neighbourScores, capacity);
+        }
+        long[] nIds = new long[matches.size()];
+        float[] nScores = new float[matches.size()];
+        int n = 0;
+        for (EmbeddingMatch match : matches) {
+            if (match.embeddingId() != embeddingId && match.score() >= minSimilarity) {
+                nIds[n] = match.embeddingId();
+                nScores[n] = match.score();
+                n++;
+            }
+        }
+        ids[size] = embeddingId;
+        photoIds[size] = photoId;
+        neighbourIds[size] = Arrays.copyOf(nIds, n);
+        neighbourScores[size] = Arrays.copyOf(nScores, n);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Neighbours that are not new faces and whose owner has not been resolved yet. */
+    public Set<Long> unresolved() {
+        Set<Long> unresolved = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            for (long id : neighbourIds[i]) {
+                if (indexOf(id) < 0 && !owners.containsKey(id)) {
+                    unresolved.add(id);
+                }
+            }
+        }
+        return unresolved;
+    }
+
+    /** Person (null if unassigned) and photo of neighbours that are not new faces. Missing ones are ignored. */
+    public void resolve(Map<Long, Owner> resolved) {
+        owners.putAll(resolved);
+    }
+
+    public Plan plan() {
+        // nodes: new faces first, then older unassigned neighbours
+        Map<Long, Integer> extraNodes = new LinkedHashMap<>();
+        for (Map.Entry<Long, Owner> owner : owners.entrySet()) {
+            if (owner.getValue().personId() == null) {
+                extraNodes.put(owner.getKey(), size + extraNodes.size());
+            }
+        }
+        int nodes = size + extraNodes.size();
+        long[] nodeIds = Arrays.copyOf(ids, nodes);
+        long[] nodePhotos = Arrays.copyOf(photoIds, nodes);
+        for (Map.Entry<Long, Integer> extra : extraNodes.entrySet()) {
+            nodeIds[extra.getValue()] = extra.getKey();
+            nodePhotos[extra.getValue()] = owners.get(extra.getKey()).photoId();
+        }
+        int[][] edges = new int[size][];
+        boolean[] core = new boolean[nodes];
+        for (int i = 0; i < size; i++) {
+            int[] targets = new int[neighbourIds[i].length];
+            int known = 0;
+            for (int n = 0; n < neighbourIds[i].length; n++) {
+                long id = neighbourIds[i][n];
+                int index = indexOf(id);
+                if (index >= 0) {
+                    targets[known++] = index;
+                } else if (owners.containsKey(id)) {
+                    // assigned neighbours are votes, kept as -1 - position in the neighbour list
+                    Integer extra = extraNodes.get(id);
+                    targets[known++] = extra != null ? extra : -1 - n;
+                }
+            }
+            edges[i] = Arrays.copyOf(targets, known);
+            core[i] = known + 1 >= minPoints;
+        }
+
+        int[] parent = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            if (core[i]) {
+                for (int j : edges[i]) {
+                    if (j >= 0 && core[j]) {
+                        union(parent, i, j);
+                    }
+                }
+            }
+        }
+        boolean[] owned = new boolean[nodes];
+        for (int i = 0; i < size; i++) {
+            if (core[i]) {
+                for (int j : edges[i]) {
+                    if (j >= 0 && !core[j] && !owned[j]) {
+                        owned[j] = true;
+                        union(parent, i, j);
+                    }
+                }
+            }
+        }
+
+        Map<Integer, Component> components = new LinkedHashMap<>();
+        for (int node = 0; node < nodes; node++) {
+            if (node >= size && find(parent, node) == node) {
+                continue; // an older face no core face reached
+            }
+            Component component = components.computeIfAbsent(find(parent, node), r -> new Component());
+            component.members.add(new Member(nodeIds[node], nodePhotos[node]));
+            if (node < size) {
+                component.newFaces++;
+                if (core[node]) {
+                    component.cores.add(node);
+                }
+                for (int j : edges[node]) {
+                    if (j < 0) {
+                        long neighbour = neighbourIds[node][-1 - j];
+                        component.vote(owners.get(neighbour).personId(), neighbourScores[node][-1 - j]);
+                    }
+                }
+            }
+        }
+
+        List<NewPerson> newPersons = new ArrayList<>();
+        Map<Long, List<Member>> assigned = new LinkedHashMap<>();
+        List<Merge> merges = new ArrayList<>();
+        int unassigned = 0;
+        for (Map.Entry<Integer, Component> entry : components.entrySet()) {
+            Component component = entry.getValue();
+            if (!component.votes.isEmpty()) {
+                Long winner = component.winner();
+                assigned.computeIfAbsent(winner, p -> new ArrayList<>()).addAll(component.members);
+                Vote best = component.votes.get(winner);
+                if (best.count >= mergeMinLinks) {
+                    component.votes.forEach((person, vote) -> {
+                        if (!person.equals(winner) && vote.count >= mergeMinLinks) {
+                            merges.add(new Merge(winner, person));
+                        }
+                    });
+                }
+            } else if (!component.cores.isEmpty()) {
+                newPersons.add(new NewPerson(component.members, nodeIds[representative(component, edges, parent)]));
+            } else {
+                unassigned += component.newFaces;
+            }
+        }
+        return new Plan(newPersons, assigned, merges, unassigned);
+    }
+
+    /** The core face with the most edges inside its cluster; ties go to the lowest id. */
+    private static int representative(Component component, int[][] edges, int[] parent) {
+        int best = -1;
+        int bestDegree = -1;
+        for (int core : component.cores) {
+            int root = find(parent, core);
+            int degree = 0;
+            for (int j : edges[core]) {
+                if (j >= 0 && find(parent, j) == root) {
+                    degree++;
+                }
+            }
+            if (degree > bestDegree) {
+                best = core;
+                bestDegree = degree;
+            }
+        }
+        return best;
+    }
+
+    private int indexOf(long embeddingId) {
+        return Arrays.binarySearch(ids, 0, size, embeddingId);
+    }
+
+    private static int find(int[] parent, int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra != rb) {
+            // the lower node (older face) stays the root, which keeps component order stable
+            parent[Math.max(ra, rb)] = Math.min(ra, rb);
+        }
+    }
+
+    private static final class Component {
+        final List<Member> members = new ArrayList<>();
+        final List<Integer> cores = new ArrayList<>();
+        final Map<Long, Vote> votes = new HashMap<>();
+        int newFaces;
+
+        void vote(Long personId, float score) {
+            Vote vote = votes.computeIfAbsent(personId, p -> new Vote());
+            vote.count++;
+            vote.score += score;
+        }
+
+        Long winner() {
+            Long winner = null;
+            Vote best = null;
+            for (Map.Entry<Long, Vote> entry : votes.entrySet()) {
+                Vote vote = entry.getValue();
+                if (best == null || vote.count > best.count || (vote.count == best.count && vote.score > best.score)) {
+                    winner = entry.getKey();
+                    best = vote;
+                }
+            }
+            return winner;
+        }
+    }
+
+    private static final class Vote {
+        int count;
+        double score;
+    }
+
+    /** Person an existing embedding belongs to (null if none) and its photo. */
+    public record Owner(Long personId, long photoId) {
+    }
+
+    public record Member(long embeddingId, long photoId) {
+    }
+
+    public record NewPerson(List<Member> members, long representativeEmbeddingId) {
+    }
+
+    /** Proposal to fold {@code other} into {@code person}; which one survives is up to the caller. */
+    public record Merge(long person, long other) {
+    }
+
+    /**
+     * @param assigned   members to link to existing persons, by person id
+     * @param unassigned new faces left without a person
+     */
+    public record Plan(List<NewPerson> newPersons, Map<Long, List<Member>> assigned, List<Merge> merges,
+                       int unassigned) {
+    }
+}
@@ -0,0 +1,343 @@
+package com.homesync.backup.homesync.service.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homesync.backup.homesync.event.EmbeddingsAssignedEvent;
+import com.homesync.backup.homesync.event.PersonsMergedEvent;
+import com.homesync.backup.homesync.event.PhotoPersonsLinkedEvent;
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.PhotoPersonRow;
+import com.homesync.backup.homesync.repository.ClusteringJdbcRepository;
+import com.homesync.backup.homesync.repository.ClusteringJdbcRepository.EmbeddingOwner;
+import com.homesync.backup.homesync.repository.ClusteringJdbcRepository.Face;
+import com.homesync.backup.homesync.repository.ClusteringJdbcRepository.JobWatermark;
+import com.homesync.backup.homesync.service.index.EmbeddingIndexService;
+import com.homesync.backup.homesync.service.index.EmbeddingMatch;
+import com.homesync.backup.homesync.service.index.EmbeddingVectors;
+import com.homesync.backup.homesync.service.index.HnswIndexService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Groups unassigned faces into persons, one ingest job at a time. Each pass reads
+ * the job's unassigned embeddings above its watermark in chunks. It looks up their
+ * nearest neighbours in the HNSW index (the exact index while HNSW is loading or
+ * disabled) in parallel on a fork-join pool, clusters them with
+ * {@link FaceClusterer}, and writes the outcome in one transaction:
+ * <ul>
+ *   <li>new persons, with their best-connected face as primary embedding;</li>
+ *   <li>faces assigned to new or existing persons;</li>
+ *   <li>persons merged where a cluster bridged them;</li>
+ *   <li>photo_persons and photos.person_ids of every touched photo and its duplicates.</li>
+ * </ul>
+ * The job's watermark then moves up, so the next pass only reads faces stored
+ * since. Faces left unassigned can still join a cluster later, when a face of a
+ * later pass finds them as neighbours.
+ *
+ * Watched jobs are clustered on every interval. A finished job is clustered once
+ * every face it produced has been searchable. Persons with a display name are
+ * never merged with each other; a merge keeps the named person, or else the oldest.
+ * Once committed, the new links are announced as a {@link PhotoPersonsLinkedEvent},
+ * the merges as a {@link PersonsMergedEvent} and the faces given a person as an
+ * {@link EmbeddingsAssignedEvent}, so the embedding indexes return current persons.
+ */
+@Service
+public class FaceClusteringService {
+
+    private static final Logger log = LoggerFactory.getLogger(FaceClusteringService.class);
+    private static final int IN_LIST_SIZE = 1000;
+
+    private final ClusteringJdbcRepository clusteringJdbc;
+    private final CallbackJdbcRepository callbackJdbc;
+    private final EmbeddingIndexService exactIndex;
+    private final HnswIndexService hnswIndex;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate tx;
+    private final ObjectMapper mapper;
+    private final boolean enabled;
+    private final double minSimilarity;
+    private final int minPoints;
+    private final int neighbours;
+    private final int mergeMinLinks;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    public FaceClusteringService(ClusteringJdbcRepository clusteringJdbc,
+                                 CallbackJdbcRepository callbackJdbc,
+                                 EmbeddingIndexService exactIndex,
+                                 HnswIndexService hnswIndex,
+                                 ApplicationEventPublisher events,
+                                 PlatformTransactionManager transactionManager,
+                                 ObjectMapper mapper,
+                                 @Value("${clustering.enabled:true}") boolean enabled,
+                                 @Value("${clustering.min-similarity:0.5}") double minSimilarity,
+                                 @Value("${clustering.min-points:3}") int minPoints,
+                                 @Value("${clustering.neighbours:16}") int neighbours,
+                                 @Value("${clustering.merge-min-links:3}") int mergeMinLinks,
+                                 @Value("${clustering.chunk-size:20000}") int chunkSize,
+                                 @Value("${clustering.parallelism:0}") int parallelism) {
+        this.clusteringJdbc = clusteringJdbc;
+        this.callbackJdbc = callbackJdbc;
+        this.exactIndex = exactIndex;
+        this.hnswIndex = hnswIndex;
+        this.events = events;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.mapper = mapper;
+        this.enabled = enabled;
+        this.minSimilarity = minSimilarity;
+        this.minPoints = minPoints;
+        this.neighbours = neighbours;
+        this.mergeMinLinks = mergeMinLinks;
+        this.chunkSize = chunkSize;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @Scheduled(fixedDelayString = "${clustering.interval-ms:60000}", initialDelayString = "${clustering.interval-ms:60000}")
+    public void clusterPending() {
+        if (!enabled || !searchReady()) {
+            return;
+        }
+        for (String jobId : clusteringJdbc.findJobsToCluster()) {
+            try {
+                cluster(jobId);
+            } catch (RuntimeException e) {
+                log.warn("Clustering faces of job {} failed: {}", jobId, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Clusters the job's faces stored since its last pass.
+     *
+     * @throws IllegalArgumentException when the job does not exist
+     * @throws IllegalStateException while no embedding index is ready
+     */
+    public synchronized ClusteringResult cluster(String jobId) {
+        JobWatermark watermark = clusteringJdbc.findWatermark(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown job " + jobId));
+        if (!searchReady()) {
+            throw new IllegalStateException("Embedding indexes are still loading");
+        }
+        long started = System.nanoTime();
+        long maxId = clusteringJdbc.maxEmbeddingId();
+        long upTo = Math.min(maxId, hnswIndex.isReady() ? hnswIndex.linkedUpTo() : Long.MAX_VALUE);
+
+        FaceClusterer clusterer = new FaceClusterer(minSimilarity, minPoints, mergeMinLinks);
+        long after = watermark.clusteredUpTo();
+        while (true) {
+            List<Face> faces = clusteringJdbc.findUnassigned(jobId, after, upTo, chunkSize);
+            if (faces.isEmpty()) {
+                break;
+            }
+            List<List<EmbeddingMatch>> found = pool.submit(() -> faces.parallelStream()
+                    .map(face -> neighbours(face.vector()))
+                    .toList()).join();
+            for (int i = 0; i < faces.size(); i++) {
+                clusterer.add(faces.get(i).embeddingId(), faces.get(i).photoId(), found.get(i));
+            }
+            after = faces.get(faces.size() - 1).embeddingId();
+            if (faces.size() < chunkSize) {
+                break;
+            }
+        }
+        List<Long> unresolved = new ArrayList<>(clusterer.unresolved());
+        for (int i = 0; i < unresolved.size(); i += IN_LIST_SIZE) {
+            Map<Long, FaceClusterer.Owner> owners = new HashMap<>();
+            for (Map.Entry<Long, EmbeddingOwner> owner : clusteringJdbc.findOwners(
+                    unresolved.subList(i, Math.min(unresolved.size(), i + IN_LIST_SIZE))).entrySet()) {
+                owners.put(owner.getKey(), new FaceClusterer.Owner(owner.getValue().personId(), owner.getValue().photoId()));
+            }
+            clusterer.resolve(owners);
+        }
+        FaceClusterer.Plan plan = clusterer.plan();
+
+        // a finished job is done once every face it could have produced was searchable
+        boolean finished = watermark.status() == JobStatus.COMPLETED && upTo >= maxId;
+        Applied applied = tx.execute(status -> apply(jobId, plan, upTo, finished));
+        if (!applied.links().isEmpty()) {
+            events.publishEvent(new PhotoPersonsLinkedEvent(applied.links()));
+        }
+        if (!applied.keptByDropped().isEmpty()) {
+            events.publishEvent(new PersonsMergedEvent(applied.keptByDropped()));
+        }
+        if (!applied.personByEmbedding().isEmpty()) {
+            events.publishEvent(new EmbeddingsAssignedEvent(applied.personByEmbedding()));
+        }
+        ClusteringResult result = new ClusteringResult(jobId, clusterer.size(), plan.newPersons().size(),
+                applied.personByEmbedding().size(), applied.keptByDropped().size(), plan.unassigned(),
+                (System.nanoTime() - started) / 1_000_000);
+        if (result.faces() > 0) {
+            log.info("Clustered {} faces of job {}: {} new persons, {} faces assigned, {} persons merged, {} left "
+                            + "unassigned in {} ms", result.faces(), jobId, result.newPersons(), result.assignedFaces(),
+                    result.mergedPersons(), result.unassigned(), result.millis());
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private boolean searchReady() {
+        return hnswIndex.isReady() || exactIndex.isReady();
+    }
+
+    private List<EmbeddingMatch> neighbours(byte[] bytes) {
+        float[] vector = EmbeddingVectors.decode(bytes);
+        if (vector == null) {
+            return List.of();
+        }
+        // one extra, since the face usually finds itself
+        return hnswIndex.isReady() ? hnswIndex.search(vector, neighbours + 1, null) : exactIndex.search(vector, neighbours + 1);
+    }
+
+    private Applied apply(String jobId, FaceClusterer.Plan plan, long upTo, boolean finished) {
+        Set<Long> involved = new HashSet<>(plan.assigned().keySet());
+        for (FaceClusterer.Merge merge : plan.merges()) {
+            involved.add(merge.person());
+            involved.add(merge.other());
+        }
+        Map<Long, String> names = new HashMap<>();
+        List<Long> involvedIds = new ArrayList<>(involved);
+        for (int i = 0; i < involvedIds.size(); i += IN_LIST_SIZE) {
+            names.putAll(clusteringJdbc.findDisplayNames(involvedIds.subList(i, Math.min(involvedIds.size(), i + IN_LIST_SIZE))));
+        }
+
+        Map<Long, Long> keptByDropped = survivors(plan.merges(), names);
+        Set<Long> touchedPhotos = new LinkedHashSet<>();
+        keptByDropped.forEach((dropped, kept) -> touchedPhotos.addAll(clusteringJdbc.mergePersons(dropped, kept)));
+
+        Map<Long, Long> personByEmbedding = new LinkedHashMap<>();
+        List<PhotoPersonRow> links = new ArrayList<>();
+        plan.assigned().forEach((personId, members) -> {
+            Long target = keptByDropped.getOrDefault(personId, personId);
+            if (names.containsKey(target)) {
+                assign(members, target, personByEmbedding, links);
+            }
+        });
+        List<Long> newPersonIds = callbackJdbc.insertPersons(Collections.nCopies(plan.newPersons().size(), null));
+        Map<Long, Long> primaryEmbeddings = new HashMap<>();
+        for (int i = 0; i < newPersonIds.size(); i++) {
+            FaceClusterer.NewPerson person = plan.newPersons().get(i);
+            primaryEmbeddings.put(newPersonIds.get(i), person.representativeEmbeddingId());
+            assign(person.members(), newPersonIds.get(i), personByEmbedding, links);
+        }
+        clusteringJdbc.assignEmbeddings(personByEmbedding);
+        callbackJdbc.setPrimaryEmbeddings(primaryEmbeddings);
+        callbackJdbc.insertPhotoPersons(links);
+
+        List<PhotoPersonsLinkedEvent.Link> linked = new ArrayList<>(links.size());
+        for (PhotoPersonRow link : links) {
+            touchedPhotos.add(link.photoId());
+            linked.add(new PhotoPersonsLinkedEvent.Link(link.photoId(), link.personId()));
+        }
+        List<Long> photos = new ArrayList<>(touchedPhotos);
+        for (int i = 0; i < photos.size(); i += IN_LIST_SIZE) {
+            List<Long> chunk = photos.subList(i, Math.min(photos.size(), i + IN_LIST_SIZE));
+            Map<Long, Set<Long>> persons = clusteringJdbc.findPersonsOfPhotos(chunk);
+            Map<Long, String> json = new HashMap<>();
+            for (Long photoId : chunk) {
+                json.put(photoId, toJson(persons.getOrDefault(photoId, new TreeSet<>())));
+            }
+            clusteringJdbc.updatePersonIds(json);
+            for (PhotoPersonRow copied : callbackJdbc.copyResultsToDuplicates(chunk)) {
+                linked.add(new PhotoPersonsLinkedEvent.Link(copied.photoId(), copied.personId()));
+            }
+        }
+        clusteringJdbc.markClustered(jobId, upTo, finished);
+        return new Applied(linked, keptByDropped, personByEmbedding);
+    }
+
+    private static void assign(List<FaceClusterer.Member> members, long personId, Map<Long, Long> personByEmbedding,
+                               List<PhotoPersonRow> links) {
+        for (FaceClusterer.Member member : members) {
+            personByEmbedding.put(member.embeddingId(), personId);
+            links.add(new PhotoPersonRow(member.photoId(), personId));
+        }
+    }
+
+    /**
+     * Which person survives each proposed merge. Persons linked by merges form
+     * groups; a group merges into its one named person, or its oldest (lowest id)
+     * when none is named, and is left alone when it holds several named persons or
+     * a person that no longer exists.
+     */
+    static Map<Long, Long> survivors(List<FaceClusterer.Merge> merges, Map<Long, String> names) {
+        Map<Long, Long> parent = new HashMap<>();
+        for (FaceClusterer.Merge merge : merges) {
+            long a = root(parent, merge.person());
+            long b = root(parent, merge.other());
+            if (a != b) {
+                parent.put(Math.max(a, b), Math.min(a, b));
+            }
+        }
+        Map<Long, List<Long>> groups = new HashMap<>();
+        for (Long person : parent.keySet()) {
+            groups.computeIfAbsent(root(parent, person), r -> new ArrayList<>()).add(person);
+        }
+        Map<Long, Long> keptByDropped = new LinkedHashMap<>();
+        groups.forEach((oldest, members) -> {
+            List<Long> named = new ArrayList<>();
+            for (Long person : members) {
+                if (!names.containsKey(person)) {
+                    return;
+                }
+                if (names.get(person) != null) {
+                    named.add(person);
+                }
+            }
+            if (named.size() > 1) {
+                return;
+            }
+            long kept = named.isEmpty() ? oldest : named.get(0);
+            for (Long person : members) {
+                if (person != kept) {
+                    keptByDropped.put(person, kept);
+                }
+            }
+        });
+        return keptByDropped;
+    }
+
+    private static long root(Map<Long, Long> parent, long person) {
+        parent.putIfAbsent(person, person);
+        long root = person;
+        while (parent.get(root) != root) {
+            root = parent.get(root);
+        }
+        return root;
+    }
+
+    private String toJson(Set<Long> personIds) {
+        try {
+            return mapper.writeValueAsString(personIds);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Applied(List<PhotoPersonsLinkedEvent.Link> links, Map<Long, Long> keptByDropped,
+                           Map<Long, Long> personByEmbedding) {
+    }
+}
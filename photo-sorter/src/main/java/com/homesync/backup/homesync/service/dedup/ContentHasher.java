@@ -0,0 +1,107 @@
+package com.homesync.backup.homesync.service.dedup;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SHA-256 of file contents on a dedicated pool. Files up to
+ * {@code dedup.hash.mmap-threshold-bytes} are read through one reused direct buffer
+ * per thread; larger ones are memory-mapped window by window, so the bytes go from
+ * the page cache straight into the digest without a heap copy.
+ */
+@Component
+public class ContentHasher {
+
+    private static final long MAP_WINDOW = 64L << 20;
+
+    private final ExecutorService pool;
+    private final int bufferBytes;
+    private final long mmapThreshold;
+    private final ThreadLocal<ByteBuffer> buffers;
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(ContentHasher::sha256);
+
+    public ContentHasher(@Value("${dedup.hash.threads:0}") int threads,
+                         @Value("${dedup.hash.buffer-bytes:1048576}") int bufferBytes,
+                         @Value("${dedup.hash.mmap-threshold-bytes:8388608}") long mmapThreshold) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger ids = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(size, r -> {
+            Thread t = new Thread(r, "content-hasher-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.bufferBytes = bufferBytes;
+        this.mmapThreshold = mmapThreshold;
+        this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(this.bufferBytes));
+    }
+
+    public CompletableFuture<Hashed> hashAsync(Path file) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return hash(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pool);
+    }
+
+    public Hashed hash(Path file) throws IOException {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > mmapThreshold) {
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(MAP_WINDOW, size - position));
+                    digest.update(window);
+                }
+                return new Hashed(digest.digest(), size);
+            }
+            ByteBuffer buffer = buffers.get();
+            long read = 0;
+            while (true) {
+                buffer.clear();
+                int n = channel.read(buffer);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+                buffer.flip();
+                digest.update(buffer);
+            }
+            return new Hashed(digest.digest(), read);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record Hashed(byte[] hash, long bytes) {
+    }
+}
@@ -0,0 +1,181 @@
+package com.homesync.backup.homesync.service.dedup;
+
+import com.homesync.backup.homesync.event.PhotoPersonsLinkedEvent;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.PhotoPersonRow;
+import com.homesync.backup.homesync.repository.DedupJdbcRepository;
+import com.homesync.backup.homesync.repository.DedupJdbcRepository.OwnedHash;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-hash stage between the photos-to-process consumer and the ML service.
+ * Every photo of a poll is hashed (unless it was on an earlier delivery), and the
+ * first photo seen with a hash becomes its canonical copy. Later copies are linked
+ * to it and not dispatched: they inherit its status, person_ids and photo_persons,
+ * right away if the canonical photo is done, otherwise when its callback is applied
+ * ({@link CallbackJdbcRepository#copyResultsToDuplicates}). Links copied here are
+ * announced as a {@link PhotoPersonsLinkedEvent} after the commit.
+ */
+@Service
+public class DedupService {
+
+    private static final Logger log = LoggerFactory.getLogger(DedupService.class);
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final boolean enabled;
+    private final ContentHasher hasher;
+    private final DedupJdbcRepository dedupJdbc;
+    private final CallbackJdbcRepository callbackJdbc;
+    private final IngestJdbcRepository ingestJdbc;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate tx;
+    private final Counter bytesHashed;
+    private final Counter duplicatesFound;
+    private final Timer hashTimer;
+
+    public DedupService(ContentHasher hasher,
+                        DedupJdbcRepository dedupJdbc,
+                        CallbackJdbcRepository callbackJdbc,
+                        IngestJdbcRepository ingestJdbc,
+                        ApplicationEventPublisher events,
+                        PlatformTransactionManager transactionManager,
+                        MeterRegistry registry,
+                        @Value("${dedup.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.hasher = hasher;
+        this.dedupJdbc = dedupJdbc;
+        this.callbackJdbc = callbackJdbc;
+        this.ingestJdbc = ingestJdbc;
+        this.events = events;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.bytesHashed = Counter.builder("dedup.hash.bytes").baseUnit("bytes").register(registry);
+        this.duplicatesFound = Counter.builder("dedup.duplicates").register(registry);
+        this.hashTimer = Timer.builder("dedup.hash.batch").register(registry);
+    }
+
+    /**
+     * Hashes and links the given photos and returns the ids of those that are
+     * duplicates and must not be sent to the ML service. A file that cannot be read
+     * is left to the normal path, where it fails like any unreadable photo.
+     */
+    public Set<Long> deduplicate(List<Candidate> candidates) {
+        if (!enabled || candidates.isEmpty()) {
+            return Set.of();
+        }
+        long started = System.nanoTime();
+        Map<Long, Candidate> byId = new HashMap<>();
+        for (Candidate candidate : candidates) {
+            byId.putIfAbsent(candidate.photoId(), candidate);
+        }
+        Map<Long, String> hashes = new HashMap<>(dedupJdbc.findHashes(byId.keySet()));
+
+        Map<Long, CompletableFuture<ContentHasher.Hashed>> pending = new HashMap<>();
+        for (Candidate candidate : byId.values()) {
+            if (!hashes.containsKey(candidate.photoId())) {
+                pending.put(candidate.photoId(), hasher.hashAsync(Path.of(candidate.path())));
+            }
+        }
+        Map<Long, String> fresh = new HashMap<>();
+        // per job: files hashed, bytes hashed, duplicates found (a null key collects records without a job header)
+        Map<String, long[]> jobStats = new HashMap<>();
+        long totalBytes = 0;
+        for (Map.Entry<Long, CompletableFuture<ContentHasher.Hashed>> entry : pending.entrySet()) {
+            try {
+                ContentHasher.Hashed hashed = entry.getValue().join();
+                fresh.put(entry.getKey(), HEX.formatHex(hashed.hash()));
+                totalBytes += hashed.bytes();
+                long[] stats = jobStats.computeIfAbsent(byId.get(entry.getKey()).jobId(), j -> new long[3]);
+                stats[0]++;
+                stats[1] += hashed.bytes();
+            } catch (RuntimeException e) {
+                log.warn("Cannot hash {}: {}", byId.get(entry.getKey()).path(), e.getMessage());
+            }
+        }
+        long hashMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        hashes.putAll(fresh);
+        dedupJdbc.setHashes(fresh);
+        dedupJdbc.claimCanonical(fresh);
+
+        Map<String, Long> canonical = dedupJdbc.findCanonical(new HashSet<>(hashes.values()));
+        Map<Long, Long> duplicates = new HashMap<>();
+        for (Map.Entry<Long, String> entry : hashes.entrySet()) {
+            Long owner = canonical.get(entry.getValue());
+            if (owner != null && owner.longValue() != entry.getKey()) {
+                duplicates.put(entry.getKey(), owner);
+                jobStats.computeIfAbsent(byId.get(entry.getKey()).jobId(), j -> new long[3])[2]++;
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            Set<Long> owners = new HashSet<>(duplicates.values());
+            List<PhotoPersonRow> copied = tx.execute(status -> {
+                dedupJdbc.setCanonical(duplicates);
+                dedupJdbc.lockPhotos(owners);
+                return callbackJdbc.copyResultsToDuplicates(owners);
+            });
+            if (copied != null && !copied.isEmpty()) {
+                List<PhotoPersonsLinkedEvent.Link> links = new ArrayList<>(copied.size());
+                for (PhotoPersonRow row : copied) {
+                    links.add(new PhotoPersonsLinkedEvent.Link(row.photoId(), row.personId()));
+                }
+                events.publishEvent(new PhotoPersonsLinkedEvent(links));
+            }
+        }
+
+        for (Map.Entry<String, long[]> entry : jobStats.entrySet()) {
+            if (entry.getKey() != null) {
+                long[] stats = entry.getValue();
+                ingestJdbc.addHashStats(entry.getKey(), (int) stats[0], stats[1], hashMillis, (int) stats[2]);
+            }
+        }
+        bytesHashed.increment(totalBytes);
+        duplicatesFound.increment(duplicates.size());
+        hashTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (!duplicates.isEmpty()) {
+            log.debug("Dedup: {} of {} photos are copies of already known files", duplicates.size(), byId.size());
+        }
+        return new HashSet<>(duplicates.keySet());
+    }
+
+    /**
+     * Called in the transaction that resets photos whose files changed on disk:
+     * a hash one of them owned passes to its lowest remaining duplicate, which
+     * already holds the copied results, or is forgotten when it has none. The
+     * photos' own hash and canonical link are cleared by the caller.
+     */
+    public void releaseCanonical(Collection<Long> changedPhotoIds) {
+        List<OwnedHash> orphaned = new ArrayList<>();
+        for (OwnedHash owned : dedupJdbc.findOwnedHashes(changedPhotoIds)) {
+            if (owned.successorId() != null) {
+                dedupJdbc.reassignCanonical(owned);
+            } else {
+                orphaned.add(owned);
+            }
+        }
+        dedupJdbc.dropCanonical(orphaned);
+    }
+
+    public record Candidate(long photoId, String jobId, String path) {
+    }
+}
@@ -0,0 +1,303 @@
+package com.homesync.backup.homesync.service.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Exact top-k cosine index over unit-normalised embeddings. Vectors live row after
+ * row in fixed-size direct (off-heap) blocks of a power-of-two row count, so no
+ * single int-indexed buffer caps the index; ids live in parallel primitive arrays,
+ * so the heap holds a handful of objects no matter how many rows there are.
+ *
+ * A search splits the rows into segments scanned in parallel; each segment keeps a
+ * k-sized min-heap in primitive arrays and copies one row at a time into a reused
+ * scratch array for the dot-product kernel. Appends take the write lock; the first
+ * block grows by doubling up to the block size, after that full blocks are added
+ * without copying the rows already stored.
+ */
+public class EmbeddingIndex {
+
+    private static final long NO_PERSON = -1;
+    private static final int MIN_SEGMENT_ROWS = 16_384;
+    /** 256 MiB of floats per block. */
+    private static final int BLOCK_FLOATS = 1 << 26;
+
+    private final VectorKernel kernel;
+    private final ForkJoinPool pool;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<float[]> scratch = new ThreadLocal<>();
+
+    private final int blockFloats;
+    private final RowsById rowsById;
+
+    private int dimension = -1;
+    private int size;
+    private int blockShift;
+    private int blockMask;
+    private int firstBlockRows;
+    private FloatBuffer[] blocks;
+    private int blockCount;
+    private long[] embeddingIds;
+    private long[] personIds;
+
+    public EmbeddingIndex(VectorKernel kernel, int parallelism, int initialCapacity) {
+        this(kernel, parallelism, initialCapacity, BLOCK_FLOATS);
+    }
+
+    EmbeddingIndex(VectorKernel kernel, int parallelism, int initialCapacity, int blockFloats) {
+        this.kernel = kernel;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.blockFloats = blockFloats;
+        int capacity = Math.max(16, initialCapacity);
+        this.embeddingIds = new long[capacity];
+        this.personIds = new long[capacity];
+        this.rowsById = new RowsById(capacity);
+    }
+
+    /**
+     * Appends one row. The vector is normalised in place. Returns false when its
+     * dimension differs from the rows already in the index; an id that is already
+     * in the index is left as it is.
+     */
+    public boolean add(long embeddingId, Long personId, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                startBlocks(vector.length);
+            } else if (vector.length != dimension) {
+                return false;
+            }
+            if (rowsById.get(embeddingId) >= 0) {
+                return true;
+            }
+            if (size == embeddingIds.length) {
+                growIds();
+            }
+            int block = size >>> blockShift;
+            int offset = size & blockMask;
+            if (block == blockCount) {
+                addBlock();
+            } else if (block == 0 && offset == firstBlockRows) {
+                growFirstBlock();
+            }
+            blocks[block].put(offset * dimension, EmbeddingVectors.normalize(vector));
+            embeddingIds[size] = embeddingId;
+            personIds[size] = personId != null ? personId : NO_PERSON;
+            rowsById.put(embeddingId, size);
+            size++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Gives each listed row that has no person the person it maps to; ids not in the index are ignored. */
+    public void assignPersons(Map<Long, Long> personByEmbedding) {
+        lock.writeLock().lock();
+        try {
+            personByEmbedding.forEach((embeddingId, personId) -> {
+                int row = rowsById.get(embeddingId);
+                if (row >= 0 && personIds[row] == NO_PERSON) {
+                    personIds[row] = personId;
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Moves every row of a dropped person to the person kept in its place. */
+    public void mergePersons(Map<Long, Long> keptByDropped) {
+        lock.writeLock().lock();
+        try {
+            for (int row = 0; row < size; row++) {
+                if (personIds[row] != NO_PERSON) {
+                    Long kept = keptByDropped.get(personIds[row]);
+                    if (kept != null) {
+                        personIds[row] = kept;
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Top {@code k} rows by cosine similarity to {@code query}, best first. */
+    public List<EmbeddingMatch> search(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            if (size == 0 || k <= 0) {
+                return List.of();
+            }
+            if (query.length != dimension) {
+                throw new IllegalArgumentException("Query has " + query.length + " dimensions, index has " + dimension);
+            }
+            float[] q = EmbeddingVectors.normalize(query.clone());
+            int rows = size;
+            int segments = Math.max(1, Math.min(pool.getParallelism(), rows / MIN_SEGMENT_ROWS));
+            List<TopK> partials = segments == 1
+                    ? List.of(scan(q, 0, rows, k))
+                    : pool.submit(() -> IntStream.range(0, segments).parallel()
+                            .mapToObj(s -> scan(q, (int) ((long) rows * s / segments), (int) ((long) rows * (s + 1) / segments), k))
+                            .toList()).join();
+
+            List<EmbeddingMatch> matches = new ArrayList<>(k * partials.size());
+            for (TopK top : partials) {
+                for (int i = 0; i < top.count; i++) {
+                    int row = top.rows[i];
+                    long person = personIds[row];
+                    matches.add(new EmbeddingMatch(embeddingIds[row], person == NO_PERSON ? null : person, top.scores[i]));
+                }
+            }
+            matches.sort(Comparator.comparingDouble(EmbeddingMatch::score).reversed());
+            return matches.size() > k ? List.copyOf(matches.subList(0, k)) : matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public VectorKernel kernel() {
+        return kernel;
+    }
+
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private TopK scan(float[] q, int from, int to, int k) {
+        float[] row = scratch.get();
+        if (row == null || row.length != dimension) {
+            row = new float[dimension];
+            scratch.set(row);
+        }
+        TopK top = new TopK(k);
+        for (int r = from; r < to; r++) {
+            blocks[r >>> blockShift].get((r & blockMask) * dimension, row, 0, dimension);
+            top.offer(r, kernel.dot(q, row, dimension));
+        }
+        return top;
+    }
+
+    private void startBlocks(int dimension) {
+        this.dimension = dimension;
+        // a direct buffer is int-indexed, so each block stays well below 2 GiB of floats
+        blockShift = 31 - Integer.numberOfLeadingZeros(Math.max(1, blockFloats / dimension));
+        blockMask = (1 << blockShift) - 1;
+        firstBlockRows = Math.min(embeddingIds.length, 1 << blockShift);
+        blocks = new FloatBuffer[]{allocate((long) firstBlockRows * dimension)};
+        blockCount = 1;
+    }
+
+    private void growFirstBlock() {
+        int rows = Math.min(firstBlockRows * 2, 1 << blockShift);
+        FloatBuffer bigger = allocate((long) rows * dimension);
+        bigger.put(0, blocks[0], 0, size * dimension);
+        blocks[0] = bigger;
+        firstBlockRows = rows;
+    }
+
+    private void addBlock() {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount * 2);
+        }
+        blocks[blockCount++] = allocate((long) dimension << blockShift);
+    }
+
+    private void growIds() {
+        // rows are int-addressed, which caps one index at about 2^31 rows
+        int maxRows = Integer.MAX_VALUE - 8;
+        if (size >= maxRows) {
+            throw new IllegalStateException("Embedding index is full at " + size + " rows");
+        }
+        int newCapacity = (int) Math.min((long) size * 2, maxRows);
+        embeddingIds = Arrays.copyOf(embeddingIds, newCapacity);
+        personIds = Arrays.copyOf(personIds, newCapacity);
+    }
+
+    private static FloatBuffer allocate(long floats) {
+        return ByteBuffer.allocateDirect((int) (floats * Float.BYTES)).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /** Fixed-size min-heap on score; the root is the weakest of the current top k. */
+    private static final class TopK {
+        private final int[] rows;
+        private final float[] scores;
+        private int count;
+
+        TopK(int k) {
+            rows = new int[k];
+            scores = new float[k];
+        }
+
+        void offer(int row, float score) {
+            if (count < rows.length) {
+                int i = count++;
+                rows[i] = row;
+                scores[i] = score;
+                siftUp(i);
+            } else if (score > scores[0]) {
+                rows[0] = row;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= scores[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= count) {
+                    return;
+                }
+                int smallest = left + 1 < count && scores[left + 1] < scores[left] ? left + 1 : left;
+                if (scores[i] <= scores[smallest]) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
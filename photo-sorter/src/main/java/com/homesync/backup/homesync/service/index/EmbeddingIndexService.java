@@ -0,0 +1,145 @@
+package com.homesync.backup.homesync.service.index;
+
+import com.homesync.backup.homesync.event.EmbeddingsAssignedEvent;
+import com.homesync.backup.homesync.event.EmbeddingsStoredEvent;
+import com.homesync.backup.homesync.event.PersonsMergedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps an {@link EmbeddingIndex} over the embeddings table. The table is streamed
+ * in once the application is ready; afterwards rows arrive through
+ * {@link EmbeddingsStoredEvent}s published by the callback writers.
+ *
+ * Every event is applied, whenever it arrives: the index skips ids it already
+ * holds, so a row that committed out of id order after the load read past it is
+ * still added, and one the load reads as well is added only once.
+ *
+ * Face clustering moves rows to other persons through {@link PersonsMergedEvent}s
+ * and {@link EmbeddingsAssignedEvent}s. Those that come in while the load runs are
+ * held back and replayed after it, since the load may have read a row before the
+ * change committed.
+ */
+@Service
+public class EmbeddingIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingIndexService.class);
+
+    private final EmbeddingIndex index;
+    private final JdbcTemplate streamingJdbc;
+    // person changes received during the load in arrival order, null once it is done; guarded by this
+    private List<Runnable> heldBack = new ArrayList<>();
+    private volatile boolean ready;
+
+    public EmbeddingIndexService(DataSource dataSource,
+                                 @Value("${embedding.index.parallelism:0}") int parallelism,
+                                 @Value("${embedding.index.initial-capacity:65536}") int initialCapacity) {
+        this.index = new EmbeddingIndex(VectorKernel.best(), parallelism, initialCapacity);
+        this.streamingJdbc = new JdbcTemplate(dataSource);
+        // MySQL Connector/J streams rows one by one only with this fetch size
+        this.streamingJdbc.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Thread loader = new Thread(this::loadAll, "embedding-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @EventListener
+    public void onEmbeddingsStored(EmbeddingsStoredEvent event) {
+        for (EmbeddingsStoredEvent.StoredEmbedding stored : event.embeddings()) {
+            add(stored.embeddingId(), stored.personId(), stored.vector());
+        }
+    }
+
+    @EventListener
+    public void onPersonsMerged(PersonsMergedEvent event) {
+        update(() -> index.mergePersons(event.keptByDropped()));
+    }
+
+    @EventListener
+    public void onEmbeddingsAssigned(EmbeddingsAssignedEvent event) {
+        update(() -> index.assignPersons(event.personByEmbedding()));
+    }
+
+    public List<EmbeddingMatch> search(float[] query, int k) {
+        return index.search(query, k);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public int dimension() {
+        return index.dimension();
+    }
+
+    public String kernel() {
+        return index.kernel().getClass().getSimpleName();
+    }
+
+    @PreDestroy
+    public void close() {
+        index.close();
+    }
+
+    private void loadAll() {
+        long started = System.nanoTime();
+        try {
+            streamingJdbc.query("SELECT id, person_id, embedding FROM embeddings",
+                    rs -> {
+                        long personId = rs.getLong(2);
+                        add(rs.getLong(1), rs.wasNull() ? null : personId, rs.getBytes(3));
+                    });
+            replayHeldBack();
+            ready = true;
+            log.info("Embedding index loaded {} vectors of dimension {} in {} ms using {}", index.size(),
+                    index.dimension(), (System.nanoTime() - started) / 1_000_000, kernel());
+        } catch (Exception e) {
+            log.error("Loading the embedding index failed", e);
+            // rows the load did read still get later changes
+            replayHeldBack();
+        }
+    }
+
+    private void update(Runnable change) {
+        synchronized (this) {
+            if (heldBack != null) {
+                heldBack.add(change);
+                return;
+            }
+        }
+        change.run();
+    }
+
+    private synchronized void replayHeldBack() {
+        heldBack.forEach(Runnable::run);
+        heldBack = null;
+    }
+
+    private void add(long embeddingId, Long personId, byte[] bytes) {
+        if (bytes == null) {
+            return;
+        }
+        float[] vector = EmbeddingVectors.decode(bytes);
+        if (vector == null || !index.add(embeddingId, personId, vector)) {
+            log.warn("Skipping embedding {}: missing or mismatched vector", embeddingId);
+        }
+    }
+}
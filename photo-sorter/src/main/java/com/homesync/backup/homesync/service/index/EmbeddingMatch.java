@@ -0,0 +1,5 @@
+package com.homesync.backup.homesync.service.index;
+
+/** One search hit; {@code personId} is null for an unassigned face. */
+public record EmbeddingMatch(long embeddingId, Long personId, float score) {
+}
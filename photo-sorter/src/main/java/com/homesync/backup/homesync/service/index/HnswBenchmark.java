@@ -0,0 +1,27 @@
+package com.homesync.backup.homesync.service.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recall and latency of the HNSW index against exact search over the same queries.
+ * Recall is the share of the exact top k that the approximate search also returned.
+ */
+public record HnswBenchmark(int queries, int k, double exactMeanMicros, double exactP99Micros, List<Point> points) {
+
+    public record Point(int ef, double recall, double meanMicros, double p99Micros) {
+    }
+
+    static double meanMicros(long[] nanos) {
+        return Arrays.stream(nanos).average().orElse(0) / 1_000;
+    }
+
+    static double percentileMicros(long[] nanos, double percentile) {
+        if (nanos.length == 0) {
+            return 0;
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1_000.0;
+    }
+}
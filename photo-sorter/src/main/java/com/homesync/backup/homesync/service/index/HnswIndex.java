@@ -0,0 +1,753 @@
+package com.homesync.backup.homesync.service.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Approximate top-k cosine index: a hierarchical navigable small world graph
+ * (Malkov &amp; Yashunin) over unit-normalised embeddings. Everything lives in
+ * memory-mapped files under one directory, so a restart reopens the graph instead
+ * of rebuilding it:
+ * <ul>
+ *   <li>{@code hnsw.meta} - dimension, M, node count, entry point, checkpoint</li>
+ *   <li>{@code vectors.bin} - one float row per node</li>
+ *   <li>{@code nodes.bin} - per node its ids, level and layer-0 neighbour list</li>
+ *   <li>{@code upper.bin} - neighbour lists of layers above 0, which only about
+ *       one node in M reaches</li>
+ * </ul>
+ *
+ * Inserts run concurrently. Neighbour lists are guarded by striped monitors and the
+ * entry point by one more; searches take the same stripes while copying a list so
+ * they never see one half-rewritten. A node is flagged complete once linked, and
+ * only complete nodes are returned, so a crash mid-insert leaves at worst a
+ * traversable but invisible node. The ids of complete nodes are read into an
+ * id-to-node lookup on open, and adding an id the index already holds does nothing.
+ */
+public class HnswIndex implements Closeable {
+
+    private static final int MAGIC = 0x484E5357;
+    private static final int VERSION = 1;
+    private static final int META_BYTES = 64;
+    private static final int MAX_LEVEL = 16;
+    private static final int STRIPES = 1 << 12;
+    private static final long NO_PERSON = -1;
+
+    // hnsw.meta layout
+    private static final int META_MAGIC = 0;
+    private static final int META_VERSION = 4;
+    private static final int META_DIMENSION = 8;
+    private static final int META_M = 12;
+    private static final int META_COUNT = 16;
+    private static final int META_ENTRY = 20;
+    private static final int META_TOP = 24;
+    private static final int META_UPPER = 28;
+    private static final int META_CHECKPOINT = 32;
+
+    // nodes.bin record layout
+    private static final int NODE_EMBEDDING_ID = 0;
+    private static final int NODE_PERSON_ID = 8;
+    private static final int NODE_LEVEL = 16;
+    private static final int NODE_UPPER = 20;
+    private static final int NODE_COMPLETE = 24;
+    private static final int NODE_LAYER0 = 28;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final VectorKernel kernel;
+    private final FileChannel metaChannel;
+    private final MappedByteBuffer meta;
+    private final MappedRecords vectors;
+    private final MappedRecords nodes;
+    private final MappedRecords upper;
+    private final Object[] stripes = new Object[STRIPES];
+    private final Object entryLock = new Object();
+    private final AtomicInteger count = new AtomicInteger();
+    private final ThreadLocal<SearchContext> contexts;
+
+    // guarded by entryLock
+    private final RowsById nodesById;
+    private int upperCount;
+    private int entryPoint;
+    private int topLevel;
+
+    private HnswIndex(Path dir, int dimension, int m, int efConstruction, VectorKernel kernel) throws IOException {
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.kernel = kernel;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        Files.createDirectories(dir);
+        this.metaChannel = FileChannel.open(dir.resolve("hnsw.meta"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean existing = metaChannel.size() >= META_BYTES;
+        this.meta = metaChannel.map(FileChannel.MapMode.READ_WRITE, 0, META_BYTES);
+        meta.order(ByteOrder.LITTLE_ENDIAN);
+        if (existing && meta.getInt(META_MAGIC) == MAGIC) {
+            if (meta.getInt(META_VERSION) != VERSION || meta.getInt(META_DIMENSION) != dimension || meta.getInt(META_M) != m) {
+                metaChannel.close();
+                throw new IllegalStateException("HNSW index in " + dir + " was built with dimension "
+                        + meta.getInt(META_DIMENSION) + " and M " + meta.getInt(META_M) + "; delete it to rebuild");
+            }
+            count.set(meta.getInt(META_COUNT));
+            entryPoint = meta.getInt(META_ENTRY);
+            topLevel = meta.getInt(META_TOP);
+            upperCount = meta.getInt(META_UPPER);
+        } else {
+            meta.putInt(META_MAGIC, MAGIC);
+            meta.putInt(META_VERSION, VERSION);
+            meta.putInt(META_DIMENSION, dimension);
+            meta.putInt(META_M, m);
+            meta.putLong(META_CHECKPOINT, 0);
+            entryPoint = -1;
+            topLevel = -1;
+            writeMeta();
+        }
+        this.vectors = new MappedRecords(dir.resolve("vectors.bin"), dimension * Float.BYTES);
+        this.nodes = new MappedRecords(dir.resolve("nodes.bin"), (NODE_LAYER0 + maxM0 * Integer.BYTES + 7) & ~7);
+        this.upper = new MappedRecords(dir.resolve("upper.bin"), (1 + m) * Integer.BYTES);
+        this.contexts = ThreadLocal.withInitial(() -> new SearchContext(dimension, maxM0));
+        this.nodesById = new RowsById(count.get());
+        for (int node = 0; node < count.get(); node++) {
+            if (isComplete(node)) {
+                nodesById.put(nodes.chunk(node).getLong(nodes.offset(node) + NODE_EMBEDDING_ID), node);
+            }
+        }
+    }
+
+    /** Opens the index stored in {@code dir}, or creates an empty one there. */
+    public static HnswIndex open(Path dir, int dimension, int m, int efConstruction, VectorKernel kernel) {
+        try {
+            return new HnswIndex(dir, dimension, m, efConstruction, kernel);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open HNSW index in " + dir, e);
+        }
+    }
+
+    /** Dimension of the index stored in {@code dir}, or -1 when there is none. */
+    public static int storedDimension(Path dir) {
+        Path file = dir.resolve("hnsw.meta");
+        try {
+            if (!Files.exists(file) || Files.size(file) < META_BYTES) {
+                return -1;
+            }
+            ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            return header.getInt(META_MAGIC) == MAGIC ? header.getInt(META_DIMENSION) : -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Inserts one node and links it into the graph. The vector is normalised in
+     * place. Returns false when its dimension differs from the index; an id that
+     * is already in the index is left as it is.
+     */
+    public boolean add(long embeddingId, Long personId, float[] vector) {
+        if (vector.length != dimension) {
+            return false;
+        }
+        float[] v = EmbeddingVectors.normalize(vector);
+        int level = randomLevel();
+        int node;
+        int upperOffset = -1;
+        int entry;
+        int top;
+        synchronized (entryLock) {
+            if (nodesById.get(embeddingId) >= 0) {
+                return true;
+            }
+            node = count.get();
+            if (level > 0) {
+                upperOffset = upperCount;
+            }
+            try {
+                vectors.ensureCapacity(node + 1L);
+                nodes.ensureCapacity(node + 1L);
+                if (level > 0) {
+                    upper.ensureCapacity((long) upperOffset + level);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot grow HNSW index files", e);
+            }
+            if (level > 0) {
+                upperCount += level;
+            }
+            count.set(node + 1);
+            nodesById.put(embeddingId, node);
+            writeMeta();
+            // written under the lock, so a person update never races the node's ids
+            writeNode(node, embeddingId, personId, level, upperOffset, v);
+            entry = entryPoint;
+            top = topLevel;
+        }
+
+        if (entry < 0) {
+            synchronized (entryLock) {
+                if (entryPoint < 0) {
+                    entryPoint = node;
+                    topLevel = level;
+                    writeMeta();
+                    markComplete(node);
+                    return true;
+                }
+                entry = entryPoint;
+                top = topLevel;
+            }
+        }
+
+        SearchContext ctx = contexts.get();
+        int current = entry;
+        for (int layer = top; layer > level; layer--) {
+            current = greedy(ctx, v, current, layer);
+        }
+        for (int layer = Math.min(level, top); layer >= 0; layer--) {
+            int found = searchLayer(ctx, v, current, efConstruction, layer);
+            int selected = selectNeighbours(ctx, v, ctx.foundIds, ctx.foundDistances, found, m);
+            // a concurrent insert may already have linked this node, so drop a self-link
+            int[] chosen = Arrays.stream(ctx.selected, 0, selected).filter(id -> id != node).toArray();
+            writeList(node, layer, chosen, chosen.length);
+            for (int neighbour : chosen) {
+                addLink(ctx, neighbour, node, layer);
+            }
+            current = ctx.foundIds[0];
+        }
+        markComplete(node);
+
+        if (level > top) {
+            synchronized (entryLock) {
+                if (level > topLevel) {
+                    entryPoint = node;
+                    topLevel = level;
+                    writeMeta();
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Approximate top {@code k} nodes by cosine similarity to {@code query}, best
+     * first. {@code ef} is the size of the layer-0 candidate list: larger means
+     * better recall and slower queries; it is raised to {@code k} if smaller.
+     */
+    public List<EmbeddingMatch> search(float[] query, int k, int ef) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("Query has " + query.length + " dimensions, index has " + dimension);
+        }
+        int entry;
+        int top;
+        synchronized (entryLock) {
+            entry = entryPoint;
+            top = topLevel;
+        }
+        if (entry < 0 || k <= 0) {
+            return List.of();
+        }
+        float[] q = EmbeddingVectors.normalize(query.clone());
+        SearchContext ctx = contexts.get();
+        int current = entry;
+        for (int layer = top; layer > 0; layer--) {
+            current = greedy(ctx, q, current, layer);
+        }
+        int found = searchLayer(ctx, q, current, Math.max(ef, k), 0);
+        List<EmbeddingMatch> matches = new ArrayList<>(Math.min(k, found));
+        for (int i = 0; i < found && matches.size() < k; i++) {
+            int node = ctx.foundIds[i];
+            ByteBuffer chunk = nodes.chunk(node);
+            int base = nodes.offset(node);
+            if (chunk.getInt(base + NODE_COMPLETE) == 0) {
+                continue;
+            }
+            long person = chunk.getLong(base + NODE_PERSON_ID);
+            matches.add(new EmbeddingMatch(chunk.getLong(base + NODE_EMBEDDING_ID),
+                    person == NO_PERSON ? null : person, 1 - ctx.foundDistances[i]));
+        }
+        return matches;
+    }
+
+    /**
+     * Gives each listed node that has no person the person it maps to; ids not in
+     * the index are ignored. Like every write, it reaches disk with the next checkpoint.
+     */
+    public void assignPersons(Map<Long, Long> personByEmbedding) {
+        synchronized (entryLock) {
+            personByEmbedding.forEach((embeddingId, personId) -> {
+                int node = nodesById.get(embeddingId);
+                if (node >= 0 && personOf(node) == NO_PERSON) {
+                    setPerson(node, personId);
+                }
+            });
+        }
+    }
+
+    /** Moves every node of a dropped person to the person kept in its place. */
+    public void mergePersons(Map<Long, Long> keptByDropped) {
+        synchronized (entryLock) {
+            int size = count.get();
+            for (int node = 0; node < size; node++) {
+                long person = personOf(node);
+                if (person != NO_PERSON) {
+                    Long kept = keptByDropped.get(person);
+                    if (kept != null) {
+                        setPerson(node, kept);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Copy of the stored (normalised) vector of {@code node}. */
+    public float[] vector(int node) {
+        float[] row = new float[dimension];
+        readVector(node, row);
+        return row;
+    }
+
+    /** Whether {@code node} finished linking and is returned by searches. */
+    public boolean isComplete(int node) {
+        return nodes.chunk(node).getInt(nodes.offset(node) + NODE_COMPLETE) != 0;
+    }
+
+    /** Sorted embedding ids of complete nodes whose id is above {@code embeddingId}. */
+    public long[] embeddingIdsAbove(long embeddingId) {
+        int size = count.get();
+        long[] ids = new long[16];
+        int n = 0;
+        for (int node = 0; node < size; node++) {
+            ByteBuffer chunk = nodes.chunk(node);
+            int base = nodes.offset(node);
+            long id = chunk.getLong(base + NODE_EMBEDDING_ID);
+            if (id > embeddingId && chunk.getInt(base + NODE_COMPLETE) != 0) {
+                if (n == ids.length) {
+                    ids = Arrays.copyOf(ids, n * 2);
+                }
+                ids[n++] = id;
+            }
+        }
+        ids = Arrays.copyOf(ids, n);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /** Highest embedding id below which every row is known to be in the index. */
+    public long checkpoint() {
+        synchronized (entryLock) {
+            return meta.getLong(META_CHECKPOINT);
+        }
+    }
+
+    /** Flushes the graph to disk, then records {@code embeddingId} as the checkpoint. */
+    public void checkpoint(long embeddingId) {
+        vectors.force();
+        nodes.force();
+        upper.force();
+        synchronized (entryLock) {
+            meta.putLong(META_CHECKPOINT, embeddingId);
+            meta.force();
+        }
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int m() {
+        return m;
+    }
+
+    public int efConstruction() {
+        return efConstruction;
+    }
+
+    public int topLevel() {
+        synchronized (entryLock) {
+            return topLevel;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        vectors.close();
+        nodes.close();
+        upper.close();
+        synchronized (entryLock) {
+            meta.force();
+            metaChannel.close();
+        }
+    }
+
+    private int randomLevel() {
+        double u = 1 - ThreadLocalRandom.current().nextDouble();
+        return (int) Math.min(MAX_LEVEL, Math.floor(-Math.log(u) * levelMultiplier));
+    }
+
+    private void writeMeta() {
+        meta.putInt(META_COUNT, count.get());
+        meta.putInt(META_ENTRY, entryPoint);
+        meta.putInt(META_TOP, topLevel);
+        meta.putInt(META_UPPER, upperCount);
+    }
+
+    private void writeNode(int node, long embeddingId, Long personId, int level, int upperOffset, float[] v) {
+        vectors.floats(node).put(vectors.offset(node) / Float.BYTES, v);
+        ByteBuffer chunk = nodes.chunk(node);
+        int base = nodes.offset(node);
+        chunk.putLong(base + NODE_EMBEDDING_ID, embeddingId);
+        chunk.putLong(base + NODE_PERSON_ID, personId != null ? personId : NO_PERSON);
+        chunk.putInt(base + NODE_LEVEL, level);
+        chunk.putInt(base + NODE_UPPER, upperOffset);
+        chunk.putInt(base + NODE_COMPLETE, 0);
+        chunk.putInt(base + NODE_LAYER0, 0);
+        for (int layer = 1; layer <= level; layer++) {
+            int block = upperOffset + layer - 1;
+            upper.chunk(block).putInt(upper.offset(block), 0);
+        }
+    }
+
+    private long personOf(int node) {
+        return nodes.chunk(node).getLong(nodes.offset(node) + NODE_PERSON_ID);
+    }
+
+    private void setPerson(int node, long personId) {
+        nodes.chunk(node).putLong(nodes.offset(node) + NODE_PERSON_ID, personId);
+    }
+
+    private void markComplete(int node) {
+        nodes.chunk(node).putInt(nodes.offset(node) + NODE_COMPLETE, 1);
+    }
+
+    private void readVector(int node, float[] into) {
+        vectors.floats(node).get(vectors.offset(node) / Float.BYTES, into, 0, dimension);
+    }
+
+    private float distance(SearchContext ctx, float[] q, int node) {
+        readVector(node, ctx.row);
+        return 1 - kernel.dot(q, ctx.row, dimension);
+    }
+
+    private Object stripe(int node) {
+        return stripes[node & (STRIPES - 1)];
+    }
+
+    /** Buffer holding the list of {@code node} at {@code layer}, or null if the node does not reach it. */
+    private ByteBuffer listChunk(int node, int layer) {
+        if (layer == 0) {
+            return nodes.chunk(node);
+        }
+        ByteBuffer chunk = nodes.chunk(node);
+        int base = nodes.offset(node);
+        if (layer > chunk.getInt(base + NODE_LEVEL)) {
+            return null;
+        }
+        return upper.chunk(chunk.getInt(base + NODE_UPPER) + layer - 1L);
+    }
+
+    /** Position of the list's count within {@link #listChunk}; the ids follow it. */
+    private int listPosition(int node, int layer) {
+        if (layer == 0) {
+            return nodes.offset(node) + NODE_LAYER0;
+        }
+        ByteBuffer chunk = nodes.chunk(node);
+        return upper.offset(chunk.getInt(nodes.offset(node) + NODE_UPPER) + layer - 1L);
+    }
+
+    private int readList(int node, int layer, int[] into) {
+        synchronized (stripe(node)) {
+            ByteBuffer chunk = listChunk(node, layer);
+            if (chunk == null) {
+                return 0;
+            }
+            int pos = listPosition(node, layer);
+            int n = Math.min(chunk.getInt(pos), layer == 0 ? maxM0 : m);
+            for (int i = 0; i < n; i++) {
+                into[i] = chunk.getInt(pos + Integer.BYTES * (i + 1));
+            }
+            return n;
+        }
+    }
+
+    private void writeList(int node, int layer, int[] ids, int n) {
+        synchronized (stripe(node)) {
+            ByteBuffer chunk = listChunk(node, layer);
+            int pos = listPosition(node, layer);
+            for (int i = 0; i < n; i++) {
+                chunk.putInt(pos + Integer.BYTES * (i + 1), ids[i]);
+            }
+            chunk.putInt(pos, n);
+        }
+    }
+
+    /** Adds {@code node} to the list of {@code neighbour}, pruning it with the heuristic when full. */
+    private void addLink(SearchContext ctx, int neighbour, int node, int layer) {
+        int max = layer == 0 ? maxM0 : m;
+        synchronized (stripe(neighbour)) {
+            ByteBuffer chunk = listChunk(neighbour, layer);
+            if (chunk == null) {
+                return;
+            }
+            int pos = listPosition(neighbour, layer);
+            int n = chunk.getInt(pos);
+            if (n < max) {
+                chunk.putInt(pos + Integer.BYTES * (n + 1), node);
+                chunk.putInt(pos, n + 1);
+                return;
+            }
+            readVector(neighbour, ctx.base);
+            for (int i = 0; i < n; i++) {
+                ctx.pruneIds[i] = chunk.getInt(pos + Integer.BYTES * (i + 1));
+                ctx.pruneDistances[i] = distance(ctx, ctx.base, ctx.pruneIds[i]);
+            }
+            ctx.pruneIds[n] = node;
+            ctx.pruneDistances[n] = distance(ctx, ctx.base, node);
+            sortByDistance(ctx.pruneIds, ctx.pruneDistances, n + 1);
+            int kept = selectNeighbours(ctx, ctx.base, ctx.pruneIds, ctx.pruneDistances, n + 1, max);
+            for (int i = 0; i < kept; i++) {
+                chunk.putInt(pos + Integer.BYTES * (i + 1), ctx.selected[i]);
+            }
+            chunk.putInt(pos, kept);
+        }
+    }
+
+    /**
+     * The neighbour-selection heuristic: walk candidates nearest first and keep one
+     * only if it is closer to {@code base} than to every candidate already kept.
+     * This favours links in different directions over a tight clump. Candidates
+     * must be sorted by distance; the result goes to {@code ctx.selected}.
+     */
+    private int selectNeighbours(SearchContext ctx, float[] base, int[] ids, float[] distances, int n, int max) {
+        int chosen = 0;
+        for (int i = 0; i < n && chosen < max; i++) {
+            int candidate = ids[i];
+            readVector(candidate, ctx.other);
+            boolean keep = true;
+            for (int j = 0; j < chosen && keep; j++) {
+                keep = distance(ctx, ctx.other, ctx.selected[j]) >= distances[i];
+            }
+            if (keep) {
+                ctx.selected[chosen++] = candidate;
+            }
+        }
+        return chosen;
+    }
+
+    private int greedy(SearchContext ctx, float[] q, int entry, int layer) {
+        int current = entry;
+        float best = distance(ctx, q, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int n = readList(current, layer, ctx.list);
+            for (int i = 0; i < n; i++) {
+                int candidate = ctx.list[i];
+                float d = distance(ctx, q, candidate);
+                if (d < best) {
+                    best = d;
+                    current = candidate;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer from {@code entry}, keeping the {@code ef}
+     * nearest nodes seen. Leaves them in {@code ctx.foundIds}/{@code foundDistances}
+     * sorted nearest first and returns how many there are.
+     */
+    private int searchLayer(SearchContext ctx, float[] q, int entry, int ef, int layer) {
+        ctx.startVisit(count.get());
+        Heap candidates = ctx.candidates.clear();
+        Heap results = ctx.results.clear();
+        float d = distance(ctx, q, entry);
+        ctx.visit(entry);
+        candidates.push(entry, d);
+        results.push(entry, -d);
+        while (candidates.size > 0) {
+            if (candidates.peekKey() > -results.peekKey() && results.size >= ef) {
+                break;
+            }
+            int current = candidates.pop();
+            int n = readList(current, layer, ctx.list);
+            for (int i = 0; i < n; i++) {
+                int neighbour = ctx.list[i];
+                if (!ctx.visit(neighbour)) {
+                    continue;
+                }
+                float dn = distance(ctx, q, neighbour);
+                if (results.size < ef || dn < -results.peekKey()) {
+                    candidates.push(neighbour, dn);
+                    results.push(neighbour, -dn);
+                    if (results.size > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        int found = results.size;
+        ctx.ensureFound(found);
+        for (int i = found - 1; i >= 0; i--) {
+            ctx.foundDistances[i] = -results.peekKey();
+            ctx.foundIds[i] = results.pop();
+        }
+        return found;
+    }
+
+    private static void sortByDistance(int[] ids, float[] distances, int n) {
+        for (int i = 1; i < n; i++) {
+            int id = ids[i];
+            float d = distances[i];
+            int j = i - 1;
+            while (j >= 0 && distances[j] > d) {
+                ids[j + 1] = ids[j];
+                distances[j + 1] = distances[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            distances[j + 1] = d;
+        }
+    }
+
+    /** Per-thread scratch space, so a search allocates nothing but its result list. */
+    private static final class SearchContext {
+        final float[] row;
+        final float[] other;
+        final float[] base;
+        final int[] list;
+        final int[] selected;
+        final int[] pruneIds;
+        final float[] pruneDistances;
+        final Heap candidates = new Heap();
+        final Heap results = new Heap();
+        int[] foundIds = new int[64];
+        float[] foundDistances = new float[64];
+        int[] visited = new int[1024];
+        int stamp;
+
+        SearchContext(int dimension, int maxM0) {
+            row = new float[dimension];
+            other = new float[dimension];
+            base = new float[dimension];
+            list = new int[maxM0 + 1];
+            selected = new int[maxM0 + 1];
+            pruneIds = new int[maxM0 + 1];
+            pruneDistances = new float[maxM0 + 1];
+        }
+
+        void startVisit(int nodes) {
+            if (visited.length < nodes) {
+                visited = new int[Math.max(nodes, visited.length * 2)];
+                stamp = 0;
+            }
+            if (++stamp == 0) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+        }
+
+        /** Marks {@code node} visited; false if it already was in this search. */
+        boolean visit(int node) {
+            if (node >= visited.length) {
+                // inserted by another thread since the search started
+                visited = Arrays.copyOf(visited, Math.max(node + 1, visited.length * 2));
+            }
+            if (visited[node] == stamp) {
+                return false;
+            }
+            visited[node] = stamp;
+            return true;
+        }
+
+        void ensureFound(int n) {
+            if (foundIds.length < n) {
+                foundIds = new int[n];
+                foundDistances = new float[n];
+            }
+        }
+    }
+
+    /** Binary min-heap of node ids keyed by float; results use negated distances to act as a max-heap. */
+    private static final class Heap {
+        int[] ids = new int[64];
+        float[] keys = new float[64];
+        int size;
+
+        Heap clear() {
+            size = 0;
+            return this;
+        }
+
+        float peekKey() {
+            return keys[0];
+        }
+
+        void push(int id, float key) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            keys[i] = key;
+        }
+
+        int pop() {
+            int top = ids[0];
+            int lastId = ids[--size];
+            float lastKey = keys[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= lastKey) {
+                    break;
+                }
+                ids[i] = ids[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            ids[i] = lastId;
+            keys[i] = lastKey;
+            return top;
+        }
+    }
+}
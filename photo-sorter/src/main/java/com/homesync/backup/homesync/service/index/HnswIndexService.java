@@ -0,0 +1,361 @@
+package com.homesync.backup.homesync.service.index;
+
+import com.homesync.backup.homesync.event.EmbeddingsAssignedEvent;
+import com.homesync.backup.homesync.event.EmbeddingsStoredEvent;
+import com.homesync.backup.homesync.event.PersonsMergedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps an {@link HnswIndex} over the embeddings table in memory-mapped files under
+ * {@code embedding.hnsw.path}. On startup the stored graph is reopened and only
+ * rows above its checkpoint are read back; new rows arrive through
+ * {@link EmbeddingsStoredEvent}s like for the exact index. Every event is applied,
+ * also for ids the load already read past, since the graph skips ids it holds.
+ * Person changes from face clustering are held back until the load is done, as
+ * for the exact index.
+ *
+ * Inserts run on a small pool since the graph takes concurrent inserts. Every id
+ * handed to the pool stays in {@code pending} until linked, and the periodic
+ * checkpoint records the highest id below which nothing is pending. The value
+ * written is the one computed on the previous run, which leaves a full interval for
+ * callback transactions that committed out of id order to deliver their events.
+ */
+@Service
+public class HnswIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(HnswIndexService.class);
+
+    private final boolean enabled;
+    private final Path path;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final VectorKernel kernel = VectorKernel.best();
+    private final JdbcTemplate streamingJdbc;
+    private final ThreadPoolExecutor inserter;
+    private final EmbeddingIndexService exactIndex;
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+    private final AtomicLong highestSubmitted = new AtomicLong();
+    // notified while loading whenever an insert finishes
+    private final Object linked = new Object();
+    private volatile HnswIndex index;
+    private volatile long loadedUpTo = Long.MAX_VALUE;
+    // person changes received during the load in arrival order, null once it is done; guarded by this
+    private List<Consumer<HnswIndex>> heldBack;
+    private volatile boolean ready;
+    private long nextCheckpoint;
+
+    public HnswIndexService(DataSource dataSource,
+                            EmbeddingIndexService exactIndex,
+                            @Value("${embedding.hnsw.enabled:true}") boolean enabled,
+                            @Value("${embedding.hnsw.path:./data/hnsw}") String path,
+                            @Value("${embedding.hnsw.m:16}") int m,
+                            @Value("${embedding.hnsw.ef-construction:200}") int efConstruction,
+                            @Value("${embedding.hnsw.ef-search:64}") int efSearch,
+                            @Value("${embedding.hnsw.insert-threads:0}") int insertThreads,
+                            @Value("${embedding.hnsw.insert-queue:10000}") int insertQueue) {
+        this.exactIndex = exactIndex;
+        this.enabled = enabled;
+        this.path = Path.of(path);
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.heldBack = enabled ? new ArrayList<>() : null;
+        this.streamingJdbc = new JdbcTemplate(dataSource);
+        this.streamingJdbc.setFetchSize(Integer.MIN_VALUE);
+        int threads = insertThreads > 0 ? insertThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIds = new AtomicInteger();
+        // a full queue makes the submitting thread insert itself, which slows the loader or callback writers down
+        this.inserter = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(insertQueue), r -> {
+                    Thread t = new Thread(r, "hnsw-insert-" + threadIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        Thread loader = new Thread(this::loadMissing, "hnsw-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @EventListener
+    public void onEmbeddingsStored(EmbeddingsStoredEvent event) {
+        for (EmbeddingsStoredEvent.StoredEmbedding stored : event.embeddings()) {
+            submit(stored.embeddingId(), stored.personId(), stored.vector());
+        }
+    }
+
+    @EventListener
+    public void onPersonsMerged(PersonsMergedEvent event) {
+        update(target -> target.mergePersons(event.keptByDropped()));
+    }
+
+    @EventListener
+    public void onEmbeddingsAssigned(EmbeddingsAssignedEvent event) {
+        update(target -> target.assignPersons(event.personByEmbedding()));
+    }
+
+    public List<EmbeddingMatch> search(float[] query, int k, Integer ef) {
+        HnswIndex current = index;
+        return current == null ? List.of() : current.search(query, k, ef != null ? ef : efSearch);
+    }
+
+    /**
+     * Compares this index with the exact one on {@code queries} vectors sampled
+     * from the graph: recall@k and mean/p99 latency for every {@code ef}, so the
+     * search width can be picked as a deliberate recall-for-latency trade.
+     */
+    public HnswBenchmark benchmark(int queries, int k, int[] efValues) {
+        HnswIndex current = index;
+        if (current == null || current.size() == 0) {
+            throw new IllegalStateException("HNSW index is empty");
+        }
+        List<float[]> sample = new ArrayList<>(queries);
+        for (int i = 0; i < queries; i++) {
+            sample.add(current.vector(ThreadLocalRandom.current().nextInt(current.size())));
+        }
+        long[] exactNanos = new long[queries];
+        List<Set<Long>> truth = new ArrayList<>(queries);
+        for (int i = 0; i < queries; i++) {
+            long started = System.nanoTime();
+            List<EmbeddingMatch> exact = exactIndex.search(sample.get(i), k);
+            exactNanos[i] = System.nanoTime() - started;
+            Set<Long> ids = new HashSet<>();
+            exact.forEach(match -> ids.add(match.embeddingId()));
+            truth.add(ids);
+        }
+        List<HnswBenchmark.Point> points = new ArrayList<>(efValues.length);
+        for (int ef : efValues) {
+            long[] nanos = new long[queries];
+            long hits = 0;
+            long expected = 0;
+            for (int i = 0; i < queries; i++) {
+                long started = System.nanoTime();
+                List<EmbeddingMatch> approximate = current.search(sample.get(i), k, ef);
+                nanos[i] = System.nanoTime() - started;
+                for (EmbeddingMatch match : approximate) {
+                    if (truth.get(i).contains(match.embeddingId())) {
+                        hits++;
+                    }
+                }
+                expected += truth.get(i).size();
+            }
+            points.add(new HnswBenchmark.Point(ef, expected == 0 ? 0 : (double) hits / expected,
+                    HnswBenchmark.meanMicros(nanos), HnswBenchmark.percentileMicros(nanos, 0.99)));
+        }
+        return new HnswBenchmark(queries, k, HnswBenchmark.meanMicros(exactNanos),
+                HnswBenchmark.percentileMicros(exactNanos, 0.99), points);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        HnswIndex current = index;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Highest embedding id up to which every row handed to the index has been
+     * linked, so a search sees all of them.
+     */
+    public long linkedUpTo() {
+        long high = highestSubmitted.get();
+        long lowest = lowestPending();
+        return lowest == Long.MAX_VALUE ? high : Math.min(high, lowest - 1);
+    }
+
+    private long lowestPending() {
+        Long lowest = pending.ceiling(Long.MIN_VALUE);
+        return lowest == null ? Long.MAX_VALUE : lowest;
+    }
+
+    public int efSearch() {
+        return efSearch;
+    }
+
+    public int m() {
+        return m;
+    }
+
+    @Scheduled(fixedDelayString = "${embedding.hnsw.checkpoint-interval-ms:30000}")
+    public synchronized void checkpoint() {
+        HnswIndex current = index;
+        if (current == null) {
+            return;
+        }
+        long high = highestSubmitted.get();
+        Long lowestPending = pending.isEmpty() ? null : pending.first();
+        long candidate = lowestPending == null ? high : Math.min(high, lowestPending - 1);
+        if (nextCheckpoint > current.checkpoint()) {
+            current.checkpoint(nextCheckpoint);
+        }
+        nextCheckpoint = candidate;
+    }
+
+    @PreDestroy
+    public void close() {
+        inserter.shutdown();
+        try {
+            if (!inserter.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("HNSW inserts still running at shutdown; they will be re-read on the next start");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        HnswIndex current = index;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.warn("Closing the HNSW index failed", e);
+            }
+        }
+    }
+
+    private void loadMissing() {
+        long started = System.nanoTime();
+        try {
+            int dimension = HnswIndex.storedDimension(path);
+            if (dimension < 0) {
+                List<byte[]> first = streamingJdbc.query("SELECT embedding FROM embeddings ORDER BY id LIMIT 1",
+                        (rs, i) -> rs.getBytes(1));
+                if (!first.isEmpty() && first.get(0) != null) {
+                    dimension = first.get(0).length / Float.BYTES;
+                }
+            }
+            long checkpoint = 0;
+            long[] present = new long[0];
+            if (dimension > 0) {
+                HnswIndex opened = open(dimension);
+                checkpoint = opened.checkpoint();
+                present = opened.embeddingIdsAbove(checkpoint);
+            }
+            Long max = streamingJdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM embeddings", Long.class);
+            loadedUpTo = max != null ? max : 0;
+            long[] alreadyIndexed = present;
+            AtomicLong read = new AtomicLong();
+            streamingJdbc.query("SELECT id, person_id, embedding FROM embeddings WHERE id > ? AND id <= ? ORDER BY id",
+                    rs -> {
+                        long id = rs.getLong(1);
+                        if (Arrays.binarySearch(alreadyIndexed, id) < 0) {
+                            long personId = rs.getLong(2);
+                            submit(id, rs.wasNull() ? null : personId, rs.getBytes(3));
+                            read.incrementAndGet();
+                        }
+                    }, checkpoint, loadedUpTo);
+            synchronized (linked) {
+                // later ids come from callbacks and may keep arriving; only the loaded ones matter
+                while (lowestPending() <= loadedUpTo) {
+                    linked.wait();
+                }
+            }
+            replayHeldBack();
+            ready = true;
+            log.info("HNSW index ready with {} vectors ({} inserted since checkpoint {}) in {} ms",
+                    size(), read.get(), checkpoint, (System.nanoTime() - started) / 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Loading the HNSW index failed", e);
+        } finally {
+            if (!ready) {
+                // nodes the load did insert still get later changes
+                replayHeldBack();
+            }
+        }
+    }
+
+    private void update(Consumer<HnswIndex> change) {
+        synchronized (this) {
+            if (heldBack != null) {
+                heldBack.add(change);
+                return;
+            }
+        }
+        HnswIndex current = index;
+        if (current != null) {
+            change.accept(current);
+        }
+    }
+
+    private synchronized void replayHeldBack() {
+        HnswIndex current = index;
+        if (current != null) {
+            heldBack.forEach(change -> change.accept(current));
+        }
+        heldBack = null;
+    }
+
+    private synchronized HnswIndex open(int dimension) {
+        if (index == null) {
+            index = HnswIndex.open(path, dimension, m, efConstruction, kernel);
+            log.info("Opened HNSW index in {} with {} vectors (M={}, efConstruction={}, efSearch={})",
+                    path, index.size(), m, efConstruction, efSearch);
+        }
+        return index;
+    }
+
+    private void submit(long embeddingId, Long personId, byte[] bytes) {
+        float[] vector = bytes != null ? EmbeddingVectors.decode(bytes) : null;
+        if (vector == null) {
+            log.warn("Skipping embedding {}: missing vector", embeddingId);
+            return;
+        }
+        HnswIndex target = index != null ? index : open(vector.length);
+        if (!pending.add(embeddingId)) {
+            // the load and a callback handed over the same row; the first insert covers both
+            return;
+        }
+        highestSubmitted.accumulateAndGet(embeddingId, Math::max);
+        inserter.execute(() -> {
+            try {
+                if (!target.add(embeddingId, personId, vector)) {
+                    log.warn("Skipping embedding {}: {} dimensions, index has {}", embeddingId, vector.length,
+                            target.dimension());
+                }
+            } catch (RuntimeException e) {
+                log.error("Inserting embedding {} into the HNSW index failed", embeddingId, e);
+            } finally {
+                pending.remove(embeddingId);
+                if (!ready) {
+                    synchronized (linked) {
+                        linked.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+}
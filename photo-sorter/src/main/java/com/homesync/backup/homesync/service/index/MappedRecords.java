@@ -0,0 +1,91 @@
+package com.homesync.backup.homesync.service.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file of fixed-size records mapped into memory in chunks. A single mapping is
+ * limited to 2 GiB, so the file is mapped as a growing list of chunks that each
+ * hold a whole number of records; no record ever straddles two chunks.
+ *
+ * Absolute get/put on the returned buffers is safe from many threads because it
+ * never touches the buffer position.
+ */
+final class MappedRecords implements Closeable {
+
+    private static final long TARGET_CHUNK_BYTES = 256L << 20;
+
+    private final FileChannel channel;
+    private final int recordSize;
+    private final int recordsPerChunk;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private volatile FloatBuffer[] floatViews = new FloatBuffer[0];
+
+    MappedRecords(Path file, int recordSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.recordSize = recordSize;
+        this.recordsPerChunk = (int) Math.max(1, TARGET_CHUNK_BYTES / recordSize);
+        long existing = channel.size() / recordSize;
+        if (existing > 0) {
+            ensureCapacity(existing);
+        }
+    }
+
+    /** Maps enough chunks to address {@code records} records, extending the file as needed. */
+    synchronized void ensureCapacity(long records) throws IOException {
+        int needed = (int) ((records + recordsPerChunk - 1) / recordsPerChunk);
+        ByteBuffer[] current = chunks;
+        if (needed <= current.length) {
+            return;
+        }
+        ByteBuffer[] grown = Arrays.copyOf(current, needed);
+        FloatBuffer[] grownViews = Arrays.copyOf(floatViews, needed);
+        long chunkBytes = (long) recordsPerChunk * recordSize;
+        for (int i = current.length; i < needed; i++) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, i * chunkBytes, chunkBytes);
+            grown[i] = mapped.order(ByteOrder.nativeOrder());
+            grownViews[i] = grown[i].asFloatBuffer();
+        }
+        // views first: a reader that sees the new chunk must also see its view
+        floatViews = grownViews;
+        chunks = grown;
+    }
+
+    ByteBuffer chunk(long record) {
+        return chunks[(int) (record / recordsPerChunk)];
+    }
+
+    /** Float view of the chunk holding {@code record}; index it with {@link #offset} / 4. */
+    FloatBuffer floats(long record) {
+        return floatViews[(int) (record / recordsPerChunk)];
+    }
+
+    int offset(long record) {
+        return (int) (record % recordsPerChunk) * recordSize;
+    }
+
+    int recordSize() {
+        return recordSize;
+    }
+
+    /** Writes dirty pages of every chunk back to the file. */
+    void force() {
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
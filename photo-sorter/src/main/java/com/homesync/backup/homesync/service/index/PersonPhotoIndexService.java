@@ -0,0 +1,310 @@
+package com.homesync.backup.homesync.service.index;
+
+import com.homesync.backup.homesync.dto.PersonPhotoMatches;
+import com.homesync.backup.homesync.event.PersonsMergedEvent;
+import com.homesync.backup.homesync.event.PhotoPersonsLinkedEvent;
+import com.homesync.backup.homesync.event.PhotosUnlinkedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory person to photos index over photo_persons, one {@link PhotoBitmap} per
+ * person, for queries like "photos with A and B but not C" without a join per
+ * person. The links of photos not flagged deleted are streamed in once the
+ * application is ready; afterwards rows arrive through {@link PhotoPersonsLinkedEvent}s
+ * and photos leave through {@link PhotosUnlinkedEvent}s. Events that come in while
+ * the load runs are held back and replayed after it in arrival order, since
+ * replaying one the load already saw is harmless. Persons merged by face
+ * clustering ({@link PersonsMergedEvent}) fold their bitmaps together.
+ *
+ * A failed load is retried with exponential backoff. Every event is published
+ * after its transaction commits, so one held back before an attempt starts is in
+ * that attempt's snapshot and is dropped with the held-back list.
+ *
+ * Bitmaps are immutable and replaced per person on update, so queries read them
+ * without locking.
+ */
+@Service
+public class PersonPhotoIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(PersonPhotoIndexService.class);
+
+    private final JdbcTemplate streamingJdbc;
+    private final Map<Long, PhotoBitmap> byPerson = new ConcurrentHashMap<>();
+    private final Timer queryTimer;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    // updates received during the load in arrival order, null once it is done; guarded by this
+    private List<Runnable> heldBack = new ArrayList<>();
+    private volatile boolean ready;
+
+    public PersonPhotoIndexService(DataSource dataSource,
+                                   MeterRegistry registry,
+                                   @Value("${person-index.retry.initial-backoff-ms:1000}") long initialBackoffMillis,
+                                   @Value("${person-index.retry.max-backoff-ms:60000}") long maxBackoffMillis) {
+        this.streamingJdbc = new JdbcTemplate(dataSource);
+        this.streamingJdbc.setFetchSize(Integer.MIN_VALUE);
+        this.queryTimer = Timer.builder("person.index.query").register(registry);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Thread loader = new Thread(this::loadAll, "person-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @EventListener
+    public void onPersonsMerged(PersonsMergedEvent event) {
+        update(() -> merge(event.keptByDropped()));
+    }
+
+    @EventListener
+    public void onPhotoPersonsLinked(PhotoPersonsLinkedEvent event) {
+        update(() -> apply(event.links()));
+    }
+
+    @EventListener
+    public void onPhotosUnlinked(PhotosUnlinkedEvent event) {
+        update(() -> remove(event.photoIds()));
+    }
+
+    /**
+     * Photos linked to every person in {@code all}, to at least one in {@code any}
+     * and to none in {@code none}. Either {@code all} or {@code any} must be given.
+     *
+     * @throws IllegalArgumentException when both are empty
+     * @throws IllegalStateException while the index is loading
+     */
+    public PhotoBitmap query(List<Long> all, List<Long> any, List<Long> none) {
+        if (isEmpty(all) && isEmpty(any)) {
+            throw new IllegalArgumentException("all or any is required");
+        }
+        if (!ready) {
+            throw new IllegalStateException("Person index is still loading");
+        }
+        long started = System.nanoTime();
+        PhotoBitmap result = null;
+        if (!isEmpty(all)) {
+            // smallest first, so the running intersection shrinks as early as possible
+            List<PhotoBitmap> required = new ArrayList<>(all.size());
+            for (Long personId : all) {
+                required.add(bitmap(personId));
+            }
+            required.sort(Comparator.comparingLong(PhotoBitmap::cardinality));
+            result = required.get(0);
+            for (int i = 1; i < required.size() && !result.isEmpty(); i++) {
+                result = result.and(required.get(i));
+            }
+        }
+        if (!isEmpty(any)) {
+            PhotoBitmap union = union(any);
+            result = result == null ? union : result.and(union);
+        }
+        if (!isEmpty(none) && !result.isEmpty()) {
+            result = result.andNot(union(none));
+        }
+        queryTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /** One page of {@link #query} after photo id {@code after}, with the total count. */
+    public PersonPhotoMatches matches(List<Long> all, List<Long> any, List<Long> none, Long after, int limit) {
+        PhotoBitmap result = query(all, any, none);
+        long[] ids = result.ids(after != null ? after : -1, limit + 1);
+        boolean more = ids.length > limit;
+        List<Long> page = new ArrayList<>(Math.min(ids.length, limit));
+        for (int i = 0; i < ids.length && i < limit; i++) {
+            page.add(ids[i]);
+        }
+        return new PersonPhotoMatches(result.cardinality(), page, more ? page.get(page.size() - 1) : null);
+    }
+
+    /** Number of photos per person, in the given order. */
+    public Map<Long, Long> counts(List<Long> personIds) {
+        if (!ready) {
+            throw new IllegalStateException("Person index is still loading");
+        }
+        Map<Long, Long> counts = new LinkedHashMap<>();
+        for (Long personId : personIds) {
+            counts.put(personId, bitmap(personId).cardinality());
+        }
+        return counts;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int persons() {
+        return byPerson.size();
+    }
+
+    public long links() {
+        long total = 0;
+        for (PhotoBitmap bitmap : byPerson.values()) {
+            total += bitmap.cardinality();
+        }
+        return total;
+    }
+
+    public long sizeInBytes() {
+        long total = 0;
+        for (PhotoBitmap bitmap : byPerson.values()) {
+            total += bitmap.sizeInBytes();
+        }
+        return total;
+    }
+
+    void apply(List<PhotoPersonsLinkedEvent.Link> links) {
+        Map<Long, long[]> byPersonIds = new HashMap<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+        for (PhotoPersonsLinkedEvent.Link link : links) {
+            int n = sizes.merge(link.personId(), 1, Integer::sum);
+            long[] ids = byPersonIds.computeIfAbsent(link.personId(), p -> new long[4]);
+            if (n > ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                byPersonIds.put(link.personId(), ids);
+            }
+            ids[n - 1] = link.photoId();
+        }
+        for (Map.Entry<Long, long[]> entry : byPersonIds.entrySet()) {
+            long[] ids = Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey()));
+            byPerson.compute(entry.getKey(), (p, bitmap) -> (bitmap != null ? bitmap : PhotoBitmap.EMPTY).with(ids));
+        }
+    }
+
+    void merge(Map<Long, Long> keptByDropped) {
+        keptByDropped.forEach((dropped, kept) -> {
+            PhotoBitmap photos = byPerson.remove(dropped);
+            if (photos != null) {
+                byPerson.merge(kept, photos, PhotoBitmap::or);
+            }
+        });
+    }
+
+    void remove(Collection<Long> photoIds) {
+        long[] ids = new long[photoIds.size()];
+        int i = 0;
+        for (Long id : photoIds) {
+            ids[i++] = id;
+        }
+        byPerson.replaceAll((p, bitmap) -> bitmap.without(ids));
+    }
+
+    private void update(Runnable change) {
+        synchronized (this) {
+            if (heldBack != null) {
+                heldBack.add(change);
+                return;
+            }
+        }
+        change.run();
+    }
+
+    private PhotoBitmap bitmap(Long personId) {
+        return byPerson.getOrDefault(personId, PhotoBitmap.EMPTY);
+    }
+
+    private PhotoBitmap union(List<Long> personIds) {
+        PhotoBitmap union = PhotoBitmap.EMPTY;
+        for (Long personId : personIds) {
+            union = union.or(bitmap(personId));
+        }
+        return union;
+    }
+
+    private static boolean isEmpty(List<Long> ids) {
+        return ids == null || ids.isEmpty();
+    }
+
+    private void loadAll() {
+        long started = System.nanoTime();
+        long backoff = initialBackoffMillis;
+        while (true) {
+            synchronized (this) {
+                heldBack.clear();
+            }
+            byPerson.clear();
+            try {
+                stream();
+                break;
+            } catch (Exception e) {
+                log.error("Loading the person index failed; retrying in {} ms", backoff, e);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                synchronized (this) {
+                    heldBack = null;
+                }
+                return;
+            }
+            backoff = Math.min(backoff * 2, maxBackoffMillis);
+        }
+        // replay until nothing new came in, so updates arriving meanwhile stay behind the held-back ones
+        while (true) {
+            List<Runnable> pending;
+            synchronized (this) {
+                pending = heldBack;
+                if (pending.isEmpty()) {
+                    heldBack = null;
+                    break;
+                }
+                heldBack = new ArrayList<>();
+            }
+            pending.forEach(Runnable::run);
+        }
+        ready = true;
+        log.info("Person index loaded {} links of {} persons ({} KB) in {} ms", links(), persons(),
+                sizeInBytes() >> 10, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void stream() {
+        // rows come in (person_id, photo_id) order off idx_photo_persons_person
+        long[] current = {-1};
+        long[][] ids = {new long[1024]};
+        int[] size = {0};
+        streamingJdbc.query("SELECT pp.person_id, pp.photo_id FROM photo_persons pp "
+                + "JOIN photos p ON p.id = pp.photo_id WHERE p.deleted_at IS NULL "
+                + "ORDER BY pp.person_id, pp.photo_id", rs -> {
+            long personId = rs.getLong(1);
+            if (personId != current[0]) {
+                if (size[0] > 0) {
+                    byPerson.put(current[0], PhotoBitmap.of(Arrays.copyOf(ids[0], size[0])));
+                }
+                current[0] = personId;
+                size[0] = 0;
+            }
+            if (size[0] == ids[0].length) {
+                ids[0] = Arrays.copyOf(ids[0], size[0] * 2);
+            }
+            ids[0][size[0]++] = rs.getLong(2);
+        });
+        if (size[0] > 0) {
+            byPerson.put(current[0], PhotoBitmap.of(Arrays.copyOf(ids[0], size[0])));
+        }
+    }
+}
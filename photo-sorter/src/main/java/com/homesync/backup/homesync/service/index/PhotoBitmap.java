@@ -0,0 +1,462 @@
+package com.homesync.backup.homesync.service.index;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed set of photo ids in the Roaring layout: ids are split into
+ * the high bits (id >>> 16), kept as sorted keys, and a 16-bit low part stored in
+ * one container per key. A container holds a sorted {@code char[]} while it has
+ * at most 4096 values and a 1024-word bitmap beyond that, so each container takes
+ * at most 8 KB. Set operations work container by container and only touch keys
+ * present on both sides (AND, ANDNOT) or either side (OR).
+ *
+ * Updates return a new bitmap that shares every container they did not change, so
+ * readers can use a bitmap without locking while writers swap in the next version.
+ */
+public final class PhotoBitmap {
+
+    public static final PhotoBitmap EMPTY = new PhotoBitmap(new long[0], new Container[0]);
+
+    static final int ARRAY_MAX = 4096;
+
+    private final long[] keys;
+    private final Container[] containers;
+    private final long cardinality;
+
+    private PhotoBitmap(long[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        long total = 0;
+        for (Container container : containers) {
+            total += container.cardinality();
+        }
+        this.cardinality = total;
+    }
+
+    /** Bitmap of the given ids, in any order, duplicates allowed. */
+    public static PhotoBitmap of(long... ids) {
+        return EMPTY.with(ids);
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(long id) {
+        int i = Arrays.binarySearch(keys, id >>> 16);
+        return i >= 0 && containers[i].contains((char) id);
+    }
+
+    /** This bitmap plus {@code ids}. */
+    public PhotoBitmap with(long... ids) {
+        return update(ids, true);
+    }
+
+    /** This bitmap minus {@code ids}. */
+    public PhotoBitmap without(long... ids) {
+        return update(ids, false);
+    }
+
+    public PhotoBitmap and(PhotoBitmap other) {
+        Builder out = new Builder(Math.min(keys.length, other.keys.length));
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            int cmp = Long.compare(keys[i], other.keys[j]);
+            if (cmp < 0) {
+                i++;
+            } else if (cmp > 0) {
+                j++;
+            } else {
+                out.add(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return out.build();
+    }
+
+    public PhotoBitmap or(PhotoBitmap other) {
+        Builder out = new Builder(keys.length + other.keys.length);
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            int cmp = i == keys.length ? 1 : j == other.keys.length ? -1 : Long.compare(keys[i], other.keys[j]);
+            if (cmp < 0) {
+                out.add(keys[i], containers[i++]);
+            } else if (cmp > 0) {
+                out.add(other.keys[j], other.containers[j++]);
+            } else {
+                out.add(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return out.build();
+    }
+
+    public PhotoBitmap andNot(PhotoBitmap other) {
+        Builder out = new Builder(keys.length);
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                out.add(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                out.add(keys[i], containers[i]);
+            }
+        }
+        return out.build();
+    }
+
+    /** Up to {@code limit} ids greater than {@code after}, ascending. */
+    public long[] ids(long after, int limit) {
+        long[] out = new long[(int) Math.min(limit, cardinality)];
+        int n = 0;
+        int start = after < 0 ? 0 : Arrays.binarySearch(keys, after >>> 16);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        for (int i = start; i < keys.length && n < out.length; i++) {
+            long high = keys[i] << 16;
+            int from = high > after ? 0 : (int) (after - high) + 1;
+            n = containers[i].copyTo(high, from, out, n);
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /** Rough heap footprint of the containers, for stats. */
+    public long sizeInBytes() {
+        long bytes = keys.length * 8L;
+        for (Container container : containers) {
+            bytes += container.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private PhotoBitmap update(long[] ids, boolean add) {
+        if (ids.length == 0) {
+            return this;
+        }
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        Builder out = new Builder(keys.length + 1);
+        int i = 0;
+        int k = 0;
+        while (k < sorted.length || i < keys.length) {
+            long key = k < sorted.length ? sorted[k] >>> 16 : Long.MAX_VALUE;
+            if (k < sorted.length && sorted[k] < 0) {
+                throw new IllegalArgumentException("Negative photo id " + sorted[k]);
+            }
+            if (i < keys.length && keys[i] < key) {
+                out.add(keys[i], containers[i]);
+                i++;
+                continue;
+            }
+            int end = k;
+            while (end < sorted.length && sorted[end] >>> 16 == key) {
+                end++;
+            }
+            char[] lows = new char[end - k];
+            int n = 0;
+            for (int x = k; x < end; x++) {
+                char low = (char) sorted[x];
+                if (n == 0 || lows[n - 1] != low) {
+                    lows[n++] = low;
+                }
+            }
+            Container changes = new ArrayContainer(n == lows.length ? lows : Arrays.copyOf(lows, n)).normalize();
+            boolean existing = i < keys.length && keys[i] == key;
+            Container base = existing ? containers[i] : null;
+            if (add) {
+                out.add(key, base == null ? changes : base.or(changes));
+            } else if (base != null) {
+                out.add(key, base.andNot(changes));
+            }
+            if (existing) {
+                i++;
+            }
+            k = end;
+        }
+        return out.build();
+    }
+
+    /** Collects key/container pairs in key order, skipping empty containers. */
+    private static final class Builder {
+
+        private long[] keys;
+        private Container[] containers;
+        private int size;
+
+        Builder(int capacity) {
+            keys = new long[Math.max(1, capacity)];
+            containers = new Container[keys.length];
+        }
+
+        void add(long key, Container container) {
+            if (container == null || container.cardinality() == 0) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            keys[size] = key;
+            containers[size++] = container;
+        }
+
+        PhotoBitmap build() {
+            return size == 0 ? EMPTY : new PhotoBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(containers, size));
+        }
+    }
+
+    private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        /** Writes values with low part >= {@code from} as {@code high | low} until {@code out} is full. */
+        abstract int copyTo(long high, int from, long[] out, int n);
+
+        abstract long sizeInBytes();
+
+        abstract long[] words();
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        private final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        /** Switches to a bitmap once the array would outgrow one. */
+        Container normalize() {
+            return values.length > ARRAY_MAX ? new BitmapContainer(words(), values.length) : this;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, low) >= 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] out = new char[Math.min(values.length, other.cardinality())];
+            int n = 0;
+            if (other instanceof ArrayContainer array) {
+                char[] b = array.values;
+                int i = 0;
+                int j = 0;
+                while (i < values.length && j < b.length) {
+                    if (values[i] < b[j]) {
+                        i++;
+                    } else if (values[i] > b[j]) {
+                        j++;
+                    } else {
+                        out[n++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (char v : values) {
+                    if (other.contains(v)) {
+                        out[n++] = v;
+                    }
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(out, n));
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            char[] b = ((ArrayContainer) other).values;
+            char[] out = new char[values.length + b.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < values.length || j < b.length) {
+                if (j == b.length || (i < values.length && values[i] < b[j])) {
+                    out[n++] = values[i++];
+                } else if (i == values.length || values[i] > b[j]) {
+                    out[n++] = b[j++];
+                } else {
+                    out[n++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(out, n)).normalize();
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] out = new char[values.length];
+            int n = 0;
+            for (char v : values) {
+                if (!other.contains(v)) {
+                    out[n++] = v;
+                }
+            }
+            return n == values.length ? this : new ArrayContainer(Arrays.copyOf(out, n));
+        }
+
+        @Override
+        int copyTo(long high, int from, long[] out, int n) {
+            int i = Arrays.binarySearch(values, (char) Math.min(from, 0xFFFF));
+            if (from > 0xFFFF) {
+                return n;
+            }
+            for (i = i < 0 ? -i - 1 : i; i < values.length && n < out.length; i++) {
+                out[n++] = high | values[i];
+            }
+            return n;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16 + values.length * 2L;
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[1024];
+            for (char v : values) {
+                words[v >>> 6] |= 1L << v;
+            }
+            return words;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words;
+        private final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /** Container for {@code words}, as an array when sparse enough. */
+        static Container of(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_MAX) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int w = 0; w < words.length; w++) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new ArrayContainer(values);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & 1L << low) != 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] b = other.words();
+            long[] out = new long[1024];
+            for (int w = 0; w < 1024; w++) {
+                out[w] = words[w] & b[w];
+            }
+            return of(out);
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] out = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (char v : array.values) {
+                    out[v >>> 6] |= 1L << v;
+                }
+            } else {
+                long[] b = other.words();
+                for (int w = 0; w < 1024; w++) {
+                    out[w] |= b[w];
+                }
+            }
+            return of(out);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] out = words.clone();
+            if (other instanceof ArrayContainer array) {
+                for (char v : array.values) {
+                    out[v >>> 6] &= ~(1L << v);
+                }
+            } else {
+                long[] b = other.words();
+                for (int w = 0; w < 1024; w++) {
+                    out[w] &= ~b[w];
+                }
+            }
+            return of(out);
+        }
+
+        @Override
+        int copyTo(long high, int from, long[] out, int n) {
+            for (int w = from >>> 6; w < 1024 && n < out.length; w++) {
+                long word = words[w];
+                if (w == from >>> 6) {
+                    word &= -1L << from;
+                }
+                for (; word != 0 && n < out.length; word &= word - 1) {
+                    out[n++] = high | (w << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return n;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 24 + 8L * words.length;
+        }
+
+        @Override
+        long[] words() {
+            return words;
+        }
+    }
+}
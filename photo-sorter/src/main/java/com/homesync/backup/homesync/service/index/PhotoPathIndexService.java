@@ -0,0 +1,201 @@
+package com.homesync.backup.homesync.service.index;
+
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers "which of these scanned paths are already photos" mostly from memory.
+ * A {@link ScalableBloomFilter} of every photos.path, streamed at startup, rules
+ * out new paths without a query. Paths that may exist are looked up in a bounded
+ * LRU cache of path -> photo id, and only the rest go to MySQL, in one
+ * {@code IN (...)} query per call. Until the filter is loaded, every path goes to
+ * MySQL.
+ *
+ * Photos are never deleted from the table and keep their id, so a cached id stays
+ * valid. Ids of photos inserted by a transaction are cached only once it commits;
+ * their paths go into the filter right away, since a path that never made it only
+ * costs a query later.
+ */
+@Service
+public class PhotoPathIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoPathIndexService.class);
+
+    private final PhotoJdbcRepository photoJdbc;
+    private final JdbcTemplate streamingJdbc;
+    private final boolean enabled;
+    private final double falsePositiveRate;
+    private final LinkedHashMap<String, Long> cache;
+    private final Counter newPaths;
+    private final Counter cachedPaths;
+    private final Counter queriedPaths;
+    // paths added during the load, null once it is done; guarded by this
+    private List<String> heldBack = new ArrayList<>();
+    private volatile ScalableBloomFilter filter;
+
+    public PhotoPathIndexService(PhotoJdbcRepository photoJdbc,
+                                 DataSource dataSource,
+                                 MeterRegistry registry,
+                                 @Value("${ingest.path-index.enabled:true}") boolean enabled,
+                                 @Value("${ingest.path-index.false-positive-rate:0.01}") double falsePositiveRate,
+                                 @Value("${ingest.path-index.cache-size:200000}") int cacheSize) {
+        this.photoJdbc = photoJdbc;
+        this.streamingJdbc = new JdbcTemplate(dataSource);
+        this.streamingJdbc.setFetchSize(Integer.MIN_VALUE);
+        this.enabled = enabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.cache = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.newPaths = Counter.builder("photo.path.lookups").tag("result", "new").register(registry);
+        this.cachedPaths = Counter.builder("photo.path.lookups").tag("result", "cached").register(registry);
+        this.queriedPaths = Counter.builder("photo.path.lookups").tag("result", "queried").register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            synchronized (this) {
+                heldBack = null;
+            }
+            return;
+        }
+        Thread loader = new Thread(this::loadAll, "path-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public boolean isReady() {
+        return filter != null;
+    }
+
+    /** Returns path -> id for the given paths that already exist. */
+    public Map<String, Long> findIds(Collection<String> paths) {
+        Map<String, Long> ids = new HashMap<>();
+        List<String> unknown = new ArrayList<>(paths.size());
+        ScalableBloomFilter current = filter;
+        int absent = 0;
+        synchronized (cache) {
+            for (String path : paths) {
+                if (current != null && !current.mightContain(path)) {
+                    absent++;
+                    continue;
+                }
+                Long id = cache.get(path);
+                if (id != null) {
+                    ids.put(path, id);
+                } else {
+                    unknown.add(path);
+                }
+            }
+        }
+        newPaths.increment(absent);
+        cachedPaths.increment(ids.size());
+        queriedPaths.increment(unknown.size());
+        if (!unknown.isEmpty()) {
+            Map<String, Long> found = photoJdbc.findIdsByPaths(unknown);
+            cache(found);
+            ids.putAll(found);
+        }
+        return ids;
+    }
+
+    /** The given paths minus those that certainly are not photos yet, in their order. */
+    public List<String> mayExist(Collection<String> paths) {
+        ScalableBloomFilter current = filter;
+        if (current == null) {
+            return new ArrayList<>(paths);
+        }
+        List<String> known = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            if (current.mightContain(path)) {
+                known.add(path);
+            }
+        }
+        newPaths.increment(paths.size() - known.size());
+        return known;
+    }
+
+    /** Records photos inserted by the current transaction; their ids are cached once it commits. */
+    public void added(Map<String, Long> idsByPath) {
+        if (idsByPath.isEmpty()) {
+            return;
+        }
+        ScalableBloomFilter current;
+        synchronized (this) {
+            if (heldBack != null) {
+                heldBack.addAll(idsByPath.keySet());
+            }
+            // set under this lock before heldBack is cleared, so a path is never missed by both
+            current = filter;
+        }
+        if (current != null) {
+            idsByPath.keySet().forEach(current::add);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache(idsByPath);
+                }
+            });
+        } else {
+            cache(idsByPath);
+        }
+    }
+
+    private void cache(Map<String, Long> idsByPath) {
+        synchronized (cache) {
+            cache.putAll(idsByPath);
+        }
+    }
+
+    private void loadAll() {
+        long started = System.nanoTime();
+        ScalableBloomFilter loading;
+        try {
+            // max(id) bounds the row count without scanning; the filter grows past it if needed
+            Long maxId = streamingJdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM photos", Long.class);
+            loading = new ScalableBloomFilter(maxId != null ? maxId + maxId / 4 : 0, falsePositiveRate);
+            ScalableBloomFilter target = loading;
+            streamingJdbc.query("SELECT CONCAT(d.path, p.filename) FROM photos p "
+                    + "JOIN directories d ON d.id = p.directory_id", rs -> {
+                target.add(rs.getString(1));
+            });
+        } catch (Exception e) {
+            log.error("Loading the photo path index failed; path lookups keep going to the database", e);
+            synchronized (this) {
+                heldBack = null;
+            }
+            return;
+        }
+        synchronized (this) {
+            heldBack.forEach(loading::add);
+            heldBack = null;
+            filter = loading;
+        }
+        log.info("Photo path index loaded {} paths into {} KB in {} ms", loading.count(), loading.sizeInBytes() >> 10,
+                (System.nanoTime() - started) / 1_000_000);
+    }
+}
@@ -0,0 +1,85 @@
+package com.homesync.backup.homesync.service.index;
+
+import java.util.Arrays;
+
+/**
+ * Embedding id to row number, open addressing over two primitive arrays, so an
+ * index can tell whether it holds an id without a boxed entry per row. Not
+ * thread-safe; callers hold their own lock.
+ */
+final class RowsById {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MAX_SLOTS = 1 << 30;
+
+    private long[] ids;
+    private int[] rows;
+    private int size;
+
+    RowsById(int expected) {
+        int slots = Integer.highestOneBit(Math.min(Math.max(16, expected), MAX_SLOTS / 2) * 2 - 1) << 1;
+        this.ids = new long[slots];
+        this.rows = new int[slots];
+        Arrays.fill(ids, EMPTY);
+    }
+
+    /** Row of {@code id}, or -1 when it is not in the map. */
+    int get(long id) {
+        int mask = ids.length - 1;
+        for (int slot = slot(id, mask); ; slot = (slot + 1) & mask) {
+            if (ids[slot] == id) {
+                return rows[slot];
+            }
+            if (ids[slot] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /** Maps {@code id} to {@code row}, replacing any row it had. */
+    void put(long id, int row) {
+        if ((size + 1L) * 2 > ids.length) {
+            if (ids.length == MAX_SLOTS) {
+                throw new IllegalStateException("Too many rows to look up by id: " + size);
+            }
+            rehash(ids.length * 2);
+        }
+        if (insert(ids, rows, id, row)) {
+            size++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int slots) {
+        long[] newIds = new long[slots];
+        int[] newRows = new int[slots];
+        Arrays.fill(newIds, EMPTY);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != EMPTY) {
+                insert(newIds, newRows, ids[i], rows[i]);
+            }
+        }
+        ids = newIds;
+        rows = newRows;
+    }
+
+    private static boolean insert(long[] ids, int[] rows, long id, int row) {
+        int mask = ids.length - 1;
+        for (int slot = slot(id, mask); ; slot = (slot + 1) & mask) {
+            if (ids[slot] == EMPTY || ids[slot] == id) {
+                boolean added = ids[slot] == EMPTY;
+                ids[slot] = id;
+                rows[slot] = row;
+                return added;
+            }
+        }
+    }
+
+    private static int slot(long id, int mask) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,167 @@
+package com.homesync.backup.homesync.service.index;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over strings that grows instead of degrading (Almeida et al.,
+ * "Scalable Bloom Filters"). Elements go into the newest slice. Once that slice
+ * holds its capacity, a new slice twice as large is added, with half the false
+ * positive rate, so the overall rate stays below the one asked for however many
+ * elements arrive. A lookup checks every slice.
+ *
+ * Bits are set with compare-and-set, so concurrent adds and lookups need no lock.
+ * An element that is being added may briefly read as absent to another thread.
+ */
+public final class ScalableBloomFilter {
+
+    private static final int GROWTH = 2;
+    private static final double TIGHTENING = 0.5;
+
+    private volatile Slice[] slices;
+
+    /**
+     * @param expected          elements the first slice is sized for
+     * @param falsePositiveRate upper bound of the false positive rate over all slices
+     */
+    public ScalableBloomFilter(long expected, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1): " + falsePositiveRate);
+        }
+        // the slice rates p, p*r, p*r^2, ... add up to p / (1 - r)
+        this.slices = new Slice[]{new Slice(Math.max(expected, 64), falsePositiveRate * (1 - TIGHTENING))};
+    }
+
+    /** Adds {@code value}; returns false if it may have been present already. */
+    public boolean add(String value) {
+        long hash = hash(value);
+        long h1 = mix(hash);
+        long h2 = mix(hash + 0x9E3779B97F4A7C15L) | 1;
+        if (contains(h1, h2)) {
+            return false;
+        }
+        Slice[] current = slices;
+        Slice last = current[current.length - 1];
+        if (last.count.get() >= last.capacity) {
+            last = grow(last);
+        }
+        last.add(h1, h2);
+        return true;
+    }
+
+    /** False means {@code value} was certainly never added. */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        return contains(mix(hash), mix(hash + 0x9E3779B97F4A7C15L) | 1);
+    }
+
+    /** Elements added, not counting those that were already (or falsely) present. */
+    public long count() {
+        long count = 0;
+        for (Slice slice : slices) {
+            count += slice.count.get();
+        }
+        return count;
+    }
+
+    public int sliceCount() {
+        return slices.length;
+    }
+
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (Slice slice : slices) {
+            bytes += (long) slice.words.length() * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    private boolean contains(long h1, long h2) {
+        for (Slice slice : slices) {
+            if (slice.contains(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized Slice grow(Slice full) {
+        Slice[] current = slices;
+        Slice last = current[current.length - 1];
+        if (last != full) {
+            return last; // another thread grew it
+        }
+        Slice next = new Slice(full.capacity * GROWTH, full.falsePositiveRate * TIGHTENING);
+        Slice[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = next;
+        slices = grown;
+        return next;
+    }
+
+    /** 64-bit FNV-1a over the UTF-16 chars; {@link #mix} spreads it over all bits. */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** MurmurHash3 finalizer. */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Slice {
+        final long capacity;
+        final double falsePositiveRate;
+        final long bits;
+        final int hashes;
+        final AtomicLongArray words;
+        final AtomicLong count = new AtomicLong();
+
+        Slice(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            double ln2 = Math.log(2);
+            long optimal = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimal + 63) / 64);
+            this.bits = (long) words * 64;
+            this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * ln2));
+            this.words = new AtomicLongArray(words);
+        }
+
+        void add(long h1, long h2) {
+            // double hashing (Kirsch and Mitzenmacher): bit i is h1 + i * h2
+            long combined = h1;
+            for (int i = 0; i < hashes; i++, combined += h2) {
+                long bit = Long.remainderUnsigned(combined, bits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current = words.get(word);
+                while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                    current = words.get(word);
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        boolean contains(long h1, long h2) {
+            long combined = h1;
+            for (int i = 0; i < hashes; i++, combined += h2) {
+                long bit = Long.remainderUnsigned(combined, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
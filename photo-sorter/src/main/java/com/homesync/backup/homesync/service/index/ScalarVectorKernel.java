@@ -0,0 +1,24 @@
+package com.homesync.backup.homesync.service.index;
+
+/**
+ * Plain Java dot product. Four independent accumulators break the add dependency
+ * chain so C2 can keep several multiply-adds in flight.
+ */
+public final class ScalarVectorKernel implements VectorKernel {
+
+    @Override
+    public float dot(float[] a, float[] b, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
@@ -0,0 +1,27 @@
+package com.homesync.backup.homesync.service.index;
+
+/**
+ * Dot product over the first {@code length} floats of two arrays. Implementations
+ * are picked once at startup by {@link #best()}.
+ */
+public interface VectorKernel {
+
+    float dot(float[] a, float[] b, int length);
+
+    /**
+     * The JDK Vector API kernel when it was built (Maven profile {@code vector-api})
+     * and the JVM was started with {@code --add-modules jdk.incubator.vector},
+     * otherwise the scalar one.
+     */
+    static VectorKernel best() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (VectorKernel) Class.forName("com.homesync.backup.homesync.service.index.SimdVectorKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // fall through to scalar
+            }
+        }
+        return new ScalarVectorKernel();
+    }
+}
@@ -0,0 +1,52 @@
+package com.homesync.backup.homesync.service.metadata;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * What {@link ImageMetadataReader} found in a file header. Instances are reused per
+ * thread, so read the values before the thread's next call to the reader.
+ *
+ * Dimensions are as displayed, i.e. swapped when the EXIF orientation or HEIF
+ * rotation turns the image by 90 degrees. The capture time is the EXIF
+ * DateTimeOriginal, which carries no zone, kept as seconds of that local time
+ * counted as if it were UTC.
+ */
+public final class ImageMetadata {
+
+    int width;
+    int height;
+    int orientation;
+    long capturedSeconds;
+
+    void reset() {
+        width = 0;
+        height = 0;
+        orientation = 0;
+        capturedSeconds = 0;
+    }
+
+    /** Width in pixels, 0 if unknown. */
+    public int width() {
+        return width;
+    }
+
+    /** Height in pixels, 0 if unknown. */
+    public int height() {
+        return height;
+    }
+
+    /** EXIF orientation 1-8 (HEIF rotation mapped to 6), 0 if absent. */
+    public int orientation() {
+        return orientation;
+    }
+
+    /** Local capture time as UTC-based epoch seconds, 0 if unknown. */
+    public long capturedSeconds() {
+        return capturedSeconds;
+    }
+
+    public static LocalDateTime toCapturedAt(long capturedSeconds) {
+        return capturedSeconds == 0 ? null : LocalDateTime.ofEpochSecond(capturedSeconds, 0, ZoneOffset.UTC);
+    }
+}
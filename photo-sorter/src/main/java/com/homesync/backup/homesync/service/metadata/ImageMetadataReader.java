@@ -0,0 +1,627 @@
+package com.homesync.backup.homesync.service.metadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads image dimensions and the EXIF capture time from file headers, without
+ * decoding any pixels. JPEG (SOF, APP1), PNG (IHDR, eXIf), WebP (VP8/VP8L/VP8X,
+ * EXIF), HEIF/HEIC/AVIF (ispe, irot, Exif item) and TIFF-based raw files are
+ * recognised by their magic bytes; anything else yields an empty result.
+ *
+ * Each thread owns one direct buffer used as a window over the file and refilled
+ * with a positional {@link FileChannel} read whenever the parser steps outside it.
+ * The first read usually covers everything; a JPEG whose EXIF block embeds a large
+ * preview needs a second one for its frame header. Apart from opening the channel
+ * nothing is allocated per file.
+ */
+public final class ImageMetadataReader {
+
+    public static final int DEFAULT_WINDOW_BYTES = 16 * 1024;
+
+    // bound how far a damaged or unusual file can lead the parser
+    private static final int MAX_SEGMENTS = 256;
+    private static final long MAX_SCAN_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_PROPERTIES = 64;
+
+    private static final int RIFF = fourcc("RIFF");
+    private static final int WEBP = fourcc("WEBP");
+    private static final int VP8 = fourcc("VP8 ");
+    private static final int VP8L = fourcc("VP8L");
+    private static final int VP8X = fourcc("VP8X");
+    private static final int EXIF_CHUNK = fourcc("EXIF");
+    private static final int EXIF = fourcc("Exif");
+    private static final int PNG = 0x89504E47;
+    private static final int IHDR = fourcc("IHDR");
+    private static final int IDAT = fourcc("IDAT");
+    private static final int IEND = fourcc("IEND");
+    private static final int PNG_EXIF = fourcc("eXIf");
+    private static final int FTYP = fourcc("ftyp");
+    private static final int META = fourcc("meta");
+    private static final int PITM = fourcc("pitm");
+    private static final int IINF = fourcc("iinf");
+    private static final int INFE = fourcc("infe");
+    private static final int ILOC = fourcc("iloc");
+    private static final int IPRP = fourcc("iprp");
+    private static final int IPCO = fourcc("ipco");
+    private static final int IPMA = fourcc("ipma");
+    private static final int ISPE = fourcc("ispe");
+    private static final int IROT = fourcc("irot");
+
+    private static final Truncated TRUNCATED = new Truncated();
+
+    private final ThreadLocal<Cursor> cursors;
+
+    public ImageMetadataReader() {
+        this(DEFAULT_WINDOW_BYTES);
+    }
+
+    public ImageMetadataReader(int windowBytes) {
+        this.cursors = ThreadLocal.withInitial(() -> new Cursor(windowBytes));
+    }
+
+    /**
+     * Reads the header of {@code file}. The result belongs to the calling thread and
+     * is overwritten by its next call; unreadable or unknown files give zeros.
+     */
+    public ImageMetadata read(Path file) {
+        Cursor c = cursors.get();
+        c.out.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            c.open(channel);
+            parse(c);
+        } catch (IOException | RuntimeException e) {
+            // unreadable, truncated or malformed: keep whatever was found before
+        } finally {
+            c.channel = null;
+        }
+        ImageMetadata out = c.out;
+        if (out.orientation >= 5 && out.orientation <= 8) {
+            int width = out.width;
+            out.width = out.height;
+            out.height = width;
+        }
+        return out;
+    }
+
+    private static void parse(Cursor c) throws IOException {
+        int magic = c.u16be(0);
+        if (magic == 0xFFD8) {
+            jpeg(c);
+        } else if (c.size >= 8 && c.tag(0) == PNG) {
+            png(c);
+        } else if (c.size >= 12 && c.tag(0) == RIFF && c.tag(8) == WEBP) {
+            webp(c);
+        } else if (c.size >= 8 && c.tag(4) == FTYP) {
+            heif(c);
+        } else if (magic == 0x4949 || magic == 0x4D4D) {
+            tiff(c, 0, c.size);
+        }
+    }
+
+    private static void jpeg(Cursor c) throws IOException {
+        long pos = 2;
+        for (int i = 0; i < MAX_SEGMENTS && pos < MAX_SCAN_BYTES; i++) {
+            if (c.u8(pos) != 0xFF) {
+                return;
+            }
+            int marker = c.u8(pos + 1);
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0x01 || marker == 0xD8 || (marker >= 0xD0 && marker <= 0xD7)) {
+                pos += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                return;
+            }
+            int length = c.u16be(pos + 2);
+            if (length < 2) {
+                return;
+            }
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                c.out.height = c.u16be(pos + 5);
+                c.out.width = c.u16be(pos + 7);
+                // APP1 comes before the frame header, so there is nothing left to find
+                return;
+            }
+            if (marker == 0xE1 && length >= 16 && c.tag(pos + 4) == EXIF && c.u16be(pos + 8) == 0) {
+                tiff(c, pos + 10, pos + 2 + length);
+            }
+            pos += 2 + length;
+        }
+    }
+
+    private static void png(Cursor c) throws IOException {
+        if (c.tag(12) != IHDR) {
+            return;
+        }
+        c.out.width = (int) c.u32be(16);
+        c.out.height = (int) c.u32be(20);
+        long pos = 33;
+        for (int i = 0; i < MAX_SEGMENTS && pos < MAX_SCAN_BYTES; i++) {
+            long length = c.u32be(pos);
+            int type = c.tag(pos + 4);
+            if (type == IDAT || type == IEND) {
+                return;
+            }
+            if (type == PNG_EXIF) {
+                tiff(c, pos + 8, pos + 8 + length);
+                return;
+            }
+            pos += 12 + length;
+        }
+    }
+
+    private static void webp(Cursor c) throws IOException {
+        long end = Math.min(c.size, 8 + c.u32le(4));
+        long pos = 12;
+        boolean extended = false;
+        for (int i = 0; i < MAX_SEGMENTS && pos + 8 <= end; i++) {
+            int type = c.tag(pos);
+            long length = c.u32le(pos + 4);
+            long data = pos + 8;
+            if (type == VP8X) {
+                extended = true;
+                c.out.width = 1 + c.u24le(data + 4);
+                c.out.height = 1 + c.u24le(data + 7);
+                if ((c.u8(data) & 0x08) == 0) {
+                    return;
+                }
+            } else if (type == VP8 || type == VP8L) {
+                if (extended) {
+                    // the EXIF chunk follows the image data
+                    pos = data + length + (length & 1);
+                    continue;
+                }
+                if (type == VP8) {
+                    c.out.width = c.u16le(data + 6) & 0x3FFF;
+                    c.out.height = c.u16le(data + 8) & 0x3FFF;
+                } else {
+                    long bits = c.u32le(data + 1);
+                    c.out.width = 1 + (int) (bits & 0x3FFF);
+                    c.out.height = 1 + (int) ((bits >>> 14) & 0x3FFF);
+                }
+                return;
+            } else if (type == EXIF_CHUNK) {
+                // some writers keep the JPEG-style "Exif\0\0" prefix
+                long tiff = c.tag(data) == EXIF && c.u16be(data + 4) == 0 ? data + 6 : data;
+                tiff(c, tiff, data + length);
+                return;
+            }
+            pos = data + length + (length & 1);
+        }
+    }
+
+    private static void heif(Cursor c) throws IOException {
+        long pos = 0;
+        for (int i = 0; i < MAX_SEGMENTS && pos + 8 <= c.size && pos < MAX_SCAN_BYTES; i++) {
+            long size = c.u32be(pos);
+            int type = c.tag(pos + 4);
+            long header = 8;
+            if (size == 1) {
+                size = c.u64be(pos + 8);
+                header = 16;
+            } else if (size == 0) {
+                size = c.size - pos;
+            }
+            if (size < header) {
+                return;
+            }
+            if (type == META) {
+                // full box: version and flags precede the children
+                meta(c, pos + header + 4, pos + size);
+                return;
+            }
+            pos += size;
+        }
+    }
+
+    private static void meta(Cursor c, long start, long end) throws IOException {
+        long primary = -1;
+        long exifItem = -1;
+        long iloc = -1;
+        long ipma = -1;
+        for (long pos = start; pos + 8 <= end; ) {
+            long size = c.u32be(pos);
+            int type = c.tag(pos + 4);
+            if (size < 8) {
+                return;
+            }
+            long body = pos + 8;
+            if (type == PITM) {
+                primary = c.u8(body) == 0 ? c.u16be(body + 4) : c.u32be(body + 4);
+            } else if (type == IINF) {
+                exifItem = exifItem(c, body, pos + size);
+            } else if (type == ILOC) {
+                iloc = body;
+            } else if (type == IPRP) {
+                ipma = properties(c, body, pos + size);
+            }
+            pos += size;
+        }
+        boolean quarterTurn = ipma >= 0 && primary >= 0 && primaryProperties(c, ipma, primary);
+        if (c.out.width == 0) {
+            // no association for the primary item; the largest image is the best guess
+            for (int p = 1; p <= c.propertyCount; p++) {
+                if ((long) c.ispeWidth[p] * c.ispeHeight[p] > (long) c.out.width * c.out.height) {
+                    c.out.width = c.ispeWidth[p];
+                    c.out.height = c.ispeHeight[p];
+                }
+            }
+        }
+        if (exifItem >= 0 && iloc >= 0) {
+            exif(c, iloc, exifItem);
+        }
+        // HEIF readers apply irot and ignore the EXIF orientation; 6 has the same effect on the displayed size
+        c.out.orientation = quarterTurn ? 6 : 1;
+    }
+
+    /** Returns the id of the item of type Exif listed in an iinf box, or -1. */
+    private static long exifItem(Cursor c, long body, long end) throws IOException {
+        long pos = body + (c.u8(body) == 0 ? 6 : 8);
+        while (pos + 8 <= end) {
+            long size = c.u32be(pos);
+            if (size < 8) {
+                return -1;
+            }
+            if (c.tag(pos + 4) == INFE) {
+                int version = c.u8(pos + 8);
+                if (version >= 2) {
+                    long item = version == 2 ? c.u16be(pos + 12) : c.u32be(pos + 12);
+                    long typeAt = pos + 12 + (version == 2 ? 2 : 4) + 2;
+                    if (c.tag(typeAt) == EXIF) {
+                        return item;
+                    }
+                }
+            }
+            pos += size;
+        }
+        return -1;
+    }
+
+    /** Records the ispe and irot properties of an ipco box and returns where ipma starts, or -1. */
+    private static long properties(Cursor c, long body, long end) throws IOException {
+        long ipma = -1;
+        for (long pos = body; pos + 8 <= end; ) {
+            long size = c.u32be(pos);
+            if (size < 8) {
+                break;
+            }
+            int type = c.tag(pos + 4);
+            if (type == IPCO) {
+                int index = 0;
+                for (long prop = pos + 8; prop + 8 <= pos + size && index < MAX_PROPERTIES; ) {
+                    long propSize = c.u32be(prop);
+                    if (propSize < 8) {
+                        break;
+                    }
+                    index++;
+                    int propType = c.tag(prop + 4);
+                    if (propType == ISPE) {
+                        c.ispeWidth[index] = (int) c.u32be(prop + 12);
+                        c.ispeHeight[index] = (int) c.u32be(prop + 16);
+                    } else if (propType == IROT) {
+                        c.rotation[index] = c.u8(prop + 8) & 0x3;
+                    }
+                    prop += propSize;
+                }
+                c.propertyCount = index;
+            } else if (type == IPMA) {
+                ipma = pos + 8;
+            }
+            pos += size;
+        }
+        return ipma;
+    }
+
+    /** Applies the ispe of the primary item and returns whether its irot turns it by 90 degrees. */
+    private static boolean primaryProperties(Cursor c, long ipma, long primary) throws IOException {
+        int version = c.u8(ipma);
+        boolean wideIndex = (c.u8(ipma + 3) & 1) != 0;
+        long entries = c.u32be(ipma + 4);
+        long pos = ipma + 8;
+        boolean quarterTurn = false;
+        for (long e = 0; e < entries && e < MAX_SEGMENTS; e++) {
+            long item = version < 1 ? c.u16be(pos) : c.u32be(pos);
+            pos += version < 1 ? 2 : 4;
+            int count = c.u8(pos++);
+            for (int a = 0; a < count; a++) {
+                int index = wideIndex ? c.u16be(pos) & 0x7FFF : c.u8(pos) & 0x7F;
+                pos += wideIndex ? 2 : 1;
+                if (item != primary || index <= 0 || index > c.propertyCount) {
+                    continue;
+                }
+                if (c.ispeWidth[index] > 0) {
+                    c.out.width = c.ispeWidth[index];
+                    c.out.height = c.ispeHeight[index];
+                }
+                if (c.rotation[index] == 1 || c.rotation[index] == 3) {
+                    quarterTurn = true;
+                }
+            }
+            if (item == primary) {
+                break;
+            }
+        }
+        return quarterTurn;
+    }
+
+    /** Finds the Exif item in an iloc box and parses the TIFF block it points at. */
+    private static void exif(Cursor c, long iloc, long exifItem) throws IOException {
+        int version = c.u8(iloc);
+        int sizes = c.u8(iloc + 4);
+        int offsetSize = sizes >>> 4;
+        int lengthSize = sizes & 0xF;
+        int moreSizes = c.u8(iloc + 5);
+        int baseOffsetSize = moreSizes >>> 4;
+        int indexSize = version == 1 || version == 2 ? moreSizes & 0xF : 0;
+        long pos = iloc + 6;
+        long items = version < 2 ? c.u16be(pos) : c.u32be(pos);
+        pos += version < 2 ? 2 : 4;
+        for (long i = 0; i < items && i < MAX_SEGMENTS; i++) {
+            long item = version < 2 ? c.u16be(pos) : c.u32be(pos);
+            pos += version < 2 ? 2 : 4;
+            int construction = 0;
+            if (version == 1 || version == 2) {
+                construction = c.u16be(pos) & 0xF;
+                pos += 2;
+            }
+            pos += 2;
+            long base = c.uN(pos, baseOffsetSize);
+            pos += baseOffsetSize;
+            int extents = c.u16be(pos);
+            pos += 2;
+            for (int e = 0; e < extents; e++) {
+                pos += indexSize;
+                long offset = c.uN(pos, offsetSize);
+                pos += offsetSize;
+                long length = c.uN(pos, lengthSize);
+                pos += lengthSize;
+                if (item == exifItem && e == 0 && construction == 0) {
+                    long start = base + offset;
+                    // the item starts with the offset of the TIFF header behind it
+                    tiff(c, start + 4 + c.u32be(start), length == 0 ? c.size : start + length);
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Parses the TIFF structure at {@code base}: IFD0 and the EXIF IFD it points to. */
+    private static void tiff(Cursor c, long base, long end) throws IOException {
+        int order = c.u16be(base);
+        if (order != 0x4949 && order != 0x4D4D) {
+            return;
+        }
+        c.little = order == 0x4949;
+        if (c.u16(base + 2) != 42) {
+            return;
+        }
+        long exifIfd = ifd(c, base, base + c.u32(base + 4), end);
+        if (exifIfd > 0) {
+            ifd(c, base, exifIfd, end);
+        }
+    }
+
+    /** Reads the tags of one IFD and returns the absolute EXIF IFD offset it names, or 0. */
+    private static long ifd(Cursor c, long base, long offset, long end) throws IOException {
+        if (offset < base + 8 || offset + 2 > end) {
+            return 0;
+        }
+        int count = c.u16(offset);
+        long exifIfd = 0;
+        for (int i = 0; i < count && i < MAX_SEGMENTS; i++) {
+            long entry = offset + 2 + 12L * i;
+            if (entry + 12 > end) {
+                break;
+            }
+            switch (c.u16(entry)) {
+                case 0x0112 -> c.out.orientation = c.u16(entry + 8);
+                case 0x8769 -> exifIfd = base + c.u32(entry + 8);
+                case 0x0132, 0x9003 -> {
+                    // DateTime in IFD0 is the fallback; DateTimeOriginal in the EXIF IFD is read later and wins
+                    long seconds = dateTime(c, base + c.u32(entry + 8), end);
+                    if (seconds != 0) {
+                        c.out.capturedSeconds = seconds;
+                    }
+                }
+                case 0xA002 -> {
+                    if (c.out.width == 0) {
+                        c.out.width = (int) value(c, entry);
+                    }
+                }
+                case 0xA003 -> {
+                    if (c.out.height == 0) {
+                        c.out.height = (int) value(c, entry);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return exifIfd;
+    }
+
+    private static long value(Cursor c, long entry) throws IOException {
+        return c.u16(entry + 2) == 3 ? c.u16(entry + 8) : c.u32(entry + 8);
+    }
+
+    /** Parses "YYYY:MM:DD HH:MM:SS" into UTC-based epoch seconds, 0 if malformed. */
+    private static long dateTime(Cursor c, long pos, long end) throws IOException {
+        if (pos + 19 > end) {
+            return 0;
+        }
+        int year = digits(c, pos, 4);
+        int month = digits(c, pos + 5, 2);
+        int day = digits(c, pos + 8, 2);
+        int hour = digits(c, pos + 11, 2);
+        int minute = digits(c, pos + 14, 2);
+        int second = digits(c, pos + 17, 2);
+        if (year < 1800 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return 0;
+        }
+        return epochDay(year, month, day) * 86_400L + hour * 3_600L + minute * 60L + second;
+    }
+
+    private static int digits(Cursor c, long pos, int n) throws IOException {
+        int value = 0;
+        for (int i = 0; i < n; i++) {
+            int d = c.u8(pos + i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /** Days since 1970-01-01 of a proleptic Gregorian date. */
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+
+    private static int fourcc(String s) {
+        byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+        return (b[0] & 0xFF) << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF);
+    }
+
+    /** Per-thread parse state: the file window and the result being filled in. */
+    private static final class Cursor {
+
+        final ByteBuffer window;
+        final ImageMetadata out = new ImageMetadata();
+        final int[] ispeWidth = new int[MAX_PROPERTIES + 1];
+        final int[] ispeHeight = new int[MAX_PROPERTIES + 1];
+        final int[] rotation = new int[MAX_PROPERTIES + 1];
+        int propertyCount;
+        FileChannel channel;
+        long size;
+        long start;
+        int length;
+        // byte order of the TIFF block being parsed
+        boolean little;
+
+        Cursor(int windowBytes) {
+            this.window = ByteBuffer.allocateDirect(windowBytes);
+        }
+
+        void open(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.start = 0;
+            this.length = 0;
+            if (propertyCount > 0) {
+                Arrays.fill(ispeWidth, 0);
+                Arrays.fill(ispeHeight, 0);
+                Arrays.fill(rotation, 0);
+                propertyCount = 0;
+            }
+        }
+
+        /** Makes {@code [pos, pos + n)} available in the window, reading from {@code pos} if needed. */
+        private int at(long pos, int n) throws IOException {
+            if (pos >= start && pos + n <= start + length) {
+                return (int) (pos - start);
+            }
+            if (pos < 0 || pos + n > size) {
+                throw TRUNCATED;
+            }
+            window.clear();
+            int total = 0;
+            while (window.hasRemaining()) {
+                int read = channel.read(window, pos + total);
+                if (read < 0) {
+                    break;
+                }
+                total += read;
+            }
+            start = pos;
+            length = total;
+            if (n > total) {
+                throw TRUNCATED;
+            }
+            return 0;
+        }
+
+        int u8(long pos) throws IOException {
+            return window.get(at(pos, 1)) & 0xFF;
+        }
+
+        int u16be(long pos) throws IOException {
+            int i = at(pos, 2);
+            return (window.get(i) & 0xFF) << 8 | (window.get(i + 1) & 0xFF);
+        }
+
+        int u16le(long pos) throws IOException {
+            int i = at(pos, 2);
+            return (window.get(i + 1) & 0xFF) << 8 | (window.get(i) & 0xFF);
+        }
+
+        int u24le(long pos) throws IOException {
+            int i = at(pos, 3);
+            return (window.get(i + 2) & 0xFF) << 16 | (window.get(i + 1) & 0xFF) << 8 | (window.get(i) & 0xFF);
+        }
+
+        long u32be(long pos) throws IOException {
+            int i = at(pos, 4);
+            return (long) (window.get(i) & 0xFF) << 24 | (window.get(i + 1) & 0xFF) << 16
+                    | (window.get(i + 2) & 0xFF) << 8 | (window.get(i + 3) & 0xFF);
+        }
+
+        long u32le(long pos) throws IOException {
+            int i = at(pos, 4);
+            return (long) (window.get(i + 3) & 0xFF) << 24 | (window.get(i + 2) & 0xFF) << 16
+                    | (window.get(i + 1) & 0xFF) << 8 | (window.get(i) & 0xFF);
+        }
+
+        long u64be(long pos) throws IOException {
+            return u32be(pos) << 32 | u32be(pos + 4);
+        }
+
+        /** Big-endian unsigned integer of 0, 4 or 8 bytes, as sized in iloc boxes. */
+        long uN(long pos, int bytes) throws IOException {
+            return switch (bytes) {
+                case 0 -> 0;
+                case 4 -> u32be(pos);
+                case 8 -> u64be(pos);
+                default -> throw TRUNCATED;
+            };
+        }
+
+        int tag(long pos) throws IOException {
+            return (int) u32be(pos);
+        }
+
+        int u16(long pos) throws IOException {
+            return little ? u16le(pos) : u16be(pos);
+        }
+
+        long u32(long pos) throws IOException {
+            return little ? u32le(pos) : u32be(pos);
+        }
+    }
+
+    /** Thrown when the parser runs past the end of the file; shared, without a stack trace. */
+    private static final class Truncated extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        Truncated() {
+            super("truncated image header", null, false, false);
+        }
+    }
+}
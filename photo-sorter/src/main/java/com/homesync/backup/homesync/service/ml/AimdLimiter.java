@@ -0,0 +1,140 @@
+package com.homesync.backup.homesync.service.ml;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+
+/**
+ * Concurrency window for ML requests that follows the service's real capacity
+ * (additive increase, multiplicative decrease). A call that came back fast grows
+ * the limit by 1/limit, about one slot per round of calls; an overload signal
+ * (an error, a 429/5xx, or latency above {@code latencyTolerance} times the
+ * baseline) cuts it by {@code backoffRatio}. Cuts are spaced at least one baseline
+ * round trip apart, so a burst of timeouts from one overload counts once.
+ *
+ * The baseline is the lowest latency of the current and the previous window of
+ * {@code BASELINE_WINDOW} calls, so it follows a model or hardware change instead
+ * of remembering one lucky call forever. The limit only grows while at least half
+ * of it is in use; an idle window says nothing about capacity.
+ *
+ * Slots are shared between the two ingest lanes. While callers of both lanes are
+ * waiting, INTERACTIVE gets {@code interactiveWeight} freed slots for every one
+ * BULK gets, so bulk work runs on what interactive work leaves over without
+ * starving outright.
+ */
+public class AimdLimiter {
+
+    static final int BASELINE_WINDOW = 200;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final int interactiveWeight;
+
+    private double limit;
+    private int inFlight;
+    private final int[] waiting = new int[IngestPriority.values().length];
+    // slots granted to INTERACTIVE since BULK last got one, capped at the weight
+    private int interactiveStreak;
+    private long previousMinNanos = Long.MAX_VALUE;
+    private long currentMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecrease;
+
+    public AimdLimiter(int minLimit, int initialLimit, int maxLimit, double backoffRatio, double latencyTolerance,
+                       int interactiveWeight) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.interactiveWeight = Math.max(1, interactiveWeight);
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /** Takes a slot for {@code lane}, waiting for its turn. Interrupts are deferred until a slot is taken. */
+    public synchronized void acquire(IngestPriority lane) {
+        boolean interrupted = false;
+        waiting[lane.ordinal()]++;
+        try {
+            while (!turn(lane)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            inFlight++;
+            if (lane == IngestPriority.INTERACTIVE) {
+                interactiveStreak = Math.min(interactiveStreak + 1, interactiveWeight);
+            } else {
+                interactiveStreak = 0;
+            }
+        } finally {
+            waiting[lane.ordinal()]--;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean turn(IngestPriority lane) {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        IngestPriority other = lane == IngestPriority.INTERACTIVE ? IngestPriority.BULK : IngestPriority.INTERACTIVE;
+        if (waiting[other.ordinal()] == 0) {
+            return true;
+        }
+        return lane == IngestPriority.INTERACTIVE ? interactiveStreak < interactiveWeight
+                : interactiveStreak >= interactiveWeight;
+    }
+
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Feeds back one call. {@code overloaded} is set when the service said it was
+     * (connection failure, timeout, 429, 5xx); slow answers count as overload too.
+     */
+    public synchronized void record(long elapsedNanos, boolean overloaded) {
+        long baseline = Math.min(previousMinNanos, currentMinNanos);
+        if (!overloaded) {
+            currentMinNanos = Math.min(currentMinNanos, elapsedNanos);
+            if (++windowSamples >= BASELINE_WINDOW) {
+                previousMinNanos = currentMinNanos;
+                currentMinNanos = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+        }
+        boolean slow = baseline != Long.MAX_VALUE && elapsedNanos > baseline * latencyTolerance;
+        long now = System.nanoTime();
+        if (overloaded || slow) {
+            if (now - lastDecrease >= Math.min(baseline, elapsedNanos)) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecrease = now;
+            }
+        } else if (inFlight * 2 >= limit && limit < maxLimit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+            notifyAll();
+        }
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /** True while callers are waiting for a slot or none is left. */
+    public synchronized boolean saturated() {
+        return waiting(IngestPriority.INTERACTIVE) + waiting(IngestPriority.BULK) > 0 || inFlight >= (int) limit;
+    }
+
+    public synchronized int waiting(IngestPriority lane) {
+        return waiting[lane.ordinal()];
+    }
+}
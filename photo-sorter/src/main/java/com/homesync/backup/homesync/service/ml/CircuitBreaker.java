@@ -0,0 +1,101 @@
+package com.homesync.backup.homesync.service.ml;
+
+/**
+ * Count-based circuit breaker. The last {@code window} calls are kept in a ring;
+ * a call counts as bad when it failed or took longer than the slow-call threshold.
+ * Once the window is full and the bad ratio reaches the limit the breaker opens
+ * and rejects calls for {@code openNanos}, then lets a single probe through.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean[] outcomes;
+    private final double failureRatio;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int next;
+    private int recorded;
+    private int bad;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(int window, double failureRatio, long slowCallNanos, long openNanos) {
+        this.outcomes = new boolean[window];
+        this.failureRatio = failureRatio;
+        this.slowCallNanos = slowCallNanos;
+        this.openNanos = openNanos;
+    }
+
+    /** Returns whether a call may go out now. Every granted call must be followed by {@link #record}. */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    public synchronized void record(boolean success, long elapsedNanos) {
+        boolean isBad = !success || elapsedNanos > slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (isBad) {
+                open();
+            } else {
+                reset();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // late result of a call issued before the breaker opened
+            return;
+        }
+        if (recorded == outcomes.length) {
+            if (outcomes[next]) {
+                bad--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = isBad;
+        if (isBad) {
+            bad++;
+        }
+        next = (next + 1) % outcomes.length;
+        if (recorded == outcomes.length && bad >= failureRatio * outcomes.length) {
+            open();
+        }
+    }
+
+    /** True while {@link #tryAcquire} would turn calls away. */
+    public synchronized boolean rejecting() {
+        return state == State.OPEN ? System.nanoTime() - openedAt < openNanos : state == State.HALF_OPEN && probeInFlight;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        bad = 0;
+    }
+}
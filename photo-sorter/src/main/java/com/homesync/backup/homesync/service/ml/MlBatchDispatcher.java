@@ -0,0 +1,165 @@
+package com.homesync.backup.homesync.service.ml;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces single-photo submissions into process-photos requests. Photos are
+ * grouped per (job, callback URL, lane); a group is sent as soon as it reaches
+ * {@code maxBatchSize} photos or {@code lingerMillis} after its first photo
+ * arrived, whichever comes first. Every photo keeps its own future, completed
+ * from the outcome of the request that carried it.
+ *
+ * A linger flush runs on its lane's timer thread and waits there for a free slot
+ * in the client's in-flight window, same as a size flush waits on the submitting
+ * thread. Each lane has its own timer, so an interactive group is not stuck behind
+ * a bulk flush waiting out a window full of bulk calls.
+ * With {@code maxBatchSize <= 1} photos go straight to the single-photo endpoint.
+ */
+public class MlBatchDispatcher implements AutoCloseable {
+
+    private final MlServiceClient client;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final Map<IngestPriority, ScheduledExecutorService> lingerTimers = new EnumMap<>(IngestPriority.class);
+    private final DistributionSummary batchSizes;
+    private final Counter sizeFlushes;
+    private final Counter lingerFlushes;
+    private final Timer callTimer;
+    private final Map<IngestPriority, Timer> laneCallTimers = new EnumMap<>(IngestPriority.class);
+
+    private final Map<BatchKey, Pending> pending = new HashMap<>();
+
+    public MlBatchDispatcher(MlServiceClient client, int maxBatchSize, long lingerMillis, MeterRegistry registry) {
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        for (IngestPriority lane : IngestPriority.values()) {
+            String name = "ml-batch-linger-" + lane.name().toLowerCase(Locale.ROOT);
+            lingerTimers.put(lane, Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }));
+        }
+        this.batchSizes = DistributionSummary.builder("ml.dispatch.batch.size")
+                .description("Photos per ML request")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.sizeFlushes = Counter.builder("ml.dispatch.flushes").tag("reason", "size").register(registry);
+        this.lingerFlushes = Counter.builder("ml.dispatch.flushes").tag("reason", "linger").register(registry);
+        this.callTimer = PipelineMetrics.timer(registry, PipelineMetrics.Stage.ML_CALL);
+        for (IngestPriority lane : IngestPriority.values()) {
+            laneCallTimers.put(lane, PipelineMetrics.laneTimer(registry, PipelineMetrics.Stage.ML_CALL, lane));
+        }
+        Gauge.builder("ml.requests.in-flight", client, MlServiceClient::inFlight)
+                .description("ML requests sent and not yet answered")
+                .register(registry);
+        Gauge.builder("ml.requests.limit", client, MlServiceClient::inFlightLimit)
+                .description("Adaptive limit on ML requests in flight")
+                .register(registry);
+    }
+
+    public CompletableFuture<Void> submit(String jobId, PhotoRef photo, String callbackUrl, IngestPriority lane) {
+        if (maxBatchSize <= 1) {
+            batchSizes.record(1);
+            long started = System.nanoTime();
+            return client.processPhoto(jobId, photo.path(), callbackUrl, lane)
+                    .whenComplete((ignored, error) -> recordCall(lane, started));
+        }
+        BatchKey key = new BatchKey(jobId, callbackUrl, lane);
+        Item item = new Item(photo, new CompletableFuture<>());
+        List<Item> full = null;
+        synchronized (pending) {
+            Pending group = pending.computeIfAbsent(key, k -> new Pending());
+            group.items.add(item);
+            if (group.items.size() >= maxBatchSize) {
+                pending.remove(key);
+                if (group.timer != null) {
+                    group.timer.cancel(false);
+                }
+                full = group.items;
+            } else if (group.timer == null) {
+                group.timer = lingerTimers.get(lane).schedule(() -> flushLingering(key, group), lingerMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            sizeFlushes.increment();
+            send(key, full);
+        }
+        return item.result;
+    }
+
+    private void flushLingering(BatchKey key, Pending group) {
+        synchronized (pending) {
+            if (pending.get(key) != group) {
+                return;
+            }
+            pending.remove(key);
+        }
+        lingerFlushes.increment();
+        send(key, group.items);
+    }
+
+    private void send(BatchKey key, List<Item> items) {
+        batchSizes.record(items.size());
+        List<PhotoRef> photos = new ArrayList<>(items.size());
+        for (Item item : items) {
+            photos.add(item.photo);
+        }
+        long started = System.nanoTime();
+        client.processPhotos(key.jobId, photos, key.callbackUrl, key.lane).whenComplete((rejected, error) -> {
+            recordCall(key.lane, started);
+            for (Item item : items) {
+                if (error != null) {
+                    item.result.completeExceptionally(error);
+                } else if (rejected.contains(item.photo.path())) {
+                    item.result.completeExceptionally(
+                            new MlServiceException("ML service rejected " + item.photo.path(), true));
+                } else {
+                    item.result.complete(null);
+                }
+            }
+        });
+    }
+
+    private void recordCall(IngestPriority lane, long startedNanos) {
+        long elapsed = System.nanoTime() - startedNanos;
+        callTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        laneCallTimers.get(lane).record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        lingerTimers.values().forEach(ScheduledExecutorService::shutdownNow);
+    }
+
+    private record BatchKey(String jobId, String callbackUrl, IngestPriority lane) {
+    }
+
+    private record Item(PhotoRef photo, CompletableFuture<Void> result) {
+    }
+
+    private static final class Pending {
+        private final List<Item> items = new ArrayList<>();
+        private ScheduledFuture<?> timer;
+    }
+}
@@ -0,0 +1,27 @@
+package com.homesync.backup.homesync.service.ml;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Tuning for {@link MlServiceClient}; bound from the {@code worker.ml.*} properties in WorkerConfig.
+ */
+public record MlClientSettings(
+        URI endpoint,
+        URI batchEndpoint,
+        Duration connectTimeout,
+        Duration requestTimeout,
+        int maxInFlight,
+        int maxRetries,
+        Duration backoffBase,
+        Duration backoffMax,
+        int breakerWindow,
+        double breakerFailureRatio,
+        Duration slowCallThreshold,
+        Duration breakerOpenDuration,
+        int minInFlight,
+        int initialInFlight,
+        double limitBackoffRatio,
+        double latencyTolerance,
+        int interactiveWeight) {
+}
@@ -0,0 +1,190 @@
+package com.homesync.backup.homesync.service.ml;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking client for the ML service's process-photo(s) endpoints, built on
+ * the JDK HttpClient (HTTP/2 when the server offers it, pooled keep-alive
+ * connections otherwise). Outstanding requests are bounded by an {@link AimdLimiter}
+ * that settles between minInFlight and maxInFlight at what the service keeps up
+ * with; callers block while the window is full. Failed attempts are retried with
+ * full-jitter exponential backoff, and a {@link CircuitBreaker} fails calls fast
+ * while the service is erroring or slow.
+ */
+public class MlServiceClient {
+
+    private final MlClientSettings settings;
+    private final HttpClient http;
+    private final ObjectMapper mapper;
+    private final AimdLimiter limiter;
+    private final CircuitBreaker breaker;
+
+    public MlServiceClient(MlClientSettings settings, ObjectMapper mapper) {
+        this.settings = settings;
+        this.mapper = mapper;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(settings.connectTimeout())
+                .build();
+        this.limiter = new AimdLimiter(settings.minInFlight(), settings.initialInFlight(), settings.maxInFlight(),
+                settings.limitBackoffRatio(), settings.latencyTolerance(), settings.interactiveWeight());
+        this.breaker = new CircuitBreaker(settings.breakerWindow(), settings.breakerFailureRatio(),
+                settings.slowCallThreshold().toNanos(), settings.breakerOpenDuration().toNanos());
+    }
+
+    /**
+     * Submits one photo. The returned future completes when the ML service accepted
+     * it, or exceptionally with an {@link MlServiceException} once retries are spent.
+     * {@code lane} decides its share of the in-flight window.
+     */
+    public CompletableFuture<Void> processPhoto(String jobId, String path, String callbackUrl, IngestPriority lane) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("path", path);
+        body.put("callbackUrl", callbackUrl);
+        body.put("jobId", jobId);
+        return send(settings.endpoint(), body, lane).thenApply(response -> null);
+    }
+
+    /**
+     * Submits several photos of one job as a single process-photos request. The
+     * future yields the paths the service rejected (from an optional
+     * {@code {"rejected": [...]}} response body); every other photo was accepted.
+     */
+    public CompletableFuture<Set<String>> processPhotos(String jobId, List<PhotoRef> photos, String callbackUrl,
+                                                        IngestPriority lane) {
+        List<Map<String, Object>> items = new ArrayList<>(photos.size());
+        for (PhotoRef photo : photos) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("photoId", photo.photoId());
+            item.put("path", photo.path());
+            items.add(item);
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("photos", items);
+        body.put("callbackUrl", callbackUrl);
+        body.put("jobId", jobId);
+        return send(settings.batchEndpoint(), body, lane).thenApply(this::rejectedPaths);
+    }
+
+    public int inFlight() {
+        return limiter.inFlight();
+    }
+
+    /** Current concurrency limit, between minInFlight and maxInFlight. */
+    public int inFlightLimit() {
+        return limiter.limit();
+    }
+
+    /** True while the in-flight window is full, i.e. further submissions would block. */
+    public boolean saturated() {
+        return limiter.saturated();
+    }
+
+    /** Callers of {@code lane} blocked waiting for a slot. */
+    public int waiting(IngestPriority lane) {
+        return limiter.waiting(lane);
+    }
+
+    /** True while the circuit breaker fails calls fast. */
+    public boolean circuitRejecting() {
+        return breaker.rejecting();
+    }
+
+    public CircuitBreaker.State circuitState() {
+        return breaker.state();
+    }
+
+    private CompletableFuture<byte[]> send(URI endpoint, Map<String, Object> body, IngestPriority lane) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(endpoint)
+                    .timeout(settings.requestTimeout())
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new MlServiceException("Cannot encode ML request", e));
+        }
+
+        limiter.acquire(lane);
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        result.whenComplete((ignored, error) -> limiter.release());
+        attempt(request, 0, result);
+        return result;
+    }
+
+    private Set<String> rejectedPaths(byte[] responseBody) {
+        Set<String> rejected = new HashSet<>();
+        if (responseBody == null || responseBody.length == 0) {
+            return rejected;
+        }
+        try {
+            for (JsonNode path : mapper.readTree(responseBody).path("rejected")) {
+                rejected.add(path.asText());
+            }
+        } catch (IOException e) {
+            // a body we cannot read means the service did not reject anything explicitly
+        }
+        return rejected;
+    }
+
+    private void attempt(HttpRequest request, int attempt, CompletableFuture<byte[]> result) {
+        if (!breaker.tryAcquire()) {
+            result.completeExceptionally(new MlServiceException("ML service circuit is open"));
+            return;
+        }
+        long started = System.nanoTime();
+        http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, error) -> {
+            boolean ok = error == null && response.statusCode() / 100 == 2;
+            long elapsed = System.nanoTime() - started;
+            breaker.record(ok, elapsed);
+            limiter.record(elapsed, error != null || response.statusCode() >= 500 || response.statusCode() == 429);
+            if (ok) {
+                result.complete(response.body());
+                return;
+            }
+            MlServiceException failure;
+            boolean retryable;
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                failure = new MlServiceException("ML call failed: " + cause, cause);
+                retryable = true;
+            } else {
+                int status = response.statusCode();
+                failure = new MlServiceException("ML service returned HTTP " + status);
+                retryable = status >= 500 || status == 429;
+            }
+            if (!retryable || attempt >= settings.maxRetries()) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            CompletableFuture.delayedExecutor(backoffMillis(attempt), TimeUnit.MILLISECONDS)
+                    .execute(() -> attempt(request, attempt + 1, result));
+        });
+    }
+
+    /** Full jitter: uniform in [0, min(max, base * 2^attempt)]. */
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(settings.backoffMax().toMillis(), settings.backoffBase().toMillis() << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+}
@@ -0,0 +1,31 @@
+package com.homesync.backup.homesync.service.ml;
+
+/**
+ * Raised (as the cause of a failed future) when a call to the ML service did not
+ * succeed: the circuit was open, retries ran out, or the request was rejected.
+ * A permanent failure is one that retrying the same photo later cannot fix.
+ */
+public class MlServiceException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean permanent;
+
+    public MlServiceException(String message) {
+        this(message, false);
+    }
+
+    public MlServiceException(String message, boolean permanent) {
+        super(message);
+        this.permanent = permanent;
+    }
+
+    public MlServiceException(String message, Throwable cause) {
+        super(message, cause);
+        this.permanent = false;
+    }
+
+    public boolean isPermanent() {
+        return permanent;
+    }
+}
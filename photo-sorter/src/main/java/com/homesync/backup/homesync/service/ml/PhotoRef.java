@@ -0,0 +1,5 @@
+package com.homesync.backup.homesync.service.ml;
+
+/** A photo as sent to the ML service; {@code photoId} is null for messages that predate ids. */
+public record PhotoRef(Long photoId, String path) {
+}
@@ -0,0 +1,421 @@
+package com.homesync.backup.homesync.service.progress;
+
+import com.homesync.backup.homesync.dto.IngestJobProgress;
+import com.homesync.backup.homesync.model.IngestJob;
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository.PublishedRow;
+import com.homesync.backup.homesync.repository.IngestJobRepository;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory progress counters of running ingest jobs. Scanner, writer, relay and
+ * callback threads add to striped {@link LongAdder}s instead of updating the
+ * ingest_jobs row, so they never queue on its row lock; every
+ * {@code ingest.progress.flush-interval-ms} one thread writes what the counters
+ * gained since the last flush, one UPDATE per job.
+ *
+ * The same pass moves PUBLISHED jobs whose published photos have all been
+ * processed to COMPLETED (SCANNED to PUBLISHED is done by
+ * {@link com.homesync.backup.homesync.service.IngestOutboxRelay}) and pushes a
+ * snapshot with rates and ETA to the job's progress stream subscribers. Jobs are
+ * dropped from memory once they are COMPLETED or FAILED and fully flushed.
+ *
+ * Counts kept in memory are lost when the application stops between a callback and
+ * the next flush, so every {@code ingest.progress.reconcile-interval-ms} PUBLISHED
+ * jobs are also checked against photo_ingest_map and photos.status, and completed
+ * once none of their published photos is waiting any more.
+ */
+@Service
+public class IngestProgressService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestProgressService.class);
+    private static final Set<JobStatus> TERMINAL = EnumSet.of(JobStatus.COMPLETED, JobStatus.FAILED);
+    // weight of the latest interval in the smoothed rates
+    private static final double SMOOTHING = 0.3;
+
+    private final IngestJdbcRepository ingestJdbc;
+    private final IngestJobRepository jobRepository;
+    private final PipelineMetrics metrics;
+    private final long sseTimeoutMs;
+    private final long reconcileNanos;
+    private final Map<String, JobCounters> jobs = new ConcurrentHashMap<>();
+    // flush thread only
+    private long reconciledAt;
+
+    public IngestProgressService(IngestJdbcRepository ingestJdbc,
+                                 IngestJobRepository jobRepository,
+                                 PipelineMetrics metrics,
+                                 @Value("${ingest.progress.sse-timeout-ms:3600000}") long sseTimeoutMs,
+                                 @Value("${ingest.progress.reconcile-interval-ms:60000}") long reconcileIntervalMs) {
+        this.ingestJdbc = ingestJdbc;
+        this.jobRepository = jobRepository;
+        this.metrics = metrics;
+        this.sseTimeoutMs = sseTimeoutMs;
+        this.reconcileNanos = TimeUnit.MILLISECONDS.toNanos(reconcileIntervalMs);
+        // the first tick reconciles, for jobs resumed from a previous run
+        this.reconciledAt = System.nanoTime() - reconcileNanos;
+    }
+
+    /** Jobs left waiting for callbacks by the previous run still need to be completed. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        for (String jobId : ingestJdbc.findJobIds(List.of(JobStatus.SCANNED, JobStatus.PUBLISHED))) {
+            counters(jobId);
+        }
+    }
+
+    /** Counters of a job just created, whose row has every counter at zero. */
+    public JobCounters register(String jobId) {
+        JobCounters counters = new JobCounters(jobId, LocalDateTime.now());
+        counters.status = JobStatus.SCANNING;
+        jobs.put(jobId, counters);
+        return counters;
+    }
+
+    /** Counters of a job, created on first use. */
+    public JobCounters counters(String jobId) {
+        return jobs.computeIfAbsent(jobId, id -> new JobCounters(id, null));
+    }
+
+    public void published(String jobId, long photos) {
+        counters(jobId).published.add(photos);
+    }
+
+    public void processed(String jobId, long photos) {
+        counters(jobId).processed.add(photos);
+    }
+
+    /**
+     * Counts photos whose ML outcome was just stored for every running job that
+     * published them, and records their end-to-end latency.
+     */
+    public void processedPhotos(Collection<Long> photoIds) {
+        try {
+            Map<String, Long> perJob = new HashMap<>();
+            LocalDateTime now = LocalDateTime.now();
+            for (PublishedRow row : ingestJdbc.findPublishedInRunningJobs(photoIds)) {
+                perJob.merge(row.jobId(), 1L, Long::sum);
+                if (row.insertedAt() != null) {
+                    metrics.photoProcessed(row.priority(), Duration.between(row.insertedAt(), now));
+                }
+            }
+            perJob.forEach(this::processed);
+        } catch (Exception e) {
+            log.warn("Cannot attribute {} processed photos to their jobs: {}", photoIds.size(), e.getMessage());
+        }
+    }
+
+    /** Writes the job's counters now, e.g. before its status changes. */
+    public void flush(String jobId) {
+        JobCounters counters = jobs.get(jobId);
+        if (counters != null) {
+            flush(counters);
+        }
+    }
+
+    /**
+     * Stream of {@link IngestJobProgress} events for a job, one per flush interval
+     * until the job is COMPLETED or FAILED; empty if the job does not exist.
+     */
+    public Optional<SseEmitter> subscribe(String jobId) {
+        JobCounters counters = jobs.get(jobId);
+        if (counters == null) {
+            Optional<IngestJob> job = jobRepository.findById(jobId);
+            if (job.isEmpty()) {
+                return Optional.empty();
+            }
+            if (TERMINAL.contains(job.get().getStatus())) {
+                SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+                send(emitter, finished(job.get()));
+                emitter.complete();
+                return Optional.of(emitter);
+            }
+            counters = counters(jobId);
+        }
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        JobCounters subscribed = counters;
+        emitter.onCompletion(() -> subscribed.subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribed.subscribers.remove(emitter));
+        emitter.onError(e -> subscribed.subscribers.remove(emitter));
+        subscribed.subscribers.add(emitter);
+        send(emitter, snapshot(subscribed));
+        return Optional.of(emitter);
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.progress.flush-interval-ms:1000}")
+    public void tick() {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, JobStatus> statuses = ingestJdbc.findJobStatuses(new ArrayList<>(jobs.keySet()));
+            long now = System.nanoTime();
+            // a PUBLISHED status read before the flush means every publish of the job is in it
+            List<String> published = new ArrayList<>();
+            for (JobCounters counters : jobs.values()) {
+                JobStatus status = statuses.get(counters.jobId);
+                if (status == null) {
+                    // the job row is gone
+                    jobs.remove(counters.jobId);
+                    counters.subscribers.forEach(SseEmitter::complete);
+                    continue;
+                }
+                counters.status = status;
+                flush(counters);
+                counters.updateRates(now);
+                if (status == JobStatus.PUBLISHED) {
+                    published.add(counters.jobId);
+                }
+            }
+            int completed = ingestJdbc.completeProcessedJobs(published);
+            if (!published.isEmpty() && now - reconciledAt >= reconcileNanos) {
+                reconciledAt = now;
+                int settled = ingestJdbc.completeSettledJobs(published);
+                if (settled > 0) {
+                    log.info("Completed {} ingest jobs whose processed counts fell short", settled);
+                    completed += settled;
+                }
+            }
+            if (completed > 0) {
+                ingestJdbc.findJobStatuses(published).forEach((jobId, status) -> {
+                    JobCounters counters = jobs.get(jobId);
+                    if (counters != null) {
+                        counters.status = status;
+                        if (status == JobStatus.COMPLETED) {
+                            // a reconciled row may have moved past baseline plus flushed counts
+                            counters.resetBaseline();
+                        }
+                    }
+                });
+            }
+            for (JobCounters counters : jobs.values()) {
+                boolean done = TERMINAL.contains(counters.status) && counters.isFlushed();
+                if (!counters.subscribers.isEmpty()) {
+                    IngestJobProgress progress = snapshot(counters);
+                    for (SseEmitter emitter : counters.subscribers) {
+                        if (!send(emitter, progress)) {
+                            counters.subscribers.remove(emitter);
+                        } else if (done) {
+                            emitter.complete();
+                        }
+                    }
+                }
+                if (done) {
+                    jobs.remove(counters.jobId);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Ingest progress flush failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        for (JobCounters counters : jobs.values()) {
+            try {
+                flush(counters);
+            } catch (Exception e) {
+                log.warn("Cannot flush progress of job {}: {}", counters.jobId, e.getMessage());
+            }
+        }
+    }
+
+    private void flush(JobCounters counters) {
+        synchronized (counters) {
+            long[] current = counters.sums();
+            long[] flushed = counters.flushed;
+            if (current[0] == flushed[0] && current[1] == flushed[1] && current[2] == flushed[2]
+                    && current[3] == flushed[3]) {
+                return;
+            }
+            ingestJdbc.addJobProgress(counters.jobId, current[0] - flushed[0], current[1] - flushed[1],
+                    current[2] - flushed[2], current[3] - flushed[3]);
+            counters.flushed = current;
+        }
+    }
+
+    IngestJobProgress snapshot(JobCounters counters) {
+        long[] base = counters.baseline(jobRepository);
+        long[] sums = counters.sums();
+        long inserted = base[1] + sums[1];
+        long processed = base[3] + sums[3];
+        JobStatus status = counters.status;
+        Long eta = null;
+        if (TERMINAL.contains(status)) {
+            eta = 0L;
+        } else if (status == JobStatus.SCANNED || status == JobStatus.PUBLISHED) {
+            double rate = counters.processRate;
+            if (rate > 0) {
+                eta = Math.round(Math.max(0, inserted - processed) / rate);
+            }
+        }
+        return IngestJobProgress.builder()
+                .jobId(counters.jobId)
+                .status(status)
+                .scannedCount(base[0] + sums[0])
+                .insertedCount(inserted)
+                .publishedCount(base[2] + sums[2])
+                .processedCount(processed)
+                .scanRate(counters.scanRate)
+                .publishRate(counters.publishRate)
+                .processRate(counters.processRate)
+                .elapsedSeconds(counters.createdAt != null
+                        ? Duration.between(counters.createdAt, LocalDateTime.now()).toSeconds() : 0)
+                .etaSeconds(eta)
+                .build();
+    }
+
+    private static IngestJobProgress finished(IngestJob job) {
+        LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+        return IngestJobProgress.builder()
+                .jobId(job.getJobId())
+                .status(job.getStatus())
+                .scannedCount(orZero(job.getScannedCount()))
+                .insertedCount(orZero(job.getInsertedCount()))
+                .publishedCount(orZero(job.getPublishedCount()))
+                .processedCount(orZero(job.getProcessedCount()))
+                .elapsedSeconds(job.getCreatedAt() != null ? Duration.between(job.getCreatedAt(), end).toSeconds() : 0)
+                .etaSeconds(0L)
+                .build();
+    }
+
+    private static boolean send(SseEmitter emitter, IngestJobProgress progress) {
+        try {
+            emitter.send(SseEmitter.event().name("progress").data(progress));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // client went away
+            return false;
+        }
+    }
+
+    private static long orZero(Number value) {
+        return value == null ? 0 : value.longValue();
+    }
+
+    /**
+     * Counters of one job. The adders only grow; a flush writes the difference to
+     * what it wrote last time, under the object's monitor.
+     */
+    public static final class JobCounters {
+
+        private final String jobId;
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder inserted = new LongAdder();
+        private final LongAdder published = new LongAdder();
+        private final LongAdder processed = new LongAdder();
+        private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+        // guarded by this
+        private long[] flushed = new long[4];
+        // row values the adders do not cover; null until first needed
+        private long[] baseline;
+        private LocalDateTime createdAt;
+        // flush thread only
+        private long[] lastTick;
+        private long lastTickNanos;
+        private volatile double scanRate;
+        private volatile double publishRate;
+        private volatile double processRate;
+        private volatile JobStatus status;
+
+        JobCounters(String jobId, LocalDateTime createdAt) {
+            this.jobId = jobId;
+            this.createdAt = createdAt;
+            if (createdAt != null) {
+                baseline = new long[4];
+            }
+        }
+
+        public void addScanned(long files) {
+            scanned.add(files);
+        }
+
+        public void addInserted(long photos) {
+            inserted.add(photos);
+        }
+
+        public long scanned() {
+            return scanned.sum();
+        }
+
+        public long inserted() {
+            return inserted.sum();
+        }
+
+        private long[] sums() {
+            return new long[]{scanned.sum(), inserted.sum(), published.sum(), processed.sum()};
+        }
+
+        synchronized boolean isFlushed() {
+            long[] current = sums();
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] != flushed[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** The row holds the baseline plus what was flushed, so the baseline is the row minus the flushed part. */
+        private synchronized long[] baseline(IngestJobRepository jobRepository) {
+            if (baseline == null) {
+                baseline = new long[4];
+                Optional<IngestJob> job = jobRepository.findById(jobId);
+                if (job.isPresent()) {
+                    baseline[0] = orZero(job.get().getScannedCount()) - flushed[0];
+                    baseline[1] = orZero(job.get().getInsertedCount()) - flushed[1];
+                    baseline[2] = orZero(job.get().getPublishedCount()) - flushed[2];
+                    baseline[3] = orZero(job.get().getProcessedCount()) - flushed[3];
+                    createdAt = job.get().getCreatedAt();
+                }
+            }
+            return baseline;
+        }
+
+        private synchronized void resetBaseline() {
+            baseline = null;
+        }
+
+        private void updateRates(long now) {
+            long[] current = sums();
+            if (lastTick != null && now > lastTickNanos) {
+                double seconds = (now - lastTickNanos) / 1e9;
+                scanRate = smooth(scanRate, (current[0] - lastTick[0]) / seconds);
+                publishRate = smooth(publishRate, (current[2] - lastTick[2]) / seconds);
+                processRate = smooth(processRate, (current[3] - lastTick[3]) / seconds);
+            }
+            lastTick = current;
+            lastTickNanos = now;
+        }
+
+        private static double smooth(double previous, double latest) {
+            return previous == 0 ? latest : SMOOTHING * latest + (1 - SMOOTHING) * previous;
+        }
+    }
+}
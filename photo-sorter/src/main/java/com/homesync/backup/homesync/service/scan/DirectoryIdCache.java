@@ -0,0 +1,66 @@
+package com.homesync.backup.homesync.service.scan;
+
+import com.homesync.backup.homesync.repository.DirectoryJdbcRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directory path -> directories.id for the ingest writers, so files of a known
+ * directory get their directory id without a query. Entries are only added once
+ * the transaction that created or read them commits, so a rolled-back insert never
+ * leaves an id behind. The cache is not bounded: it holds one entry per directory,
+ * a small fraction of the photo count.
+ */
+@Service
+public class DirectoryIdCache {
+
+    private final DirectoryJdbcRepository directoryJdbc;
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+
+    public DirectoryIdCache(DirectoryJdbcRepository directoryJdbc) {
+        this.directoryJdbc = directoryJdbc;
+    }
+
+    /** Id of each given directory; missing directories are inserted in the current transaction. */
+    public Map<String, Long> resolve(Collection<String> dirs) {
+        Map<String, Long> resolved = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String dir : new LinkedHashSet<>(dirs)) {
+            Long id = ids.get(dir);
+            if (id != null) {
+                resolved.put(dir, id);
+            } else {
+                missing.add(dir);
+            }
+        }
+        if (missing.isEmpty()) {
+            return resolved;
+        }
+        Map<String, Long> found = directoryJdbc.insertMissing(missing);
+        resolved.putAll(found);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.putAll(found);
+                }
+            });
+        } else {
+            ids.putAll(found);
+        }
+        return resolved;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,70 @@
+package com.homesync.backup.homesync.service.scan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What an incremental scan saw in one directory: its mtime and entry count, the
+ * size and mtime of every image file, and the names of its subdirectories.
+ * {@code scannedAt} guards against coarse directory clocks: a directory whose mtime
+ * is within {@link #RACY_MILLIS} of the last scan may have changed again in the
+ * same tick, so it is listed rather than trusted.
+ */
+public record DirectoryManifest(String dir, long mtime, int entryCount, Map<String, FileStamp> files,
+                                List<String> subdirs, long scannedAt) {
+
+    public static final long RACY_MILLIS = 2_000;
+
+    public record FileStamp(long size, long mtime) {
+    }
+
+    /** True when the directory listing itself can be reused for a directory now at {@code currentMtime}. */
+    public boolean namesUnchanged(long currentMtime) {
+        return mtime == currentMtime && currentMtime < scannedAt - RACY_MILLIS;
+    }
+
+    public byte[] encodeEntries() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + files.size() * 40);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(files.size());
+            for (Map.Entry<String, FileStamp> file : files.entrySet()) {
+                out.writeUTF(file.getKey());
+                out.writeLong(file.getValue().size());
+                out.writeLong(file.getValue().mtime());
+            }
+            out.writeInt(subdirs.size());
+            for (String subdir : subdirs) {
+                out.writeUTF(subdir);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static DirectoryManifest decode(String dir, long mtime, int entryCount, byte[] entries, long scannedAt) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entries))) {
+            int fileCount = in.readInt();
+            Map<String, FileStamp> files = new HashMap<>(fileCount * 2);
+            for (int i = 0; i < fileCount; i++) {
+                files.put(in.readUTF(), new FileStamp(in.readLong(), in.readLong()));
+            }
+            int subdirCount = in.readInt();
+            List<String> subdirs = new ArrayList<>(subdirCount);
+            for (int i = 0; i < subdirCount; i++) {
+                subdirs.add(in.readUTF());
+            }
+            return new DirectoryManifest(dir, mtime, entryCount, files, subdirs, scannedAt);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt manifest for " + dir, e);
+        }
+    }
+}
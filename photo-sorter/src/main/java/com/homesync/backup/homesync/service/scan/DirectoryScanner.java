@@ -0,0 +1,319 @@
+package com.homesync.backup.homesync.service.scan;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Walks a directory tree in parallel on a dedicated fork-join pool, one task per
+ * directory. Image files of each directory are handed to the sink as one list so
+ * that downstream batching does not contend per file.
+ *
+ * The pool is sized above the core count on purpose: directory listing and stat
+ * calls block on the disk (or NAS), so extra workers keep the device queue full.
+ * Only stat values are gathered here; file headers are read once a file turns out
+ * to be new or changed (see {@link com.homesync.backup.homesync.service.IngestBatchWriter}).
+ */
+@Component
+public class DirectoryScanner {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectoryScanner.class);
+
+    private final ForkJoinPool pool;
+    private final Set<String> extensions;
+    private final boolean verifyFiles;
+
+    public DirectoryScanner(@Value("${ingest.scan.parallelism:0}") int parallelism,
+                            @Value("${ingest.scan.extensions:jpg,jpeg,png,webp,heic,heif,nef,cr2}") Collection<String> extensions,
+                            @Value("${ingest.incremental.verify-files:true}") boolean verifyFiles) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors() * 4;
+        this.pool = new ForkJoinPool(threads);
+        this.verifyFiles = verifyFiles;
+        this.extensions = new HashSet<>();
+        for (String ext : extensions) {
+            this.extensions.add(ext.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Scans {@code root} and blocks until every directory has been visited. The sink
+     * is called concurrently from pool threads and must be thread-safe.
+     */
+    public void scan(Path root, boolean recursive, Consumer<List<ScannedFile>> sink) {
+        pool.invoke(new DirectoryTask(root, recursive, sink));
+    }
+
+    /**
+     * Scans {@code root} against the manifests of a previous run (keyed by directory
+     * path) and reports only differences to the sink. A directory whose mtime still
+     * matches its manifest is not listed: its names are taken from the manifest, and
+     * with {@code ingest.incremental.verify-files} its files are still stat'ed to
+     * catch in-place edits, which do not touch the directory mtime.
+     *
+     * Returns the manifests of directories under {@code root} that no longer exist;
+     * their files have already been reported as deleted.
+     */
+    public List<DirectoryManifest> scanIncremental(Path root, boolean recursive,
+                                                   Map<String, DirectoryManifest> previous, ManifestSink sink) {
+        return scanIncremental(root, recursive, previous, sink, verifyFiles);
+    }
+
+    /** As above, choosing per call whether files of unchanged directories are stat'ed. */
+    public List<DirectoryManifest> scanIncremental(Path root, boolean recursive, Map<String, DirectoryManifest> previous,
+                                                   ManifestSink sink, boolean verifyFiles) {
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        pool.invoke(new IncrementalTask(root, recursive, previous, sink, visited, verifyFiles));
+        List<DirectoryManifest> removed = new ArrayList<>();
+        for (DirectoryManifest manifest : previous.values()) {
+            boolean inScope = recursive || manifest.dir().equals(root.toString());
+            if (inScope && !visited.contains(manifest.dir())) {
+                removed.add(manifest);
+                List<String> gone = new ArrayList<>(manifest.files().size());
+                for (String name : manifest.files().keySet()) {
+                    gone.add(Path.of(manifest.dir(), name).toString());
+                }
+                if (!gone.isEmpty()) {
+                    sink.deleted(gone);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /** Describes an image file from its stat values. */
+    public ScannedFile describe(Path file, long size, long modifiedMillis) {
+        return new ScannedFile(file.toString(), file.getFileName().toString(), size, modifiedMillis);
+    }
+
+    public boolean isImage(String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (dot < 0 || dot == filename.length() - 1) {
+            return false;
+        }
+        return extensions.contains(filename.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final boolean recursive;
+        private final Consumer<List<ScannedFile>> sink;
+
+        DirectoryTask(Path dir, boolean recursive, Consumer<List<ScannedFile>> sink) {
+            this.dir = dir;
+            this.recursive = recursive;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> children = new ArrayList<>();
+            List<ScannedFile> files = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        log.warn("Skipping unreadable entry {}: {}", entry, e.getMessage());
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (recursive) {
+                            DirectoryTask child = new DirectoryTask(entry, true, sink);
+                            child.fork();
+                            children.add(child);
+                        }
+                    } else if (attrs.isRegularFile()) {
+                        String name = entry.getFileName().toString();
+                        if (isImage(name)) {
+                            files.add(new ScannedFile(entry.toString(), name, attrs.size(),
+                                    attrs.lastModifiedTime().toMillis()));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Skipping unreadable directory {}: {}", dir, e.getMessage());
+            }
+            if (!files.isEmpty()) {
+                sink.accept(files);
+            }
+            for (DirectoryTask child : children) {
+                child.join();
+            }
+        }
+    }
+
+    private final class IncrementalTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final boolean recursive;
+        private final Map<String, DirectoryManifest> previous;
+        private final ManifestSink sink;
+        private final Set<String> visited;
+        private final boolean verifyFiles;
+
+        IncrementalTask(Path dir, boolean recursive, Map<String, DirectoryManifest> previous,
+                        ManifestSink sink, Set<String> visited, boolean verifyFiles) {
+            this.dir = dir;
+            this.recursive = recursive;
+            this.previous = previous;
+            this.sink = sink;
+            this.visited = visited;
+            this.verifyFiles = verifyFiles;
+        }
+
+        @Override
+        protected void compute() {
+            String key = dir.toString();
+            long mtime;
+            try {
+                mtime = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                        .lastModifiedTime().toMillis();
+            } catch (IOException e) {
+                // not marked visited: a vanished directory is reported as removed
+                log.warn("Skipping unreadable directory {}: {}", dir, e.getMessage());
+                return;
+            }
+            visited.add(key);
+            DirectoryManifest old = previous.get(key);
+            List<String> subdirs = old != null && old.namesUnchanged(mtime) ? reuseListing(old) : null;
+            if (subdirs == null) {
+                subdirs = list(old, mtime);
+            }
+            if (!recursive) {
+                return;
+            }
+            List<IncrementalTask> children = new ArrayList<>(subdirs.size());
+            for (String name : subdirs) {
+                IncrementalTask child = new IncrementalTask(dir.resolve(name), true, previous, sink, visited, verifyFiles);
+                child.fork();
+                children.add(child);
+            }
+            for (IncrementalTask child : children) {
+                child.join();
+            }
+        }
+
+        /**
+         * Checks the files of an unchanged listing. Returns the stored subdirectories,
+         * or null when a file has vanished anyway and the directory must be listed.
+         */
+        private List<String> reuseListing(DirectoryManifest old) {
+            if (!verifyFiles) {
+                return old.subdirs();
+            }
+            List<ScannedFile> changed = new ArrayList<>();
+            Map<String, DirectoryManifest.FileStamp> stamps = null;
+            for (Map.Entry<String, DirectoryManifest.FileStamp> file : old.files().entrySet()) {
+                Path path = dir.resolve(file.getKey());
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    return null;
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable entry {}: {}", path, e.getMessage());
+                    continue;
+                }
+                DirectoryManifest.FileStamp now = new DirectoryManifest.FileStamp(attrs.size(), attrs.lastModifiedTime().toMillis());
+                if (!now.equals(file.getValue())) {
+                    changed.add(new ScannedFile(path.toString(), file.getKey(), now.size(), now.mtime()));
+                    if (stamps == null) {
+                        stamps = new HashMap<>(old.files());
+                    }
+                    stamps.put(file.getKey(), now);
+                }
+            }
+            if (!changed.isEmpty()) {
+                sink.changed(changed);
+                sink.manifest(new DirectoryManifest(old.dir(), old.mtime(), old.entryCount(), stamps, old.subdirs(),
+                        old.scannedAt()));
+            }
+            return old.subdirs();
+        }
+
+        /** Lists the directory, diffs it against {@code old} and returns its subdirectories. */
+        private List<String> list(DirectoryManifest old, long mtime) {
+            long scannedAt = System.currentTimeMillis();
+            Map<String, DirectoryManifest.FileStamp> files = new HashMap<>();
+            List<String> subdirs = new ArrayList<>();
+            List<ScannedFile> changed = new ArrayList<>();
+            int entryCount = 0;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    entryCount++;
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        log.warn("Skipping unreadable entry {}: {}", entry, e.getMessage());
+                        continue;
+                    }
+                    String name = entry.getFileName().toString();
+                    if (attrs.isDirectory()) {
+                        subdirs.add(name);
+                    } else if (attrs.isRegularFile() && isImage(name)) {
+                        DirectoryManifest.FileStamp stamp = new DirectoryManifest.FileStamp(attrs.size(),
+                                attrs.lastModifiedTime().toMillis());
+                        files.put(name, stamp);
+                        if (old == null || !stamp.equals(old.files().get(name))) {
+                            changed.add(new ScannedFile(entry.toString(), name, stamp.size(), stamp.mtime()));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Skipping unreadable directory {}: {}", dir, e.getMessage());
+                return old != null ? old.subdirs() : List.of();
+            }
+            List<String> deleted = new ArrayList<>();
+            if (old != null) {
+                for (String name : old.files().keySet()) {
+                    if (!files.containsKey(name)) {
+                        deleted.add(dir.resolve(name).toString());
+                    }
+                }
+            }
+            if (!changed.isEmpty()) {
+                sink.changed(changed);
+            }
+            if (!deleted.isEmpty()) {
+                sink.deleted(deleted);
+            }
+            // a manifest is also rewritten when only its mtime moved, so the next run can skip the listing
+            sink.manifest(new DirectoryManifest(dir.toString(), mtime, entryCount, files, subdirs, scannedAt));
+            return subdirs;
+        }
+    }
+}
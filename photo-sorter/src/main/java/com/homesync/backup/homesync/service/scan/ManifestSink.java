@@ -0,0 +1,19 @@
+package com.homesync.backup.homesync.service.scan;
+
+import java.util.List;
+
+/**
+ * Receives the differences found by {@link DirectoryScanner#scanIncremental}. Called
+ * concurrently from scanner threads, so implementations must be thread-safe.
+ */
+public interface ManifestSink {
+
+    /** Image files that are new or whose size or mtime changed. */
+    void changed(List<ScannedFile> files);
+
+    /** Paths of image files listed in the previous manifest that are gone. */
+    void deleted(List<String> paths);
+
+    /** A manifest to store for the next run; only directories that differ are reported. */
+    void manifest(DirectoryManifest manifest);
+}
@@ -0,0 +1,23 @@
+package com.homesync.backup.homesync.service.scan;
+
+import com.homesync.backup.homesync.service.metadata.ImageMetadata;
+
+/**
+ * A single image file discovered by {@link DirectoryScanner}. Carries what a
+ * directory entry stat gives us plus, once {@link #withHeader} was applied, the
+ * dimensions and capture time from the first few KB of the file (0 when unknown).
+ *
+ * @see ImageMetadata#capturedSeconds()
+ */
+public record ScannedFile(String path, String filename, long size, long modifiedMillis,
+                          int width, int height, long capturedSeconds) {
+
+    public ScannedFile(String path, String filename, long size, long modifiedMillis) {
+        this(path, filename, size, modifiedMillis, 0, 0, 0);
+    }
+
+    public ScannedFile withHeader(ImageMetadata metadata) {
+        return new ScannedFile(path, filename, size, modifiedMillis,
+                metadata.width(), metadata.height(), metadata.capturedSeconds());
+    }
+}
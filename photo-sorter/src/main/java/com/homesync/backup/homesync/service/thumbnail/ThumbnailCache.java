@@ -0,0 +1,143 @@
+package com.homesync.backup.homesync.service.thumbnail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed thumbnail files under one directory, {@code <key[0..2]>/<key>.jpg},
+ * evicted least recently used first once they add up to more than {@code maxBytes}.
+ *
+ * The LRU order lives in memory only. On startup it is rebuilt from file mtimes,
+ * i.e. creation order, which is close enough for a cache that refills itself.
+ * Files are written under a temporary name and moved into place, so a reader never
+ * sees a partial thumbnail.
+ */
+public class ThumbnailCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private final Path dir;
+    private final long maxBytes;
+    // key -> file size, in access order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalBytes;
+
+    public ThumbnailCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(dir);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open thumbnail cache in " + dir, e);
+        }
+    }
+
+    /** The cached file for {@code key}, or null; a hit counts as a use for eviction. */
+    public synchronized Path get(String key) {
+        return entries.get(key) != null ? file(key) : null;
+    }
+
+    /** Forgets {@code key} if its file is gone, e.g. deleted by hand; a no-op when it was put back since. */
+    public synchronized void invalidate(String key) {
+        if (Files.notExists(file(key))) {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+    }
+
+    /** Stores {@code bytes} under {@code key}, evicting old entries beyond the size limit. */
+    public Path put(String key, byte[] bytes) throws IOException {
+        Path target = file(key);
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling(key + "." + Thread.currentThread().getId() + ".tmp");
+        Files.write(tmp, bytes);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        List<String> evicted;
+        synchronized (this) {
+            Long previous = entries.put(key, (long) bytes.length);
+            totalBytes += bytes.length - (previous != null ? previous : 0);
+            evicted = evict(key);
+        }
+        // deleting outside the lock; a reader already streaming the file keeps its open handle
+        for (String old : evicted) {
+            Files.deleteIfExists(file(old));
+        }
+        return target;
+    }
+
+    /** Drops the least recently used entries other than {@code keep} until under the limit. */
+    private List<String> evict(String keep) {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            evicted.add(entry.getKey());
+            eldest.remove();
+        }
+        return evicted;
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".jpg");
+    }
+
+    private void load() throws IOException {
+        record Found(String key, long size, long mtime) {
+        }
+        List<Found> found = new ArrayList<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    // left over from a crash mid-write
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(".jpg")) {
+                    found.add(new Found(name.substring(0, name.length() - 4), attrs.size(),
+                            attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        found.sort(Comparator.comparingLong(Found::mtime));
+        for (Found f : found) {
+            entries.put(f.key(), f.size());
+            totalBytes += f.size();
+        }
+        // the limit may have been lowered since the last run
+        for (String old : evict(null)) {
+            Files.deleteIfExists(file(old));
+        }
+        log.info("Thumbnail cache in {} holds {} files ({} MB)", dir, entries.size(), totalBytes >> 20);
+    }
+}
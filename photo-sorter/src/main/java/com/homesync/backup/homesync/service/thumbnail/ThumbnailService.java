@@ -0,0 +1,342 @@
+package com.homesync.backup.homesync.service.thumbnail;
+
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository.PhotoSource;
+import com.homesync.backup.homesync.service.metadata.ImageMetadataReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the configured thumbnail sizes of a photo from a single decode and keeps
+ * them in a {@link ThumbnailCache} keyed by the photo's content hash, so copies of a
+ * file share their thumbnails. Photos the dedup stage has not hashed yet fall back to
+ * a key derived from path, size and mtime.
+ *
+ * Generation after ingest runs on a small bounded pool. Work that does not fit the
+ * queue is dropped and done on first request instead. Request-time generation runs
+ * on the calling thread, limited to as many at once as the pool has threads.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final boolean enabled;
+    private final int[] sizes;
+    private final float quality;
+    private final ThumbnailCache cache;
+    private final PhotoJdbcRepository photoJdbc;
+    private final ImageMetadataReader headers = new ImageMetadataReader();
+    private final ThreadPoolExecutor pool;
+    private final Semaphore inline;
+    private final Counter generated;
+    private final Counter dropped;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer renderTimer;
+
+    public ThumbnailService(PhotoJdbcRepository photoJdbc,
+                            MeterRegistry registry,
+                            @Value("${thumbnail.enabled:true}") boolean enabled,
+                            @Value("${thumbnail.path:./data/thumbnails}") String path,
+                            @Value("${thumbnail.sizes:256,1024}") int[] sizes,
+                            @Value("${thumbnail.quality:0.8}") float quality,
+                            @Value("${thumbnail.max-cache-bytes:2147483648}") long maxCacheBytes,
+                            @Value("${thumbnail.threads:2}") int threads,
+                            @Value("${thumbnail.queue:1000}") int queue) {
+        this.photoJdbc = photoJdbc;
+        this.enabled = enabled;
+        this.sizes = sizes.clone();
+        Arrays.sort(this.sizes);
+        this.quality = quality;
+        this.cache = new ThumbnailCache(Path.of(path), maxCacheBytes);
+        AtomicInteger threadIds = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue), r -> {
+            Thread t = new Thread(r, "thumbnail-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.inline = new Semaphore(threads);
+        // decoding reads the file directly; no need for ImageIO to spool streams to temp files
+        ImageIO.setUseCache(false);
+        this.generated = Counter.builder("thumbnail.generated").register(registry);
+        this.dropped = Counter.builder("thumbnail.dropped").register(registry);
+        this.hits = Counter.builder("thumbnail.cache.hits").register(registry);
+        this.misses = Counter.builder("thumbnail.cache.misses").register(registry);
+        this.renderTimer = Timer.builder("thumbnail.render").register(registry);
+        Gauge.builder("thumbnail.cache.bytes", cache, ThumbnailCache::totalBytes).baseUnit("bytes").register(registry);
+    }
+
+    /** Queues thumbnail generation for freshly ingested photos; returns at once. */
+    public void generateLater(Collection<Long> photoIds) {
+        if (!enabled || photoIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(photoIds);
+        submit(() -> {
+            for (PhotoSource source : photoJdbc.findSources(ids).values()) {
+                if (cache.get(key(source, sizes[0])) == null) {
+                    submit(() -> render(source));
+                }
+            }
+        });
+    }
+
+    /**
+     * The cached thumbnail of {@code photoId} at the smallest configured size not
+     * below {@code size}, rendering it first on a miss. Empty when the photo does
+     * not exist or cannot be decoded.
+     *
+     * @throws IllegalStateException when all render slots stay busy
+     */
+    public Optional<Thumbnail> thumbnail(long photoId, int size) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        PhotoSource source = photoJdbc.findSources(List.of(photoId)).get(photoId);
+        if (source == null) {
+            return Optional.empty();
+        }
+        String key = key(source, sizeFor(size));
+        // a file evicted between the lookup and the stat is a miss, so the second round renders it again
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Path file = cachedOrRendered(source, key);
+            if (file == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new Thumbnail(file, Files.size(file), "\"" + key + "\""));
+            } catch (IOException e) {
+                cache.invalidate(key);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Path cachedOrRendered(PhotoSource source, String key) {
+        Path file = cache.get(key);
+        if (file == null) {
+            misses.increment();
+            try {
+                if (!inline.tryAcquire(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Thumbnail rendering is busy");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to render", e);
+            }
+            try {
+                // another request may have rendered it while this one waited
+                file = cache.get(key);
+                if (file == null && render(source)) {
+                    file = cache.get(key);
+                }
+            } finally {
+                inline.release();
+            }
+        } else {
+            hits.increment();
+        }
+        return file;
+    }
+
+    public int sizeFor(int requested) {
+        for (int size : sizes) {
+            if (size >= requested) {
+                return size;
+            }
+        }
+        return sizes[sizes.length - 1];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void submit(Runnable task) {
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+        }
+    }
+
+    /** Renders every configured size of {@code source} from one decode; false if it cannot be decoded. */
+    boolean render(PhotoSource source) {
+        long started = System.nanoTime();
+        Path file = Path.of(source.path());
+        try {
+            BufferedImage image = decode(file, sizes[sizes.length - 1]);
+            if (image == null) {
+                log.debug("No decoder for {}", file);
+                return false;
+            }
+            image = orient(image, headers.read(file).orientation());
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                image = fit(image, sizes[i]);
+                cache.put(key(source, sizes[i]), encode(image));
+            }
+            generated.increment();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot render thumbnails of {}: {}", file, e.getMessage());
+            return false;
+        } finally {
+            renderTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Decodes with source subsampling, so a large JPEG is read at roughly the
+     * largest thumbnail size instead of at full resolution.
+     */
+    private static BufferedImage decode(Path file, int box) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int step = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / box);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** Turns the image upright for EXIF orientations 3, 6 and 8; mirrored variants are treated as their rotation. */
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        int quarterTurns = switch (orientation) {
+            case 3, 4 -> 2;
+            case 5, 6 -> 1;
+            case 7, 8 -> 3;
+            default -> 0;
+        };
+        if (quarterTurns == 0) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        boolean swap = quarterTurns % 2 == 1;
+        BufferedImage turned = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = turned.createGraphics();
+        try {
+            g.translate(turned.getWidth() / 2.0, turned.getHeight() / 2.0);
+            g.rotate(Math.PI / 2 * quarterTurns);
+            g.translate(-w / 2.0, -h / 2.0);
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return turned;
+    }
+
+    /** Scales to fit a {@code box} square, halving in steps first so bilinear filtering does not alias. */
+    static BufferedImage fit(BufferedImage image, int box) {
+        double scale = Math.min(1.0, (double) box / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+            current = resize(current, current.getWidth() / 2, current.getHeight() / 2);
+        }
+        if (current.getWidth() != width || current.getHeight() != height || current.getType() != BufferedImage.TYPE_INT_RGB) {
+            current = resize(current, width, height);
+        }
+        return current;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    static String key(PhotoSource source, int size) {
+        if (source.contentHash() != null) {
+            return source.contentHash() + "-" + size;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((source.path() + "|" + source.filesize() + "|" + source.modifiedMillis())
+                    .getBytes(StandardCharsets.UTF_8));
+            // "m" keeps these apart from content hashes
+            return "m" + HEX.formatHex(digest.digest()) + "-" + size;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** A cached thumbnail file and its strong ETag (the cache key, quoted). */
+    public record Thumbnail(Path file, long length, String etag) {
+    }
+}
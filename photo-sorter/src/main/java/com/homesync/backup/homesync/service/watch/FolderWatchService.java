@@ -0,0 +1,562 @@
+package com.homesync.backup.homesync.service.watch;
+
+import com.homesync.backup.homesync.dto.IngestRequest;
+import com.homesync.backup.homesync.dto.WatchRequest;
+import com.homesync.backup.homesync.model.IngestJob;
+import com.homesync.backup.homesync.model.WatchedRoot;
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import com.homesync.backup.homesync.model.enums.WatchMode;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository;
+import com.homesync.backup.homesync.repository.IngestJobRepository;
+import com.homesync.backup.homesync.repository.ManifestJdbcRepository;
+import com.homesync.backup.homesync.repository.WatchedRootRepository;
+import com.homesync.backup.homesync.service.IngestBatchWriter;
+import com.homesync.backup.homesync.service.IngestBatchWriter.WrittenBatch;
+import com.homesync.backup.homesync.service.IngestService;
+import com.homesync.backup.homesync.service.scan.DirectoryManifest;
+import com.homesync.backup.homesync.service.scan.DirectoryScanner;
+import com.homesync.backup.homesync.service.scan.ManifestSink;
+import com.homesync.backup.homesync.service.scan.ScannedFile;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps watched roots in sync without re-scanning them. Local roots use one shared
+ * {@link WatchService} drained by a single thread; roots on network filesystems (or
+ * past the OS watch limit) are polled instead, which stats directories only and
+ * lists just those whose mtime moved.
+ *
+ * Either way a changed path only lands in the root's pending map. A flush task
+ * picks up paths that have been quiet for {@code watch.debounce-ms} (a phone
+ * upload fires many modify events), stats them and writes them as small batches
+ * under the root's WATCHING ingest job; from there the outbox relay publishes
+ * them like any other batch. Paths that no longer exist are flagged deleted, and
+ * so is everything under a watched directory that was removed. Paths whose write
+ * fails go back to the pending map and are retried after another quiet period.
+ */
+@Service
+public class FolderWatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(FolderWatchService.class);
+
+    private final WatchedRootRepository roots;
+    private final IngestJobRepository jobRepository;
+    private final IngestService ingestService;
+    private final IngestBatchWriter batchWriter;
+    private final IngestJdbcRepository ingestJdbc;
+    private final ManifestJdbcRepository manifests;
+    private final DirectoryScanner scanner;
+    private final long debounceMillis;
+    private final int maxBatch;
+    private final long pollMillis;
+    private final boolean catchUpOnStart;
+    private final Set<String> pollFilesystems = new HashSet<>();
+    private final ScheduledExecutorService scheduler;
+    private final Map<Long, RootWatch> active = new ConcurrentHashMap<>();
+    private final Map<WatchKey, RootWatch> keys = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private volatile boolean running = true;
+
+    public FolderWatchService(WatchedRootRepository roots,
+                              IngestJobRepository jobRepository,
+                              IngestService ingestService,
+                              IngestBatchWriter batchWriter,
+                              IngestJdbcRepository ingestJdbc,
+                              ManifestJdbcRepository manifests,
+                              DirectoryScanner scanner,
+                              @Value("${watch.debounce-ms:1500}") long debounceMillis,
+                              @Value("${watch.max-batch:100}") int maxBatch,
+                              @Value("${watch.poll-interval-ms:15000}") long pollMillis,
+                              @Value("${watch.catch-up-on-start:true}") boolean catchUpOnStart,
+                              @Value("${watch.poll-filesystems:nfs,nfs4,cifs,smb,smb2,smb3,smbfs,9p,virtiofs,fakeowner}") Collection<String> pollFilesystems) {
+        this.roots = roots;
+        this.jobRepository = jobRepository;
+        this.ingestService = ingestService;
+        this.batchWriter = batchWriter;
+        this.ingestJdbc = ingestJdbc;
+        this.manifests = manifests;
+        this.scanner = scanner;
+        this.debounceMillis = debounceMillis;
+        this.maxBatch = maxBatch;
+        this.pollMillis = pollMillis;
+        this.catchUpOnStart = catchUpOnStart;
+        for (String type : pollFilesystems) {
+            this.pollFilesystems.add(type.trim().toLowerCase(Locale.ROOT));
+        }
+        AtomicInteger threadIds = new AtomicInteger();
+        // one thread flushes, one polls; neither grows with the number of directories
+        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "folder-watch-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long flushEvery = Math.max(100, debounceMillis / 4);
+        scheduler.scheduleWithFixedDelay(this::flushAll, flushEvery, flushEvery, TimeUnit.MILLISECONDS);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (WatchedRoot root : roots.findAll()) {
+            activate(root, catchUpOnStart);
+        }
+    }
+
+    /**
+     * Starts watching {@code request.path}. The existing contents are brought in by an
+     * incremental ingest run; an already watched path is returned unchanged.
+     */
+    public WatchedRoot register(WatchRequest request) {
+        if (request.getPath() == null || request.getPath().isBlank()) {
+            throw new IllegalArgumentException("path is required");
+        }
+        Path path = Paths.get(request.getPath()).toAbsolutePath().normalize();
+        if (!Files.isDirectory(path)) {
+            throw new IllegalArgumentException("Not a directory: " + path);
+        }
+        WatchMode mode;
+        try {
+            mode = request.getMode() != null ? WatchMode.valueOf(request.getMode().toUpperCase(Locale.ROOT)) : WatchMode.AUTO;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown watch mode: " + request.getMode());
+        }
+        var existing = roots.findByPath(path.toString());
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        boolean recursive = request.getRecursive() == null || request.getRecursive();
+        String jobId = UUID.randomUUID().toString();
+        jobRepository.save(IngestJob.builder()
+                .jobId(jobId)
+                .jobName("watch " + path)
+                .path(path.toString())
+                .recursive(recursive)
+                .requestedBy(request.getRequestedBy())
+                .createdAt(LocalDateTime.now())
+                .status(JobStatus.WATCHING)
+                // files dropped into a watched folder are what someone is waiting to see
+                .priority(IngestPriority.INTERACTIVE)
+                .scannedCount(0)
+                .insertedCount(0)
+                .publishedCount(0)
+                .deletedCount(0)
+                .build());
+        WatchedRoot root = roots.save(WatchedRoot.builder()
+                .path(path.toString())
+                .recursive(recursive)
+                .mode(mode)
+                .jobId(jobId)
+                .createdAt(LocalDateTime.now())
+                .build());
+        activate(root, true);
+        return root;
+    }
+
+    public List<WatchedRoot> list() {
+        return roots.findAll();
+    }
+
+    public boolean unregister(long id) {
+        var root = roots.findById(id);
+        if (root.isEmpty()) {
+            return false;
+        }
+        RootWatch watch = active.remove(id);
+        if (watch != null) {
+            watch.stop();
+        }
+        roots.delete(root.get());
+        ingestJdbc.finishJob(root.get().getJobId(), JobStatus.COMPLETED);
+        return true;
+    }
+
+    /** Whether the root is currently polled rather than natively watched; null if not active. */
+    public Boolean isPolling(long id) {
+        RootWatch watch = active.get(id);
+        return watch == null ? null : watch.polling;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        scheduler.shutdownNow();
+        synchronized (this) {
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    log.debug("Closing the watch service failed", e);
+                }
+            }
+        }
+    }
+
+    private void activate(WatchedRoot root, boolean catchUp) {
+        RootWatch watch = new RootWatch(root, ingestJdbc.nextBatchIndex(root.getJobId()));
+        active.put(root.getId(), watch);
+        boolean poll = root.getMode() == WatchMode.POLL
+                || (root.getMode() != WatchMode.NATIVE && isNetworkMount(watch.path));
+        if (poll) {
+            watch.startPolling();
+        } else {
+            // registering walks the directory tree, which should not hold up the caller
+            scheduler.execute(() -> {
+                try {
+                    registerTree(watch, watch.path, false);
+                    log.info("Watching {} natively ({} directories)", watch.path, watch.keys.size());
+                } catch (IOException e) {
+                    if (root.getMode() == WatchMode.NATIVE) {
+                        log.error("Cannot watch {}: {}", watch.path, e.getMessage());
+                    } else {
+                        log.warn("Native watch of {} failed ({}); polling instead", watch.path, e.getMessage());
+                        watch.cancelKeys();
+                        watch.startPolling();
+                    }
+                }
+            });
+        }
+        if (catchUp) {
+            IngestRequest request = new IngestRequest();
+            request.setPath(root.getPath());
+            request.setJobName("watch catch-up " + root.getPath());
+            request.setRecursive(root.getRecursive());
+            request.setIncremental(true);
+            ingestService.startIngest(request);
+        }
+    }
+
+    private boolean isNetworkMount(Path path) {
+        try {
+            String type = Files.getFileStore(path).type().toLowerCase(Locale.ROOT);
+            return pollFilesystems.contains(type) || type.startsWith("fuse");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private synchronized WatchService watchService() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread watcher = new Thread(this::drainEvents, "folder-watch-events");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+        return watchService;
+    }
+
+    /** Registers {@code start} and, for recursive roots, every directory below it. */
+    private void registerTree(RootWatch watch, Path start, boolean touchFiles) throws IOException {
+        if (!watch.recursive) {
+            register(watch, start);
+            return;
+        }
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(watch, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // files written into a new directory before it was registered
+                if (touchFiles && attrs.isRegularFile() && scanner.isImage(file.getFileName().toString())) {
+                    watch.touch(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.warn("Cannot watch {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(RootWatch watch, Path dir) throws IOException {
+        WatchKey key = dir.register(watchService(), StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        keys.put(key, watch);
+        watch.keys.add(key);
+        watch.dirs.add(dir);
+    }
+
+    private void drainEvents() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            RootWatch watch = keys.get(key);
+            if (watch == null) {
+                key.cancel();
+                continue;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // events were dropped; look at the whole directory instead
+                    watch.touchDirectory(dir);
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && watch.isWatched(child)) {
+                    watch.touchRemovedDirectory(child);
+                } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && watch.recursive
+                        && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        registerTree(watch, child, true);
+                    } catch (IOException e) {
+                        log.warn("Cannot watch new directory {}: {}", child, e.getMessage());
+                    }
+                } else if (scanner.isImage(child.getFileName().toString())) {
+                    watch.touch(child);
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+                watch.keys.remove(key);
+            }
+        }
+    }
+
+    private void flushAll() {
+        long cutoff = System.currentTimeMillis() - debounceMillis;
+        for (RootWatch watch : active.values()) {
+            try {
+                watch.flush(cutoff);
+            } catch (Exception e) {
+                log.warn("Flushing changes under {} failed; they are retried", watch.path, e);
+            }
+        }
+    }
+
+    /** Live state of one watched root. */
+    private final class RootWatch {
+
+        private final Path path;
+        private final String jobId;
+        private final boolean recursive;
+        private final AtomicInteger batchIndex;
+        // path -> time of its latest event
+        private final Map<Path, Long> pending = new ConcurrentHashMap<>();
+        // watched directories that were deleted -> time of the event
+        private final Map<Path, Long> removedDirs = new ConcurrentHashMap<>();
+        private final Set<WatchKey> keys = ConcurrentHashMap.newKeySet();
+        // registered directories; kept after their key is cancelled, which may happen before the delete event arrives
+        private final Set<Path> dirs = ConcurrentHashMap.newKeySet();
+        private volatile boolean polling;
+        private ScheduledFuture<?> pollTask;
+        private Map<String, DirectoryManifest> pollManifests;
+
+        RootWatch(WatchedRoot root, int firstBatchIndex) {
+            this.path = Path.of(root.getPath());
+            this.jobId = root.getJobId();
+            this.recursive = root.getRecursive() == null || root.getRecursive();
+            this.batchIndex = new AtomicInteger(firstBatchIndex);
+        }
+
+        void touch(Path file) {
+            pending.put(file, System.currentTimeMillis());
+        }
+
+        void touchRemovedDirectory(Path dir) {
+            dirs.removeIf(d -> d.startsWith(dir));
+            removedDirs.put(dir, System.currentTimeMillis());
+        }
+
+        boolean isWatched(Path dir) {
+            return dirs.contains(dir);
+        }
+
+        void touchDirectory(Path dir) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (scanner.isImage(entry.getFileName().toString())) {
+                        touch(entry);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Cannot list {}: {}", dir, e.getMessage());
+            }
+        }
+
+        synchronized void startPolling() {
+            polling = true;
+            pollTask = scheduler.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+            log.info("Polling {} every {} ms", path, pollMillis);
+        }
+
+        /**
+         * One polling round against the manifests of the previous round. The first
+         * round starts from the stored manifests; without any it only records a
+         * baseline, leaving existing files to the catch-up ingest run.
+         */
+        private void poll() {
+            try {
+                boolean baseline = false;
+                if (pollManifests == null) {
+                    pollManifests = new HashMap<>(manifests.findUnder(path.toString()));
+                    baseline = pollManifests.isEmpty();
+                }
+                boolean report = !baseline;
+                List<DirectoryManifest> updated = new ArrayList<>();
+                List<DirectoryManifest> removed = scanner.scanIncremental(path, recursive, pollManifests,
+                        new ManifestSink() {
+                            @Override
+                            public void changed(List<ScannedFile> files) {
+                                if (report) {
+                                    files.forEach(f -> touch(Path.of(f.path())));
+                                }
+                            }
+
+                            @Override
+                            public void deleted(List<String> paths) {
+                                if (report) {
+                                    paths.forEach(p -> touch(Path.of(p)));
+                                }
+                            }
+
+                            @Override
+                            public void manifest(DirectoryManifest manifest) {
+                                synchronized (updated) {
+                                    updated.add(manifest);
+                                }
+                            }
+                        }, false);
+                for (DirectoryManifest manifest : updated) {
+                    pollManifests.put(manifest.dir(), manifest);
+                }
+                for (DirectoryManifest manifest : removed) {
+                    pollManifests.remove(manifest.dir());
+                }
+            } catch (Exception e) {
+                log.warn("Polling {} failed", path, e);
+            }
+        }
+
+        /**
+         * Writes every path quiet since {@code cutoff}: existing files as batches,
+         * missing ones and everything under removed directories as deletions. Paths
+         * not written when a write fails are put back, unless a newer event did so.
+         */
+        void flush(long cutoff) {
+            Map<Path, Long> taken = take(pending, cutoff);
+            Map<Path, Long> takenDirs = take(removedDirs, cutoff);
+            List<ScannedFile> files = new ArrayList<>();
+            List<String> gone = new ArrayList<>();
+            for (Iterator<Path> it = taken.keySet().iterator(); it.hasNext(); ) {
+                Path file = it.next();
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isRegularFile()) {
+                        files.add(scanner.describe(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    } else {
+                        it.remove();
+                    }
+                } catch (NoSuchFileException e) {
+                    gone.add(file.toString());
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable file {}: {}", file, e.getMessage());
+                    it.remove();
+                }
+            }
+            try {
+                for (int i = 0; i < files.size(); i += maxBatch) {
+                    List<ScannedFile> chunk = files.subList(i, Math.min(files.size(), i + maxBatch));
+                    WrittenBatch batch = batchWriter.writeChunk(jobId, batchIndex.getAndIncrement(), chunk, true);
+                    ingestJdbc.incrementJobCounts(jobId, chunk.size(), batch != null ? batch.photos().size() : 0);
+                    chunk.forEach(f -> taken.remove(Path.of(f.path())));
+                }
+                if (!gone.isEmpty()) {
+                    ingestJdbc.addDeleted(jobId, batchWriter.markDeleted(gone));
+                    gone.forEach(p -> taken.remove(Path.of(p)));
+                }
+                for (Iterator<Path> it = takenDirs.keySet().iterator(); it.hasNext(); ) {
+                    Path dir = it.next();
+                    // a directory moved back in the meantime brought its files in through ENTRY_CREATE
+                    if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+                        ingestJdbc.addDeleted(jobId, batchWriter.markDeletedUnder(dir.toString()));
+                    }
+                    it.remove();
+                }
+            } finally {
+                long now = System.currentTimeMillis();
+                taken.keySet().forEach(p -> pending.putIfAbsent(p, now));
+                takenDirs.keySet().forEach(d -> removedDirs.putIfAbsent(d, now));
+            }
+        }
+
+        /** Removes and returns the entries quiet since {@code cutoff}. */
+        private Map<Path, Long> take(Map<Path, Long> touched, long cutoff) {
+            Map<Path, Long> taken = new HashMap<>();
+            for (Map.Entry<Path, Long> entry : touched.entrySet()) {
+                // remove(key, value) loses to a newer event, which then waits for its own quiet period
+                if (entry.getValue() <= cutoff && touched.remove(entry.getKey(), entry.getValue())) {
+                    taken.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return taken;
+        }
+
+        void cancelKeys() {
+            for (WatchKey key : keys) {
+                key.cancel();
+                FolderWatchService.this.keys.remove(key);
+            }
+            keys.clear();
+            dirs.clear();
+        }
+
+        synchronized void stop() {
+            cancelKeys();
+            if (pollTask != null) {
+                pollTask.cancel(false);
+            }
+            pending.clear();
+            removedDirs.clear();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.homesync.backup.homesync.kafka;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PhotoEnvelopeTest {
+
+    private static final String DIR = "/mnt/nas/backup/family/phones/pixel-7/DCIM/Camera/2021/07/";
+
+    @Test
+    void roundTripsPathsIdsAndStats() {
+        List<PhotoEnvelope.Entry> photos = List.of(
+                new PhotoEnvelope.Entry(1000L, DIR + "PXL_1.jpg", 3_100_000, 1_626_285_942_000L),
+                new PhotoEnvelope.Entry(1001L, DIR + "PXL_2.jpg", 2_900_000, 1_626_285_990_000L),
+                // ids and mtimes may go backwards, paths may share nothing
+                new PhotoEnvelope.Entry(998L, "/other/Ünïcödé/ファイル.jpg", 0, 1_500_000_000_000L),
+                new PhotoEnvelope.Entry(999L, "/other/Ünïcödé/ファイル2.jpg", 12, 0));
+        PhotoEnvelope envelope = new PhotoEnvelope("job-1", 77, photos);
+
+        PhotoEnvelope decoded = new PhotoEnvelopeDeserializer()
+                .deserialize("photos-to-process", new PhotoEnvelopeSerializer().serialize("photos-to-process", envelope));
+
+        assertEquals(envelope, decoded);
+    }
+
+    @Test
+    void sharedDirectoriesAreWrittenOnce() {
+        List<PhotoEnvelope.Entry> photos = new ArrayList<>();
+        int plainBytes = 0;
+        for (int i = 0; i < 100; i++) {
+            String path = DIR + "PXL_20210714_" + (180542 + i) + ".jpg";
+            photos.add(new PhotoEnvelope.Entry(5000L + i, path, 3_000_000L + i, 1_626_285_942_000L + i * 1000L));
+            plainBytes += path.length();
+        }
+
+        byte[] bytes = new PhotoEnvelope("job-1", 1, photos).encode();
+
+        assertTrue(bytes.length < plainBytes / 4, bytes.length + " bytes for " + plainBytes + " bytes of paths");
+        assertEquals(photos, PhotoEnvelope.decode(bytes).photos());
+    }
+
+    @Test
+    void readsOldSinglePathRecordsFromHeaders() {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(PhotoEnvelope.HEADER_JOB_ID, "job-9".getBytes(StandardCharsets.UTF_8));
+        headers.add(PhotoEnvelope.HEADER_BATCH_ID, "12".getBytes(StandardCharsets.UTF_8));
+        headers.add(PhotoEnvelope.HEADER_PHOTO_ID, "345".getBytes(StandardCharsets.UTF_8));
+
+        PhotoEnvelope envelope = new PhotoEnvelopeDeserializer()
+                .deserialize("photos-to-process", headers, "/photos/a.jpg".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(new PhotoEnvelope("job-9", 12, List.of(new PhotoEnvelope.Entry(345L, "/photos/a.jpg", 0, 0))),
+                envelope);
+        PhotoEnvelope bare = new PhotoEnvelopeDeserializer()
+                .deserialize("photos-to-process", "/photos/b.jpg".getBytes(StandardCharsets.UTF_8));
+        assertNull(bare.jobId());
+        assertNull(bare.photos().get(0).photoId());
+    }
+
+    @Test
+    void roundTripsPhotosWithoutIds() {
+        // an old-format record without a photo-id header, sent on to a retry tier together with others
+        List<PhotoEnvelope.Entry> photos = List.of(
+                new PhotoEnvelope.Entry(null, DIR + "PXL_1.jpg", 0, 0),
+                new PhotoEnvelope.Entry(1001L, DIR + "PXL_2.jpg", 2_900_000, 1_626_285_990_000L),
+                new PhotoEnvelope.Entry(null, DIR + "PXL_3.jpg", 0, 0),
+                new PhotoEnvelope.Entry(998L, DIR + "PXL_4.jpg", 12, 1_626_285_942_000L));
+        PhotoEnvelope envelope = new PhotoEnvelope(null, 0, photos);
+
+        byte[] bytes = envelope.encode();
+
+        assertEquals(PhotoEnvelope.VERSION_NULLABLE_IDS, bytes[1]);
+        assertEquals(envelope, PhotoEnvelope.decode(bytes));
+        // envelopes whose photos all have ids stay readable by version 1 consumers
+        assertEquals(PhotoEnvelope.VERSION, new PhotoEnvelope("job-1", 1, photos.subList(1, 2)).encode()[1]);
+    }
+
+    @Test
+    void rejectsUnknownVersionsAndTruncatedData() {
+        byte[] bytes = new PhotoEnvelope("job-1", 1, List.of(new PhotoEnvelope.Entry(1L, DIR + "a.jpg", 1, 1))).encode();
+
+        byte[] future = bytes.clone();
+        future[1] = 3;
+        assertThrows(SerializationException.class, () -> PhotoEnvelope.decode(future));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+        assertThrows(SerializationException.class, () -> PhotoEnvelope.decode(truncated));
+    }
+}
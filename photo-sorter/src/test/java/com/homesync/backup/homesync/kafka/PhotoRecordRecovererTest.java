@@ -0,0 +1,69 @@
+package com.homesync.backup.homesync.kafka;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import com.homesync.backup.homesync.service.progress.IngestProgressService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PhotoRecordRecovererTest {
+
+    private static final PhotoEnvelope PHOTOS = new PhotoEnvelope("job-1", 7,
+            List.of(new PhotoEnvelope.Entry(42L, "/photos/a.jpg", 10, 20)));
+
+    private final PhotoRetryRouter router = mock(PhotoRetryRouter.class);
+    private final PhotoJdbcRepository photoJdbc = mock(PhotoJdbcRepository.class);
+    private final IngestProgressService progress = mock(IngestProgressService.class);
+    private final PhotoRecordRecoverer recoverer = new PhotoRecordRecoverer(router, photoJdbc, progress,
+            "photos-to-process-interactive");
+
+    @Test
+    public void testFailedInteractiveRecordGoesToTheFirstTier() {
+        when(router.route(any(), any(), any(), anyString(), anyBoolean())).thenReturn(
+                new PhotoRetryRouter.Routed("photos-to-process-retry-0", false, CompletableFuture.completedFuture(null)));
+
+        recoverer.accept(new ConsumerRecord<>("photos-to-process-interactive", 0, 5L, "42", PHOTOS),
+                new DataAccessResourceFailureException("Communications link failure"));
+
+        verify(router).route(eq(PHOTOS), isNull(), eq(IngestPriority.INTERACTIVE), eq("Communications link failure"),
+                eq(false));
+        verify(photoJdbc, never()).markFailed(any());
+    }
+
+    @Test
+    public void testDeadLetteredPhotosAreMarkedFailedAndCounted() {
+        when(router.route(any(), any(), any(), anyString(), anyBoolean())).thenReturn(
+                new PhotoRetryRouter.Routed("photos-to-process-dlt", true, CompletableFuture.completedFuture(null)));
+
+        recoverer.accept(new ConsumerRecord<>("photos-to-process-retry-2", 0, 5L, "42", PHOTOS),
+                new DataAccessResourceFailureException("Communications link failure"));
+
+        verify(photoJdbc).markFailed(List.of(42L));
+        verify(progress).processed("job-1", 1);
+    }
+
+    @Test
+    public void testRecordStaysWhenTheBrokerRefusesIt() {
+        when(router.route(any(), any(), any(), anyString(), anyBoolean())).thenReturn(
+                new PhotoRetryRouter.Routed("photos-to-process-retry-0", false,
+                        CompletableFuture.failedFuture(new IllegalStateException("broker down"))));
+
+        assertThrows(RuntimeException.class, () -> recoverer.accept(
+                new ConsumerRecord<>("photos-to-process", 0, 5L, "42", PHOTOS), new IllegalStateException("down")));
+    }
+}
@@ -0,0 +1,93 @@
+package com.homesync.backup.homesync.kafka;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PhotoRetryRouterTest {
+
+    private static final PhotoEnvelope PHOTOS = new PhotoEnvelope("job-1", 7,
+            List.of(new PhotoEnvelope.Entry(42L, "/photos/a.jpg", 10, 20)));
+
+    private final KafkaProducer producer = mock(KafkaProducer.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PhotoRetryRouter router = new PhotoRetryRouter(producer, registry, "photos-to-process",
+            List.of(Duration.ofSeconds(10), Duration.ofMinutes(1)));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWalksTheTiersThenDeadLetters() {
+        when(producer.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        long before = System.currentTimeMillis();
+        PhotoRetryRouter.Routed first = router.route(PHOTOS, null, IngestPriority.INTERACTIVE, "ML call failed", false);
+        PhotoFailure firstFailure = sent();
+        assertEquals("photos-to-process-retry-0", first.topic());
+        assertFalse(first.deadLetter());
+        assertEquals(1, firstFailure.attempts());
+        assertEquals(IngestPriority.INTERACTIVE, firstFailure.lane());
+        assertTrue(firstFailure.dueAt() >= before + 10_000 && firstFailure.dueAt() <= System.currentTimeMillis() + 10_000);
+        assertFalse(firstFailure.counted());
+
+        PhotoRetryRouter.Routed second = router.route(PHOTOS, firstFailure, firstFailure.lane(), "HTTP 503", false);
+        assertEquals("photos-to-process-retry-1", second.topic());
+        PhotoFailure secondFailure = sent();
+        assertEquals(2, secondFailure.attempts());
+        assertEquals("HTTP 503", secondFailure.reason());
+
+        PhotoRetryRouter.Routed third = router.route(PHOTOS, secondFailure, secondFailure.lane(), "HTTP 503", false);
+        assertEquals("photos-to-process-dlt", third.topic());
+        assertTrue(third.deadLetter());
+        PhotoFailure dead = sent();
+        assertEquals(3, dead.attempts());
+        assertEquals(IngestPriority.INTERACTIVE, dead.lane());
+        assertTrue(dead.counted());
+        assertEquals(2.0, registry.get("pipeline.photo.failures").tag("outcome", "retry").counter().count());
+        assertEquals(1.0, registry.get("pipeline.photo.failures").tag("outcome", "dead-letter").counter().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPermanentFailuresSkipTheTiers() {
+        when(producer.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        PhotoRetryRouter.Routed routed = router.route(PHOTOS, null, IngestPriority.BULK, "ML service rejected", true);
+
+        assertEquals("photos-to-process-dlt", routed.topic());
+        assertEquals(1, sent().attempts());
+    }
+
+    @Test
+    public void testRejectsMoreDelaysThanTiers() {
+        List<Duration> delays = List.of(Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(3),
+                Duration.ofSeconds(4));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PhotoRetryRouter(producer, registry, "photos-to-process", delays));
+    }
+
+    @SuppressWarnings("unchecked")
+    private PhotoFailure sent() {
+        ArgumentCaptor<ProducerRecord<String, PhotoEnvelope>> record = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(producer, atLeastOnce()).send(record.capture());
+        ProducerRecord<String, PhotoEnvelope> last = record.getValue();
+        assertEquals(PHOTOS, last.value());
+        assertEquals("42", last.key());
+        return PhotoFailure.from(last.headers());
+    }
+}
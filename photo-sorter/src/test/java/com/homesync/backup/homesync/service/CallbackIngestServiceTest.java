@@ -0,0 +1,109 @@
+package com.homesync.backup.homesync.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homesync.backup.homesync.dto.PhotoProcessedCallback;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.PhotoPersonRow;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.PhotoResultRow;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics;
+import com.homesync.backup.homesync.service.progress.IngestProgressService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CallbackIngestServiceTest {
+
+    private final CallbackJdbcRepository callbackJdbc = mock(CallbackJdbcRepository.class);
+    private final IngestProgressService progress = mock(IngestProgressService.class);
+    private final CallbackIngestService service = new CallbackIngestService(callbackJdbc,
+            mock(ApplicationEventPublisher.class), progress, new PipelineMetrics(new SimpleMeterRegistry()),
+            mock(PlatformTransactionManager.class), new ObjectMapper(), 2, 100, 50, 2, 1, 10);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLinksSuggestedPersonsAndSkipsRedeliveries() {
+        String vector = Base64.getEncoder().encodeToString(new byte[]{1, 2, 3, 4});
+        PhotoProcessedCallback first = callback(10L, "cb-1", new PhotoProcessedCallback.Detection(null, vector, 0.9, 7L, 0.8));
+        PhotoProcessedCallback again = callback(10L, "cb-1", new PhotoProcessedCallback.Detection(null, vector, 0.9, 7L, 0.8));
+        PhotoProcessedCallback old = callback(11L, "cb-0", new PhotoProcessedCallback.Detection(null, vector, 0.9, null, null));
+
+        when(callbackJdbc.findReceipts(anyCollection())).thenReturn(Set.of("cb:cb-0"));
+        when(callbackJdbc.findExistingPersons(anyCollection())).thenReturn(Set.of(7L));
+        when(callbackJdbc.insertPersons(anyList())).thenReturn(List.of());
+        when(callbackJdbc.insertEmbeddings(anyList())).thenReturn(List.of(100L));
+
+        service.apply(List.of(service.toPending(first), service.toPending(again), service.toPending(old)));
+
+        ArgumentCaptor<Map<String, Long>> receipts = ArgumentCaptor.forClass(Map.class);
+        verify(callbackJdbc).insertReceipts(receipts.capture());
+        assertEquals(Map.of("cb:cb-1", 10L), receipts.getValue());
+        verify(callbackJdbc).insertPhotoPersons(List.of(new PhotoPersonRow(10L, 7L)));
+        verify(callbackJdbc).updatePhotoResults(List.of(new PhotoResultRow(10L, "PROCESSED", "[7]")));
+    }
+
+    @Test
+    public void testAllRedeliveredWritesNothing() {
+        when(callbackJdbc.findReceipts(anyCollection())).thenReturn(Set.of("cb:cb-1"));
+
+        service.apply(List.of(service.toPending(callback(10L, "cb-1"))));
+
+        verify(callbackJdbc, never()).insertReceipts(any());
+        verify(callbackJdbc, never()).updatePhotoResults(any());
+    }
+
+    @Test
+    public void testReceiptKeyFallsBackToModelVersion() {
+        PhotoProcessedCallback callback = callback(5L, null);
+        callback.setMeta(Map.of("model_version", "insightface-v2"));
+        assertEquals("photo:5:insightface-v2", CallbackIngestService.receiptKey(callback));
+    }
+
+    @Test
+    public void testMarksPhotoFailedOnceRetriesRunOut() throws InterruptedException {
+        when(callbackJdbc.findReceipts(anyCollection())).thenThrow(new IllegalStateException("deadlock"));
+        service.start();
+        try {
+            service.enqueue(callback(10L, "cb-1"));
+
+            verify(progress, timeout(5_000)).processedPhotos(List.of(10L));
+            verify(callbackJdbc, times(3)).findReceipts(anyCollection());
+            verify(callbackJdbc).updatePhotoResults(List.of(new PhotoResultRow(10L, "FAILED", null)));
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void testRejectsMissingPhotoId() {
+        assertThrows(IllegalArgumentException.class, () -> service.enqueue(callback(null, "x")));
+    }
+
+    private static PhotoProcessedCallback callback(Long photoId, String callbackId,
+                                                   PhotoProcessedCallback.Detection... detections) {
+        PhotoProcessedCallback callback = new PhotoProcessedCallback();
+        callback.setPhotoId(photoId);
+        callback.setCallbackId(callbackId);
+        callback.setStatus("PROCESSED");
+        callback.setDetections(List.of(detections));
+        return callback;
+    }
+}
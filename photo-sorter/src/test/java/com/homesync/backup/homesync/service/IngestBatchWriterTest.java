@@ -0,0 +1,129 @@
+package com.homesync.backup.homesync.service;
+
+import com.homesync.backup.homesync.event.PhotoPersonsLinkedEvent;
+import com.homesync.backup.homesync.event.PhotosUnlinkedEvent;
+import com.homesync.backup.homesync.model.IngestBatch;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository.PhotoPersonRow;
+import com.homesync.backup.homesync.repository.DedupJdbcRepository;
+import com.homesync.backup.homesync.repository.DedupJdbcRepository.OwnedHash;
+import com.homesync.backup.homesync.repository.IngestBatchRepository;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository.PhotoState;
+import com.homesync.backup.homesync.service.dedup.ContentHasher;
+import com.homesync.backup.homesync.service.dedup.DedupService;
+import com.homesync.backup.homesync.service.index.PhotoPathIndexService;
+import com.homesync.backup.homesync.service.scan.DirectoryIdCache;
+import com.homesync.backup.homesync.service.scan.ScannedFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IngestBatchWriterTest {
+
+    private static final long MODIFIED = 1_700_000_000_000L;
+
+    private final PhotoJdbcRepository photoJdbc = mock(PhotoJdbcRepository.class);
+    private final IngestJdbcRepository ingestJdbc = mock(IngestJdbcRepository.class);
+    private final IngestBatchRepository batchRepository = mock(IngestBatchRepository.class);
+    private final PhotoPathIndexService pathIndex = mock(PhotoPathIndexService.class);
+    private final DedupJdbcRepository dedupJdbc = mock(DedupJdbcRepository.class);
+    private final DedupService dedup = new DedupService(mock(ContentHasher.class), dedupJdbc,
+            mock(CallbackJdbcRepository.class), ingestJdbc, mock(ApplicationEventPublisher.class),
+            mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), true);
+    private final CallbackJdbcRepository callbackJdbc = mock(CallbackJdbcRepository.class);
+    private final ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+    private final IngestBatchWriter writer = new IngestBatchWriter(photoJdbc, ingestJdbc, batchRepository, pathIndex,
+            mock(DirectoryIdCache.class), dedup, callbackJdbc, events, false);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReadsHeadersOfNewFilesOnly() throws Exception {
+        IngestBatchWriter reading = new IngestBatchWriter(photoJdbc, ingestJdbc, batchRepository, pathIndex,
+                mock(DirectoryIdCache.class), dedup, callbackJdbc, events, true);
+        ScannedFile known = png("known.png", 40, 30);
+        ScannedFile fresh = png("new.png", 64, 48);
+        when(pathIndex.findIds(anyCollection())).thenReturn(Map.of(known.path(), 1L));
+        when(photoJdbc.findIdsByPaths(anyCollection())).thenReturn(Map.of(fresh.path(), 2L));
+        when(batchRepository.save(any())).thenReturn(IngestBatch.builder().batchId(7L).build());
+
+        reading.writeChunk("job", 0, List.of(known, fresh));
+
+        ArgumentCaptor<List<ScannedFile>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(photoJdbc).insertIgnore(inserted.capture(), anyMap());
+        assertEquals(List.of(new ScannedFile(fresh.path(), "new.png", fresh.size(), fresh.modifiedMillis(), 64, 48, 0)),
+                inserted.getValue());
+    }
+
+    @Test
+    public void testRescanOfModifiedCanonicalPhotosReleasesTheirHashes() {
+        // photo 1 owns a hash that photo 3 duplicates, photo 2 owns one nobody else has
+        List<ScannedFile> files = List.of(new ScannedFile("/lib/a.jpg", "a.jpg", 200, MODIFIED),
+                new ScannedFile("/lib/b.jpg", "b.jpg", 300, MODIFIED));
+        when(pathIndex.mayExist(anyCollection())).thenReturn(List.of("/lib/a.jpg", "/lib/b.jpg"));
+        when(photoJdbc.findStatesByPaths(anyCollection())).thenReturn(Map.of(
+                "/lib/a.jpg", new PhotoState(1L, 100L, MODIFIED - 60_000, false),
+                "/lib/b.jpg", new PhotoState(2L, 100L, MODIFIED - 60_000, false)));
+        OwnedHash shared = new OwnedHash(1L, "aa", 3L);
+        OwnedHash unique = new OwnedHash(2L, "bb", null);
+        when(dedupJdbc.findOwnedHashes(Set.of(1L, 2L))).thenReturn(List.of(shared, unique));
+        when(batchRepository.save(any())).thenReturn(IngestBatch.builder().batchId(7L).build());
+
+        IngestBatchWriter.WrittenBatch batch = writer.writeChunk("job", 0, files, true);
+
+        assertEquals(Map.of(1L, "/lib/a.jpg", 2L, "/lib/b.jpg"), batch.photos());
+        InOrder order = inOrder(dedupJdbc, photoJdbc);
+        order.verify(dedupJdbc).reassignCanonical(shared);
+        order.verify(dedupJdbc).dropCanonical(List.of(unique));
+        order.verify(photoJdbc).refreshChanged(Map.of(1L, files.get(0), 2L, files.get(1)));
+        verify(ingestJdbc).insertMapRows(7L, "job", Set.of(1L, 2L));
+        verify(callbackJdbc).deletePhotoPersons(Set.of(1L, 2L));
+        verify(events).publishEvent(new PhotosUnlinkedEvent(List.of(1L, 2L)));
+    }
+
+    @Test
+    public void testReappearedPhotosAreLinkedAgain() {
+        List<ScannedFile> files = List.of(new ScannedFile("/lib/a.jpg", "a.jpg", 200, MODIFIED));
+        when(pathIndex.mayExist(anyCollection())).thenReturn(List.of("/lib/a.jpg"));
+        when(photoJdbc.findStatesByPaths(anyCollection())).thenReturn(Map.of(
+                "/lib/a.jpg", new PhotoState(1L, 200L, MODIFIED, true)));
+        when(callbackJdbc.findPhotoPersons(List.of(1L))).thenReturn(List.of(new PhotoPersonRow(1L, 5L)));
+
+        assertNull(writer.writeChunk("job", 0, files, true));
+
+        verify(photoJdbc).clearDeleted(List.of(1L));
+        verify(events).publishEvent(new PhotoPersonsLinkedEvent(List.of(new PhotoPersonsLinkedEvent.Link(1L, 5L))));
+    }
+
+    private ScannedFile png(String name, int width, int height) throws Exception {
+        Path file = dir.resolve(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        return new ScannedFile(file.toString(), name, Files.size(file), MODIFIED);
+    }
+}
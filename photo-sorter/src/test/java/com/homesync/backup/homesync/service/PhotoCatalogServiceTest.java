@@ -0,0 +1,85 @@
+package com.homesync.backup.homesync.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.homesync.backup.homesync.dto.PhotoPage;
+import com.homesync.backup.homesync.dto.PhotoSummary;
+import com.homesync.backup.homesync.model.enums.PhotoStatus;
+import com.homesync.backup.homesync.repository.PhotoCatalogJdbcRepository;
+import com.homesync.backup.homesync.repository.PhotoCatalogJdbcRepository.Filter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PhotoCatalogServiceTest {
+
+    private static final Filter ALL = new Filter(null, null, null, null);
+
+    private final PhotoCatalogJdbcRepository catalog = mock(PhotoCatalogJdbcRepository.class);
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final PhotoCatalogService service = new PhotoCatalogService(catalog, mapper, 50);
+
+    @Test
+    public void testPageAsksForOneExtraRowToFindTheNextCursor() {
+        when(catalog.page(ALL, 10L, false, 4)).thenReturn(rows(11, 14));
+        when(catalog.page(ALL, 13L, false, 4)).thenReturn(rows(14, 14));
+
+        PhotoPage first = service.page(ALL, 10L, false, 3);
+        assertEquals(List.of(11L, 12L, 13L), first.getItems().stream().map(PhotoSummary::getId).toList());
+        assertEquals(13L, first.getNextCursor());
+
+        PhotoPage last = service.page(ALL, 13L, false, 3);
+        assertEquals(1, last.getItems().size());
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    public void testPageSizeIsClamped() {
+        when(catalog.page(eq(ALL), eq(null), eq(true), eq(51))).thenReturn(List.of());
+
+        assertEquals(0, service.page(ALL, null, true, 10_000).getItems().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExportWritesOneObjectPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<PhotoSummary> sink = invocation.getArgument(1);
+            rows(1, 2).forEach(sink);
+            return null;
+        }).when(catalog).stream(eq(ALL), any(Consumer.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        service.export(ALL, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(3, lines.length);
+        assertEquals("", lines[2]);
+        assertEquals(1L, mapper.readTree(lines[0]).get("id").asLong());
+        assertEquals("[7,8]", mapper.readTree(lines[1]).get("personIds").toString());
+        assertEquals("2024-05-01T10:00:00", mapper.readTree(lines[1]).get("capturedAt").asText());
+    }
+
+    private static List<PhotoSummary> rows(long from, long to) {
+        List<PhotoSummary> rows = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            rows.add(new PhotoSummary(id, "/p/" + id + ".jpg", id + ".jpg", 10L, 4, 3,
+                    LocalDateTime.of(2024, 5, 1, 10, 0), null, PhotoStatus.PROCESSED, "[7,8]"));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,93 @@
+package com.homesync.backup.homesync.service.cluster;
+
+import com.homesync.backup.homesync.service.index.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FaceClustererTest {
+
+    private final FaceClusterer clusterer = new FaceClusterer(0.5, 3, 2);
+
+    @Test
+    public void testDenseFacesBecomeANewPersonAndNoiseStaysUnassigned() {
+        clusterer.add(10, 1, matches(10, 11, 12));
+        clusterer.add(11, 2, matches(11, 10, 12));
+        clusterer.add(12, 3, matches(12, 10, 11, 13));
+        clusterer.add(13, 4, matches(13, 12));
+        clusterer.add(14, 5, List.of(new EmbeddingMatch(14, null, 1f), new EmbeddingMatch(10, null, 0.3f)));
+
+        FaceClusterer.Plan plan = clusterer.plan();
+
+        assertEquals(1, plan.newPersons().size());
+        FaceClusterer.NewPerson person = plan.newPersons().get(0);
+        assertEquals(List.of(10L, 11L, 12L, 13L), embeddingIds(person.members()));
+        // 12 has the most edges inside the cluster
+        assertEquals(12, person.representativeEmbeddingId());
+        assertEquals(1, plan.unassigned());
+        assertTrue(plan.assigned().isEmpty());
+    }
+
+    @Test
+    public void testFacesNearAnExistingPersonJoinIt() {
+        clusterer.add(20, 1, matches(20, 5));
+        clusterer.add(21, 2, matches(21, 5, 6));
+        assertEquals(Set.of(5L, 6L), clusterer.unresolved());
+        clusterer.resolve(Map.of(5L, new FaceClusterer.Owner(100L, 90), 6L, new FaceClusterer.Owner(100L, 91)));
+
+        FaceClusterer.Plan plan = clusterer.plan();
+
+        assertEquals(List.of(20L, 21L), embeddingIds(plan.assigned().get(100L)));
+        assertTrue(plan.newPersons().isEmpty());
+        assertTrue(plan.merges().isEmpty());
+    }
+
+    @Test
+    public void testClusterBridgingTwoPersonsProposesAMergeAndAbsorbsOlderFaces() {
+        clusterer.add(30, 1, matches(30, 31, 5, 7));
+        clusterer.add(31, 2, matches(31, 30, 6, 8, 9));
+        clusterer.resolve(Map.of(
+                5L, new FaceClusterer.Owner(100L, 90),
+                6L, new FaceClusterer.Owner(100L, 91),
+                7L, new FaceClusterer.Owner(200L, 92),
+                8L, new FaceClusterer.Owner(200L, 93),
+                9L, new FaceClusterer.Owner(null, 94)));
+
+        FaceClusterer.Plan plan = clusterer.plan();
+
+        assertEquals(1, plan.assigned().size());
+        Long winner = plan.assigned().keySet().iterator().next();
+        assertEquals(List.of(30L, 31L, 9L), embeddingIds(plan.assigned().get(winner)));
+        assertEquals(1, plan.merges().size());
+        FaceClusterer.Merge merge = plan.merges().get(0);
+        assertEquals(Set.of(100L, 200L), Set.of(merge.person(), merge.other()));
+        assertEquals(winner, merge.person());
+    }
+
+    @Test
+    public void testRejectsFacesOutOfOrder() {
+        clusterer.add(5, 1, List.of());
+        assertThrows(IllegalArgumentException.class, () -> clusterer.add(4, 1, List.of()));
+    }
+
+    /** The face itself followed by neighbours at similarity 0.9. */
+    private static List<EmbeddingMatch> matches(long self, long... neighbours) {
+        List<EmbeddingMatch> matches = new ArrayList<>();
+        matches.add(new EmbeddingMatch(self, null, 1f));
+        for (long neighbour : neighbours) {
+            matches.add(new EmbeddingMatch(neighbour, null, 0.9f));
+        }
+        return matches;
+    }
+
+    private static List<Long> embeddingIds(List<FaceClusterer.Member> members) {
+        return members.stream().map(FaceClusterer.Member::embeddingId).toList();
+    }
+}
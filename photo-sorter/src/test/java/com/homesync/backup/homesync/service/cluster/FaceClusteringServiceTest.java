@@ -0,0 +1,110 @@
+package com.homesync.backup.homesync.service.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homesync.backup.homesync.event.EmbeddingsAssignedEvent;
+import com.homesync.backup.homesync.event.EmbeddingsStoredEvent;
+import com.homesync.backup.homesync.event.PersonsMergedEvent;
+import com.homesync.backup.homesync.model.enums.JobStatus;
+import com.homesync.backup.homesync.repository.CallbackJdbcRepository;
+import com.homesync.backup.homesync.repository.ClusteringJdbcRepository;
+import com.homesync.backup.homesync.repository.ClusteringJdbcRepository.EmbeddingOwner;
+import com.homesync.backup.homesync.repository.ClusteringJdbcRepository.Face;
+import com.homesync.backup.homesync.repository.ClusteringJdbcRepository.JobWatermark;
+import com.homesync.backup.homesync.service.index.EmbeddingIndexService;
+import com.homesync.backup.homesync.service.index.EmbeddingMatch;
+import com.homesync.backup.homesync.service.index.EmbeddingVectors;
+import com.homesync.backup.homesync.service.index.HnswIndexService;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FaceClusteringServiceTest {
+
+    @Test
+    public void testSearchReturnsThePersonsClusteringCommitted() throws Exception {
+        EmbeddingIndexService exactIndex = loadedEmptyIndex();
+        // faces 1-3 belong to person 10, 4-6 to person 11, 7-9 are new; all of them look alike
+        List<EmbeddingsStoredEvent.StoredEmbedding> stored = new ArrayList<>();
+        List<Face> unassigned = new ArrayList<>();
+        Map<Long, EmbeddingOwner> owners = new HashMap<>();
+        for (long id = 1; id <= 9; id++) {
+            Long person = id <= 3 ? Long.valueOf(10) : id <= 6 ? Long.valueOf(11) : null;
+            byte[] vector = EmbeddingVectors.encode(new float[]{1, 0.01f * id, 0.02f * (id % 3)});
+            stored.add(new EmbeddingsStoredEvent.StoredEmbedding(id, person, 100 + id, vector));
+            if (person == null) {
+                unassigned.add(new Face(id, 100 + id, vector));
+            } else {
+                owners.put(id, new EmbeddingOwner(person, 100 + id));
+            }
+        }
+        exactIndex.onEmbeddingsStored(new EmbeddingsStoredEvent(stored));
+
+        ClusteringJdbcRepository clusteringJdbc = mock(ClusteringJdbcRepository.class);
+        when(clusteringJdbc.findWatermark("job-1")).thenReturn(Optional.of(new JobWatermark(JobStatus.PUBLISHED, 6)));
+        when(clusteringJdbc.maxEmbeddingId()).thenReturn(9L);
+        when(clusteringJdbc.findUnassigned("job-1", 6, 9, 100)).thenReturn(unassigned);
+        when(clusteringJdbc.findOwners(any())).thenReturn(owners);
+        Map<Long, String> unnamed = new HashMap<>();
+        unnamed.put(10L, null);
+        unnamed.put(11L, null);
+        when(clusteringJdbc.findDisplayNames(any())).thenReturn(unnamed);
+        HnswIndexService hnswIndex = mock(HnswIndexService.class);
+        // listeners run once the clustering transaction has committed
+        ApplicationEventPublisher events = event -> {
+            if (event instanceof PersonsMergedEvent merged) {
+                exactIndex.onPersonsMerged(merged);
+            } else if (event instanceof EmbeddingsAssignedEvent assigned) {
+                exactIndex.onEmbeddingsAssigned(assigned);
+            }
+        };
+        FaceClusteringService service = new FaceClusteringService(clusteringJdbc, mock(CallbackJdbcRepository.class),
+                exactIndex, hnswIndex, events, mock(PlatformTransactionManager.class), new ObjectMapper(),
+                true, 0.5, 3, 16, 3, 100, 1);
+
+        ClusteringResult result = service.cluster("job-1");
+
+        assertEquals(3, result.assignedFaces());
+        assertEquals(1, result.mergedPersons());
+        verify(clusteringJdbc).mergePersons(11, 10);
+        List<EmbeddingMatch> matches = exactIndex.search(new float[]{1, 0, 0}, 9);
+        assertEquals(9, matches.size());
+        assertTrue(matches.stream().allMatch(match -> Long.valueOf(10).equals(match.personId())), matches::toString);
+        service.close();
+        exactIndex.close();
+    }
+
+    private static EmbeddingIndexService loadedEmptyIndex() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(mock(ResultSet.class));
+        EmbeddingIndexService index = new EmbeddingIndexService(dataSource, 1, 16);
+        index.load();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!index.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(index.isReady());
+        return index;
+    }
+}
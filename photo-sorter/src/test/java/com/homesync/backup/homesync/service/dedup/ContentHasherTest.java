@@ -0,0 +1,42 @@
+package com.homesync.backup.homesync.service.dedup;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ContentHasherTest {
+
+    @TempDir
+    Path dir;
+
+    // tiny buffer and threshold so both the buffered and the mapped path run on small files
+    private final ContentHasher hasher = new ContentHasher(2, 4096, 64 * 1024);
+
+    @AfterEach
+    public void tearDown() {
+        hasher.shutdown();
+    }
+
+    @Test
+    public void testBufferedAndMappedReadsMatchSha256() throws Exception {
+        Random random = new Random(3);
+        for (int size : new int[]{0, 1, 4096, 10_000, 64 * 1024 + 1, 300_000}) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            Path file = Files.write(dir.resolve("f" + size + ".jpg"), content);
+
+            ContentHasher.Hashed hashed = hasher.hashAsync(file).join();
+
+            assertEquals(size, hashed.bytes());
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), hashed.hash());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.homesync.backup.homesync.service.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class EmbeddingIndexTest {
+
+    private static final int DIM = 64;
+
+    @Test
+    public void testTopKMatchesBruteForce() {
+        assertTopKMatchesBruteForce(new EmbeddingIndex(VectorKernel.best(), 4, 1024), 40_000);
+    }
+
+    @Test
+    public void testRowsSpanManyBlocks() {
+        // 64 rows per block, the first block growing from 16 rows
+        assertTopKMatchesBruteForce(new EmbeddingIndex(VectorKernel.best(), 4, 16, DIM * 100), 40_000);
+    }
+
+    @Test
+    public void testPersonTagsAndDimensionCheck() {
+        EmbeddingIndex index = new EmbeddingIndex(new ScalarVectorKernel(), 1, 16);
+        index.add(1, null, new float[]{1, 0, 0});
+        index.add(2, 9L, new float[]{0, 1, 0});
+
+        assertFalse(index.add(3, 1L, new float[]{1, 0}));
+        List<EmbeddingMatch> matches = index.search(new float[]{0, 2, 0}, 5);
+        assertEquals(2, matches.size());
+        assertEquals(9L, matches.get(0).personId());
+        assertNull(matches.get(1).personId());
+        index.close();
+    }
+
+    @Test
+    public void testRowsAreAddedOncePerIdInAnyOrder() {
+        EmbeddingIndex index = new EmbeddingIndex(new ScalarVectorKernel(), 1, 16);
+        for (int id = 10; id < 100; id++) {
+            index.add(id, null, new float[]{1, 0, 0});
+        }
+        // committed late, below ids already loaded
+        index.add(3, 7L, new float[]{0, 1, 0});
+        index.add(3, 7L, new float[]{0, 1, 0});
+        index.add(50, 8L, new float[]{0, 0, 1});
+
+        assertEquals(91, index.size());
+        List<EmbeddingMatch> matches = index.search(new float[]{0, 1, 0}, 2);
+        assertEquals(3L, matches.get(0).embeddingId());
+        assertEquals(7L, matches.get(0).personId());
+        assertFalse(index.search(new float[]{0, 0, 1}, 100).stream().anyMatch(m -> Long.valueOf(8).equals(m.personId())));
+        index.close();
+    }
+
+    @Test
+    public void testKernelsAgree() {
+        Random random = new Random(7);
+        float[] a = randomVector(random);
+        float[] b = randomVector(random);
+        assertEquals(new ScalarVectorKernel().dot(a, b, DIM - 3), VectorKernel.best().dot(a, b, DIM - 3), 1e-4);
+    }
+
+    private static void assertTopKMatchesBruteForce(EmbeddingIndex index, int rows) {
+        Random random = new Random(42);
+        float[][] data = new float[rows][];
+        for (int i = 0; i < rows; i++) {
+            data[i] = randomVector(random);
+            index.add(i, i % 7 == 0 ? null : (long) (i % 100), data[i].clone());
+        }
+        float[] query = randomVector(random);
+
+        List<EmbeddingMatch> matches = index.search(query, 10);
+
+        float[] q = EmbeddingVectors.normalize(query.clone());
+        List<Integer> expected = IntStream.range(0, rows).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> cosine(q, data[i])).reversed())
+                .limit(10).toList();
+        assertEquals(expected, matches.stream().map(m -> (int) m.embeddingId()).toList());
+        assertEquals(cosine(q, data[expected.get(0)]), matches.get(0).score(), 1e-4);
+        index.close();
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] v = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+
+    private static double cosine(float[] unitQuery, float[] v) {
+        double dot = 0, norm = 0;
+        for (int i = 0; i < v.length; i++) {
+            dot += unitQuery[i] * v[i];
+            norm += v[i] * v[i];
+        }
+        return dot / Math.sqrt(norm);
+    }
+}
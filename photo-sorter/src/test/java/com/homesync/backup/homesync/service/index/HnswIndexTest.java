@@ -0,0 +1,140 @@
+package com.homesync.backup.homesync.service.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HnswIndexTest {
+
+    private static final int DIM = 32;
+    private static final int ROWS = 20_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRecallAgainstExactAndReopen() throws Exception {
+        Random random = new Random(11);
+        float[][] data = new float[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            data[i] = randomVector(random);
+        }
+        EmbeddingIndex exact = new EmbeddingIndex(VectorKernel.best(), 2, ROWS);
+        HnswIndex hnsw = HnswIndex.open(dir, DIM, 16, 200, VectorKernel.best());
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < ROWS; i++) {
+            int row = i;
+            exact.add(row, null, data[row].clone());
+            pool.execute(() -> hnsw.add(row, (long) (row % 50), data[row].clone()));
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES));
+        assertEquals(ROWS, hnsw.size());
+
+        float[][] queries = new float[100][];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = randomVector(random);
+        }
+        assertTrue(recall(exact, hnsw, queries, 128) >= 0.9);
+
+        List<EmbeddingMatch> before = hnsw.search(queries[0], 10, 64);
+        hnsw.checkpoint(ROWS - 1);
+        hnsw.close();
+
+        HnswIndex reopened = HnswIndex.open(dir, DIM, 16, 200, VectorKernel.best());
+        assertEquals(ROWS, reopened.size());
+        assertEquals(ROWS - 1, reopened.checkpoint());
+        assertEquals(before, reopened.search(queries[0], 10, 64));
+        assertArrayEquals(new long[]{ROWS - 2, ROWS - 1}, reopened.embeddingIdsAbove(ROWS - 3));
+        reopened.close();
+        exact.close();
+    }
+
+    @Test
+    public void testIdsAlreadyIndexedAreSkippedAcrossReopen() throws Exception {
+        HnswIndex index = HnswIndex.open(dir, 3, 4, 16, new ScalarVectorKernel());
+        index.add(5, null, new float[]{1, 0, 0});
+        index.add(9, null, new float[]{0, 1, 0});
+        index.add(5, null, new float[]{1, 0, 0});
+        index.close();
+
+        HnswIndex reopened = HnswIndex.open(dir, 3, 4, 16, new ScalarVectorKernel());
+        reopened.add(9, null, new float[]{0, 1, 0});
+        // committed late, below ids already indexed
+        reopened.add(2, 4L, new float[]{0, 0, 1});
+
+        assertEquals(3, reopened.size());
+        assertEquals(2L, reopened.search(new float[]{0, 0, 1}, 1, 10).get(0).embeddingId());
+        reopened.close();
+    }
+
+    @Test
+    public void testPersonChangesAreStoredAndKeptAcrossReopen() throws Exception {
+        HnswIndex index = HnswIndex.open(dir, 3, 4, 16, new ScalarVectorKernel());
+        index.add(1, 10L, new float[]{1, 0, 0});
+        index.add(2, 11L, new float[]{0, 1, 0});
+        index.add(3, null, new float[]{0, 0, 1});
+
+        index.mergePersons(Map.of(11L, 10L));
+        index.assignPersons(Map.of(3L, 10L, 1L, 12L, 99L, 12L));
+        index.checkpoint(3);
+        index.close();
+
+        HnswIndex reopened = HnswIndex.open(dir, 3, 4, 16, new ScalarVectorKernel());
+        List<EmbeddingMatch> matches = reopened.search(new float[]{1, 1, 1}, 3, 10);
+        assertEquals(3, matches.size());
+        assertTrue(matches.stream().allMatch(match -> Long.valueOf(10).equals(match.personId())));
+        reopened.close();
+    }
+
+    @Test
+    public void testPersonIdsAndDimensionCheck() throws Exception {
+        HnswIndex index = HnswIndex.open(dir, 3, 4, 16, new ScalarVectorKernel());
+        index.add(1, null, new float[]{1, 0, 0});
+        index.add(2, 9L, new float[]{0, 1, 0});
+
+        assertEquals(false, index.add(3, 1L, new float[]{1, 0}));
+        List<EmbeddingMatch> matches = index.search(new float[]{0, 2, 0}, 5, 10);
+        assertEquals(2, matches.size());
+        assertEquals(9L, matches.get(0).personId());
+        assertEquals(1.0f, matches.get(0).score(), 1e-6);
+        assertEquals(null, matches.get(1).personId());
+        index.close();
+        assertEquals(3, HnswIndex.storedDimension(dir));
+    }
+
+    private static double recall(EmbeddingIndex exact, HnswIndex hnsw, float[][] queries, int ef) {
+        int hits = 0;
+        for (float[] query : queries) {
+            Set<Long> truth = new HashSet<>();
+            exact.search(query, 10).forEach(m -> truth.add(m.embeddingId()));
+            for (EmbeddingMatch match : hnsw.search(query, 10, ef)) {
+                if (truth.contains(match.embeddingId())) {
+                    hits++;
+                }
+            }
+        }
+        return hits / (10.0 * queries.length);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] v = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+}
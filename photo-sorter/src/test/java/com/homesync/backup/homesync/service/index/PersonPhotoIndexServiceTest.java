@@ -0,0 +1,75 @@
+package com.homesync.backup.homesync.service.index;
+
+import com.homesync.backup.homesync.event.PhotoPersonsLinkedEvent;
+import com.homesync.backup.homesync.event.PhotosUnlinkedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PersonPhotoIndexServiceTest {
+
+    @Test
+    public void testRetriesFailedLoadAndReplaysUpdatesHeldBackMeanwhile() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet rows = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenThrow(new SQLException("down")).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(rows);
+        // person 5 has photos 1 and 2 in the snapshot
+        when(rows.getLong(1)).thenReturn(5L);
+        when(rows.getLong(2)).thenReturn(1L, 2L);
+        PersonPhotoIndexService index = new PersonPhotoIndexService(dataSource, new SimpleMeterRegistry(), 10, 10);
+        // committed while the snapshot is read: photo 2 goes away, photo 3 comes in
+        when(rows.next()).thenReturn(true).thenAnswer(inv -> {
+            index.onPhotosUnlinked(new PhotosUnlinkedEvent(List.of(2L)));
+            index.onPhotoPersonsLinked(new PhotoPersonsLinkedEvent(List.of(new PhotoPersonsLinkedEvent.Link(3L, 5L))));
+            return true;
+        }).thenReturn(false);
+
+        index.load();
+
+        awaitReady(index);
+        assertArrayEquals(new long[]{1, 3}, index.query(List.of(5L), null, null).ids(-1, 10));
+    }
+
+    @Test
+    public void testUnlinkedPhotosLeaveEveryPerson() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(mock(ResultSet.class));
+        PersonPhotoIndexService index = new PersonPhotoIndexService(dataSource, new SimpleMeterRegistry(), 10, 10);
+        index.load();
+        awaitReady(index);
+
+        index.onPhotoPersonsLinked(new PhotoPersonsLinkedEvent(List.of(new PhotoPersonsLinkedEvent.Link(1L, 5L),
+                new PhotoPersonsLinkedEvent.Link(2L, 5L), new PhotoPersonsLinkedEvent.Link(2L, 6L))));
+        index.onPhotosUnlinked(new PhotosUnlinkedEvent(List.of(2L)));
+
+        assertArrayEquals(new long[]{1}, index.query(null, List.of(5L, 6L), null).ids(-1, 10));
+    }
+
+    private static void awaitReady(PersonPhotoIndexService index) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!index.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(index.isReady());
+    }
+}
@@ -0,0 +1,79 @@
+package com.homesync.backup.homesync.service.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PhotoBitmapTest {
+
+    @Test
+    public void testSetOperationsMatchTreeSet() {
+        Random random = new Random(7);
+        // dense ranges turn into bitmap containers, sparse ones stay arrays
+        TreeSet<Long> a = randomSet(random, 30_000, 200_000);
+        TreeSet<Long> b = randomSet(random, 3_000, 200_000);
+        a.addAll(randomSet(random, 20_000, 30_000));
+        b.addAll(randomSet(random, 10_000, 30_000));
+        PhotoBitmap x = PhotoBitmap.of(toArray(a));
+        PhotoBitmap y = PhotoBitmap.of(toArray(b));
+
+        TreeSet<Long> and = new TreeSet<>(a);
+        and.retainAll(b);
+        TreeSet<Long> or = new TreeSet<>(a);
+        or.addAll(b);
+        TreeSet<Long> andNot = new TreeSet<>(a);
+        andNot.removeAll(b);
+
+        assertEquals(a.size(), x.cardinality());
+        assertArrayEquals(toArray(and), x.and(y).ids(-1, Integer.MAX_VALUE));
+        assertArrayEquals(toArray(or), x.or(y).ids(-1, Integer.MAX_VALUE));
+        assertArrayEquals(toArray(andNot), x.andNot(y).ids(-1, Integer.MAX_VALUE));
+        assertEquals(and.size(), y.and(x).cardinality());
+    }
+
+    @Test
+    public void testUpdatesLeaveOriginalUntouched() {
+        PhotoBitmap base = PhotoBitmap.of(1, 5, 70_000, 5);
+        PhotoBitmap added = base.with(2, 70_001, 1L << 40);
+        PhotoBitmap removed = added.without(5, 70_000, 99);
+
+        assertArrayEquals(new long[]{1, 5, 70_000}, base.ids(-1, 10));
+        assertArrayEquals(new long[]{1, 2, 5, 70_000, 70_001, 1L << 40}, added.ids(-1, 10));
+        assertArrayEquals(new long[]{1, 2, 70_001, 1L << 40}, removed.ids(-1, 10));
+        assertTrue(added.contains(1L << 40));
+        assertFalse(removed.contains(5));
+    }
+
+    @Test
+    public void testIdsPagesAfterCursor() {
+        long[] all = new long[10_000];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i * 7L;
+        }
+        PhotoBitmap bitmap = PhotoBitmap.of(all);
+
+        // the first 65536 ids form a bitmap container, the rest an array container
+        assertArrayEquals(new long[]{7, 14, 21}, bitmap.ids(0, 3));
+        assertArrayEquals(new long[]{65_541, 65_548}, bitmap.ids(65_535, 2));
+        assertArrayEquals(new long[]{69_993}, bitmap.ids(69_986, 5));
+        assertEquals(0, bitmap.ids(69_993, 5).length);
+    }
+
+    private static TreeSet<Long> randomSet(Random random, int count, int bound) {
+        TreeSet<Long> set = new TreeSet<>();
+        while (set.size() < count) {
+            set.add((long) random.nextInt(bound));
+        }
+        return set;
+    }
+
+    private static long[] toArray(TreeSet<Long> set) {
+        return set.stream().mapToLong(Long::longValue).toArray();
+    }
+}
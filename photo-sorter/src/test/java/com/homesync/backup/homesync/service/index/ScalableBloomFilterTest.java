@@ -0,0 +1,83 @@
+package com.homesync.backup.homesync.service.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ScalableBloomFilterTest {
+
+    @Test
+    public void testGrowsPastItsCapacityWithoutFalseNegatives() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 50_000; i++) {
+            filter.add(path(i));
+        }
+
+        assertTrue(filter.sliceCount() > 1);
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(filter.mightContain(path(i)), path(i));
+        }
+        int falsePositives = 0;
+        for (int i = 50_000; i < 150_000; i++) {
+            if (filter.mightContain(path(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 1_000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void testAddReportsRepeats() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+
+        assertTrue(filter.add("/photos/2024/a.jpg"));
+        assertFalse(filter.add("/photos/2024/a.jpg"));
+        assertEquals(1, filter.count());
+        assertFalse(filter.mightContain("/photos/2024/b.jpg"));
+    }
+
+    @Test
+    public void testConcurrentAddsAreAllVisible() throws Exception {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> adds = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t * 20_000;
+                adds.add(pool.submit(() -> {
+                    for (int i = offset; i < offset + 20_000; i++) {
+                        filter.add(path(i));
+                    }
+                }));
+            }
+            for (Future<?> add : adds) {
+                add.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int i = 0; i < 80_000; i++) {
+            assertTrue(filter.mightContain(path(i)), path(i));
+        }
+    }
+
+    @Test
+    public void testRejectsInvalidRates() {
+        assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(100, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ScalableBloomFilter(100, 1));
+    }
+
+    private static String path(int i) {
+        return "/mnt/photos/" + (i / 500) + "/IMG_" + i + ".jpg";
+    }
+}
@@ -0,0 +1,191 @@
+package com.homesync.backup.homesync.service.metadata;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ImageMetadataReaderTest {
+
+    private static final LocalDateTime TAKEN = LocalDateTime.of(2021, 7, 14, 18, 5, 42);
+
+    @TempDir
+    Path dir;
+
+    // a small window so the JPEG frame header needs a second read
+    private final ImageMetadataReader reader = new ImageMetadataReader(1024);
+
+    @Test
+    public void testJpegWithExifPreview() throws Exception {
+        byte[] plain = encode("jpg", 640, 480);
+        byte[] tiff = tiff(6);
+        // APP1 padded like an embedded preview, pushing SOF beyond the first window
+        ByteBuffer app1 = ByteBuffer.allocate(2 + 2 + 6 + tiff.length + 4000);
+        app1.putShort((short) 0xFFE1).putShort((short) (app1.capacity() - 2))
+                .put("Exif\0\0".getBytes(StandardCharsets.US_ASCII)).put(tiff);
+        byte[] jpeg = concat(new byte[]{(byte) 0xFF, (byte) 0xD8}, app1.array(), slice(plain, 2));
+
+        ImageMetadata metadata = reader.read(write("a.jpg", jpeg));
+
+        // orientation 6 turns the stored 640x480 frame upright
+        assertEquals(480, metadata.width());
+        assertEquals(640, metadata.height());
+        assertEquals(TAKEN, ImageMetadata.toCapturedAt(metadata.capturedSeconds()));
+    }
+
+    @Test
+    public void testPngDimensions() throws Exception {
+        ImageMetadata metadata = reader.read(write("b.png", encode("png", 123, 45)));
+
+        assertEquals(123, metadata.width());
+        assertEquals(45, metadata.height());
+        assertNull(ImageMetadata.toCapturedAt(metadata.capturedSeconds()));
+    }
+
+    @Test
+    public void testWebpLosslessAndExtended() throws Exception {
+        ByteBuffer vp8l = ByteBuffer.allocate(30).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        vp8l.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(22).put("WEBPVP8L".getBytes(StandardCharsets.US_ASCII))
+                .putInt(10).put((byte) 0x2F).putInt((799) | (599 << 14));
+        ImageMetadata lossless = reader.read(write("c.webp", vp8l.array()));
+        assertEquals(800, lossless.width());
+        assertEquals(600, lossless.height());
+
+        byte[] tiff = tiff(1);
+        ByteBuffer vp8x = ByteBuffer.allocate(12 + 18 + 8 + tiff.length).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        vp8x.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(vp8x.capacity() - 8)
+                .put("WEBPVP8X".getBytes(StandardCharsets.US_ASCII)).putInt(10)
+                .put((byte) 0x08).put(new byte[3]).put(new byte[]{(byte) 0x7F, 0x07, 0}).put(new byte[]{0x37, 0x04, 0})
+                .put("EXIF".getBytes(StandardCharsets.US_ASCII)).putInt(tiff.length).put(tiff);
+        ImageMetadata extended = reader.read(write("d.webp", vp8x.array()));
+        assertEquals(1920, extended.width());
+        assertEquals(1080, extended.height());
+        assertEquals(TAKEN, ImageMetadata.toCapturedAt(extended.capturedSeconds()));
+    }
+
+    @Test
+    public void testHeicPrimaryItemAndExifItem() throws Exception {
+        byte[] tiff = tiff(1);
+        byte[] ftyp = box("ftyp", "heic".getBytes(StandardCharsets.US_ASCII), new byte[4],
+                "mif1heic".getBytes(StandardCharsets.US_ASCII));
+        byte[] pitm = fullBox("pitm", 0, shorts(1));
+        byte[] iinf = fullBox("iinf", 0, shorts(2),
+                fullBox("infe", 2, shorts(1, 0), "hvc1".getBytes(StandardCharsets.US_ASCII)),
+                fullBox("infe", 2, shorts(2, 0), "Exif".getBytes(StandardCharsets.US_ASCII)));
+        // properties: 1 = thumbnail-sized ispe, 2 = primary ispe, 3 = irot 90
+        byte[] ipco = box("ipco", fullBox("ispe", 0, ints(320, 240)), fullBox("ispe", 0, ints(4032, 3024)),
+                box("irot", new byte[]{1}));
+        byte[] ipma = fullBox("ipma", 0, ints(1), shorts(1), new byte[]{2, (byte) 0x82, 3});
+        byte[] iprp = box("iprp", ipco, ipma);
+        // iloc v0, offset/length 4 bytes, no base offset; the offset is patched below
+        byte[] iloc = fullBox("iloc", 0, new byte[]{0x44, 0x00}, shorts(1), shorts(2, 0, 1), ints(0, 4 + tiff.length));
+        byte[] meta = fullBox("meta", 0, pitm, iinf, iloc, iprp);
+        byte[] mdat = box("mdat", ints(0), tiff);
+        byte[] file = concat(ftyp, meta, mdat);
+        int exifAt = ftyp.length + meta.length + 8;
+        int ilocOffsetField = ftyp.length + 12 + pitm.length + iinf.length + iloc.length - 8;
+        ByteBuffer.wrap(file).putInt(ilocOffsetField, exifAt);
+
+        ImageMetadata metadata = reader.read(write("e.heic", file));
+
+        assertEquals(3024, metadata.width());
+        assertEquals(4032, metadata.height());
+        assertEquals(TAKEN, ImageMetadata.toCapturedAt(metadata.capturedSeconds()));
+    }
+
+    @Test
+    public void testUnknownAndTruncatedFilesGiveZeros() throws Exception {
+        ImageMetadata text = reader.read(write("f.jpg", "not an image".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0, text.width());
+        ImageMetadata cut = reader.read(write("g.png", slice(encode("png", 10, 10), 0, 14)));
+        assertEquals(0, cut.width());
+        assertEquals(0, reader.read(dir.resolve("missing.jpg")).height());
+    }
+
+    @Test
+    public void testEpochDayMatchesJavaTime() {
+        for (LocalDate date = LocalDate.of(1899, 12, 25); date.getYear() < 2101; date = date.plusDays(13)) {
+            assertEquals(date.toEpochDay(),
+                    ImageMetadataReader.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()), date.toString());
+        }
+    }
+
+    /** Big-endian TIFF block with the given orientation and DateTimeOriginal {@link #TAKEN}. */
+    private static byte[] tiff(int orientation) {
+        ByteBuffer b = ByteBuffer.allocate(76);
+        b.put("MM".getBytes(StandardCharsets.US_ASCII)).putShort((short) 42).putInt(8);
+        b.putShort((short) 2);
+        b.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        b.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(38);
+        b.putInt(0);
+        b.putShort((short) 1);
+        b.putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(56);
+        b.putInt(0);
+        b.put("2021:07:14 18:05:42\0".getBytes(StandardCharsets.US_ASCII));
+        return b.array();
+    }
+
+    private static byte[] encode(String format, int width, int height) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] box(String type, byte[]... parts) {
+        byte[] body = concat(parts);
+        return concat(ints(8 + body.length), type.getBytes(StandardCharsets.US_ASCII), body);
+    }
+
+    private static byte[] fullBox(String type, int version, byte[]... parts) {
+        return box(type, concat(new byte[]{(byte) version, 0, 0, 0}, concat(parts)));
+    }
+
+    private static byte[] shorts(int... values) {
+        ByteBuffer b = ByteBuffer.allocate(values.length * 2);
+        for (int v : values) {
+            b.putShort((short) v);
+        }
+        return b.array();
+    }
+
+    private static byte[] ints(int... values) {
+        ByteBuffer b = ByteBuffer.allocate(values.length * 4);
+        for (int v : values) {
+            b.putInt(v);
+        }
+        return b.array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] slice(byte[] bytes, int from) {
+        return slice(bytes, from, bytes.length);
+    }
+
+    private static byte[] slice(byte[] bytes, int from, int to) {
+        byte[] out = new byte[to - from];
+        System.arraycopy(bytes, from, out, 0, out.length);
+        return out;
+    }
+
+    private Path write(String name, byte[] bytes) throws Exception {
+        return Files.write(dir.resolve(name), bytes);
+    }
+}
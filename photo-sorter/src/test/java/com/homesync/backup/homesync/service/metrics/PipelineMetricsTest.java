@@ -0,0 +1,57 @@
+package com.homesync.backup.homesync.service.metrics;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics.Stage;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void testStagesAreTaggedTimersOfOneMeterName() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+
+        metrics.record(Stage.CALLBACK_PERSIST, System.nanoTime());
+        PipelineMetrics.timer(registry, Stage.ML_CALL).record(Duration.ofMillis(5));
+
+        assertEquals(Stage.values().length, registry.find("pipeline.stage").timers().size());
+        assertEquals(1, registry.get("pipeline.stage").tag("stage", "callback_persist").timer().count());
+        assertSame(PipelineMetrics.timer(registry, Stage.ML_CALL),
+                registry.get("pipeline.stage").tag("stage", "ml_call").timer());
+    }
+
+    @Test
+    public void testPhotoLatencyIgnoresClockSkew() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+
+        metrics.photoProcessed(IngestPriority.BULK, Duration.ofSeconds(90));
+        metrics.photoProcessed(IngestPriority.BULK, Duration.ofSeconds(-1));
+
+        Timer bulk = registry.get("pipeline.photo.latency").tag("lane", "bulk").timer();
+        assertEquals(1, bulk.count());
+        assertEquals(90, bulk.totalTime(TimeUnit.SECONDS), 1e-9);
+        assertEquals(0, registry.get("pipeline.photo.latency").tag("lane", "interactive").timer().count());
+    }
+
+    @Test
+    public void testLaneStagesAlsoCountInTheOverallStage() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(registry);
+
+        metrics.record(Stage.CONSUME, IngestPriority.INTERACTIVE, System.nanoTime());
+        metrics.record(Stage.CONSUME, IngestPriority.BULK, System.nanoTime());
+
+        assertEquals(2, registry.get("pipeline.stage").tag("stage", "consume").timer().count());
+        assertEquals(1, registry.get("pipeline.lane.stage").tags("stage", "consume", "lane", "interactive").timer().count());
+        assertEquals(1, registry.get("pipeline.lane.stage").tags("stage", "consume", "lane", "bulk").timer().count());
+    }
+}
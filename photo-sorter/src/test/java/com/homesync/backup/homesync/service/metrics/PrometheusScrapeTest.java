@@ -0,0 +1,40 @@
+package com.homesync.backup.homesync.service.metrics;
+
+import com.homesync.backup.homesync.service.metrics.PipelineMetrics.Stage;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.prometheus.PrometheusMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusOutputFormat;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusScrapeEndpoint;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrometheusScrapeTest {
+
+    private final ApplicationContextRunner context = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(MetricsAutoConfiguration.class,
+                    CompositeMeterRegistryAutoConfiguration.class, PrometheusMetricsExportAutoConfiguration.class))
+            .withPropertyValues("management.endpoints.web.exposure.include=health,metrics,prometheus")
+            .withBean(PipelineMetrics.class);
+
+    @Test
+    public void testPipelineStagesAreScraped() {
+        context.run(ctx -> {
+            ctx.getBean(PipelineMetrics.class).record(Stage.SCAN, System.nanoTime());
+
+            WebEndpointResponse<byte[]> response = ctx.getBean(PrometheusScrapeEndpoint.class)
+                    .scrape(PrometheusOutputFormat.CONTENT_TYPE_004, null);
+
+            assertEquals(200, response.getStatus());
+            String body = new String(response.getBody(), StandardCharsets.UTF_8);
+            assertTrue(body.contains("pipeline_stage_seconds_count{stage=\"scan\"} 1"), body);
+        });
+    }
+}
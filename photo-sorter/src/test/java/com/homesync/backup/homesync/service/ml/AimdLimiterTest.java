@@ -0,0 +1,114 @@
+package com.homesync.backup.homesync.service.ml;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AimdLimiterTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    public void testGrowsWhileBusyAndFast() {
+        AimdLimiter limiter = new AimdLimiter(1, 4, 32, 0.7, 2.0, 4);
+        for (int round = 0; round < 200; round++) {
+            int limit = limiter.limit();
+            for (int i = 0; i < limit; i++) {
+                limiter.acquire(IngestPriority.BULK);
+            }
+            for (int i = 0; i < limit; i++) {
+                limiter.record(10 * MS, false);
+                limiter.release();
+            }
+        }
+        assertEquals(32, limiter.limit());
+    }
+
+    @Test
+    public void testDoesNotGrowWhenIdle() {
+        AimdLimiter limiter = new AimdLimiter(1, 4, 32, 0.7, 2.0, 4);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(IngestPriority.BULK);
+            limiter.record(10 * MS, false);
+            limiter.release();
+        }
+        assertEquals(4, limiter.limit());
+    }
+
+    @Test
+    public void testBacksOffOnOverloadAndSlowCalls() throws Exception {
+        AimdLimiter limiter = new AimdLimiter(1, 20, 32, 0.5, 2.0, 4);
+        // establish a 10 ms baseline
+        limiter.record(10 * MS, false);
+
+        Thread.sleep(15);
+        limiter.record(10 * MS, true);
+        assertEquals(10, limiter.limit());
+        // a second failure from the same round trip does not cut again
+        limiter.record(10 * MS, true);
+        assertEquals(10, limiter.limit());
+
+        Thread.sleep(15);
+        limiter.record(50 * MS, false);
+        assertEquals(5, limiter.limit());
+    }
+
+    @Test
+    public void testBlocksAtTheLimit() throws Exception {
+        AimdLimiter limiter = new AimdLimiter(1, 1, 1, 0.7, 2.0, 4);
+        limiter.acquire(IngestPriority.BULK);
+        assertTrue(limiter.saturated());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            limiter.acquire(IngestPriority.BULK);
+            acquired.countDown();
+        });
+        waiter.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        limiter.release();
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(1, limiter.inFlight());
+        waiter.join();
+    }
+
+    @Test
+    public void testInteractiveGetsItsWeightOfFreedSlots() throws Exception {
+        AimdLimiter limiter = new AimdLimiter(1, 1, 1, 0.7, 2.0, 2);
+        limiter.acquire(IngestPriority.BULK);
+
+        List<IngestPriority> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            for (IngestPriority lane : IngestPriority.values()) {
+                Thread t = new Thread(() -> {
+                    limiter.acquire(lane);
+                    order.add(lane);
+                    limiter.release();
+                });
+                threads.add(t);
+                t.start();
+            }
+        }
+        while (limiter.waiting(IngestPriority.INTERACTIVE) + limiter.waiting(IngestPriority.BULK) < 6) {
+            Thread.sleep(5);
+        }
+
+        limiter.release();
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        assertEquals(List.of(IngestPriority.INTERACTIVE, IngestPriority.INTERACTIVE, IngestPriority.BULK,
+                IngestPriority.INTERACTIVE, IngestPriority.BULK, IngestPriority.BULK), order);
+    }
+}
@@ -0,0 +1,112 @@
+package com.homesync.backup.homesync.service.ml;
+
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MlBatchDispatcherTest {
+
+    private StubMlServer server;
+    private MlBatchDispatcher dispatcher;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new StubMlServer();
+        dispatcher = new MlBatchDispatcher(MlServiceClientTest.client(server, 0, Duration.ofSeconds(5)), 64, 20, registry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dispatcher.close();
+        server.close();
+    }
+
+    @Test
+    public void testFullBatchesGoOutImmediatelyAndRemainderAfterLinger() throws Exception {
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 130; i++) {
+            results.add(dispatcher.submit("job", new PhotoRef((long) i, "/photos/" + i + ".jpg"), "cb", IngestPriority.BULK));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get();
+
+        List<Integer> sizes = server.batchSizes();
+        sizes.sort(null);
+        assertEquals(List.of(2, 64, 64), sizes);
+        assertEquals(3, registry.get("ml.dispatch.batch.size").summary().count());
+        assertEquals(130.0, registry.get("ml.dispatch.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    public void testJobsAreBatchedSeparately() throws Exception {
+        CompletableFuture<Void> a = dispatcher.submit("job-a", new PhotoRef(1L, "/a.jpg"), "cb", IngestPriority.BULK);
+        CompletableFuture<Void> b = dispatcher.submit("job-b", new PhotoRef(2L, "/b.jpg"), "cb", IngestPriority.BULK);
+        CompletableFuture.allOf(a, b).get();
+
+        assertEquals(List.of(1, 1), server.batchSizes());
+    }
+
+    @Test
+    public void testRejectedPhotoFailsOnlyItsOwnFuture() {
+        server.reject("/bad.jpg");
+        CompletableFuture<Void> good = dispatcher.submit("job", new PhotoRef(1L, "/good.jpg"), "cb", IngestPriority.BULK);
+        CompletableFuture<Void> bad = dispatcher.submit("job", new PhotoRef(2L, "/bad.jpg"), "cb", IngestPriority.BULK);
+
+        assertDoesNotThrow(() -> good.get());
+        ExecutionException e = assertThrows(ExecutionException.class, bad::get);
+        assertInstanceOf(MlServiceException.class, e.getCause());
+        assertEquals(List.of(2), server.batchSizes());
+    }
+
+    @Test
+    public void testLingeringInteractiveGroupIsNotStuckBehindSaturatedBulk() throws Exception {
+        MlServiceClient client = mock(MlServiceClient.class);
+        CountDownLatch bulkSlot = new CountDownLatch(1);
+        List<IngestPriority> sent = new CopyOnWriteArrayList<>();
+        when(client.processPhotos(anyString(), anyList(), anyString(), any())).thenAnswer(inv -> {
+            IngestPriority lane = inv.getArgument(3);
+            if (lane == IngestPriority.BULK) {
+                // as limiter.acquire does while the window is full of bulk calls
+                bulkSlot.await();
+            }
+            sent.add(lane);
+            return CompletableFuture.completedFuture(Set.of());
+        });
+        try (MlBatchDispatcher lingering = new MlBatchDispatcher(client, 64, 20, new SimpleMeterRegistry())) {
+            CompletableFuture<Void> bulk = lingering.submit("job-a", new PhotoRef(1L, "/a.jpg"), "cb",
+                    IngestPriority.BULK);
+            // the bulk group's linger flush is blocked by now
+            Thread.sleep(100);
+            CompletableFuture<Void> interactive = lingering.submit("job-b", new PhotoRef(2L, "/b.jpg"), "cb",
+                    IngestPriority.INTERACTIVE);
+
+            interactive.get(5, TimeUnit.SECONDS);
+            assertEquals(List.of(IngestPriority.INTERACTIVE), sent);
+            bulkSlot.countDown();
+            bulk.get(5, TimeUnit.SECONDS);
+            assertEquals(List.of(IngestPriority.INTERACTIVE, IngestPriority.BULK), sent);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.homesync.backup.homesync.service.ml;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.homesync.backup.homesync.model.enums.IngestPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MlServiceClientTest {
+
+    private StubMlServer server;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new StubMlServer();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testRetriesServerErrorsThenSucceeds() {
+        MlServiceClient client = client(3, Duration.ofSeconds(5));
+        server.respondWith(503, 500);
+
+        assertDoesNotThrow(() -> client.processPhoto("job", "/photos/a.jpg", null, IngestPriority.BULK).get());
+        assertEquals(3, server.requests());
+    }
+
+    @Test
+    public void testClientErrorIsNotRetried() {
+        MlServiceClient client = client(3, Duration.ofSeconds(5));
+        server.respondWith(400);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.processPhoto("job", "/photos/a.jpg", null, IngestPriority.BULK).get());
+        assertInstanceOf(MlServiceException.class, e.getCause());
+        assertEquals(1, server.requests());
+    }
+
+    @Test
+    public void testSlowCallsOpenTheCircuit() throws Exception {
+        MlServiceClient client = client(0, Duration.ofMillis(20));
+        server.setDelayMillis(50);
+        for (int i = 0; i < 10; i++) {
+            client.processPhoto("job", "/photos/" + i + ".jpg", null, IngestPriority.BULK).get();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, client.circuitState());
+
+        int before = server.requests();
+        assertThrows(ExecutionException.class, () -> client.processPhoto("job", "/photos/x.jpg", null, IngestPriority.BULK).get());
+        assertEquals(before, server.requests());
+    }
+
+    @Test
+    public void testLatencyUnderLoad() throws Exception {
+        MlServiceClient client = client(0, Duration.ofSeconds(5));
+        server.setDelayMillis(2);
+        int calls = 2000;
+        long[] latencies = new long[calls];
+        List<CompletableFuture<Void>> futures = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            int index = i;
+            long started = System.nanoTime();
+            futures.add(client.processPhoto("job", "/photos/" + i + ".jpg", null, IngestPriority.BULK)
+                    .whenComplete((r, e) -> latencies[index] = System.nanoTime() - started));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+
+        Arrays.sort(latencies);
+        assertEquals(calls, server.requests());
+        // loose bounds against the 2 ms stub: queueing must stay well below the 5 s request timeout
+        long p99Millis = latencies[calls * 99 / 100] / 1_000_000;
+        assertTrue(p99Millis < 2_000, "p99 latency " + p99Millis + " ms");
+    }
+
+    static MlServiceClient client(StubMlServer server, int maxRetries, Duration slowCall) {
+        MlClientSettings settings = new MlClientSettings(server.endpoint(),
+                server.batchEndpoint(),
+                Duration.ofSeconds(1),
+                Duration.ofSeconds(5),
+                16,
+                maxRetries,
+                Duration.ofMillis(5),
+                Duration.ofMillis(20),
+                10,
+                0.5,
+                slowCall,
+                Duration.ofMinutes(1),
+                1,
+                16,
+                0.7,
+                2.0,
+                4);
+        return new MlServiceClient(settings, new ObjectMapper());
+    }
+
+    private MlServiceClient client(int maxRetries, Duration slowCall) {
+        return client(server, maxRetries, slowCall);
+    }
+}
@@ -0,0 +1,108 @@
+package com.homesync.backup.homesync.service.ml;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the Python ML service. Answers POST /process-photo after a
+ * configurable delay; scripted status codes are returned first, then 200.
+ * POST /process-photos records each batch size and reports configured paths as rejected.
+ */
+public class StubMlServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(64);
+    private final Queue<Integer> scriptedStatuses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Queue<Integer> batchSizes = new ConcurrentLinkedQueue<>();
+    private final Set<String> rejected = ConcurrentHashMap.newKeySet();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private volatile long delayMillis;
+
+    public StubMlServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/process-photo", exchange -> {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            try {
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Integer status = scriptedStatuses.poll();
+            exchange.sendResponseHeaders(status != null ? status : 200, -1);
+            exchange.close();
+        });
+        server.createContext("/process-photos", exchange -> {
+            requests.incrementAndGet();
+            JsonNode body = mapper.readTree(exchange.getRequestBody());
+            batchSizes.add(body.path("photos").size());
+            List<String> rejectedInBatch = new ArrayList<>();
+            for (JsonNode photo : body.path("photos")) {
+                if (rejected.contains(photo.path("path").asText())) {
+                    rejectedInBatch.add(photo.path("path").asText());
+                }
+            }
+            byte[] response = mapper.writeValueAsBytes(Map.of("rejected", rejectedInBatch));
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/process-photo");
+    }
+
+    public URI batchEndpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/process-photos");
+    }
+
+    public void reject(String path) {
+        rejected.add(path);
+    }
+
+    public List<Integer> batchSizes() {
+        return new ArrayList<>(batchSizes);
+    }
+
+    public void respondWith(Integer... statuses) {
+        for (Integer status : statuses) {
+            scriptedStatuses.add(status);
+        }
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,63 @@
+package com.homesync.backup.homesync.service.scan;
+
+import com.homesync.backup.homesync.repository.DirectoryJdbcRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+public class DirectoryIdCacheTest {
+
+    private final DirectoryJdbcRepository directoryJdbc = mock(DirectoryJdbcRepository.class);
+    private final DirectoryIdCache cache = new DirectoryIdCache(directoryJdbc);
+
+    @AfterEach
+    public void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testOnlyMissingDirectoriesAreQueried() {
+        when(directoryJdbc.insertMissing(List.of("/photos/a/"))).thenReturn(Map.of("/photos/a/", 1L));
+        when(directoryJdbc.insertMissing(List.of("/photos/b/"))).thenReturn(Map.of("/photos/b/", 2L));
+
+        assertEquals(Map.of("/photos/a/", 1L), cache.resolve(List.of("/photos/a/", "/photos/a/")));
+        assertEquals(Map.of("/photos/a/", 1L, "/photos/b/", 2L), cache.resolve(List.of("/photos/a/", "/photos/b/")));
+
+        verify(directoryJdbc).insertMissing(List.of("/photos/a/"));
+        verify(directoryJdbc).insertMissing(List.of("/photos/b/"));
+        verifyNoMoreInteractions(directoryJdbc);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testIdsAreCachedOnlyOnceTheTransactionCommits() {
+        when(directoryJdbc.insertMissing(List.of("/photos/a/"))).thenReturn(Map.of("/photos/a/", 1L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        cache.resolve(List.of("/photos/a/"));
+        assertEquals(0, cache.size());
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDirectoryOfKeepsTheTrailingSeparator() {
+        assertEquals("/photos/2024/", DirectoryJdbcRepository.directoryOf("/photos/2024/IMG_1.jpg"));
+        assertEquals("", DirectoryJdbcRepository.directoryOf("IMG_1.jpg"));
+    }
+}
@@ -0,0 +1,145 @@
+package com.homesync.backup.homesync.service.scan;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectoryScannerTest {
+
+    @TempDir
+    Path root;
+
+    private final DirectoryScanner scanner = new DirectoryScanner(4, List.of("jpg", "jpeg", "png"), true);
+
+    @AfterEach
+    public void tearDown() {
+        scanner.shutdown();
+    }
+
+    @Test
+    public void testRecursiveScanFindsImagesOnly() throws IOException {
+        write(root.resolve("a.jpg"), 10);
+        write(root.resolve("notes.txt"), 3);
+        for (int d = 0; d < 20; d++) {
+            Path dir = Files.createDirectories(root.resolve("d" + d).resolve("nested"));
+            write(dir.resolve("IMG_" + d + ".JPEG"), d + 1);
+            write(dir.resolve("x" + d + ".png"), 1);
+        }
+
+        Set<ScannedFile> found = ConcurrentHashMap.newKeySet();
+        scanner.scan(root, true, found::addAll);
+
+        assertEquals(41, found.size());
+        ScannedFile first = found.stream().filter(f -> f.filename().equals("a.jpg")).findFirst().orElseThrow();
+        assertEquals(10, first.size());
+        assertEquals(root.resolve("a.jpg").toString(), first.path());
+    }
+
+    @Test
+    public void testNonRecursiveScanStaysAtTopLevel() throws IOException {
+        write(root.resolve("top.png"), 1);
+        write(Files.createDirectories(root.resolve("sub")).resolve("deep.png"), 1);
+
+        Set<ScannedFile> found = ConcurrentHashMap.newKeySet();
+        scanner.scan(root, false, found::addAll);
+
+        assertEquals(Set.of("top.png"), found.stream().map(ScannedFile::filename).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testIncrementalScanReportsOnlyDifferences() throws IOException {
+        Path kept = Files.createDirectories(root.resolve("kept"));
+        Path edited = Files.createDirectories(root.resolve("edited"));
+        Path gone = Files.createDirectories(root.resolve("gone").resolve("deeper"));
+        write(kept.resolve("a.jpg"), 1);
+        write(edited.resolve("b.jpg"), 1);
+        write(gone.resolve("c.jpg"), 1);
+        backdate(root);
+
+        Recorder first = new Recorder();
+        assertTrue(scanner.scanIncremental(root, true, Map.of(), first).isEmpty());
+        assertEquals(3, first.changed.size());
+        assertEquals(5, first.manifests.size());
+
+        Map<String, DirectoryManifest> previous = new ConcurrentHashMap<>();
+        first.manifests.forEach(m -> previous.put(m.dir(), m));
+        write(edited.resolve("b.jpg"), 5);
+        write(kept.resolve("new.png"), 2);
+        deleteTree(root.resolve("gone"));
+
+        Recorder second = new Recorder();
+        List<DirectoryManifest> removed = scanner.scanIncremental(root, true, previous, second);
+
+        assertEquals(Set.of("b.jpg", "new.png"), second.changed.stream().map(ScannedFile::filename).collect(Collectors.toSet()));
+        assertEquals(Set.of(gone.resolve("c.jpg").toString()), second.deleted);
+        assertEquals(Set.of(gone.toString(), gone.getParent().toString()),
+                removed.stream().map(DirectoryManifest::dir).collect(Collectors.toSet()));
+        // root (lost a subdirectory), kept (new file) and edited (changed stamp) need new manifests
+        assertEquals(Set.of(root.toString(), kept.toString(), edited.toString()),
+                second.manifests.stream().map(DirectoryManifest::dir).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testExtensionFilter() {
+        assertTrue(scanner.isImage("photo.JPG"));
+        assertFalse(scanner.isImage("photo."));
+        assertFalse(scanner.isImage("jpg"));
+        assertFalse(scanner.isImage("movie.mp4"));
+    }
+
+    private static void write(Path file, int bytes) throws IOException {
+        Files.write(file, new byte[bytes]);
+    }
+
+    private static void backdate(Path dir) throws IOException {
+        FileTime hourAgo = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+        try (var paths = Files.walk(dir)) {
+            for (Path p : paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+                Files.setLastModifiedTime(p, hourAgo);
+            }
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (var paths = Files.walk(dir)) {
+            for (Path p : paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private static final class Recorder implements ManifestSink {
+        final Set<ScannedFile> changed = ConcurrentHashMap.newKeySet();
+        final Set<String> deleted = ConcurrentHashMap.newKeySet();
+        final Set<DirectoryManifest> manifests = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void changed(List<ScannedFile> files) {
+            changed.addAll(files);
+        }
+
+        @Override
+        public void deleted(List<String> paths) {
+            deleted.addAll(paths);
+        }
+
+        @Override
+        public void manifest(DirectoryManifest manifest) {
+            manifests.add(manifest);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.homesync.backup.homesync.service.thumbnail;
+
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository;
+import com.homesync.backup.homesync.repository.PhotoJdbcRepository.PhotoSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ThumbnailServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final PhotoJdbcRepository photoJdbc = mock(PhotoJdbcRepository.class);
+    private ThumbnailService service;
+
+    @AfterEach
+    public void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testRendersEverySizeOnceAndServesFromCache() throws Exception {
+        Path original = dir.resolve("wide.jpg");
+        ImageIO.write(new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB), "jpg", original.toFile());
+        PhotoSource source = new PhotoSource(7L, original.toString(), "ab".repeat(32), Files.size(original), 0);
+        when(photoJdbc.findSources(List.of(7L))).thenReturn(Map.of(7L, source));
+        service = new ThumbnailService(photoJdbc, new SimpleMeterRegistry(), true, dir.resolve("cache").toString(),
+                new int[]{1024, 256}, 0.8f, 1 << 30, 1, 10);
+
+        ThumbnailService.Thumbnail small = service.thumbnail(7L, 200).orElseThrow();
+        BufferedImage decoded = ImageIO.read(small.file().toFile());
+        assertEquals(256, decoded.getWidth());
+        assertEquals(171, decoded.getHeight());
+        assertEquals("\"" + "ab".repeat(32) + "-256\"", small.etag());
+
+        // the larger size came from the same render; deleting the original proves no second decode
+        Files.delete(original);
+        ThumbnailService.Thumbnail large = service.thumbnail(7L, 1024).orElseThrow();
+        assertEquals(1024, ImageIO.read(large.file().toFile()).getWidth());
+    }
+
+    @Test
+    public void testVanishedCacheFileIsRenderedAgain() throws Exception {
+        Path original = dir.resolve("tall.jpg");
+        ImageIO.write(new BufferedImage(600, 900, BufferedImage.TYPE_INT_RGB), "jpg", original.toFile());
+        when(photoJdbc.findSources(List.of(3L)))
+                .thenReturn(Map.of(3L, new PhotoSource(3L, original.toString(), "cd".repeat(32), Files.size(original), 0)));
+        service = new ThumbnailService(photoJdbc, new SimpleMeterRegistry(), true, dir.resolve("cache").toString(),
+                new int[]{256}, 0.8f, 1 << 30, 1, 10);
+
+        Path first = service.thumbnail(3L, 256).orElseThrow().file();
+        Files.delete(first);
+
+        ThumbnailService.Thumbnail again = service.thumbnail(3L, 256).orElseThrow();
+        assertEquals(first, again.file());
+        assertEquals(Files.size(again.file()), again.length());
+    }
+
+    @Test
+    public void testUndecodableOrMissingPhotoHasNoThumbnail() throws Exception {
+        Path broken = Files.write(dir.resolve("broken.jpg"), new byte[]{1, 2, 3});
+        when(photoJdbc.findSources(List.of(1L))).thenReturn(Map.of(1L, new PhotoSource(1L, broken.toString(), null, 3, 0)));
+        when(photoJdbc.findSources(List.of(2L))).thenReturn(Map.of());
+        service = new ThumbnailService(photoJdbc, new SimpleMeterRegistry(), true, dir.resolve("cache").toString(),
+                new int[]{256}, 0.8f, 1 << 30, 1, 10);
+
+        assertTrue(service.thumbnail(1L, 256).isEmpty());
+        assertTrue(service.thumbnail(2L, 256).isEmpty());
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsedAndReloads() throws Exception {
+        Path cacheDir = dir.resolve("lru");
+        ThumbnailCache cache = new ThumbnailCache(cacheDir, 250);
+        cache.put("aa1", new byte[100]);
+        cache.put("bb2", new byte[100]);
+        assertNotNull(cache.get("aa1"));
+        cache.put("cc3", new byte[100]);
+
+        assertNull(cache.get("bb2"));
+        assertNotNull(cache.get("aa1"));
+        assertEquals(200, cache.totalBytes());
+        assertTrue(Files.notExists(cacheDir.resolve("bb").resolve("bb2.jpg")));
+
+        ThumbnailCache reopened = new ThumbnailCache(cacheDir, 250);
+        assertEquals(2, reopened.size());
+        assertNotNull(reopened.get("cc3"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.homesync.backup.homesync.service.watch;
+
+import com.homesync.backup.homesync.dto.WatchRequest;
+import com.homesync.backup.homesync.model.WatchedRoot;
+import com.homesync.backup.homesync.repository.IngestJdbcRepository;
+import com.homesync.backup.homesync.repository.IngestJobRepository;
+import com.homesync.backup.homesync.repository.ManifestJdbcRepository;
+import com.homesync.backup.homesync.repository.WatchedRootRepository;
+import com.homesync.backup.homesync.service.IngestBatchWriter;
+import com.homesync.backup.homesync.service.IngestService;
+import com.homesync.backup.homesync.service.scan.DirectoryScanner;
+import com.homesync.backup.homesync.service.scan.ScannedFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FolderWatchServiceTest {
+
+    @TempDir
+    Path root;
+
+    private final WatchedRootRepository roots = mock(WatchedRootRepository.class);
+    private final IngestBatchWriter batchWriter = mock(IngestBatchWriter.class);
+    private final ManifestJdbcRepository manifests = mock(ManifestJdbcRepository.class);
+    private final DirectoryScanner scanner = new DirectoryScanner(2, List.of("jpg", "png"), true);
+    private final FolderWatchService service = new FolderWatchService(roots, mock(IngestJobRepository.class),
+            mock(IngestService.class), batchWriter, mock(IngestJdbcRepository.class),
+            manifests, scanner, 200, 100, 200, false, List.of("nfs"));
+
+    @AfterEach
+    public void tearDown() {
+        service.shutdown();
+        scanner.shutdown();
+    }
+
+    @Test
+    public void testNativeWatchWritesSettledFilesOnce() throws Exception {
+        register("NATIVE");
+        Thread.sleep(300);
+        Path nested = Files.createDirectories(root.resolve("2024"));
+        Thread.sleep(300);
+        Path photo = nested.resolve("a.jpg");
+        // several writes in a row are one change once they settle
+        for (int i = 0; i < 5; i++) {
+            Files.write(photo, new byte[i + 1]);
+            Thread.sleep(20);
+        }
+        Files.write(nested.resolve("notes.txt"), new byte[1]);
+
+        assertEquals(List.of(photo.toString()), writtenPaths());
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() throws Exception {
+        when(batchWriter.writeChunk(anyString(), anyInt(), any(), eq(true)))
+                .thenThrow(new IllegalStateException("lock wait timeout"))
+                .thenReturn(null);
+        register("NATIVE");
+        Thread.sleep(300);
+        Path photo = Files.write(root.resolve("c.jpg"), new byte[3]);
+
+        ArgumentCaptor<List<ScannedFile>> chunk = chunkCaptor();
+        verify(batchWriter, timeout(5000).times(2)).writeChunk(anyString(), anyInt(), chunk.capture(), eq(true));
+        assertEquals(List.of(photo.toString()), chunk.getValue().stream().map(ScannedFile::path).toList());
+    }
+
+    @Test
+    public void testDeletedDirectoryFlagsPhotosUnderIt() throws Exception {
+        Path album = Files.createDirectories(root.resolve("album"));
+        register("NATIVE");
+        Thread.sleep(300);
+        Files.delete(album);
+
+        verify(batchWriter, timeout(5000)).markDeletedUnder(album.toString());
+    }
+
+    @Test
+    public void testPollingPicksUpNewFiles() throws Exception {
+        when(manifests.findUnder(anyString())).thenReturn(Map.of());
+        register("POLL");
+        Thread.sleep(400);
+        Path photo = Files.write(root.resolve("b.png"), new byte[3]);
+
+        assertEquals(List.of(photo.toString()), writtenPaths());
+    }
+
+    @Test
+    public void testRejectsMissingDirectory() {
+        assertThrows(IllegalArgumentException.class, () -> service.register(
+                new WatchRequest(root.resolve("missing").toString(), true, null, null)));
+    }
+
+    private void register(String mode) {
+        when(roots.findByPath(anyString())).thenReturn(Optional.empty());
+        when(roots.save(any())).thenAnswer(invocation -> {
+            WatchedRoot saved = invocation.getArgument(0);
+            saved.setId(1L);
+            return saved;
+        });
+        service.register(new WatchRequest(root.toString(), true, mode, "test"));
+    }
+
+    private List<String> writtenPaths() {
+        ArgumentCaptor<List<ScannedFile>> chunk = chunkCaptor();
+        verify(batchWriter, timeout(5000)).writeChunk(anyString(), anyInt(), chunk.capture(), eq(true));
+        return chunk.getValue().stream().map(ScannedFile::path).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<ScannedFile>> chunkCaptor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}